@@ -115,6 +115,7 @@ public class AdminAssetUploadController extends AdminAbstractController {
         
         StaticAsset staticAsset = staticAssetService.createStaticAssetFromFile(file, properties);
         staticAssetStorageService.createStaticAssetStorageFromFile(file, staticAsset);
+        staticAssetStorageService.pregenerateDerivatives(staticAsset);
 
         String staticAssetUrlPrefix = staticAssetService.getStaticAssetUrlPrefix();
         if (staticAssetUrlPrefix != null && !staticAssetUrlPrefix.startsWith("/")) {
@@ -157,6 +158,7 @@ public class AdminAssetUploadController extends AdminAbstractController {
 
         StaticAsset staticAsset = staticAssetService.createStaticAssetFromFile(file, null);
         staticAssetStorageService.createStaticAssetStorageFromFile(file, staticAsset);
+        staticAssetStorageService.pregenerateDerivatives(staticAsset);
 
         String staticAssetUrlPrefix = staticAssetService.getStaticAssetUrlPrefix();
         if (staticAssetUrlPrefix != null && !staticAssetUrlPrefix.startsWith("/")) {
@@ -0,0 +1,51 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.file.service;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Generates derivative files of static assets (resized or otherwise converted images) on a bounded worker pool,
+ * making sure each derivative is generated only once at a time, both within this JVM and, through a lock file next
+ * to the derivative, across processes sharing the same asset cache directory.
+ */
+public interface StaticAssetDerivativeService {
+
+    /**
+     * Returns the given derivative file, running the generator to produce it unless it already exists. Concurrent
+     * callers asking for the same file wait for a single generation.
+     *
+     * @param derivativeFile the file the generator produces
+     * @param generator writes the derivative file and returns it
+     * @return the generated file
+     * @throws RejectedExecutionException if the generation queue is full
+     */
+    File generateDerivative(File derivativeFile, Callable<File> generator) throws Exception;
+
+    /**
+     * Queues generation of the given derivative file without waiting for it. If the same file is already being
+     * generated, the pending generation is returned instead.
+     *
+     * @throws RejectedExecutionException if the generation queue is full
+     */
+    Future<File> submitDerivative(File derivativeFile, Callable<File> generator);
+
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.file.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service("blStaticAssetDerivativeService")
+public class StaticAssetDerivativeServiceImpl implements StaticAssetDerivativeService {
+
+    protected static final String LOCK_FILE_SUFFIX = ".lock";
+
+    /**
+     * Number of derivatives generated at the same time. Zero (the default) uses the number of available processors.
+     */
+    @Value("${asset.derivative.generation.threads:0}")
+    protected int generationThreads = 0;
+
+    /**
+     * Number of derivative generations that may wait for a worker before further requests are rejected
+     */
+    @Value("${asset.derivative.generation.queueSize:100}")
+    protected int generationQueueSize = 100;
+
+    protected final ConcurrentMap<String, DerivativeTask> inFlight = new ConcurrentHashMap<>();
+
+    protected ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = generationThreads > 0 ? generationThreads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(generationQueueSize), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Static asset derivative generation " + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public File generateDerivative(File derivativeFile, Callable<File> generator) throws Exception {
+        if (derivativeFile.exists()) {
+            return derivativeFile;
+        }
+        try {
+            return submitDerivative(derivativeFile, generator).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<File> submitDerivative(File derivativeFile, Callable<File> generator) {
+        String key = derivativeFile.getAbsolutePath();
+        DerivativeTask task = new DerivativeTask(key, derivativeFile, generator);
+        DerivativeTask existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, task);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Runs the generator while holding an exclusive lock on a lock file next to the derivative, unless the derivative
+     * already exists by the time the lock is obtained (for example because another process generated it). The lock
+     * file is left in place: deleting it would let a process that opened it before the delete and one that creates
+     * it afresh lock different files and generate the derivative at the same time.
+     */
+    protected File generateWithFileLock(File derivativeFile, Callable<File> generator) throws Exception {
+        if (derivativeFile.exists()) {
+            return derivativeFile;
+        }
+        File parent = derivativeFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Unable to create middle directories for file: " + derivativeFile.getAbsolutePath());
+        }
+        File lockFile = new File(derivativeFile.getAbsolutePath() + LOCK_FILE_SUFFIX);
+        RandomAccessFile lockAccess = new RandomAccessFile(lockFile, "rw");
+        try {
+            FileLock lock = lockAccess.getChannel().lock();
+            try {
+                if (derivativeFile.exists()) {
+                    return derivativeFile;
+                }
+                return generator.call();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            try {
+                lockAccess.close();
+            } catch (IOException e) {
+                //do nothing
+            }
+        }
+    }
+
+    protected class DerivativeTask extends FutureTask<File> {
+
+        protected final String key;
+
+        public DerivativeTask(String key, final File derivativeFile, final Callable<File> generator) {
+            super(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    return generateWithFileLock(derivativeFile, generator);
+                }
+            });
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+        }
+    }
+}
@@ -108,6 +108,15 @@ public interface StaticAssetStorageService {
      */
     Map<String, String> getCacheFileModel(String fullUrl, Map<String, String> parameterMap) throws Exception;
 
+    /**
+     * Queues generation of the derivatives of the given image asset for each named operation configured in
+     * asset.derivative.pregenerate.namedOperations, so the first request for them does not have to wait for the
+     * conversion. Does nothing for non-image assets or when no named operations are configured.
+     *
+     * @param staticAsset an asset whose storage has already been created
+     */
+    void pregenerateDerivatives(StaticAsset staticAsset);
+
     /**
      * Persists the file to the DB or FileSystem according to the staticAsset's StorageType. Typically, the 
      * MultipartFile is passed in from a Controller like the AdminAssetUploadController 
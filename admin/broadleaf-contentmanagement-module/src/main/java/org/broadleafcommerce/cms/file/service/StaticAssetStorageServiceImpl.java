@@ -52,6 +52,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Blob;
@@ -59,6 +60,8 @@ import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Resource;
 
@@ -99,6 +102,15 @@ public class StaticAssetStorageServiceImpl implements StaticAssetStorageService
     @Resource(name="blStreamingTransactionCapableUtil")
     protected StreamingTransactionCapableUtil transUtil;
 
+    @Resource(name="blStaticAssetDerivativeService")
+    protected StaticAssetDerivativeService derivativeService;
+
+    /**
+     * Named operations whose derivatives are generated in the background as soon as an image asset is uploaded
+     */
+    @Value("${asset.derivative.pregenerate.namedOperations:}")
+    protected String[] pregenerateNamedOperations = new String[0];
+
     protected StaticAsset findStaticAsset(String fullUrl) {
         StaticAsset staticAsset = staticAssetService.findStaticAssetByFullUrl(fullUrl);
 
@@ -215,11 +227,12 @@ public class StaticAssetStorageServiceImpl implements StaticAssetStorageService
         //extract the values for any named parameters
         Map<String, String> convertedParameters = namedOperationManager.manageNamedParameters(parameterMap);
         String cachedFileName = constructCacheFileName(staticAsset, convertedParameters);
+        String eTag = constructETag(cachedFileName);
         
         // Look for a shared file (this represents a file that was based on a file originally in the classpath.
         File cacheFile = getFileFromLocalRepository(cachedFileName);
         if (cacheFile.exists()) {
-            return buildModel(cacheFile.getAbsolutePath(), mimeType);
+            return buildModel(cacheFile.getAbsolutePath(), mimeType, eTag);
         }
         
         // Obtain the base file (that we may need to convert based on the parameters
@@ -237,20 +250,74 @@ public class StaticAssetStorageServiceImpl implements StaticAssetStorageService
         }
         
         if (convertedParameters.isEmpty()) {
-            return buildModel(baseLocalFile.getAbsolutePath(), mimeType);
+            return buildModel(baseLocalFile.getAbsolutePath(), mimeType, eTag);
         } else {
-            FileInputStream assetStream = new FileInputStream(baseLocalFile);
-            BufferedInputStream original = new BufferedInputStream(assetStream);
-            original.mark(0);                                    
-            
-            Operation[] operations = artifactService.buildOperations(convertedParameters, original, staticAsset.getMimeType());
-            InputStream converted = artifactService.convert(original, operations, staticAsset.getMimeType());
-            
-            createLocalFileFromInputStream(converted, cacheFile);
+            cacheFile = derivativeService.generateDerivative(cacheFile,
+                    createDerivativeGenerator(staticAsset, baseLocalFile, cacheFile, convertedParameters));
             if ("image/gif".equals(mimeType)) {
                 mimeType = "image/png";
             }
-            return buildModel(cacheFile.getAbsolutePath(), mimeType);
+            return buildModel(cacheFile.getAbsolutePath(), mimeType, eTag);
+        }
+    }
+
+    /**
+     * Builds the work that converts the base file of an asset into the derivative described by the (converted)
+     * parameters. It is run by the {@link StaticAssetDerivativeService}.
+     */
+    protected Callable<File> createDerivativeGenerator(final StaticAsset staticAsset, final File baseLocalFile,
+            final File cacheFile, final Map<String, String> convertedParameters) {
+        return new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                BufferedInputStream original = new BufferedInputStream(new FileInputStream(baseLocalFile));
+                try {
+                    original.mark(0);
+
+                    Operation[] operations = artifactService.buildOperations(convertedParameters, original, staticAsset.getMimeType());
+                    InputStream converted = artifactService.convert(original, operations, staticAsset.getMimeType());
+
+                    createLocalFileFromInputStream(converted, cacheFile);
+                } finally {
+                    IOUtils.closeQuietly(original);
+                }
+                return cacheFile;
+            }
+        };
+    }
+
+    @Override
+    public void pregenerateDerivatives(StaticAsset staticAsset) {
+        if (pregenerateNamedOperations.length == 0 || staticAsset.getMimeType() == null
+                || !staticAsset.getMimeType().startsWith("image/")) {
+            return;
+        }
+        try {
+            String baseCachedFileName = constructCacheFileName(staticAsset, null);
+            File baseLocalFile = getFileFromLocalRepository(baseCachedFileName);
+            if (!baseLocalFile.exists()) {
+                baseLocalFile = lookupAssetAndCreateLocalFile(staticAsset, baseLocalFile);
+            }
+            for (String namedOperation : pregenerateNamedOperations) {
+                Map<String, String> parameterMap = new HashMap<String, String>(1);
+                parameterMap.put(namedOperation, namedOperation);
+                Map<String, String> convertedParameters = namedOperationManager.manageNamedParameters(parameterMap);
+                if (convertedParameters.containsKey(namedOperation)) {
+                    LOG.warn("Unable to pre-generate derivatives for the unknown named operation (" + namedOperation + ")");
+                    continue;
+                }
+                File cacheFile = getFileFromLocalRepository(constructCacheFileName(staticAsset, convertedParameters));
+                if (!cacheFile.exists()) {
+                    derivativeService.submitDerivative(cacheFile,
+                            createDerivativeGenerator(staticAsset, baseLocalFile, cacheFile, convertedParameters));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Derivative generation queue is full, skipping pre-generation for " + staticAsset.getFullUrl());
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to pre-generate derivatives for " + staticAsset.getFullUrl(), e);
         }
     }
 
@@ -262,6 +329,24 @@ public class StaticAssetStorageServiceImpl implements StaticAssetStorageService
         return model;
     }
 
+    protected Map<String, String> buildModel(String returnFilePath, String mimeType, String eTag) {
+        Map<String, String> model = buildModel(returnFilePath, mimeType);
+        model.put("eTag", eTag);
+
+        return model;
+    }
+
+    /**
+     * Builds a strong entity tag for the file served under the given cache file name. The digest part of the name
+     * already changes whenever the asset is updated or a different derivative is requested, so it is used as the tag.
+     */
+    protected String constructETag(String cacheFileName) {
+        int marker = cacheFileName.lastIndexOf("---");
+        int start = marker < 0 ? 0 : marker + "---".length();
+        int end = cacheFileName.lastIndexOf('.');
+        return '"' + cacheFileName.substring(start, end < start ? cacheFileName.length() : end) + '"';
+    }
+
     @Override
     public StaticAssetStorage findStaticAssetStorageById(final Long id) {
         final StaticAssetStorage[] storage = new StaticAssetStorage[1];
@@ -379,7 +464,7 @@ public class StaticAssetStorageServiceImpl implements StaticAssetStorageService
         String digest;
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(sb2.toString().getBytes());
+            byte[] messageDigest = md.digest(sb2.toString().getBytes(StandardCharsets.UTF_8));
             BigInteger number = new BigInteger(1,messageDigest);
             digest = number.toString(16);
         } catch(NoSuchAlgorithmException e) {
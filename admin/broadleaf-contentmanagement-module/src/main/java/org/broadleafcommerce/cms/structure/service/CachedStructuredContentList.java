@@ -0,0 +1,52 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.structure.service;
+
+import org.broadleafcommerce.common.structure.dto.StructuredContentDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A list of {@link StructuredContentDTO}s as it is kept in the structured content cache, along with the
+ * {@link StructuredContentTargetingIndex} built for it. The index is part of the cached value, so it is evicted with the
+ * list. It is not serialized, a list read back from disk builds it again the first time it is needed.
+ */
+public class CachedStructuredContentList extends ArrayList<StructuredContentDTO> {
+
+    private static final long serialVersionUID = 1L;
+
+    protected transient volatile StructuredContentTargetingIndex targetingIndex;
+
+    public CachedStructuredContentList(Collection<StructuredContentDTO> structuredContentList) {
+        super(structuredContentList);
+    }
+
+    /**
+     * @return the targeting index for this list, built the first time it is asked for
+     */
+    public StructuredContentTargetingIndex getTargetingIndex() {
+        StructuredContentTargetingIndex index = targetingIndex;
+        if (index == null) {
+            index = StructuredContentTargetingIndex.build(this);
+            targetingIndex = index;
+        }
+        return index;
+    }
+
+}
@@ -56,6 +56,7 @@ import org.broadleafcommerce.common.util.FormatUtil;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Projections;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -106,6 +107,13 @@ public class StructuredContentServiceImpl implements StructuredContentService {
 
     protected Cache structuredContentCache;
 
+    /**
+     * Whether or not the rules of cached structured content lists are indexed so that items which can't match the
+     * current request are skipped without evaluating their MVEL rules
+     */
+    @Value("${structured.content.targeting.index.enabled:true}")
+    protected boolean targetingIndexEnabled = true;
+
     @Override
     public StructuredContent findStructuredContentById(Long contentId) {
         return structuredContentDao.findStructuredContentById(contentId);
@@ -173,11 +181,27 @@ public class StructuredContentServiceImpl implements StructuredContentService {
 
     @Override
     public List<StructuredContentDTO> evaluateAndPriortizeContent(List<StructuredContentDTO> structuredContentList, int count, Map<String, Object> ruleDTOs) {
+        return evaluateAndPriortizeContent(structuredContentList, count, ruleDTOs, null);
+    }
+
+    /**
+     * Same as {@link #evaluateAndPriortizeContent(List, int, Map)}, but items that the targeting index rules out for
+     * the passed in rule DTOs are skipped without evaluating their rules.
+     *
+     * @param targetingIndex the index built for <b>structuredContentList</b>, or null to evaluate every item
+     */
+    protected List<StructuredContentDTO> evaluateAndPriortizeContent(List<StructuredContentDTO> structuredContentList,
+            int count, Map<String, Object> ruleDTOs, StructuredContentTargetingIndex targetingIndex) {
         // some optimization for single item lists which don't require prioritization
         if (structuredContentList.size() == 1) {
             return processUnprioritizedContent(structuredContentList, ruleDTOs);
         }
 
+        StructuredContentTargetingIndex.Candidates candidates = null;
+        if (targetingIndex != null && targetingIndex.isIndexed()) {
+            candidates = targetingIndex.evaluate(ruleDTOs);
+        }
+
         structuredContentList = modifyStructuredContentDtoList(structuredContentList);
 
         Iterator<StructuredContentDTO> structuredContentIterator = structuredContentList.iterator();
@@ -205,12 +229,12 @@ public class StructuredContentServiceImpl implements StructuredContentService {
                 } else if (returnList.size() > count) {
                     return returnList.subList(0, count);
                 } else {
-                    if (processContentRules(sc, ruleDTOs)) {
+                    if (processContentRules(sc, ruleDTOs, candidates)) {
                         tmpList.add(sc);
                     }
                 }
             } else {
-                if (processContentRules(sc, ruleDTOs)) {
+                if (processContentRules(sc, ruleDTOs, candidates)) {
                     tmpList.add(sc);
                 }
             }
@@ -239,6 +263,14 @@ public class StructuredContentServiceImpl implements StructuredContentService {
         }
     }
 
+    protected boolean processContentRules(StructuredContentDTO sc, Map<String, Object> ruleDTOs,
+            StructuredContentTargetingIndex.Candidates candidates) {
+        if (candidates != null && !candidates.couldMatch(sc)) {
+            return false;
+        }
+        return processContentRules(sc, ruleDTOs);
+    }
+
     protected boolean processContentRules(StructuredContentDTO sc, Map<String, Object> ruleDTOs) {
         if (contentRuleProcessors != null) {
             for (RuleProcessor<StructuredContentDTO> processor : contentRuleProcessors) {
@@ -283,11 +315,13 @@ public class StructuredContentServiceImpl implements StructuredContentService {
             contentDTOList = buildStructuredContentDTOList(contentList, secure);
 
             if (context.isProductionSandBox()) {
+                contentDTOList = new CachedStructuredContentList(contentDTOList);
                 addStructuredContentListToCache(cacheKey, contentDTOList);
             }
         }
 
-        return evaluateAndPriortizeContent(contentDTOList, count, ruleDTOs);
+        return evaluateAndPriortizeContent(contentDTOList, count, ruleDTOs,
+                getTargetingIndex(contentDTOList));
     }
 
     @Override
@@ -310,11 +344,28 @@ public class StructuredContentServiceImpl implements StructuredContentService {
             contentDTOList = buildStructuredContentDTOList(productionContentList, secure);
 
             if (context.isProductionSandBox()) {
+                contentDTOList = new CachedStructuredContentList(contentDTOList);
                 addStructuredContentListToCache(cacheKey, contentDTOList);
             }
         }
 
-        return evaluateAndPriortizeContent(contentDTOList, count, ruleDTOs);
+        return evaluateAndPriortizeContent(contentDTOList, count, ruleDTOs,
+                getTargetingIndex(contentDTOList));
+    }
+
+    /**
+     * Returns the targeting index for a structured content list. Only lists that live in the production cache are
+     * indexed, and their index is kept in the cached value so that it is evicted along with the list.
+     *
+     * @param contentDTOList the list
+     * @return the index, or null if the list isn't indexed
+     * @see CachedStructuredContentList
+     */
+    protected StructuredContentTargetingIndex getTargetingIndex(List<StructuredContentDTO> contentDTOList) {
+        if (!targetingIndexEnabled || !(contentDTOList instanceof CachedStructuredContentList) || contentDTOList.size() < 2) {
+            return null;
+        }
+        return ((CachedStructuredContentList) contentDTOList).getTargetingIndex();
     }
 
     @Override
@@ -699,6 +750,9 @@ public class StructuredContentServiceImpl implements StructuredContentService {
 
     @Override
     public void addStructuredContentListToCache(String key, List<StructuredContentDTO> scDTOList) {
+        if (!(scDTOList instanceof CachedStructuredContentList)) {
+            scDTOList = new CachedStructuredContentList(scDTOList);
+        }
         getStructuredContentCache().put(new Element(key, scDTOList));
     }
 
@@ -0,0 +1,494 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.structure.service;
+
+import org.broadleafcommerce.common.rule.RuleExpressionUtils;
+import org.broadleafcommerce.common.structure.dto.StructuredContentDTO;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * An index over the targeting rules of a cached list of {@link StructuredContentDTO}s. Simple conditions are extracted
+ * from the top level conjuncts of each item's rule expression, for example:
+ * <pre>
+ * customer.?registered==true
+ * MvelHelper.toUpperCase(request.?requestURI)==MvelHelper.toUpperCase("/cart")
+ * ["en_US","en_GB"] contains locale.?localeCode
+ * </pre>
+ * and the items are grouped by the attribute path and value they require. For a request, each indexed attribute is
+ * resolved once from the rule DTOs and every item whose condition on it cannot hold is excluded, so only the remaining
+ * items need their MVEL rules evaluated.
+ * </p>
+ * Any other conjunct, such as a time range comparison, is left to the MVEL evaluation, as is any rule containing a top
+ * level "||". An attribute that can't be resolved, or resolves to a type the literals weren't written for, never
+ * excludes anything. The index never excludes an item that the full rule would accept.
+ *
+ * @see StructuredContentServiceImpl#evaluateAndPriortizeContent(List, int, Map, StructuredContentTargetingIndex)
+ */
+public class StructuredContentTargetingIndex {
+
+    protected static final String LITERAL = "\"[^\"\\\\]*\"|'[^'\\\\]*'|-?\\d+(?:\\.\\d+)?[LlDdFfBb]?|true|false";
+    protected static final Pattern LITERAL_PATTERN = Pattern.compile(LITERAL);
+    protected static final Pattern EQUALS = Pattern.compile("^(.+?)\\s*==\\s*(" + LITERAL + ")$");
+    protected static final Pattern EQUALS_IGNORE_CASE = Pattern.compile(
+            "^MvelHelper\\.toUpperCase\\((.+?)\\)\\s*==\\s*MvelHelper\\.toUpperCase\\((\"[^\"\\\\]*\"|'[^'\\\\]*')\\)$");
+    protected static final Pattern CONTAINS = Pattern.compile(
+            "^\\[\\s*((?:" + LITERAL + ")(?:\\s*,\\s*(?:" + LITERAL + "))*)\\s*\\]\\s*contains\\s+(.+)$");
+    protected static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    protected static final Pattern KEY = Pattern.compile("\"([^\"\\\\]*)\"|'([^'\\\\]*)'");
+
+    /**
+     * Returned when resolving an attribute fails, as opposed to resolving to null
+     */
+    protected static final Object UNRESOLVED = new Object();
+
+    protected final List<StructuredContentDTO> source;
+    protected final Map<StructuredContentDTO, Integer> positions;
+    protected final List<AttributeIndex> attributes;
+
+    protected StructuredContentTargetingIndex(List<StructuredContentDTO> source,
+            Map<StructuredContentDTO, Integer> positions, List<AttributeIndex> attributes) {
+        this.source = source;
+        this.positions = positions;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Build the index for a list of structured content items.
+     *
+     * @param structuredContentList the cached list of items
+     * @return the index
+     */
+    public static StructuredContentTargetingIndex build(List<StructuredContentDTO> structuredContentList) {
+        Map<StructuredContentDTO, Integer> positions = new IdentityHashMap<>();
+        Map<String, AttributeIndex> attributes = new LinkedHashMap<>();
+        for (StructuredContentDTO sc : structuredContentList) {
+            if (positions.containsKey(sc)) {
+                continue;
+            }
+            int position = positions.size();
+            positions.put(sc, position);
+            for (Condition condition : parseConditions(sc.getRuleExpression())) {
+                String key = condition.path + (condition.ignoreCase ? "#ignoreCase" : "");
+                AttributeIndex attribute = attributes.get(key);
+                if (attribute == null) {
+                    attribute = new AttributeIndex(condition.segments, condition.ignoreCase);
+                    attributes.put(key, attribute);
+                }
+                attribute.add(position, condition.values);
+            }
+        }
+        return new StructuredContentTargetingIndex(structuredContentList, positions,
+                new ArrayList<>(attributes.values()));
+    }
+
+    /**
+     * @return whether or not this index was built for the given list instance
+     */
+    public boolean isFor(List<StructuredContentDTO> structuredContentList) {
+        return source == structuredContentList;
+    }
+
+    /**
+     * @return whether or not any conditions were extracted
+     */
+    public boolean isIndexed() {
+        return !attributes.isEmpty();
+    }
+
+    /**
+     * Resolve the indexed attributes against the rule DTOs of the current request.
+     *
+     * @param ruleDTOs the objects the MVEL rules are evaluated against
+     * @return the candidates for this request
+     */
+    public Candidates evaluate(Map<String, Object> ruleDTOs) {
+        BitSet excluded = new BitSet(positions.size());
+        if (ruleDTOs != null) {
+            for (AttributeIndex attribute : attributes) {
+                attribute.exclude(ruleDTOs, excluded);
+            }
+        }
+        return new Candidates(excluded);
+    }
+
+    protected static List<Condition> parseConditions(String ruleExpression) {
+        if (ruleExpression == null) {
+            return Collections.emptyList();
+        }
+        List<String> conjuncts = RuleExpressionUtils.splitConjuncts(ruleExpression.trim());
+        if (conjuncts == null) {
+            return Collections.emptyList();
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String conjunct : conjuncts) {
+            Condition condition = parseCondition(RuleExpressionUtils.stripEnclosingParentheses(conjunct.trim()));
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+        return conditions;
+    }
+
+    protected static Condition parseCondition(String expression) {
+        Matcher matcher = EQUALS_IGNORE_CASE.matcher(expression);
+        if (matcher.matches()) {
+            return buildCondition(matcher.group(1), Collections.singletonList(matcher.group(2)), true);
+        }
+        matcher = EQUALS.matcher(expression);
+        if (matcher.matches()) {
+            return buildCondition(matcher.group(1), Collections.singletonList(matcher.group(2)), false);
+        }
+        matcher = CONTAINS.matcher(expression);
+        if (matcher.matches()) {
+            List<String> literals = new ArrayList<>();
+            Matcher literal = LITERAL_PATTERN.matcher(matcher.group(1));
+            while (literal.find()) {
+                literals.add(literal.group());
+            }
+            return buildCondition(matcher.group(2), literals, false);
+        }
+        return null;
+    }
+
+    protected static Condition buildCondition(String path, List<String> literals, boolean ignoreCase) {
+        List<Segment> segments = parsePath(path.trim());
+        if (segments == null) {
+            return null;
+        }
+        Set<Object> values = new HashSet<>();
+        for (String literal : literals) {
+            Object value = parseLiteral(literal);
+            if (ignoreCase) {
+                value = ((String) value).toUpperCase();
+            }
+            values.add(value);
+        }
+        return new Condition(path.replace("?", ""), segments, values, ignoreCase);
+    }
+
+    protected static Object parseLiteral(String literal) {
+        if ("true".equals(literal) || "false".equals(literal)) {
+            return Boolean.valueOf(literal);
+        }
+        char first = literal.charAt(0);
+        if (first == '"' || first == '\'') {
+            return literal.substring(1, literal.length() - 1);
+        }
+        if (!Character.isDigit(literal.charAt(literal.length() - 1))) {
+            literal = literal.substring(0, literal.length() - 1);
+        }
+        return new BigDecimal(literal).stripTrailingZeros();
+    }
+
+    /**
+     * Parse a rule builder field path such as <code>customer.?customerAttributes["key"]</code> or
+     * <code>customer.?customerType.getType()</code>.
+     *
+     * @return the segments, or null if the path isn't one that can be resolved outside of MVEL
+     */
+    protected static List<Segment> parsePath(String path) {
+        Matcher identifier = IDENTIFIER.matcher(path);
+        if (!identifier.lookingAt() || "MvelHelper".equals(identifier.group())) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList<>();
+        segments.add(new Segment(Segment.VARIABLE, identifier.group()));
+        int position = identifier.end();
+        while (position < path.length()) {
+            if (path.charAt(position) == '.') {
+                position++;
+                if (position < path.length() && path.charAt(position) == '?') {
+                    position++;
+                }
+                identifier.region(position, path.length());
+                if (!identifier.lookingAt()) {
+                    return null;
+                }
+                String name = identifier.group();
+                position = identifier.end();
+                if (path.startsWith("()", position)) {
+                    segments.add(new Segment(Segment.METHOD, name));
+                    position += 2;
+                } else if ("get".equals(name) && path.startsWith("(", position)) {
+                    int end = path.indexOf(')', position);
+                    String key = end < 0 ? null : parseKey(path.substring(position + 1, end));
+                    if (key == null) {
+                        return null;
+                    }
+                    segments.add(new Segment(Segment.KEY, key));
+                    position = end + 1;
+                } else {
+                    segments.add(new Segment(Segment.PROPERTY, name));
+                }
+            } else if (path.charAt(position) == '[') {
+                int end = path.indexOf(']', position);
+                String key = end < 0 ? null : parseKey(path.substring(position + 1, end));
+                if (key == null) {
+                    return null;
+                }
+                segments.add(new Segment(Segment.KEY, key));
+                position = end + 1;
+            } else {
+                return null;
+            }
+        }
+        return segments;
+    }
+
+    protected static String parseKey(String key) {
+        Matcher matcher = KEY.matcher(key.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    }
+
+    /**
+     * Resolve a path the way the null safe MVEL expression would.
+     *
+     * @return the value, null if the path is null along the way, or {@link #UNRESOLVED}
+     */
+    protected static Object resolve(List<Segment> segments, Map<String, Object> ruleDTOs) {
+        String variable = segments.get(0).name;
+        if (!ruleDTOs.containsKey(variable)) {
+            return UNRESOLVED;
+        }
+        Object value = ruleDTOs.get(variable);
+        for (int j = 1; j < segments.size(); j++) {
+            if (value == null) {
+                return null;
+            }
+            Segment segment = segments.get(j);
+            try {
+                if (segment.type == Segment.KEY) {
+                    if (!(value instanceof Map)) {
+                        return UNRESOLVED;
+                    }
+                    value = ((Map<?, ?>) value).get(segment.name);
+                } else if (segment.type == Segment.PROPERTY && value instanceof Map) {
+                    value = ((Map<?, ?>) value).get(segment.name);
+                } else if (segment.type == Segment.METHOD) {
+                    value = value.getClass().getMethod(segment.name).invoke(value);
+                } else {
+                    Method getter = findGetter(value.getClass(), segment.name);
+                    if (getter == null) {
+                        return UNRESOLVED;
+                    }
+                    value = getter.invoke(value);
+                }
+            } catch (Exception e) {
+                return UNRESOLVED;
+            }
+        }
+        return value;
+    }
+
+    protected static Method findGetter(Class<?> type, String property) {
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        try {
+            return type.getMethod("get" + suffix);
+        } catch (NoSuchMethodException e) {
+            try {
+                return type.getMethod("is" + suffix);
+            } catch (NoSuchMethodException e1) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Convert a resolved value to the form the literals were parsed into.
+     *
+     * @return the normalized value, or {@link #UNRESOLVED} if it can't be compared to a literal outside of MVEL
+     */
+    protected static Object normalize(Object value, boolean ignoreCase) {
+        if (value instanceof String) {
+            return ignoreCase ? ((String) value).toUpperCase() : value;
+        }
+        if (ignoreCase) {
+            return UNRESOLVED;
+        }
+        if (value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue()).stripTrailingZeros();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return UNRESOLVED;
+            }
+            return new BigDecimal(Double.toString(d)).stripTrailingZeros();
+        }
+        return UNRESOLVED;
+    }
+
+    /**
+     * The items of the indexed list that may still match for one request
+     */
+    public class Candidates {
+
+        protected final BitSet excluded;
+
+        protected Candidates(BitSet excluded) {
+            this.excluded = excluded;
+        }
+
+        /**
+         * @return false if the item's rule definitely fails for this request, true if the rule must be evaluated to know
+         */
+        public boolean couldMatch(StructuredContentDTO sc) {
+            Integer position = positions.get(sc);
+            return position == null || !excluded.get(position);
+        }
+
+        /**
+         * @return the number of indexed items that were excluded
+         */
+        public int getExcludedCount() {
+            return excluded.cardinality();
+        }
+    }
+
+    /**
+     * The items constrained on a single attribute path, grouped by the values they accept
+     */
+    protected static class AttributeIndex {
+
+        protected final List<Segment> segments;
+        protected final boolean ignoreCase;
+        protected final Map<Object, BitSet> itemsByValue = new HashMap<>();
+        protected final Map<Class<?>, BitSet> constrainedByKind = new HashMap<>();
+        protected final BitSet constrained = new BitSet();
+
+        protected AttributeIndex(List<Segment> segments, boolean ignoreCase) {
+            this.segments = segments;
+            this.ignoreCase = ignoreCase;
+        }
+
+        protected void add(int position, Set<Object> values) {
+            if (constrained.get(position)) {
+                // A second condition on the same attribute narrows the item further, which the MVEL evaluation
+                // will take care of. Keeping only the first one is still a necessary condition.
+                return;
+            }
+            Class<?> kind = null;
+            for (Object value : values) {
+                if (kind != null && kind != value.getClass()) {
+                    return;
+                }
+                kind = value.getClass();
+            }
+            if (kind == null) {
+                return;
+            }
+            constrained.set(position);
+            BitSet kindItems = constrainedByKind.get(kind);
+            if (kindItems == null) {
+                kindItems = new BitSet();
+                constrainedByKind.put(kind, kindItems);
+            }
+            kindItems.set(position);
+            for (Object value : values) {
+                BitSet items = itemsByValue.get(value);
+                if (items == null) {
+                    items = new BitSet();
+                    itemsByValue.put(value, items);
+                }
+                items.set(position);
+            }
+        }
+
+        protected void exclude(Map<String, Object> ruleDTOs, BitSet excluded) {
+            Object value = resolve(segments, ruleDTOs);
+            if (value == UNRESOLVED) {
+                return;
+            }
+            if (value == null) {
+                // a null never equals, nor is contained in a list of, literals
+                excluded.or(constrained);
+                return;
+            }
+            value = normalize(value, ignoreCase);
+            if (value == UNRESOLVED) {
+                return;
+            }
+            BitSet kindItems = constrainedByKind.get(value.getClass());
+            if (kindItems == null) {
+                return;
+            }
+            BitSet rejected = (BitSet) kindItems.clone();
+            BitSet accepted = itemsByValue.get(value);
+            if (accepted != null) {
+                rejected.andNot(accepted);
+            }
+            excluded.or(rejected);
+        }
+    }
+
+    protected static class Condition {
+
+        protected final String path;
+        protected final List<Segment> segments;
+        protected final Set<Object> values;
+        protected final boolean ignoreCase;
+
+        protected Condition(String path, List<Segment> segments, Set<Object> values, boolean ignoreCase) {
+            this.path = path;
+            this.segments = segments;
+            this.values = values;
+            this.ignoreCase = ignoreCase;
+        }
+    }
+
+    protected static class Segment {
+
+        protected static final int VARIABLE = 0;
+        protected static final int PROPERTY = 1;
+        protected static final int METHOD = 2;
+        protected static final int KEY = 3;
+
+        protected final int type;
+        protected final String name;
+
+        protected Segment(int type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+    }
+
+}
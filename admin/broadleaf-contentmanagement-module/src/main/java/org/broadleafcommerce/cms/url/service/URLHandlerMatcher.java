@@ -0,0 +1,263 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.url.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.cms.url.domain.URLHandler;
+import org.broadleafcommerce.cms.url.domain.URLHandlerDTO;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>
+ * An immutable matcher over a snapshot of the {@link URLHandler}s, used to find the regex handler for a request URI.
+ * </p>
+ * Every handler pattern is anchored at the start of the URI, so the literal text that follows the "^" of a pattern
+ * has to be a prefix of any URI it matches. Those literal prefixes are kept in a trie: a single pass over the URI
+ * collects the handlers whose prefix it starts with, and only their patterns are run, in the original handler order.
+ * Patterns without a literal prefix, for example ones starting with a group or using a top level "|", are always
+ * candidates.
+ *
+ * @see URLHandlerServiceImpl#checkForMatches(String)
+ */
+public class URLHandlerMatcher {
+
+    private static final Log LOG = LogFactory.getLog(URLHandlerMatcher.class);
+
+    protected static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    protected final List<URLHandler> handlers;
+    protected final Pattern[] patterns;
+    protected final List<String> signature;
+    protected final TrieNode root = new TrieNode();
+
+    /**
+     * @param handlers the handlers, in the order they should be tried
+     * @param regexes the anchored regex for each handler
+     */
+    public URLHandlerMatcher(List<URLHandler> handlers, List<String> regexes) {
+        this.handlers = new ArrayList<>(handlers);
+        this.patterns = new Pattern[handlers.size()];
+        this.signature = buildSignature(handlers);
+        for (int j = 0; j < handlers.size(); j++) {
+            String regex = regexes.get(j);
+            try {
+                patterns[j] = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                // We don't want an invalid regex to cause tons of logging, so it is reported once and then skipped
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Error parsing URL Handler (incoming =" + handlers.get(j).getIncomingURL() + "), outgoing = ( "
+                            + handlers.get(j).getNewURL() + ")");
+                }
+                continue;
+            }
+            add(literalPrefix(regex), j);
+        }
+    }
+
+    /**
+     * @return whether or not this matcher was built from handlers equivalent to the passed in ones
+     */
+    public boolean isBuiltFrom(List<URLHandler> handlers) {
+        return signature.equals(buildSignature(handlers));
+    }
+
+    /**
+     * Find the first handler whose pattern matches the passed in URI.
+     *
+     * @param requestURI the URI
+     * @return the handler, a {@link URLHandlerDTO} with the rewritten URL if the handler uses replacement groups, or null
+     */
+    public URLHandler match(String requestURI) {
+        BitSet candidates = findCandidates(requestURI);
+        URLHandler currentHandler = null;
+        try {
+            for (int j = candidates.nextSetBit(0); j >= 0; j = candidates.nextSetBit(j + 1)) {
+                currentHandler = handlers.get(j);
+                Matcher m = patterns[j].matcher(requestURI);
+                if (m.find()) {
+                    String newUrl = m.replaceFirst(currentHandler.getNewURL());
+                    if (newUrl.equals(currentHandler.getNewURL())) {
+                        return currentHandler;
+                    } else {
+                        return new URLHandlerDTO(newUrl, currentHandler.getUrlRedirectType());
+                    }
+                }
+            }
+        } catch (RuntimeException re) {
+            if (currentHandler != null) {
+                // We don't want an invalid regex to cause tons of logging
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Error parsing URL Handler (incoming =" + currentHandler.getIncomingURL() + "), outgoing = ( "
+                            + currentHandler.getNewURL() + "), " + requestURI);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of handlers with a valid pattern
+     */
+    public int size() {
+        int size = 0;
+        for (Pattern pattern : patterns) {
+            if (pattern != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    protected BitSet findCandidates(String requestURI) {
+        BitSet candidates = new BitSet(patterns.length);
+        TrieNode node = root;
+        node.addHandlersTo(candidates);
+        for (int j = 0; j < requestURI.length(); j++) {
+            node = node.children.get(requestURI.charAt(j));
+            if (node == null) {
+                break;
+            }
+            node.addHandlersTo(candidates);
+        }
+        return candidates;
+    }
+
+    protected void add(String prefix, int handlerIndex) {
+        TrieNode node = root;
+        for (int j = 0; j < prefix.length(); j++) {
+            Character c = prefix.charAt(j);
+            TrieNode child = node.children.get(c);
+            if (child == null) {
+                child = new TrieNode();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.handlers.add(handlerIndex);
+    }
+
+    /**
+     * Returns the literal text a pattern anchored with "^" requires at the start of the input.
+     *
+     * @param regex the anchored regex
+     * @return the required prefix, or an empty string if there isn't one
+     */
+    protected static String literalPrefix(String regex) {
+        if (!regex.startsWith("^") || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int j = 1;
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            char literal;
+            if (c == '\\') {
+                if (j + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(j + 1))) {
+                    break;
+                }
+                literal = regex.charAt(j + 1);
+                j += 2;
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                j++;
+            }
+            if (j < regex.length()) {
+                char next = regex.charAt(j);
+                if (next == '?' || next == '*' || next == '{') {
+                    // the literal is optional, or repeated an unknown number of times
+                    break;
+                }
+                if (next == '+') {
+                    prefix.append(literal);
+                    break;
+                }
+            }
+            prefix.append(literal);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * @return whether or not the regex has a "|" outside of any group or character class, in which case the anchor
+     * only applies to the first alternative
+     */
+    protected static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int j = 0; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", j + 2);
+                    if (end < 0) {
+                        return false;
+                    }
+                    j = end + 1;
+                } else {
+                    j++;
+                }
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static List<String> buildSignature(List<URLHandler> handlers) {
+        List<String> signature = new ArrayList<>(handlers.size());
+        for (URLHandler handler : handlers) {
+            String redirectType = handler.getUrlRedirectType() == null ? null : handler.getUrlRedirectType().getType();
+            signature.add(handler.getIncomingURL() + '\n' + handler.getNewURL() + '\n' + redirectType);
+        }
+        return signature;
+    }
+
+    protected static class TrieNode {
+
+        protected final Map<Character, TrieNode> children = new HashMap<>();
+        protected final List<Integer> handlers = new ArrayList<>(1);
+
+        protected void addHandlersTo(BitSet candidates) {
+            for (Integer handler : handlers) {
+                candidates.set(handler);
+            }
+        }
+    }
+
+}
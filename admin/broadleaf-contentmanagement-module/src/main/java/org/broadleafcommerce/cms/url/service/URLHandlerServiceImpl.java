@@ -25,22 +25,31 @@ import org.broadleafcommerce.cms.url.domain.NullURLHandler;
 import org.broadleafcommerce.cms.url.domain.URLHandler;
 import org.broadleafcommerce.cms.url.domain.URLHandlerDTO;
 import org.broadleafcommerce.common.cache.StatisticsService;
+import org.broadleafcommerce.common.site.domain.Catalog;
 import org.broadleafcommerce.common.site.domain.Site;
 import org.broadleafcommerce.common.util.EfficientLRUMap;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 
 
 /**
@@ -61,8 +70,34 @@ public class URLHandlerServiceImpl implements URLHandlerService {
     @Resource(name = "blStatisticsService")
     protected StatisticsService statisticsService;
 
+    /**
+     * @deprecated no longer used, the patterns are compiled once per {@link URLHandlerMatcher}
+     */
+    @Deprecated
     protected Map<String, Pattern> urlPatternMap = new EfficientLRUMap<String, Pattern>(2000);
 
+    /**
+     * The number of URIs without a handler that are remembered, 0 to cache them in the URL handler cache instead
+     */
+    @Value("${url.handler.negative.cache.size:10000}")
+    protected int urlHandlerNegativeCacheSize = 10000;
+
+    /**
+     * Regex handler matchers for production, keyed by site and catalog. A matcher is built the first time a URI has to
+     * be matched in its context and dropped whenever a URL handler is saved or removed from the cache, or the URL
+     * handler cache is cleared.
+     */
+    protected final ConcurrentMap<String, URLHandlerMatcher> urlHandlerMatchers = new ConcurrentHashMap<String, URLHandlerMatcher>();
+    protected final AtomicInteger urlHandlerMatchersGeneration = new AtomicInteger();
+    protected final ReentrantLock urlHandlerMatcherLock = new ReentrantLock();
+
+    /**
+     * Cache keys of URIs that have no handler. Each key can only live in the slot its hash maps to, so memory is
+     * bounded no matter how many distinct URIs are requested. A miss only counts for the matcher it was found with, so
+     * misses are scoped to a site and catalog like the matchers, and are forgotten when the matchers are dropped.
+     */
+    protected volatile AtomicReferenceArray<CachedMiss> negativeCache;
+
     /**
      * Checks the passed in URL to determine if there is a matching URLHandler.
      * Returns null if no handler was found.
@@ -86,6 +121,7 @@ public class URLHandlerServiceImpl implements URLHandlerService {
         }
 
         String key = buildURLHandlerCacheKey(site, uri);
+        URLHandlerMatcher matcher = null;
 
         //See if this is in cache first, but only if we are in production
         if (BroadleafRequestContext.getBroadleafRequestContext().isProductionSandBox()) {
@@ -93,6 +129,15 @@ public class URLHandlerServiceImpl implements URLHandlerService {
         }
 
         if (handler == null) {
+            //A known miss needs neither the exact match query nor the regex match. Misses are forgotten whenever a
+            //handler is saved or removed from the cache, so they can't hide a handler added since.
+            if (BroadleafRequestContext.getBroadleafRequestContext().isProductionSandBox()) {
+                matcher = getURLHandlerMatcher();
+                if (isCachedMiss(key, matcher)) {
+                    return null;
+                }
+            }
+
             //Check for an exact match in the DB...
             handler = urlHandlerDao.findURLHandlerByURI(uri);
 
@@ -111,7 +156,9 @@ public class URLHandlerServiceImpl implements URLHandlerService {
             }
 
             if (BroadleafRequestContext.getBroadleafRequestContext().isProductionSandBox()) {
-                getUrlHandlerCache().put(new Element(key, handler));
+                if (handler != NULL_URL_HANDLER || !cacheMiss(key, matcher)) {
+                    addUrlHandlerToCache(key, handler);
+                }
             }
         }
 
@@ -140,50 +187,133 @@ public class URLHandlerServiceImpl implements URLHandlerService {
     @Override
     @Transactional("blTransactionManager")
     public URLHandler saveURLHandler(URLHandler handler) {
-        return urlHandlerDao.saveURLHandler(handler);
+        URLHandler saved = urlHandlerDao.saveURLHandler(handler);
+        invalidateURLHandlerMatchers();
+        return saved;
     }
 
     protected URLHandler checkForMatches(String requestURI) {
-        URLHandler currentHandler = null;
+        return getURLHandlerMatcher().match(requestURI);
+    }
+
+    /**
+     * Returns the matcher for the handlers of the current site and catalog, building it if there is none. Handlers read
+     * in a sandbox include its pending changes, so the matcher for a sandbox is built for the lookup and never shared.
+     */
+    protected URLHandlerMatcher getURLHandlerMatcher() {
+        BroadleafRequestContext context = BroadleafRequestContext.getBroadleafRequestContext();
+        if (context != null && !context.isProductionSandBox()) {
+            return buildURLHandlerMatcher(findAllURLHandlers());
+        }
+        String matcherKey = buildURLHandlerMatcherKey(context);
+        URLHandlerMatcher matcher = urlHandlerMatchers.get(matcherKey);
+        if (matcher != null) {
+            return matcher;
+        }
+        urlHandlerMatcherLock.lock();
         try {
-            List<URLHandler> urlHandlers = findAllURLHandlers();
-            for (URLHandler urlHandler : urlHandlers) {
-                currentHandler = urlHandler;
-                String incomingUrl = wrapStringsWithAnchors(currentHandler.getIncomingURL());
-
-                Pattern p = urlPatternMap.get(incomingUrl);
-                if (p == null) {
-                    p = Pattern.compile(incomingUrl);
-                    urlPatternMap.put(incomingUrl, p);
-                }
-                Matcher m = p.matcher(requestURI);
-                if (m.find()) {
-                    String newUrl = m.replaceFirst(urlHandler.getNewURL());
-                    if (newUrl.equals(urlHandler.getNewURL())) {
-                        return urlHandler;
-                    } else {
-                        return new URLHandlerDTO(newUrl, urlHandler.getUrlRedirectType());
-                    }
+            matcher = urlHandlerMatchers.get(matcherKey);
+            if (matcher == null) {
+                int generation = urlHandlerMatchersGeneration.get();
+                matcher = buildURLHandlerMatcher(findAllURLHandlers());
+                // Don't keep a matcher built from handlers read before they were invalidated
+                if (generation == urlHandlerMatchersGeneration.get()) {
+                    urlHandlerMatchers.put(matcherKey, matcher);
                 }
+            }
+            return matcher;
+        } finally {
+            urlHandlerMatcherLock.unlock();
+        }
+    }
 
+    protected String buildURLHandlerMatcherKey(BroadleafRequestContext context) {
+        StringBuilder key = new StringBuilder();
+        if (context != null) {
+            Site site = context.getNonPersistentSite();
+            if (site != null) {
+                key.append("site:").append(site.getId());
             }
-        } catch (RuntimeException re) {
-            if (currentHandler != null) {
-                // We don't want an invalid regex to cause tons of logging                
-                if (LOG.isWarnEnabled()) {
-                    LOG.warn("Error parsing URL Handler (incoming =" + currentHandler.getIncomingURL() + "), outgoing = ( "
-                            + currentHandler.getNewURL() + "), " + requestURI);
-                }
+            Catalog catalog = context.getCurrentCatalog();
+            if (catalog != null) {
+                key.append("_catalog:").append(catalog.getId());
             }
         }
+        return key.toString();
+    }
 
-        return null;
+    /**
+     * Drops the regex handler matchers, and with them the cached misses, so the handlers are read again on the next
+     * lookup that needs them.
+     */
+    protected void invalidateURLHandlerMatchers() {
+        urlHandlerMatchersGeneration.incrementAndGet();
+        urlHandlerMatchers.clear();
+    }
+
+    protected URLHandlerMatcher buildURLHandlerMatcher(List<URLHandler> handlers) {
+        List<String> regexes = new ArrayList<String>(handlers.size());
+        for (URLHandler handler : handlers) {
+            regexes.add(wrapStringsWithAnchors(handler.getIncomingURL()));
+        }
+        return new URLHandlerMatcher(handlers, regexes);
+    }
+
+    /**
+     * @param matcher the current matcher for the site and catalog of the lookup
+     * @return whether or not the key was recorded as having no handler with that matcher
+     */
+    protected boolean isCachedMiss(String key, URLHandlerMatcher matcher) {
+        AtomicReferenceArray<CachedMiss> misses = negativeCache;
+        if (misses == null) {
+            return false;
+        }
+        CachedMiss miss = misses.get(slot(misses, key));
+        return miss != null && miss.matcher == matcher && miss.key.equals(key);
+    }
+
+    /**
+     * Record that the key has no handler, replacing whichever key was in its slot. A miss found with a matcher that
+     * has since been replaced is ignored, as the changed handlers may match it now.
+     *
+     * @param matcher the matcher the key was looked up with
+     * @return false if misses aren't cached here
+     */
+    protected boolean cacheMiss(String key, URLHandlerMatcher matcher) {
+        if (urlHandlerNegativeCacheSize <= 0) {
+            return false;
+        }
+        if (matcher == null) {
+            return true;
+        }
+        AtomicReferenceArray<CachedMiss> misses = negativeCache;
+        if (misses == null) {
+            misses = new AtomicReferenceArray<CachedMiss>(Integer.highestOneBit(Math.max(urlHandlerNegativeCacheSize - 1, 1)) << 1);
+            negativeCache = misses;
+        }
+        misses.set(slot(misses, key), new CachedMiss(key, matcher));
+        return true;
+    }
+
+    protected int slot(AtomicReferenceArray<CachedMiss> misses, String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (misses.length() - 1);
     }
 
     @Override
     public Boolean removeURLHandlerFromCache(String mapKey) {
         Boolean success = Boolean.FALSE;
         if (mapKey != null) {
+            // A handler removed from the cache may have been added or changed, including a regex one
+            invalidateURLHandlerMatchers();
+            AtomicReferenceArray<CachedMiss> misses = negativeCache;
+            if (misses != null) {
+                int slot = slot(misses, mapKey);
+                CachedMiss miss = misses.get(slot);
+                if (miss != null && miss.key.equals(mapKey) && misses.compareAndSet(slot, miss, null)) {
+                    success = Boolean.TRUE;
+                }
+            }
             Element e = getUrlHandlerCache().get(mapKey);
 
             if (e != null && e.getObjectValue() != null) {
@@ -212,9 +342,21 @@ public class URLHandlerServiceImpl implements URLHandlerService {
         return null;
     }
 
+    protected void addUrlHandlerToCache(String key, URLHandler handler) {
+        getUrlHandlerCache().put(new Element(key, handler));
+    }
+
     protected Cache getUrlHandlerCache() {
         if (urlHandlerCache == null) {
-            urlHandlerCache = CacheManager.getInstance().getCache("cmsUrlHandlerCache");
+            Cache cache = CacheManager.getInstance().getCache("cmsUrlHandlerCache");
+            cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+
+                @Override
+                public void notifyRemoveAll(Ehcache cache) {
+                    invalidateURLHandlerMatchers();
+                }
+            });
+            urlHandlerCache = cache;
         }
         return urlHandlerCache;
     }
@@ -247,4 +389,15 @@ public class URLHandlerServiceImpl implements URLHandlerService {
 
         return incomingUrl;
     }
+
+    protected static class CachedMiss {
+
+        protected final String key;
+        protected final URLHandlerMatcher matcher;
+
+        protected CachedMiss(String key, URLHandlerMatcher matcher) {
+            this.key = key;
+            this.matcher = matcher;
+        }
+    }
 }
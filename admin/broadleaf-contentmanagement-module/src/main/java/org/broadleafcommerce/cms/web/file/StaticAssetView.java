@@ -25,23 +25,36 @@ import org.springframework.web.servlet.View;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.SocketException;
-import java.util.Calendar;
-import java.util.Date;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
 /**
+ * Streams a file from the local asset cache (see StaticAssetStorageService#getCacheFileModel) to the response.
+ * Conditional requests are answered with a 304 based on the entity tag of the asset and the modification time of the
+ * cached file, and a single byte range is answered with a 206. The file is handed to the container's sendfile support
+ * when it is available and otherwise copied through a {@link FileChannel}.
+ *
  * Created by jfischer
  */
 public class StaticAssetView implements View {
 
     private static final Log LOG = LogFactory.getLog(StaticAssetView.class);
 
+    protected static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    protected static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    protected static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    protected static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     protected boolean browserAssetCachingEnabled = true;
     protected long cacheSeconds = 60 * 60 * 24;
+    protected boolean sendfileEnabled = true;
 
     @Override
     public String getContentType() {
@@ -51,50 +64,71 @@ public class StaticAssetView implements View {
     @Override
     public void render(Map<String, ?> model, HttpServletRequest request, HttpServletResponse response) throws Exception {
         String cacheFilePath = (String) model.get("cacheFilePath");
-        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(cacheFilePath));
-        try {
-            String mimeType = (String) model.get("mimeType");
-            response.setContentType(mimeType);
-            if (!browserAssetCachingEnabled) {
-                response.setHeader("Cache-Control","no-cache");
-                response.setHeader("Pragma","no-cache");
-                response.setDateHeader ("Expires", 0);
-            } else {
-                response.setHeader("Cache-Control","public");
-                response.setHeader("Pragma","cache");
-                if (!StringUtils.isEmpty(request.getHeader("If-Modified-Since"))) {
-                    long lastModified = request.getDateHeader("If-Modified-Since");
-                    Calendar last = Calendar.getInstance();
-                    last.setTime(new Date(lastModified));
-                    Calendar check = Calendar.getInstance();
-                    check.add(Calendar.SECOND, -2 * new Long(cacheSeconds).intValue());
-                    if (check.compareTo(last) < 0) {
-                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                        return;
-                    }
-                } else {
-                    Calendar check = Calendar.getInstance();
-                    check.add(Calendar.SECOND, -1 * new Long(cacheSeconds).intValue());
-                    response.setDateHeader ("Last-Modified", check.getTimeInMillis());
-                }
-                Calendar cal = Calendar.getInstance();
-                long year = cacheSeconds * 365;
-                cal.add(Calendar.SECOND, new Long(year).intValue());
-                response.setDateHeader ("Expires", cal.getTimeInMillis());
+        String eTag = (String) model.get("eTag");
+        File file = new File(cacheFilePath);
+        long length = file.length();
+        // HTTP dates only carry seconds
+        long lastModified = file.lastModified() / 1000 * 1000;
+
+        String mimeType = (String) model.get("mimeType");
+        response.setContentType(mimeType);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (eTag != null) {
+            response.setHeader("ETag", eTag);
+        }
+        response.setDateHeader("Last-Modified", lastModified);
+        if (!browserAssetCachingEnabled) {
+            response.setHeader("Cache-Control","no-cache");
+            response.setHeader("Pragma","no-cache");
+            response.setDateHeader ("Expires", 0);
+        } else {
+            response.setHeader("Cache-Control","public, max-age=" + cacheSeconds);
+            response.setHeader("Pragma","cache");
+            response.setDateHeader ("Expires", System.currentTimeMillis() + cacheSeconds * 1000L);
+        }
+
+        if (isNotModified(request, eTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && isRangeCurrent(request, eTag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
             }
-            OutputStream os = response.getOutputStream();
-            boolean eof = false;
-            while (!eof) {
-                int temp = bis.read();
-                if (temp < 0) {
-                    eof = true;
-                } else {
-                    os.write(temp);
-                }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
             }
+        }
+        long count = end - start + 1;
+        response.setHeader("Content-Length", String.valueOf(count));
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (sendfileEnabled && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+            return;
+        }
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            OutputStream os = response.getOutputStream();
+            transfer(fis.getChannel(), start, count, Channels.newChannel(os));
             os.flush();
         } catch (Exception e) {
-            if (e.getCause() instanceof SocketException) {
+            if (e instanceof SocketException || e.getCause() instanceof SocketException) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Unable to stream asset", e);
                 }
@@ -104,13 +138,123 @@ public class StaticAssetView implements View {
             }
         } finally {
             try {
-                bis.close();
+                fis.close();
             } catch (Throwable e) {
                 //do nothing
             }
         }
     }
 
+    /**
+     * Whether the client's cached copy is still current according to If-None-Match or, when that header is absent,
+     * If-Modified-Since.
+     */
+    protected boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return eTag != null && matchesETag(ifNoneMatch, eTag);
+        }
+        if (!StringUtils.isEmpty(request.getHeader("If-Modified-Since"))) {
+            try {
+                return lastModified <= request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a Range header should be honored given the request's If-Range validator, if any.
+     */
+    protected boolean isRangeCurrent(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (StringUtils.isEmpty(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return eTag != null && eTag.equals(ifRange);
+        }
+        try {
+            return lastModified == request.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    protected boolean matchesETag(String header, String eTag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a Range header against a file of the given length.
+     *
+     * @return the inclusive first and last byte positions of a single satisfiable range, an empty array when the header
+     * should be ignored and the whole file sent (malformed, not in bytes, or several ranges), or null when the
+     * range cannot be satisfied
+     */
+    protected long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return new long[0];
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (end < start) {
+                    return new long[0];
+                }
+                end = Math.min(end, length - 1);
+            }
+            if (start >= length) {
+                return null;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    protected void transfer(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
     public boolean isBrowserAssetCachingEnabled() {
         return browserAssetCachingEnabled;
     }
@@ -126,4 +270,12 @@ public class StaticAssetView implements View {
     public void setCacheSeconds(long cacheSeconds) {
         this.cacheSeconds = cacheSeconds;
     }
+
+    public boolean isSendfileEnabled() {
+        return sendfileEnabled;
+    }
+
+    public void setSendfileEnabled(boolean sendfileEnabled) {
+        this.sendfileEnabled = sendfileEnabled;
+    }
 }
@@ -36,6 +36,7 @@ import org.springframework.web.servlet.mvc.AbstractController;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -140,6 +141,11 @@ public class StaticAssetViewController extends AbstractController {
         } catch (AssetNotFoundException e) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return null;
+        } catch (RejectedExecutionException e) {
+            // too many derivatives are already being generated
+            response.setHeader("Retry-After", "1");
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return null;
         } catch (Exception e) {
             LOG.error("Unable to retrieve static asset", e);
             throw new RuntimeException(e);
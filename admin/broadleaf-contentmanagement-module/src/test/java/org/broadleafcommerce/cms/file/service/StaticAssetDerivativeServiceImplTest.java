@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.file.service;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class StaticAssetDerivativeServiceImplTest extends TestCase {
+
+    protected File directory;
+    protected StaticAssetDerivativeServiceImpl service;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("derivatives").toFile();
+        service = new StaticAssetDerivativeServiceImpl();
+        service.generationThreads = 1;
+        service.generationQueueSize = 1;
+        service.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        service.destroy();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    public void testConcurrentRequestsGenerateOnce() throws Exception {
+        final File derivative = new File(directory, "image---small.jpg");
+        final AtomicInteger generations = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<File> generator = new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                generations.incrementAndGet();
+                release.await();
+                FileUtils.writeStringToFile(derivative, "converted");
+                return derivative;
+            }
+        };
+
+        List<Future<File>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(service.submitDerivative(derivative, generator));
+        }
+        release.countDown();
+        for (Future<File> future : futures) {
+            assertEquals(derivative, future.get());
+        }
+
+        assertEquals(1, generations.get());
+        assertTrue(derivative.exists());
+        assertTrue(new File(derivative.getAbsolutePath() + StaticAssetDerivativeServiceImpl.LOCK_FILE_SUFFIX).exists());
+        assertEquals(derivative, service.generateDerivative(derivative, generator));
+        assertEquals(1, generations.get());
+    }
+
+    public void testExistingLockFileIsReused() throws Exception {
+        final File derivative = new File(directory, "image---medium.jpg");
+        File lockFile = new File(derivative.getAbsolutePath() + StaticAssetDerivativeServiceImpl.LOCK_FILE_SUFFIX);
+        FileUtils.touch(lockFile);
+        final AtomicInteger generations = new AtomicInteger();
+        Callable<File> generator = new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                generations.incrementAndGet();
+                FileUtils.writeStringToFile(derivative, "converted");
+                return derivative;
+            }
+        };
+
+        assertEquals(derivative, service.generateWithFileLock(derivative, generator));
+        assertEquals(derivative, service.generateWithFileLock(derivative, generator));
+
+        assertEquals(1, generations.get());
+        assertTrue(lockFile.exists());
+    }
+
+    public void testFullQueueRejectsGeneration() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<File>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                final File derivative = new File(directory, "image---" + i + ".jpg");
+                futures.add(service.submitDerivative(derivative, new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        release.await();
+                        FileUtils.writeStringToFile(derivative, "converted");
+                        return derivative;
+                    }
+                }));
+            }
+            try {
+                service.submitDerivative(new File(directory, "image---2.jpg"), new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        return null;
+                    }
+                });
+                fail("Expected the generation queue to be full");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+        } finally {
+            release.countDown();
+        }
+        for (Future<File> future : futures) {
+            assertTrue(future.get().exists());
+        }
+    }
+}
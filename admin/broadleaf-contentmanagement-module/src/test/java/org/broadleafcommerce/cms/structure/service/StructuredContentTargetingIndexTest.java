@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.structure.service;
+
+import org.broadleafcommerce.common.structure.dto.StructuredContentDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class StructuredContentTargetingIndexTest extends TestCase {
+
+    protected StructuredContentDTO createContent(long id, String ruleExpression) {
+        StructuredContentDTO sc = new StructuredContentDTO();
+        sc.setId(id);
+        sc.setPriority(1);
+        sc.setRuleExpression(ruleExpression);
+        return sc;
+    }
+
+    protected Map<String, Object> buildRuleDTOs(String firstName, boolean registered, String localeCode) {
+        Map<String, Object> customer = new HashMap<>();
+        customer.put("firstName", firstName);
+        customer.put("registered", registered);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("segment", "gold");
+        customer.put("customerAttributes", attributes);
+        Map<String, Object> ruleDTOs = new HashMap<>();
+        ruleDTOs.put("customer", customer);
+        ruleDTOs.put("locale", new TestLocale(localeCode));
+        return ruleDTOs;
+    }
+
+    public void testExcludesItemsThatCannotMatch() {
+        List<StructuredContentDTO> items = new ArrayList<>();
+        StructuredContentDTO noRule = createContent(1, null);
+        StructuredContentDTO registered = createContent(2, "customer.?registered==true");
+        StructuredContentDTO bob = createContent(3,
+                "MvelHelper.toUpperCase(customer.?firstName)==MvelHelper.toUpperCase(\"bob\") && time.?hour > 5");
+        StructuredContentDTO english = createContent(4, "[\"en_US\",\"en_GB\"] contains locale.?localeCode");
+        StructuredContentDTO gold = createContent(5, "(customer.?customerAttributes[\"segment\"]==\"gold\")");
+        StructuredContentDTO either = createContent(6, "customer.?registered==true || locale.?localeCode==\"fr\"");
+        items.add(noRule);
+        items.add(registered);
+        items.add(bob);
+        items.add(english);
+        items.add(gold);
+        items.add(either);
+
+        StructuredContentTargetingIndex index = StructuredContentTargetingIndex.build(items);
+        assertTrue(index.isIndexed());
+        assertTrue(index.isFor(items));
+
+        StructuredContentTargetingIndex.Candidates candidates = index.evaluate(buildRuleDTOs("Bob", false, "fr"));
+        assertTrue(candidates.couldMatch(noRule));
+        assertFalse(candidates.couldMatch(registered));
+        assertTrue(candidates.couldMatch(bob));
+        assertFalse(candidates.couldMatch(english));
+        assertTrue(candidates.couldMatch(gold));
+        assertTrue(candidates.couldMatch(either));
+
+        candidates = index.evaluate(buildRuleDTOs("Alice", true, "en_GB"));
+        assertTrue(candidates.couldMatch(registered));
+        assertFalse(candidates.couldMatch(bob));
+        assertTrue(candidates.couldMatch(english));
+    }
+
+    public void testUnresolvableAttributesDoNotExclude() {
+        List<StructuredContentDTO> items = new ArrayList<>();
+        StructuredContentDTO typed = createContent(1, "locale.?localeCode==100");
+        StructuredContentDTO missing = createContent(2, "product.?id==100");
+        items.add(typed);
+        items.add(missing);
+
+        StructuredContentTargetingIndex.Candidates candidates = StructuredContentTargetingIndex.build(items)
+                .evaluate(buildRuleDTOs("Bob", false, "en_US"));
+        assertTrue(candidates.couldMatch(typed));
+        assertTrue(candidates.couldMatch(missing));
+
+        Map<String, Object> ruleDTOs = buildRuleDTOs("Bob", false, "en_US");
+        ruleDTOs.put("locale", null);
+        candidates = StructuredContentTargetingIndex.build(items).evaluate(ruleDTOs);
+        assertFalse(candidates.couldMatch(typed));
+    }
+
+    public void testCachedListKeepsItsOwnIndex() throws Exception {
+        List<StructuredContentDTO> items = new ArrayList<>();
+        items.add(createContent(1, "customer.?registered==true"));
+        items.add(createContent(2, "locale.?localeCode==\"fr\""));
+        CachedStructuredContentList cached = new CachedStructuredContentList(items);
+
+        StructuredContentTargetingIndex index = cached.getTargetingIndex();
+        assertTrue(index.isFor(cached));
+        assertSame(index, cached.getTargetingIndex());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(cached);
+        }
+        CachedStructuredContentList copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (CachedStructuredContentList) in.readObject();
+        }
+        assertNull("The index should not be serialized with the list", copy.targetingIndex);
+        assertTrue(copy.getTargetingIndex().isFor(copy));
+    }
+
+    public static class TestLocale {
+
+        protected String localeCode;
+
+        public TestLocale(String localeCode) {
+            this.localeCode = localeCode;
+        }
+
+        public String getLocaleCode() {
+            return localeCode;
+        }
+    }
+
+}
@@ -22,6 +22,12 @@ import org.broadleafcommerce.cms.url.dao.URLHandlerDao;
 import org.broadleafcommerce.cms.url.domain.URLHandler;
 import org.broadleafcommerce.cms.url.domain.URLHandlerImpl;
 import org.broadleafcommerce.cms.url.type.URLRedirectType;
+import org.broadleafcommerce.common.sandbox.domain.SandBox;
+import org.broadleafcommerce.common.sandbox.domain.SandBoxImpl;
+import org.broadleafcommerce.common.sandbox.domain.SandBoxType;
+import org.broadleafcommerce.common.site.domain.Site;
+import org.broadleafcommerce.common.site.domain.SiteImpl;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
@@ -66,6 +72,34 @@ public class URLHandlerServiceTest extends TestCase {
         EasyMock.replay(handlerDao);
     }
 
+    @Override
+    protected void tearDown() throws Exception {
+        BroadleafRequestContext.setBroadleafRequestContext(null);
+    }
+
+    protected URLHandlerDao mockHandlerDao(int handlerReads) {
+        URLHandlerDao handlerDao = EasyMock.createMock(URLHandlerDao.class);
+        EasyMock.expect(handlerDao.findAllURLHandlers()).andReturn(buildUrlHandlerList()).times(handlerReads);
+        handlerService.urlHandlerDao = handlerDao;
+        return handlerDao;
+    }
+
+    protected void setRequestContext(Long siteId, SandBoxType sandBoxType) {
+        BroadleafRequestContext context = new BroadleafRequestContext();
+        if (siteId != null) {
+            Site site = new SiteImpl();
+            site.setId(siteId);
+            context.setNonPersistentSite(site);
+        }
+        if (sandBoxType != null) {
+            SandBox sandBox = new SandBoxImpl();
+            sandBox.setId(1L);
+            sandBox.setSandBoxType(sandBoxType);
+            context.setSandBox(sandBox);
+        }
+        BroadleafRequestContext.setBroadleafRequestContext(context);
+    }
+
     @Test
     public void testFoundSimpleUrl() {
         URLHandler h = handlerService.checkForMatches("/simple_url");
@@ -105,4 +139,122 @@ public class URLHandlerServiceTest extends TestCase {
         assertTrue(expectedNewURL.equals(h.getNewURL()));
     }
 
+    @Test
+    public void testMatcherIsReusedBetweenLookups() {
+        // the dao mock only expects the handlers to be read once
+        assertNull(handlerService.checkForMatches("/unknown"));
+        URLHandler h = handlerService.checkForMatches("/blogs/first/second");
+        assertTrue(h.getNewURL().equals("/newblogs/second/first"));
+        assertNull(handlerService.checkForMatches("/blogs"));
+    }
+
+    @Test
+    public void testMatchersAreKeptPerSite() {
+        URLHandlerDao handlerDao = mockHandlerDao(2);
+        EasyMock.replay(handlerDao);
+
+        setRequestContext(1L, null);
+        assertNotNull(handlerService.checkForMatches("/simple_url"));
+        setRequestContext(2L, null);
+        assertNotNull(handlerService.checkForMatches("/simple_url"));
+        setRequestContext(1L, null);
+        assertNotNull(handlerService.checkForMatches("/simple_regex"));
+
+        assertEquals(2, handlerService.urlHandlerMatchers.size());
+        EasyMock.verify(handlerDao);
+    }
+
+    @Test
+    public void testSandBoxMatchersAreNotShared() {
+        URLHandlerDao handlerDao = mockHandlerDao(2);
+        EasyMock.replay(handlerDao);
+
+        setRequestContext(1L, SandBoxType.USER);
+        assertNotNull(handlerService.checkForMatches("/simple_url"));
+        assertNotNull(handlerService.checkForMatches("/simple_regex"));
+
+        assertTrue(handlerService.urlHandlerMatchers.isEmpty());
+        EasyMock.verify(handlerDao);
+    }
+
+    @Test
+    public void testSavingAHandlerRebuildsTheMatcher() {
+        URLHandlerDao handlerDao = mockHandlerDao(2);
+        URLHandler handler = createHandler("/another_url", "/NewAnotherUrl");
+        EasyMock.expect(handlerDao.saveURLHandler(handler)).andReturn(handler);
+        EasyMock.replay(handlerDao);
+
+        assertNotNull(handlerService.checkForMatches("/simple_url"));
+        handlerService.saveURLHandler(handler);
+        assertNotNull(handlerService.checkForMatches("/simple_url"));
+
+        EasyMock.verify(handlerDao);
+    }
+
+    @Test
+    public void testCachedMissSkipsTheExactMatchQuery() {
+        TestURLHandlerService testService = new TestURLHandlerService();
+        handlerService = testService;
+        URLHandlerDao handlerDao = mockHandlerDao(1);
+        // the dao mock only expects the exact match query for the first lookup
+        EasyMock.expect(handlerDao.findURLHandlerByURI("/unknown")).andReturn(null).once();
+        EasyMock.replay(handlerDao);
+        setRequestContext(null, null);
+
+        assertNull(handlerService.findURLHandlerByURI("/unknown"));
+        assertNull(handlerService.findURLHandlerByURI("/unknown"));
+
+        assertTrue(handlerService.isCachedMiss("/unknown", handlerService.getURLHandlerMatcher()));
+        assertTrue("A miss kept in the negative cache should not be added to the URL handler cache",
+                testService.cached.isEmpty());
+        EasyMock.verify(handlerDao);
+    }
+
+    @Test
+    public void testExactMatchSavedAfterACachedMissIsFound() {
+        TestURLHandlerService testService = new TestURLHandlerService();
+        handlerService = testService;
+        URLHandlerDao handlerDao = mockHandlerDao(2);
+        URLHandler handler = createHandler("/new_url", "/NewUrl");
+        EasyMock.expect(handlerDao.findURLHandlerByURI("/new_url")).andReturn(null);
+        EasyMock.expect(handlerDao.saveURLHandler(handler)).andReturn(handler);
+        EasyMock.expect(handlerDao.findURLHandlerByURI("/new_url")).andReturn(handler);
+        EasyMock.replay(handlerDao);
+        setRequestContext(null, null);
+
+        assertNull(handlerService.findURLHandlerByURI("/new_url"));
+        handlerService.saveURLHandler(handler);
+        URLHandler h = handlerService.findURLHandlerByURI("/new_url");
+
+        assertNotNull("Saving a handler should forget the cached misses", h);
+        assertEquals("/NewUrl", h.getNewURL());
+        assertEquals(1, testService.cached.size());
+        EasyMock.verify(handlerDao);
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("/simple_url", URLHandlerMatcher.literalPrefix("^/simple_url$"));
+        assertEquals("/blogs/", URLHandlerMatcher.literalPrefix("^/blogs/(.*)/(.*)$"));
+        assertEquals("/a", URLHandlerMatcher.literalPrefix("^/ab?c$"));
+        assertEquals("/x.y", URLHandlerMatcher.literalPrefix("^/x\\.y+z$"));
+        assertEquals("", URLHandlerMatcher.literalPrefix("^(.*)/shirts-tops(.*)$"));
+        assertEquals("", URLHandlerMatcher.literalPrefix("^/a|/b$"));
+    }
+
+    protected static class TestURLHandlerService extends URLHandlerServiceImpl {
+
+        protected final List<String> cached = new ArrayList<String>();
+
+        @Override
+        protected URLHandler getUrlHandlerFromCache(String key) {
+            return null;
+        }
+
+        @Override
+        protected void addUrlHandlerToCache(String key, URLHandler handler) {
+            cached.add(key);
+        }
+    }
+
 }
@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * BroadleafCommerce CMS Module
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.cms.web.file;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+public class StaticAssetViewTest extends TestCase {
+
+    protected static final String ETAG = "\"0123456789abcdef0123456789abcdef\"";
+    protected static final long LAST_MODIFIED = 1400000000000L;
+
+    protected StaticAssetView view;
+    protected MockHttpServletRequest request;
+    protected File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        view = new StaticAssetView();
+        request = new MockHttpServletRequest("GET", "/cmsstatic/image.txt");
+        file = File.createTempFile("asset", ".txt");
+        FileUtils.writeStringToFile(file, "0123456789", StandardCharsets.UTF_8);
+        file.setLastModified(LAST_MODIFIED);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(file);
+    }
+
+    public void testParseRange() {
+        assertRange(view.parseRange("bytes=0-9", 100), 0, 9);
+        assertRange(view.parseRange("bytes=90-", 100), 90, 99);
+        assertRange(view.parseRange("bytes=50-500", 100), 50, 99);
+        assertRange(view.parseRange("bytes= 10 - 20 ", 100), 10, 20);
+    }
+
+    public void testParseSuffixRange() {
+        assertRange(view.parseRange("bytes=-10", 100), 90, 99);
+        assertRange(view.parseRange("bytes=-200", 100), 0, 99);
+        assertNull(view.parseRange("bytes=-0", 100));
+    }
+
+    public void testParseUnsatisfiableRange() {
+        assertNull(view.parseRange("bytes=100-", 100));
+        assertNull(view.parseRange("bytes=100-200", 100));
+        assertNull(view.parseRange("bytes=-1", 0));
+    }
+
+    public void testParseIgnoredRange() {
+        assertEquals(0, view.parseRange("items=0-9", 100).length);
+        assertEquals(0, view.parseRange("bytes=0-1,5-6", 100).length);
+        assertEquals(0, view.parseRange("bytes=9-1", 100).length);
+        assertEquals(0, view.parseRange("bytes=a-b", 100).length);
+        assertEquals(0, view.parseRange("bytes=-", 100).length);
+        assertEquals(0, view.parseRange("bytes=10", 100).length);
+    }
+
+    public void testNotModifiedByETag() {
+        request.addHeader("If-None-Match", ETAG);
+        assertTrue(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"other\", W/" + ETAG);
+        assertTrue(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "*");
+        assertTrue(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"other\"");
+        assertFalse(view.isNotModified(request, ETAG, LAST_MODIFIED));
+        assertFalse(view.isNotModified(request, null, LAST_MODIFIED));
+    }
+
+    public void testNotModifiedByDate() {
+        assertFalse(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request.addHeader("If-Modified-Since", LAST_MODIFIED);
+        assertTrue(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-Modified-Since", LAST_MODIFIED - 1000);
+        assertFalse(view.isNotModified(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-Modified-Since", "not a date");
+        assertFalse(view.isNotModified(request, ETAG, LAST_MODIFIED));
+    }
+
+    public void testIfNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        request.addHeader("If-None-Match", "\"other\"");
+        request.addHeader("If-Modified-Since", LAST_MODIFIED);
+        assertFalse(view.isNotModified(request, ETAG, LAST_MODIFIED));
+    }
+
+    public void testRangeCurrent() {
+        assertTrue(view.isRangeCurrent(request, ETAG, LAST_MODIFIED));
+
+        request.addHeader("If-Range", ETAG);
+        assertTrue(view.isRangeCurrent(request, ETAG, LAST_MODIFIED));
+        assertFalse(view.isRangeCurrent(request, "\"other\"", LAST_MODIFIED));
+        assertFalse(view.isRangeCurrent(request, null, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-Range", "W/" + ETAG);
+        assertFalse(view.isRangeCurrent(request, ETAG, LAST_MODIFIED));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-Range", LAST_MODIFIED);
+        assertTrue(view.isRangeCurrent(request, ETAG, LAST_MODIFIED));
+        assertFalse(view.isRangeCurrent(request, ETAG, LAST_MODIFIED + 1000));
+    }
+
+    public void testRenderFullFile() throws Exception {
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals("10", response.getHeader("Content-Length"));
+        assertEquals(ETAG, response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    }
+
+    public void testRenderRange() throws Exception {
+        request.addHeader("Range", "bytes=2-4");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("234", response.getContentAsString());
+        assertEquals("bytes 2-4/10", response.getHeader("Content-Range"));
+        assertEquals("3", response.getHeader("Content-Length"));
+    }
+
+    public void testRenderSuffixRange() throws Exception {
+        request.addHeader("Range", "bytes=-3");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("789", response.getContentAsString());
+        assertEquals("bytes 7-9/10", response.getHeader("Content-Range"));
+    }
+
+    public void testRenderUnsatisfiableRange() throws Exception {
+        request.addHeader("Range", "bytes=10-");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    public void testRenderIgnoresRangeWhenIfRangeIsStale() throws Exception {
+        request.addHeader("Range", "bytes=2-4");
+        request.addHeader("If-Range", "\"stale\"");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertNull(response.getHeader("Content-Range"));
+    }
+
+    public void testRenderNotModifiedTakesPrecedenceOverRange() throws Exception {
+        request.addHeader("If-None-Match", ETAG);
+        request.addHeader("Range", "bytes=10-");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertNull(response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    public void testRenderHead() throws Exception {
+        request.setMethod("HEAD");
+        MockHttpServletResponse response = render();
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("10", response.getHeader("Content-Length"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    public void testRenderHandsFileToSendfile() throws Exception {
+        request.setAttribute(StaticAssetView.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+        request.addHeader("Range", "bytes=2-4");
+        MockHttpServletResponse response = render();
+
+        assertEquals(file.getAbsolutePath(), request.getAttribute(StaticAssetView.SENDFILE_FILENAME_ATTRIBUTE));
+        assertEquals(2L, request.getAttribute(StaticAssetView.SENDFILE_START_ATTRIBUTE));
+        assertEquals(5L, request.getAttribute(StaticAssetView.SENDFILE_END_ATTRIBUTE));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    protected MockHttpServletResponse render() throws Exception {
+        Map<String, Object> model = new HashMap<>();
+        model.put("cacheFilePath", file.getAbsolutePath());
+        model.put("mimeType", "text/plain");
+        model.put("eTag", ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        view.render(model, request, response);
+        return response;
+    }
+
+    protected void assertRange(long[] range, long start, long end) {
+        assertEquals(Arrays.toString(new long[] { start, end }), Arrays.toString(range));
+    }
+}
@@ -97,6 +97,18 @@ public class BasicFieldMetadata extends FieldMetadata {
     protected Boolean canLinkToExternalEntity;
     protected String associatedFieldName;
 
+    /**
+     * True while {@link #enumerationValues}, {@link #validationConfigurations} and {@link #optionFilterParams} are shared
+     * with the snapshot this instance was cloned from. They are copied before they are first handed out, so cloning a
+     * snapshot does not have to copy them up front and the clone cannot change the snapshot.
+     */
+    protected boolean nestedStructuresShared;
+
+    /**
+     * True once this instance is a snapshot that is only cloned and never changed again, see {@link #markAsSnapshot()}
+     */
+    protected boolean snapshot;
+
     //for MapFields
     protected String mapFieldValueClass;
     protected Boolean searchable;
@@ -205,10 +217,12 @@ public class BasicFieldMetadata extends FieldMetadata {
     }
 
     public String[][] getEnumerationValues() {
+        unshareNestedStructures();
         return enumerationValues;
     }
 
     public void setEnumerationValues(String[][] enumerationValues) {
+        unshareNestedStructures();
         this.enumerationValues = enumerationValues;
     }
 
@@ -353,10 +367,12 @@ public class BasicFieldMetadata extends FieldMetadata {
      * {@link PropertyValidator} implementation
      */
     public Map<String, List<Map<String, String>>> getValidationConfigurations() {
+        unshareNestedStructures();
         return validationConfigurations;
     }
 
     public void setValidationConfigurations(Map<String, List<Map<String, String>>> validationConfigurations) {
+        unshareNestedStructures();
         this.validationConfigurations = validationConfigurations;
     }
 
@@ -474,10 +490,12 @@ public class BasicFieldMetadata extends FieldMetadata {
     }
 
     public String[][] getOptionFilterParams() {
+        unshareNestedStructures();
         return optionFilterParams;
     }
 
     public void setOptionFilterParams(String[][] optionFilterParams) {
+        unshareNestedStructures();
         this.optionFilterParams = optionFilterParams;
     }
 
@@ -631,13 +649,6 @@ public class BasicFieldMetadata extends FieldMetadata {
         metadata.foreignKeyCollection = foreignKeyCollection;
         metadata.mergedPropertyType = mergedPropertyType;
         metadata.enumerationClass = enumerationClass;
-        if (enumerationValues != null) {
-            metadata.enumerationValues = new String[enumerationValues.length][];
-            for (int j=0;j<enumerationValues.length;j++) {
-                metadata.enumerationValues[j] = new String[enumerationValues[j].length];
-                System.arraycopy(enumerationValues[j], 0, metadata.enumerationValues[j], 0, enumerationValues[j].length);
-            }
-        }
 
         metadata.name = name;
         metadata.visibility = visibility;
@@ -659,18 +670,6 @@ public class BasicFieldMetadata extends FieldMetadata {
         metadata.tooltip = tooltip;
         metadata.helpText = helpText;
         metadata.hint = hint;
-        for (Map.Entry<String, List<Map<String, String>>> entry : validationConfigurations.entrySet()) {
-            List<Map<String, String>> clonedConfigItems = new ArrayList<>(entry.getValue().size());
-            
-            for (Map<String, String> configEntries : entry.getValue()) {
-                Map<String, String> clone = new HashMap<>(configEntries.keySet().size());
-                for (Map.Entry<String, String> entry2 : configEntries.entrySet()) {
-                    clone.put(entry2.getKey(), entry2.getValue());
-                }
-                clonedConfigItems.add(clone);
-            }
-            metadata.validationConfigurations.put(entry.getKey(), clonedConfigItems);
-        }
         metadata.lookupDisplayProperty = lookupDisplayProperty;
         metadata.forcePopulateChildProperties = forcePopulateChildProperties;
         metadata.enableTypeaheadLookup = enableTypeaheadLookup;
@@ -679,13 +678,6 @@ public class BasicFieldMetadata extends FieldMetadata {
         metadata.optionHideIfEmpty = optionHideIfEmpty;
         metadata.optionDisplayFieldName = optionDisplayFieldName;
         metadata.optionValueFieldName = optionValueFieldName;
-        if (optionFilterParams != null) {
-            metadata.optionFilterParams = new String[optionFilterParams.length][];
-            for (int j=0;j<optionFilterParams.length;j++) {
-                metadata.optionFilterParams[j] = new String[optionFilterParams[j].length];
-                System.arraycopy(optionFilterParams[j], 0, metadata.optionFilterParams[j], 0, optionFilterParams[j].length);
-            }
-        }
         metadata.customCriteria = customCriteria;
         metadata.useServerSideInspectionCache = useServerSideInspectionCache;
         metadata.toOneLookupCreatedViaAnnotation = toOneLookupCreatedViaAnnotation;
@@ -703,11 +695,71 @@ public class BasicFieldMetadata extends FieldMetadata {
         metadata.associatedFieldName = associatedFieldName;
         metadata.canLinkToExternalEntity = canLinkToExternalEntity;
 
+        if (snapshot) {
+            // A snapshot never changes, so the clone only has to copy these once it hands them out itself
+            metadata.enumerationValues = enumerationValues;
+            metadata.validationConfigurations = validationConfigurations;
+            metadata.optionFilterParams = optionFilterParams;
+            metadata.nestedStructuresShared = true;
+        } else {
+            metadata.enumerationValues = copy(enumerationValues);
+            metadata.validationConfigurations = copy(validationConfigurations);
+            metadata.optionFilterParams = copy(optionFilterParams);
+        }
+
         metadata = (BasicFieldMetadata) populate(metadata);
 
         return metadata;
     }
 
+    /**
+     * Marks this instance as a snapshot that is never changed again, such as the metadata cached by
+     * {@code DynamicEntityDaoImpl}. Clones of a snapshot share its nested structures until they hand them out, clones of
+     * any other instance get their own copies right away. Cloning never changes the instance being cloned.
+     */
+    public void markAsSnapshot() {
+        snapshot = true;
+    }
+
+    /**
+     * Gives this instance its own copy of the nested structures it may still share with the snapshot it was cloned from.
+     */
+    protected synchronized void unshareNestedStructures() {
+        if (!nestedStructuresShared) {
+            return;
+        }
+        enumerationValues = copy(enumerationValues);
+        optionFilterParams = copy(optionFilterParams);
+        validationConfigurations = copy(validationConfigurations);
+        nestedStructuresShared = false;
+    }
+
+    protected static Map<String, List<Map<String, String>>> copy(Map<String, List<Map<String, String>>> configurations) {
+        if (configurations == null) {
+            return null;
+        }
+        Map<String, List<Map<String, String>>> clonedConfigurations = new HashMap<>(5);
+        for (Map.Entry<String, List<Map<String, String>>> entry : configurations.entrySet()) {
+            List<Map<String, String>> clonedConfigItems = new ArrayList<>(entry.getValue().size());
+            for (Map<String, String> configEntries : entry.getValue()) {
+                clonedConfigItems.add(new HashMap<>(configEntries));
+            }
+            clonedConfigurations.put(entry.getKey(), clonedConfigItems);
+        }
+        return clonedConfigurations;
+    }
+
+    protected static String[][] copy(String[][] values) {
+        if (values == null) {
+            return null;
+        }
+        String[][] copy = new String[values.length][];
+        for (int j = 0; j < values.length; j++) {
+            copy[j] = values[j] == null ? null : values[j].clone();
+        }
+        return copy;
+    }
+
     @Override
     public void accept(MetadataVisitor visitor) {
         visitor.visit(this);
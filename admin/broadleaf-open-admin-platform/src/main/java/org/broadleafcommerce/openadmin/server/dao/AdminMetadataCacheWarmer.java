@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.dao;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.openadmin.server.domain.PersistencePackageRequest;
+import org.broadleafcommerce.openadmin.server.security.domain.AdminSection;
+import org.broadleafcommerce.openadmin.server.security.service.navigation.AdminNavigationService;
+import org.broadleafcommerce.openadmin.server.service.AdminEntityService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Resource;
+
+/**
+ * Populates the {@link DynamicEntityDaoImpl} metadata cache for the ceiling entity of every admin section once the
+ * application context has started, so the first admin user to open a section does not pay for building its metadata.
+ * Each section is inspected through {@link AdminEntityService#getClassMetadata(PersistencePackageRequest)}, the same
+ * path an admin list grid uses, so the cache is filled with the entries a request would actually look up. The work
+ * happens on a background thread and failures are only logged, since the cache is simply filled on demand for anything
+ * that could not be warmed.
+ * <p/>
+ * Disabled by default; enable it with <b>admin.metadata.cache.warmup.enabled</b>.
+ */
+@Component("blAdminMetadataCacheWarmer")
+public class AdminMetadataCacheWarmer implements ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Log LOG = LogFactory.getLog(AdminMetadataCacheWarmer.class);
+
+    @Resource(name = "blAdminNavigationService")
+    protected AdminNavigationService adminNavigationService;
+
+    @Resource(name = "blAdminEntityService")
+    protected AdminEntityService adminEntityService;
+
+    @Value("${admin.metadata.cache.warmup.enabled:false}")
+    protected boolean warmupEnabled = false;
+
+    protected final AtomicBoolean started = new AtomicBoolean(false);
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!warmupEnabled || !started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BroadleafRequestContext.setBroadleafRequestContext(new BroadleafRequestContext());
+                    warmCache();
+                } catch (Exception e) {
+                    LOG.warn("Unable to warm the admin entity metadata cache", e);
+                } finally {
+                    ThreadLocalManager.remove();
+                }
+            }
+        }, "Admin metadata cache warmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void warmCache() {
+        long start = System.currentTimeMillis();
+        Set<String> ceilingEntities = new LinkedHashSet<>();
+        List<AdminSection> sections = adminNavigationService.findAllAdminSections();
+        for (AdminSection section : sections) {
+            if (StringUtils.isNotBlank(section.getCeilingEntity())) {
+                ceilingEntities.add(section.getCeilingEntity());
+            }
+        }
+        int warmed = 0;
+        for (String ceilingEntity : ceilingEntities) {
+            try {
+                adminEntityService.getClassMetadata(PersistencePackageRequest.standard()
+                        .withCeilingEntityClassname(ceilingEntity));
+                warmed++;
+            } catch (Exception e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Unable to warm the admin entity metadata cache for " + ceilingEntity, e);
+                }
+            }
+        }
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Warmed the admin entity metadata cache for " + warmed + " of " + ceilingEntities.size()
+                    + " admin section entities in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+}
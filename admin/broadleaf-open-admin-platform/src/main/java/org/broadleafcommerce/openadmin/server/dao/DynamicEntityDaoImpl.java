@@ -18,7 +18,6 @@
 package org.broadleafcommerce.openadmin.server.dao;
 
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.logging.Log;
@@ -30,6 +29,7 @@ import org.broadleafcommerce.common.presentation.AdminPresentationClass;
 import org.broadleafcommerce.common.presentation.client.PersistencePerspectiveItemType;
 import org.broadleafcommerce.common.presentation.client.SupportedFieldType;
 import org.broadleafcommerce.common.presentation.client.VisibilityEnum;
+import org.broadleafcommerce.common.util.EfficientLRUMap;
 import org.broadleafcommerce.common.util.dao.DynamicDaoHelper;
 import org.broadleafcommerce.common.util.dao.DynamicDaoHelperImpl;
 import org.broadleafcommerce.common.util.dao.EJB3ConfigurationDao;
@@ -70,9 +70,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -84,6 +81,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
@@ -105,14 +103,21 @@ public class DynamicEntityDaoImpl implements DynamicEntityDao, ApplicationContex
     
     private static final Log LOG = LogFactory.getLog(DynamicEntityDaoImpl.class);
     
-    protected static final Map<String,Map<String, FieldMetadata>> METADATA_CACHE = new LRUMap<>(1000);
+    protected static final int METADATA_CACHE_MAX_SIZE = 1000;
+
+    /**
+     * Unmodifiable snapshots of the metadata built for each {@link MetadataCacheKey}. Hits are read without locking until
+     * the cache is full, after which the least recently used snapshots are evicted. The snapshots themselves are never
+     * handed out, callers receive {@link FieldMetadata#cloneFieldMetadata()} copies
+     */
+    protected static final Map<MetadataCacheKey, Map<String, FieldMetadata>> METADATA_CACHE = new EfficientLRUMap<>(METADATA_CACHE_MAX_SIZE);
     
     /**
      * Lifetime cache for the existence of DynamicEntityDaoImpl that just stores how many properties we have cached in METADATA_CACHE over the lifetime
      * of the application. This should survive evictions from METADATA_CACHE because it is for the purpose of diagnosing when we store different property
      * counts in METADATA_CACHE as a result of cache eviction
      */
-    protected static final Map<String, Integer> METADATA_CACHE_SIZES = new HashMap<>();
+    protected static final Map<MetadataCacheKey, Integer> METADATA_CACHE_SIZES = new ConcurrentHashMap<>();
     
     /*
      * This is the same as POLYMORPHIC_ENTITY_CACHE, except that it does not contain classes that are abstract or have been marked for exclusion 
@@ -149,7 +154,7 @@ public class DynamicEntityDaoImpl implements DynamicEntityDao, ApplicationContex
     @Value("${validate.metadata.cache.sizes:false}")
     protected boolean validateMetadataCacheSizes;
     
-    protected long lastCacheFlushTime = System.currentTimeMillis();
+    protected volatile long lastCacheFlushTime = System.currentTimeMillis();
 
     protected ApplicationContext applicationContext;
 
@@ -681,50 +686,22 @@ public class DynamicEntityDaoImpl implements DynamicEntityDao, ApplicationContex
         }
     }
 
-    protected String pad(String s, int length, char pad) {
-        StringBuilder buffer = new StringBuilder(s);
-        while (buffer.length() < length) {
-            buffer.insert(0, pad);
-        }
-        return buffer.toString();
-    }
-
-    protected String getCacheKey(String ceilingEntityFullyQualifiedClassname, ForeignKey foreignField, String[] additionalNonPersistentProperties, ForeignKey[] additionalForeignFields, MergedPropertyType mergedPropertyType, Boolean populateManyToOneFields, Class<?> clazz, String configurationKey, Boolean isParentExcluded) {
-        StringBuilder sb = new StringBuilder(150);
-        sb.append(ceilingEntityFullyQualifiedClassname);
-        sb.append(clazz.hashCode());
-        sb.append(foreignField==null?"":foreignField.toString());
-        sb.append(configurationKey);
-        sb.append(isParentExcluded);
-        if (additionalNonPersistentProperties != null) {
-            for (String prop : additionalNonPersistentProperties) {
-                sb.append(prop);
-            }
-        }
-        if (additionalForeignFields != null) {
-            for (ForeignKey key : additionalForeignFields) {
-                sb.append(key.toString());
-            }
-        }
-        sb.append(mergedPropertyType);
-        sb.append(populateManyToOneFields);
-        
-        String digest;
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] messageDigest = md.digest(sb.toString().getBytes());
-            BigInteger number = new BigInteger(1,messageDigest);
-            digest = number.toString(16);
-        } catch(NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+    protected MetadataCacheKey getCacheKey(String ceilingEntityFullyQualifiedClassname, ForeignKey foreignField, String[] additionalNonPersistentProperties, ForeignKey[] additionalForeignFields, MergedPropertyType mergedPropertyType, Boolean populateManyToOneFields, Class<?> clazz, String configurationKey, Boolean isParentExcluded) {
+        return new MetadataCacheKey(ceilingEntityFullyQualifiedClassname, foreignField, additionalNonPersistentProperties,
+                additionalForeignFields, mergedPropertyType, populateManyToOneFields, clazz, configurationKey, isParentExcluded);
+    }
 
-        String key = pad(digest, 32, '0');
-        
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Created cache key: " + key + " from the following string: " + sb.toString());
+    /**
+     * Adds a snapshot to {@link #METADATA_CACHE}. Its {@link BasicFieldMetadata} are marked as snapshots first, so cloning
+     * them never changes them. Any entry evicted later is simply rebuilt the next time it is requested.
+     */
+    protected void cacheMetadata(MetadataCacheKey cacheKey, Map<String, FieldMetadata> props) {
+        for (FieldMetadata metadata : props.values()) {
+            if (metadata instanceof BasicFieldMetadata) {
+                ((BasicFieldMetadata) metadata).markAsSnapshot();
+            }
         }
-        return key;
+        METADATA_CACHE.put(cacheKey, Collections.unmodifiableMap(props));
     }
 
     protected void buildPropertiesFromPolymorphicEntities(
@@ -744,77 +721,79 @@ public class DynamicEntityDaoImpl implements DynamicEntityDao, ApplicationContex
             Boolean isParentExcluded,
             String parentPrefix) {
         for (Class<?> clazz : entities) {
-            String cacheKey = getCacheKey(ceilingEntityFullyQualifiedClassname, foreignField, additionalNonPersistentProperties, additionalForeignFields, mergedPropertyType, populateManyToOneFields, clazz, configurationKey, isParentExcluded);
-
-            Map<String, FieldMetadata> cacheData = null;
-            synchronized(DynamicDaoHelperImpl.LOCK_OBJECT) {
-                if (useCache()) {
-                    cacheData = METADATA_CACHE.get(cacheKey);
-                }
+            MetadataCacheKey cacheKey = getCacheKey(ceilingEntityFullyQualifiedClassname, foreignField, additionalNonPersistentProperties, additionalForeignFields, mergedPropertyType, populateManyToOneFields, clazz, configurationKey, isParentExcluded);
+
+            // Hits do not need the lock, only building missing metadata does
+            boolean useCache = useCache();
+            Map<String, FieldMetadata> cacheData = useCache ? METADATA_CACHE.get(cacheKey) : null;
+            if (cacheData == null) {
+                synchronized (DynamicDaoHelperImpl.LOCK_OBJECT) {
+                    if (useCache) {
+                        cacheData = METADATA_CACHE.get(cacheKey);
+                    }
 
-                if (cacheData == null) {
-                    Map<String, FieldMetadata> props = getPropertiesForEntityClass(
-                        clazz,
-                        foreignField,
-                        additionalNonPersistentProperties,
-                        additionalForeignFields,
-                        mergedPropertyType,
-                        populateManyToOneFields,
-                        includeFields,
-                        excludeFields,
-                        configurationKey,
-                        ceilingEntityFullyQualifiedClassname,
-                        parentClasses,
-                        prefix,
-                        isParentExcluded,
-                        parentPrefix);
-                    //first check all the properties currently in there to see if my entity inherits from them
-                    for (Class<?> clazz2 : entities) {
-                        if (!clazz2.getName().equals(clazz.getName())) {
-                            for (Map.Entry<String, FieldMetadata> entry : props.entrySet()) {
-                                FieldMetadata metadata = entry.getValue();
-                                try {
-                                    if (Class.forName(metadata.getInheritedFromType()).isAssignableFrom(clazz2)) {
-                                        String[] both = ArrayUtils.addAll(metadata.getAvailableToTypes(), new String[]{clazz2.getName()});
-                                        metadata.setAvailableToTypes(both);
+                    if (cacheData == null) {
+                        Map<String, FieldMetadata> props = getPropertiesForEntityClass(
+                            clazz,
+                            foreignField,
+                            additionalNonPersistentProperties,
+                            additionalForeignFields,
+                            mergedPropertyType,
+                            populateManyToOneFields,
+                            includeFields,
+                            excludeFields,
+                            configurationKey,
+                            ceilingEntityFullyQualifiedClassname,
+                            parentClasses,
+                            prefix,
+                            isParentExcluded,
+                            parentPrefix);
+                        //first check all the properties currently in there to see if my entity inherits from them
+                        for (Class<?> clazz2 : entities) {
+                            if (!clazz2.getName().equals(clazz.getName())) {
+                                for (Map.Entry<String, FieldMetadata> entry : props.entrySet()) {
+                                    FieldMetadata metadata = entry.getValue();
+                                    try {
+                                        if (Class.forName(metadata.getInheritedFromType()).isAssignableFrom(clazz2)) {
+                                            String[] both = ArrayUtils.addAll(metadata.getAvailableToTypes(), new String[]{clazz2.getName()});
+                                            metadata.setAvailableToTypes(both);
+                                        }
+                                    } catch (ClassNotFoundException e) {
+                                        throw new RuntimeException(e);
                                     }
-                                } catch (ClassNotFoundException e) {
-                                    throw new RuntimeException(e);
                                 }
                             }
                         }
-                    }
-                    METADATA_CACHE.put(cacheKey, props);
+                        cacheMetadata(cacheKey, props);
                     
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Added " + props.size() + " to the metadata cache with key " + cacheKey + " for the class " + ceilingEntityFullyQualifiedClassname);
-                    }
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Added " + props.size() + " to the metadata cache with key " + cacheKey + " for the class " + ceilingEntityFullyQualifiedClassname);
+                        }
                     
-                    if (validateMetadataCacheSizes) {
-                        Integer previousSize = METADATA_CACHE_SIZES.get(cacheKey);
-                        Integer currentSize = props.size();
-                        if (previousSize == null) {
-                            METADATA_CACHE_SIZES.put(cacheKey, currentSize);
-                        } else if (!currentSize.equals(previousSize)) {
-                            String msg = "Attempted to store " + currentSize + " properties in the cache for the key " + cacheKey + " but we had previously stored " + previousSize + " properties";
-                            LOG.error(msg);
-                            throw new RuntimeException(msg);
+                        if (validateMetadataCacheSizes) {
+                            Integer previousSize = METADATA_CACHE_SIZES.get(cacheKey);
+                            Integer currentSize = props.size();
+                            if (previousSize == null) {
+                                METADATA_CACHE_SIZES.put(cacheKey, currentSize);
+                            } else if (!currentSize.equals(previousSize)) {
+                                String msg = "Attempted to store " + currentSize + " properties in the cache for the key " + cacheKey + " but we had previously stored " + previousSize + " properties";
+                                LOG.error(msg);
+                                throw new RuntimeException(msg);
+                            }
                         }
-                    }
                     
-                    cacheData = props;
-                } else {
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Read " + cacheData.size() + " from the metada cache with key " + cacheKey + " for the class " + ceilingEntityFullyQualifiedClassname);
+                        cacheData = props;
+                    } else {
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Read " + cacheData.size() + " from the metada cache with key " + cacheKey + " for the class " + ceilingEntityFullyQualifiedClassname);
+                        }
                     }
                 }
             }
-            //clone the metadata before passing to the system
-            Map<String, FieldMetadata> clonedCache = new HashMap<>(cacheData.size());
+            //clone the metadata before passing to the system - nested structures are only copied when first accessed
             for (Map.Entry<String, FieldMetadata> entry : cacheData.entrySet()) {
-                clonedCache.put(entry.getKey(), entry.getValue().cloneFieldMetadata());
+                mergedProperties.put(entry.getKey(), entry.getValue().cloneFieldMetadata());
             }
-            mergedProperties.putAll(clonedCache);
         }
     }
 
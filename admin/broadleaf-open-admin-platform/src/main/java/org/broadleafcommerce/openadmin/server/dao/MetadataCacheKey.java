@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.dao;
+
+import org.broadleafcommerce.openadmin.dto.ForeignKey;
+import org.broadleafcommerce.openadmin.dto.MergedPropertyType;
+
+import java.util.Arrays;
+
+/**
+ * Identifies an entry of {@link DynamicEntityDaoImpl#METADATA_CACHE}. Holds the same inputs that used to be concatenated
+ * and hashed into a String key, compared field by field. {@link ForeignKey} has no equality of its own, so foreign keys
+ * are captured through their {@link ForeignKey#toString()} when the key is created.
+ */
+public final class MetadataCacheKey {
+
+    private final String ceilingEntityFullyQualifiedClassname;
+    private final Class<?> clazz;
+    private final String foreignField;
+    private final String configurationKey;
+    private final Boolean isParentExcluded;
+    private final String[] additionalNonPersistentProperties;
+    private final String[] additionalForeignFields;
+    private final MergedPropertyType mergedPropertyType;
+    private final Boolean populateManyToOneFields;
+    private final int hash;
+
+    public MetadataCacheKey(String ceilingEntityFullyQualifiedClassname, ForeignKey foreignField, String[] additionalNonPersistentProperties,
+            ForeignKey[] additionalForeignFields, MergedPropertyType mergedPropertyType, Boolean populateManyToOneFields,
+            Class<?> clazz, String configurationKey, Boolean isParentExcluded) {
+        this.ceilingEntityFullyQualifiedClassname = ceilingEntityFullyQualifiedClassname;
+        this.clazz = clazz;
+        this.foreignField = foreignField == null ? null : foreignField.toString();
+        this.configurationKey = configurationKey;
+        this.isParentExcluded = isParentExcluded;
+        this.additionalNonPersistentProperties = additionalNonPersistentProperties == null ? null : additionalNonPersistentProperties.clone();
+        if (additionalForeignFields == null) {
+            this.additionalForeignFields = null;
+        } else {
+            this.additionalForeignFields = new String[additionalForeignFields.length];
+            for (int i = 0; i < additionalForeignFields.length; i++) {
+                this.additionalForeignFields[i] = String.valueOf(additionalForeignFields[i]);
+            }
+        }
+        this.mergedPropertyType = mergedPropertyType;
+        this.populateManyToOneFields = populateManyToOneFields;
+
+        int result = ceilingEntityFullyQualifiedClassname == null ? 0 : ceilingEntityFullyQualifiedClassname.hashCode();
+        result = 31 * result + (clazz == null ? 0 : clazz.hashCode());
+        result = 31 * result + (this.foreignField == null ? 0 : this.foreignField.hashCode());
+        result = 31 * result + (configurationKey == null ? 0 : configurationKey.hashCode());
+        result = 31 * result + (isParentExcluded == null ? 0 : isParentExcluded.hashCode());
+        result = 31 * result + Arrays.hashCode(this.additionalNonPersistentProperties);
+        result = 31 * result + Arrays.hashCode(this.additionalForeignFields);
+        result = 31 * result + (mergedPropertyType == null ? 0 : mergedPropertyType.hashCode());
+        result = 31 * result + (populateManyToOneFields == null ? 0 : populateManyToOneFields.hashCode());
+        hash = result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MetadataCacheKey)) {
+            return false;
+        }
+        MetadataCacheKey that = (MetadataCacheKey) o;
+        return hash == that.hash
+                && eq(ceilingEntityFullyQualifiedClassname, that.ceilingEntityFullyQualifiedClassname)
+                && clazz == that.clazz
+                && eq(foreignField, that.foreignField)
+                && eq(configurationKey, that.configurationKey)
+                && eq(isParentExcluded, that.isParentExcluded)
+                && Arrays.equals(additionalNonPersistentProperties, that.additionalNonPersistentProperties)
+                && Arrays.equals(additionalForeignFields, that.additionalForeignFields)
+                && mergedPropertyType == that.mergedPropertyType
+                && eq(populateManyToOneFields, that.populateManyToOneFields);
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return ceilingEntityFullyQualifiedClassname + "[" + (clazz == null ? null : clazz.getName()) + ", " + mergedPropertyType
+                + ", " + configurationKey + ", " + foreignField + "]";
+    }
+}
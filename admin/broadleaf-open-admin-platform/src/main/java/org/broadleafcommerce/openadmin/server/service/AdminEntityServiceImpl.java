@@ -18,10 +18,12 @@
 package org.broadleafcommerce.openadmin.server.service;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.admin.domain.AdminMainEntity;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
 import org.broadleafcommerce.common.exception.ServiceException;
 import org.broadleafcommerce.common.persistence.EntityConfiguration;
 import org.broadleafcommerce.common.presentation.client.AddMethodType;
@@ -30,6 +32,7 @@ import org.broadleafcommerce.common.util.BLCMessageUtils;
 import org.broadleafcommerce.common.util.BLCSystemProperty;
 import org.broadleafcommerce.common.util.dao.DynamicDaoHelper;
 import org.broadleafcommerce.common.util.dao.DynamicDaoHelperImpl;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.broadleafcommerce.openadmin.dto.AdornedTargetCollectionMetadata;
 import org.broadleafcommerce.openadmin.dto.AdornedTargetList;
 import org.broadleafcommerce.openadmin.dto.BasicCollectionMetadata;
@@ -61,19 +64,43 @@ import org.broadleafcommerce.openadmin.web.form.entity.EntityForm;
 import org.broadleafcommerce.openadmin.web.form.entity.Field;
 import org.broadleafcommerce.openadmin.web.form.entity.Tab;
 import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 
 /**
  * @author Andre Azzolini (apazzolini)
@@ -97,6 +124,44 @@ public class AdminEntityServiceImpl implements AdminEntityService {
 
     protected DynamicDaoHelper dynamicDaoHelper = new DynamicDaoHelperImpl();
 
+    /**
+     * Whether the sub-collections of an entity form are fetched concurrently on {@link #subCollectionExecutor}
+     */
+    @Value("${admin.subcollection.fetch.parallel.enabled:false}")
+    protected boolean parallelSubCollectionFetch = false;
+
+    @Value("${admin.subcollection.fetch.threads:8}")
+    protected int subCollectionFetchThreads = 8;
+
+    @Value("${admin.subcollection.fetch.queueSize:64}")
+    protected int subCollectionFetchQueueSize = 64;
+
+    protected ThreadPoolExecutor subCollectionExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (parallelSubCollectionFetch) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            subCollectionExecutor = new ThreadPoolExecutor(subCollectionFetchThreads, subCollectionFetchThreads, 60L,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(subCollectionFetchQueueSize), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Admin sub-collection fetch " + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            subCollectionExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (subCollectionExecutor != null) {
+            subCollectionExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public PersistenceResponse getClassMetadata(PersistencePackageRequest request)
             throws ServiceException {
@@ -381,13 +446,14 @@ public class AdminEntityServiceImpl implements AdminEntityService {
 
         PersistenceResponse response = getClassMetadata(ppr);
         ClassMetadata cmd = response.getDynamicResultSet().getClassMetaData();
+        List<Property> collectionProperties = new ArrayList<>();
         for (Property p : cmd.getProperties()) {
             if (ArrayUtils.contains(p.getMetadata().getAvailableToTypes(), containingEntity.getType()[0])
                     && p.getMetadata() instanceof CollectionMetadata) {
-                PersistenceResponse response2 = getRecordsForCollection(cmd, containingEntity, p, null, startIndex, maxIndex, sectionCrumb);
-                map.put(p.getName(), response2.getDynamicResultSet());
+                collectionProperties.add(p);
             }
         }
+        map.putAll(getRecordsForCollections(cmd, containingEntity, collectionProperties, startIndex, maxIndex, sectionCrumb));
 
         return map;
     }
@@ -420,6 +486,7 @@ public class AdminEntityServiceImpl implements AdminEntityService {
     public Map<String, DynamicResultSet> getRecordsForSelectedTab(ClassMetadata cmd, Entity containingEntity, List<SectionCrumb> sectionCrumb,
             String currentTabName) throws ServiceException {
         Map<String, DynamicResultSet> map = new HashMap<String, DynamicResultSet>();
+        List<Property> collectionProperties = new ArrayList<>();
         for (Property p : cmd.getProperties()) {
             if (ArrayUtils.contains(p.getMetadata().getAvailableToTypes(), containingEntity.getType()[0])
                     && p.getMetadata() instanceof CollectionMetadata) {
@@ -439,12 +506,10 @@ public class AdminEntityServiceImpl implements AdminEntityService {
                 if (collectionMetadata.getLazyFetch() != null && collectionMetadata.getLazyFetch()
                         && tabName.toUpperCase().startsWith(currentTabName.toUpperCase())
                         && !collectionMetadata.getManualFetch()) {
-                    PersistenceResponse response2 = getRecordsForCollection(cmd, containingEntity, p, null, null, null, sectionCrumb);
-                    map.put(p.getName(), response2.getDynamicResultSet());
+                    collectionProperties.add(p);
                 } else if (collectionMetadata.getLazyFetch() != null && !collectionMetadata.getLazyFetch()
                         && !collectionMetadata.getManualFetch()) {
-                    PersistenceResponse response2 = getRecordsForCollection(cmd, containingEntity, p, null, null, null, sectionCrumb);
-                    map.put(p.getName(), response2.getDynamicResultSet());
+                    collectionProperties.add(p);
                 } else {
                     DynamicResultSet drs = new DynamicResultSet();
                     Map<String, Tab> tabMap = new HashMap<String, Tab>();
@@ -464,10 +529,201 @@ public class AdminEntityServiceImpl implements AdminEntityService {
                 }
             }
         }
+        map.putAll(getRecordsForCollections(cmd, containingEntity, collectionProperties, null, null, sectionCrumb));
+
+        return map;
+    }
+
+    /**
+     * Fetches the records of each of the given collection properties of the containing entity, keyed by property name.
+     * When parallel sub-collection fetching is enabled, the collections are fetched concurrently, each on a thread
+     * with its own {@link EntityManager} and a copy of the caller's {@link BroadleafRequestContext} (including the
+     * sandbox) and security context. The class metadata and containing entity are copied once per call and the copy is
+     * shared, read only, by the pool threads. The calling thread fetches a collection itself when the executor is
+     * saturated.
+     */
+    protected Map<String, DynamicResultSet> getRecordsForCollections(ClassMetadata cmd, Entity containingEntity,
+            List<Property> collectionProperties, Integer startIndex, Integer maxIndex, List<SectionCrumb> sectionCrumb)
+            throws ServiceException {
+        Map<String, DynamicResultSet> map = new LinkedHashMap<>();
+        if (subCollectionExecutor == null || collectionProperties.size() < 2) {
+            for (Property p : collectionProperties) {
+                PersistenceResponse response = getRecordsForCollection(cmd, containingEntity, p, null, startIndex, maxIndex, sectionCrumb);
+                map.put(p.getName(), response.getDynamicResultSet());
+            }
+            return map;
+        }
 
+        ClassMetadata workerCmd = cmd == null ? null : SerializationUtils.clone(cmd);
+        Entity workerContainingEntity = containingEntity == null ? null : SerializationUtils.clone(containingEntity);
+        Map<String, Future<DynamicResultSet>> futures = new LinkedHashMap<>();
+        for (Property p : collectionProperties) {
+            futures.put(p.getName(), subCollectionExecutor.submit(new SubCollectionFetch(cmd, containingEntity,
+                    workerCmd, workerContainingEntity, p, startIndex, maxIndex, sectionCrumb)));
+        }
+        try {
+            for (Map.Entry<String, Future<DynamicResultSet>> entry : futures.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while fetching the collections of " + cmd.getCeilingType(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ServiceException("Unable to fetch the collections of " + cmd.getCeilingType(), cause);
+        } finally {
+            for (Future<DynamicResultSet> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
         return map;
     }
 
+    /**
+     * Fetches a single sub-collection on behalf of {@link #getRecordsForCollections}. Captures the request, security
+     * and persistence state of the submitting thread and, when run on a pool thread, establishes and then clears it
+     * there. Pool threads read the class metadata and containing entity from copies shared by all of the fetches of a
+     * call, so they never see changes the caller makes to its own objects, and each gets a private view of the web
+     * request attributes.
+     */
+    protected class SubCollectionFetch implements Callable<DynamicResultSet> {
+
+        protected final ClassMetadata cmd;
+        protected final Entity containingEntity;
+        protected final ClassMetadata workerCmd;
+        protected final Entity workerContainingEntity;
+        protected final Property collectionProperty;
+        protected final Integer startIndex;
+        protected final Integer maxIndex;
+        protected final List<SectionCrumb> sectionCrumb;
+        protected final Thread submittingThread = Thread.currentThread();
+        protected final BroadleafRequestContext requestContext = BroadleafRequestContext.getBroadleafRequestContext();
+        protected final WebRequest workerWebRequest;
+        protected final SecurityContext securityContext = SecurityContextHolder.getContext();
+        protected final List<EntityManagerFactory> entityManagerFactories = new ArrayList<>();
+
+        public SubCollectionFetch(ClassMetadata cmd, Entity containingEntity, ClassMetadata workerCmd,
+                Entity workerContainingEntity, Property collectionProperty, Integer startIndex, Integer maxIndex,
+                List<SectionCrumb> sectionCrumb) {
+            this.cmd = cmd;
+            this.containingEntity = containingEntity;
+            this.workerCmd = workerCmd;
+            this.workerContainingEntity = workerContainingEntity;
+            this.collectionProperty = collectionProperty;
+            this.startIndex = startIndex;
+            this.maxIndex = maxIndex;
+            this.sectionCrumb = sectionCrumb;
+            this.workerWebRequest = copyWebRequest(requestContext);
+            for (Object key : TransactionSynchronizationManager.getResourceMap().keySet()) {
+                if (key instanceof EntityManagerFactory) {
+                    entityManagerFactories.add((EntityManagerFactory) key);
+                }
+            }
+        }
+
+        @Override
+        public DynamicResultSet call() throws Exception {
+            if (Thread.currentThread() == submittingThread) {
+                return fetch(cmd, containingEntity);
+            }
+            List<EntityManagerFactory> bound = new ArrayList<>();
+            try {
+                BroadleafRequestContext context;
+                if (requestContext == null) {
+                    context = new BroadleafRequestContext();
+                } else {
+                    context = requestContext.createLightWeightClone();
+                    if (workerWebRequest != null) {
+                        context.setWebRequest(workerWebRequest);
+                    }
+                }
+                BroadleafRequestContext.setBroadleafRequestContext(context);
+                SecurityContextHolder.setContext(securityContext);
+                for (EntityManagerFactory emf : entityManagerFactories) {
+                    if (!TransactionSynchronizationManager.hasResource(emf)) {
+                        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(emf.createEntityManager()));
+                        bound.add(emf);
+                    }
+                }
+                return fetch(workerCmd, workerContainingEntity);
+            } finally {
+                for (EntityManagerFactory emf : bound) {
+                    EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.unbindResource(emf);
+                    EntityManagerFactoryUtils.closeEntityManager(holder.getEntityManager());
+                }
+                SecurityContextHolder.clearContext();
+                ThreadLocalManager.remove();
+            }
+        }
+
+        protected DynamicResultSet fetch(ClassMetadata cmd, Entity containingEntity) throws ServiceException {
+            return getRecordsForCollection(cmd, containingEntity, collectionProperty, null, startIndex, maxIndex,
+                    sectionCrumb).getDynamicResultSet();
+        }
+
+        /**
+         * Wraps the servlet request of the given context so that request attributes set by the worker stay private
+         * to it. Any other kind of web request is shared as is.
+         */
+        protected WebRequest copyWebRequest(BroadleafRequestContext context) {
+            if (context == null || context.getWebRequest() == null) {
+                return null;
+            }
+            if (context.getRequest() == null) {
+                return context.getWebRequest();
+            }
+            return new ServletWebRequest(new SubCollectionRequestWrapper(context.getRequest()), context.getResponse());
+        }
+    }
+
+    /**
+     * A request whose attributes start as a copy of those of the wrapped request and are read and written privately
+     * from then on. Everything else is delegated to the wrapped request.
+     */
+    protected static class SubCollectionRequestWrapper extends HttpServletRequestWrapper {
+
+        protected final Map<String, Object> attributes = new HashMap<>();
+
+        public SubCollectionRequestWrapper(HttpServletRequest request) {
+            super(request);
+            Enumeration<String> names = request.getAttributeNames();
+            while (names != null && names.hasMoreElements()) {
+                String name = names.nextElement();
+                attributes.put(name, request.getAttribute(name));
+            }
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+    }
+
     protected void updateTabInfo(CollectionMetadata fmd, ClassMetadata cmd, String tabName, int tabOrder) {
         boolean tabInfoFound = false;
         Map<String, TabMetadata> tabMetadataMap = cmd.getTabAndGroupMetadata();
@@ -19,6 +19,8 @@ package org.broadleafcommerce.openadmin.server.service.artifact.image;
 
 import org.broadleafcommerce.openadmin.server.service.artifact.ArtifactProcessor;
 import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.EffectsManager;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.FilterTypeEnum;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.Resize;
 import org.springframework.stereotype.Service;
 
 import java.awt.image.BufferedImage;
@@ -27,12 +29,16 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Resource;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
@@ -52,9 +58,24 @@ public class ImageArtifactProcessor implements ArtifactProcessor {
     @Resource(name="blImageEffectsManager")
     protected EffectsManager effectsManager;
 
+    /**
+     * Effects that work pixel by pixel and so give the same result regardless of the resolution of the image
+     */
+    protected static final Set<String> RESOLUTION_INDEPENDENT_EFFECTS = new HashSet<String>(Arrays.asList(
+            FilterTypeEnum.ALTERHSB.toString().toLowerCase(), FilterTypeEnum.ALTERRGB.toString().toLowerCase()));
+
     protected String[] supportedUploadTypes = {"gif", "jpg", "jpeg", "png", "bmp", "wbmp"};
     protected float compressionQuality = 0.9F;
 
+    /**
+     * When set to 1 or more and an image is only resized (and possibly color adjusted), it is decoded at a reduced
+     * resolution that is still at least this many times the size of the resized image. This makes decoding large
+     * sources much faster and lighter on memory, but subsampling skips source pixels instead of averaging them, so
+     * the resized image can be noticeably less smooth (aliasing on fine patterns and sharp edges), the more so the
+     * smaller the headroom. Off (0) by default, which always decodes at full resolution.
+     */
+    protected int subsamplingHeadroom = 0;
+
     @Override
     public boolean isSupported(InputStream artifactStream, String filename) {
         for (String type : supportedUploadTypes) {
@@ -93,8 +114,9 @@ public class ImageArtifactProcessor implements ArtifactProcessor {
             Iterator<ImageReader> iter = ImageIO.getImageReaders(iis);
             ImageReader reader = iter.next();
             String formatName = reader.getFormatName();
+            iis.close();
             artifactStream.reset();
-            BufferedImage image = ImageIO.read(ImageIO.createImageInputStream(artifactStream));
+            BufferedImage image = readImage(reader, ImageIO.createImageInputStream(artifactStream), operations);
 
             //before
             if (formatName.toLowerCase().equals("jpeg") || formatName.toLowerCase().equals("jpg")) {
@@ -137,6 +159,67 @@ public class ImageArtifactProcessor implements ArtifactProcessor {
         }
     }
 
+    /**
+     * Decodes the first image of the stream, subsampling it while decoding when the operations allow it (see
+     * {@link #getSourceSubsampling(Operation[], int, int)}).
+     */
+    protected BufferedImage readImage(ImageReader reader, ImageInputStream iis, Operation[] operations) throws Exception {
+        try {
+            reader.setInput(iis, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = getSourceSubsampling(operations, reader.getWidth(0), reader.getHeight(0));
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+            iis.close();
+        }
+    }
+
+    /**
+     * Determines how many source pixels in each direction can be skipped while decoding an image of the given size.
+     * This is only done when the operations are a resize, optionally combined with effects that do not depend on
+     * the resolution, and when the resize produces an image of exactly the same size from the subsampled source.
+     */
+    protected int getSourceSubsampling(Operation[] operations, int width, int height) throws Exception {
+        if (subsamplingHeadroom < 1) {
+            return 1;
+        }
+        String resizeName = FilterTypeEnum.RESIZE.toString().toLowerCase();
+        Resize resize = null;
+        for (Operation operation : operations) {
+            if (resizeName.equals(operation.getName())) {
+                Object filter = effectsManager.buildFilter(operation.getName(), operation.getFactor(), operation.getParameters());
+                if (!(filter instanceof Resize)) {
+                    return 1;
+                }
+                resize = (Resize) filter;
+            } else if (!RESOLUTION_INDEPENDENT_EFFECTS.contains(operation.getName())) {
+                return 1;
+            }
+        }
+        if (resize == null) {
+            return 1;
+        }
+        int[] dimensions = resize.getResultDimensions(width, height);
+        if (dimensions == null || dimensions[0] <= 0 || dimensions[1] <= 0) {
+            return 1;
+        }
+        int subsampling = Math.min(width / (dimensions[0] * subsamplingHeadroom), height / (dimensions[1] * subsamplingHeadroom));
+        while (subsampling > 1) {
+            // the reader produces ceil(size / subsampling) pixels in each direction
+            int subsampledWidth = (width + subsampling - 1) / subsampling;
+            int subsampledHeight = (height + subsampling - 1) / subsampling;
+            if (Arrays.equals(dimensions, resize.getResultDimensions(subsampledWidth, subsampledHeight))) {
+                return subsampling;
+            }
+            subsampling--;
+        }
+        return 1;
+    }
+
     protected BufferedImage stripAlpha(BufferedImage image){
         BufferedImage raw_image=image;
         image = new BufferedImage(raw_image.getWidth(), raw_image.getHeight(), BufferedImage.TYPE_INT_RGB);
@@ -161,4 +244,12 @@ public class ImageArtifactProcessor implements ArtifactProcessor {
     public void setCompressionQuality(float compressionQuality) {
         this.compressionQuality = compressionQuality;
     }
+
+    public int getSubsamplingHeadroom() {
+        return subsamplingHeadroom;
+    }
+
+    public void setSubsamplingHeadroom(int subsamplingHeadroom) {
+        this.subsamplingHeadroom = subsamplingHeadroom;
+    }
 }
@@ -77,6 +77,19 @@ public class EffectsManager {
         /*
          * retrieve the injected filter, instantiate the filter instance using reflection and execute the operation
          */
+        Object filterInstance = buildFilter(effectName, factor, parameters);
+        Class filterClass = filterInstance.getClass();
+
+        Method filterMethod = filterClass.getMethod("filter", new Class[]{BufferedImage.class, BufferedImage.class});
+        Object result = filterMethod.invoke(filterInstance, new Object[]{src, null});
+        
+        return (BufferedImage) result;
+    }
+
+    /**
+     * Instantiates the filter registered for the effect name, configured with the given parameters
+     */
+    public Object buildFilter(String effectName, Double factor, UnmarshalledParameter[] parameters) throws Exception {
         Object filterObject = filters.get(effectName);
         if (filterObject == null) {
             throw new FilterNotFoundException("An effects filter was not found for the name: " + effectName);
@@ -101,12 +114,8 @@ public class EffectsManager {
         types[types.length-1] = RenderingHints.class;
         args[types.length-1] = null;
         Constructor constructor = filterClass.getConstructor(types);
-        Object filterInstance = constructor.newInstance(args);
-        
-        Method filterMethod = filterClass.getMethod("filter", new Class[]{BufferedImage.class, BufferedImage.class});
-        Object result = filterMethod.invoke(filterInstance, new Object[]{src, null});
-        
-        return (BufferedImage) result;
+
+        return constructor.newInstance(args);
     }
 
     /**
@@ -128,37 +128,38 @@ public class AlterRGB extends BaseFilter {
             }
         }
         
-        int[] originalPixels = ImageConverter.getPixels(src);
-        int imageWidth = dst.getWidth();
+        final int[] originalPixels = ImageConverter.getPixels(src);
+        final int imageWidth = dst.getWidth();
         int imageHeight = dst.getHeight();
         
-        int r=0;
-        int g=0;
-        int b=0;
-        
-        int index=0;
-        for (int y=0;y<imageHeight;y++){
-            for (int x=0;x<imageWidth;x++){
-                r = (originalPixels[index] >> 16) & 0xff;
-                g = (originalPixels[index] >> 8) & 0xff;
-                b = (originalPixels[index] >> 0) & 0xff;
-
-                r+=red;
-                g+=green;
-                b+=blue;
-
-                // fix overflows
-                if (r > 255) r = 255;
-                if (r < 0) r = 0;
-                if (g > 255) g = 255;
-                if (g < 0) g = 0;
-                if (b > 255) b = 255;
-                if (b < 0) b = 0;
-
-                originalPixels[index] = (originalPixels[index] & 0xff000000)  | (r << 16) | (g << 8) | (b << 0);
-                index++;
+        ImageRowBands.process(imageWidth, imageHeight, new ImageRowBands.RowBandOperation() {
+            @Override
+            public void apply(int startRow, int endRow) {
+                int r=0;
+                int g=0;
+                int b=0;
+
+                for (int index = startRow * imageWidth, end = endRow * imageWidth; index < end; index++) {
+                    r = (originalPixels[index] >> 16) & 0xff;
+                    g = (originalPixels[index] >> 8) & 0xff;
+                    b = (originalPixels[index] >> 0) & 0xff;
+
+                    r+=red;
+                    g+=green;
+                    b+=blue;
+
+                    // fix overflows
+                    if (r > 255) r = 255;
+                    if (r < 0) r = 0;
+                    if (g > 255) g = 255;
+                    if (g < 0) g = 0;
+                    if (b > 255) b = 255;
+                    if (b < 0) b = 0;
+
+                    originalPixels[index] = (originalPixels[index] & 0xff000000)  | (r << 16) | (g << 8) | (b << 0);
+                }
             }
-        }
+        });
         
         dst = ImageConverter.getImage(originalPixels, imageWidth, imageHeight);
          
@@ -25,7 +25,6 @@ import java.awt.image.ColorConvertOp;
 import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -108,137 +107,53 @@ public class AutoLevelsRGB extends BaseFilter {
             }
         }
         
-        int[] originalPixels = ImageConverter.getPixels(src);
-        int imageWidth = dst.getWidth();
+        final int[] originalPixels = ImageConverter.getPixels(src);
+        final int imageWidth = dst.getWidth();
         int imageHeight = dst.getHeight();
         
         /*
-         * Sort all the red pixels from low to high and establish
-         * the clipping regions. We also note the delta from the 
-         * lowest and highest leftover pixels to black and white,
-         * respectively.
+         * Count the red, green and blue values (the equivalent of sorting all the pixels of a channel from low to
+         * high) and establish the clipping regions. We also note the delta from the lowest and highest leftover
+         * pixels to black and white, respectively.
          */
-        int[] redPixels = new int[originalPixels.length];
-        for (int j=0;j<originalPixels.length;j++){
-            redPixels[j] = (originalPixels[j] >> 16) & 0xff;
+        int[] redHistogram = new int[256];
+        int[] greenHistogram = new int[256];
+        int[] blueHistogram = new int[256];
+        for (int pixel : originalPixels) {
+            redHistogram[(pixel >> 16) & 0xff]++;
+            greenHistogram[(pixel >> 8) & 0xff]++;
+            blueHistogram[(pixel >> 0) & 0xff]++;
         }
-        Arrays.sort(redPixels);
-        int redStart = redPixels[(int) (redPixels.length * BOTTOMCLIP )];
-        int redEnd = redPixels[redPixels.length-(int) (redPixels.length * TOPCLIP)];
-        int redEndDelta = 255 - redEnd;
-        int redStartDelta = redStart;
-        
-        int[] greenPixels = new int[originalPixels.length];
-        for (int j=0;j<originalPixels.length;j++){
-            greenPixels[j] = (originalPixels[j] >> 8) & 0xff;
-        }
-        Arrays.sort(greenPixels);
-        int greenStart = greenPixels[(int) (greenPixels.length * BOTTOMCLIP )];
-        int greenEnd = greenPixels[greenPixels.length-(int) (greenPixels.length * TOPCLIP)];
-        int greenEndDelta = 255 - greenEnd;
-        int greenStartDelta = greenStart;
-        
-        int[] bluePixels = new int[originalPixels.length];
-        for (int j=0;j<originalPixels.length;j++){
-            bluePixels[j] = (originalPixels[j] >> 0) & 0xff;
-        }
-        Arrays.sort(bluePixels);
-        int blueStart = bluePixels[(int) (bluePixels.length * BOTTOMCLIP )];
-        int blueEnd = bluePixels[bluePixels.length-(int) (bluePixels.length * TOPCLIP)];
-        int blueEndDelta = 255 - blueEnd;
-        int blueStartDelta = blueStart;
-        
-        int r=0;
-        int g=0;
-        int b=0;
-        int index=0;
-        for (int y=0;y<imageHeight;y++){
-            for (int x=0;x<imageWidth;x++){
-                r = (originalPixels[index] >> 16) & 0xff;
-                g = (originalPixels[index] >> 8) & 0xff;
-                b = (originalPixels[index] >> 0) & 0xff;
-                
-                if (r > redStart && r < redEnd) {
-                    if (redEndDelta > 0) {
-                        if (redEnd - r == 0) {
-                            r = 255;
-                        } else {
-                            /*
-                             * If there was a white shift, distribute all the pixels proportionally up
-                             */
-                            r = redEnd + redEndDelta - (((redEnd - r) * (redEnd + redEndDelta)) / redEnd);
-                        }
-                    }
-                    if (redStartDelta > 0) {
-                        if (r - redStartDelta == 0) {
-                            r = 0;
-                        } else {
-                            /*
-                             * If there was a black shift, distribute all the pixels proportionally down
-                             */
-                            r = redEnd - (((redEnd -(redStart - redStartDelta)) * (redEnd - r))/(redEnd - redStart));
-                        }
-                    }
-                } else if (r <= redStart) {
-                    r = 0;
-                } else {
-                    r = 255;
-                }
-                
-                if (g > greenStart && g < greenEnd) {
-                    if (greenEndDelta > 0){
-                        if (greenEnd - g == 0) {
-                            g = 255;
-                        } else {
-                            g = greenEnd + greenEndDelta - (((greenEnd - g) * (greenEnd + greenEndDelta)) / greenEnd);
-                        }
-                    }
-                    if (greenStartDelta > 0){
-                        if (g - greenStartDelta == 0) {
-                            g = 0;
-                        } else {
-                            g = greenEnd - (((greenEnd -(greenStart - greenStartDelta)) * (greenEnd - g))/(greenEnd - greenStart));
-                        }
-                    }
-                } else if (g <= greenStart) {
-                    g = 0;
-                } else {
-                    g = 255;
-                }
-                
-                if (b > blueStart && b < blueEnd) {
-                    if (blueEndDelta > 0){
-                        if (blueEnd - b == 0) {
-                            b = 255;
-                        } else {
-                            b = blueEnd + blueEndDelta - (((blueEnd - b) * (blueEnd + blueEndDelta)) / blueEnd);
-                        }
-                    }
-                    if (blueStartDelta > 0){
-                        if (b - blueStartDelta == 0) {
-                            b = 0;
-                        } else {
-                            b = blueEnd - (((blueEnd -(blueStart - blueStartDelta)) * (blueEnd - b))/(blueEnd - blueStart));
-                        }
-                    }
-                } else if (b <= blueStart) {
-                    b = 0;
-                } else {
-                    b = 255;
-                }
+        int startIndex = (int) (originalPixels.length * BOTTOMCLIP);
+        int endIndex = Math.min(originalPixels.length - (int) (originalPixels.length * TOPCLIP), originalPixels.length - 1);
+
+        final int redStart = getSortedValue(redHistogram, startIndex);
+        final int redEnd = getSortedValue(redHistogram, endIndex);
+        final int redEndDelta = 255 - redEnd;
+        final int redStartDelta = redStart;
+
+        final int greenStart = getSortedValue(greenHistogram, startIndex);
+        final int greenEnd = getSortedValue(greenHistogram, endIndex);
+        final int greenEndDelta = 255 - greenEnd;
+        final int greenStartDelta = greenStart;
 
-                // fix overflows
-                if (r > 255) r = 255;
-                if (r < 0) r = 0;
-                if (g > 255) g = 255;
-                if (g < 0) g = 0;
-                if (b > 255) b = 255;
-                if (b < 0) b = 0;
+        final int blueStart = getSortedValue(blueHistogram, startIndex);
+        final int blueEnd = getSortedValue(blueHistogram, endIndex);
+        final int blueEndDelta = 255 - blueEnd;
+        final int blueStartDelta = blueStart;
+        
+        ImageRowBands.process(imageWidth, imageHeight, new ImageRowBands.RowBandOperation() {
+            @Override
+            public void apply(int startRow, int endRow) {
+                for (int index = startRow * imageWidth, end = endRow * imageWidth; index < end; index++) {
+                    int r = level((originalPixels[index] >> 16) & 0xff, redStart, redEnd, redStartDelta, redEndDelta);
+                    int g = level((originalPixels[index] >> 8) & 0xff, greenStart, greenEnd, greenStartDelta, greenEndDelta);
+                    int b = level((originalPixels[index] >> 0) & 0xff, blueStart, blueEnd, blueStartDelta, blueEndDelta);
 
-                originalPixels[index] = (originalPixels[index] & 0xff000000)  | (r << 16) | (g << 8) | (b << 0);
-                index++;
+                    originalPixels[index] = (originalPixels[index] & 0xff000000)  | (r << 16) | (g << 8) | (b << 0);
+                }
             }
-        }
+        });
         
         dst = ImageConverter.getImage(originalPixels, imageWidth, imageHeight);
          
@@ -258,4 +173,57 @@ public class AutoLevelsRGB extends BaseFilter {
         return origDst;
     }
 
+    /**
+     * Returns the value at the given position of the channel's values sorted from low to high, given a histogram
+     * of those values.
+     */
+    protected static int getSortedValue(int[] histogram, int position) {
+        int count = 0;
+        for (int value = 0; value < histogram.length; value++) {
+            count += histogram[value];
+            if (count > position) {
+                return value;
+            }
+        }
+        return histogram.length - 1;
+    }
+
+    /**
+     * Stretches a single channel value between the clipping region start and end.
+     */
+    protected static int level(int c, int start, int end, int startDelta, int endDelta) {
+        if (c > start && c < end) {
+            if (endDelta > 0) {
+                if (end - c == 0) {
+                    c = 255;
+                } else {
+                    /*
+                     * If there was a white shift, distribute all the pixels proportionally up
+                     */
+                    c = end + endDelta - (((end - c) * (end + endDelta)) / end);
+                }
+            }
+            if (startDelta > 0) {
+                if (c - startDelta == 0) {
+                    c = 0;
+                } else {
+                    /*
+                     * If there was a black shift, distribute all the pixels proportionally down
+                     */
+                    c = end - (((end -(start - startDelta)) * (end - c))/(end - start));
+                }
+            }
+        } else if (c <= start) {
+            c = 0;
+        } else {
+            c = 255;
+        }
+
+        // fix overflows
+        if (c > 255) c = 255;
+        if (c < 0) c = 0;
+
+        return c;
+    }
+
 }
@@ -28,6 +28,8 @@ import java.awt.image.ColorModel;
 import java.awt.image.ConvolveOp;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.InputStream;
 import java.util.Map;
 
@@ -194,9 +196,17 @@ public class GaussianBlur extends BaseFilter {
 
         BufferedImage nextSource = src;
 
+        boolean banded = isBandable(src);
         for (int i = 0; i < numOfPasses; i++) {
-            tempImage = gaussianOp1.filter(nextSource, tempImage);
-            dst = gaussianOp2.filter(tempImage, dst);
+            if (banded) {
+                // the horizontal kernel only reads along rows and the vertical one along columns, so the bands
+                // can be convolved independently
+                convolveRows(gaussianOp1, nextSource.getRaster(), tempImage.getRaster());
+                convolveColumns(gaussianOp2, tempImage.getRaster(), dst.getRaster());
+            } else {
+                tempImage = gaussianOp1.filter(nextSource, tempImage);
+                dst = gaussianOp2.filter(tempImage, dst);
+            }
 
             nextSource = dst;
         }
@@ -216,4 +226,37 @@ public class GaussianBlur extends BaseFilter {
 
         return origDst;
     }
+
+    /**
+     * Whether the image is of a non-premultiplied, int packed type, for which convolving bands of its raster is
+     * supported and equivalent to convolving the image
+     */
+    protected boolean isBandable(BufferedImage image) {
+        int type = image.getType();
+        return type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB;
+    }
+
+    protected void convolveRows(final ConvolveOp op, final Raster src, final WritableRaster dst) {
+        final int width = src.getWidth();
+        ImageRowBands.process(width, src.getHeight(), new ImageRowBands.RowBandOperation() {
+            @Override
+            public void apply(int startRow, int endRow) {
+                int rows = endRow - startRow;
+                op.filter(src.createChild(0, startRow, width, rows, 0, 0, null),
+                        dst.createWritableChild(0, startRow, width, rows, 0, 0, null));
+            }
+        });
+    }
+
+    protected void convolveColumns(final ConvolveOp op, final Raster src, final WritableRaster dst) {
+        final int height = src.getHeight();
+        ImageRowBands.processColumns(src.getWidth(), height, new ImageRowBands.RowBandOperation() {
+            @Override
+            public void apply(int startColumn, int endColumn) {
+                int columns = endColumn - startColumn;
+                op.filter(src.createChild(startColumn, 0, columns, height, 0, 0, null),
+                        dst.createWritableChild(startColumn, 0, columns, height, 0, 0, null));
+            }
+        });
+    }
 }
@@ -20,17 +20,46 @@ package org.broadleafcommerce.openadmin.server.service.artifact.image.effects.ch
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.awt.image.MemoryImageSource;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
 import java.awt.image.PixelGrabber;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 public class ImageConverter {
     
+    /**
+     * Returns the pixels of the image as non-premultiplied ARGB values in the default sRGB color model, one int per
+     * pixel, row by row. The returned array is never shared with the image.
+     */
     public static int[] getPixels(BufferedImage image){
-        int iWidth = image.getWidth();
+        final int iWidth = image.getWidth();
         int iHeight = image.getHeight();
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) {
+            final int[] data = getPackedData(image);
+            if (data != null) {
+                if (type == BufferedImage.TYPE_INT_ARGB) {
+                    return data.clone();
+                }
+                final int[] rawPixels = new int[data.length];
+                ImageRowBands.process(iWidth, iHeight, new ImageRowBands.RowBandOperation() {
+                    @Override
+                    public void apply(int startRow, int endRow) {
+                        for (int index = startRow * iWidth, end = endRow * iWidth; index < end; index++) {
+                            rawPixels[index] = data[index] | 0xff000000;
+                        }
+                    }
+                });
+                return rawPixels;
+            }
+        }
+        if (type != BufferedImage.TYPE_CUSTOM) {
+            return image.getRGB(0, 0, iWidth, iHeight, null, 0, iWidth);
+        }
         int numPixels = iWidth*iHeight;
         int rawPixels[] = new int[numPixels];
-        if (rawPixels==null) return null;
         PixelGrabber grabber = new PixelGrabber(image,0,0,iWidth,iHeight,rawPixels,0,iWidth);
         try{
             grabber.grabPixels();
@@ -40,16 +69,19 @@ public class ImageConverter {
         return rawPixels;
     }
 
+    /**
+     * Wraps the pixels (non-premultiplied ARGB, one int per pixel) in an image without copying them. The array must
+     * not be modified afterwards unless the image is meant to change with it.
+     */
     public static BufferedImage getImage(int[] pixels, int width, int height){
-        ColorModel cm = ColorModel.getRGBdefault();
-        MemoryImageSource imageSource = new MemoryImageSource(width,height,cm,pixels,0,width);
-        imageSource.setAnimated(true);
-        Image temp = Toolkit.getDefaultToolkit().createImage(imageSource);
-        BufferedImage image = convertImage(temp);
-        
-        return image;
+        DirectColorModel cm = (DirectColorModel) ColorModel.getRGBdefault();
+        DataBufferInt buffer = new DataBufferInt(pixels, width * height);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width,
+                new int[] { cm.getRedMask(), cm.getGreenMask(), cm.getBlueMask(), cm.getAlphaMask() }, null);
+
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
     }
-    
+
     public static BufferedImage convertImage(Image original) {
         ColorModel cm = ColorModel.getRGBdefault();
         int width = original.getWidth(null);
@@ -61,4 +93,24 @@ public class ImageConverter {
         
         return image;
     }
+
+    /**
+     * Returns the backing array of an int packed image whose pixels are laid out contiguously from the start of the
+     * buffer (for example not a sub-image), or null otherwise.
+     */
+    protected static int[] getPackedData(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getParent() != null) {
+            return null;
+        }
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        if (sampleModel.getScanlineStride() != image.getWidth() || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || buffer.getSize() != image.getWidth() * image.getHeight()) {
+            return null;
+        }
+        return buffer.getData();
+    }
 }
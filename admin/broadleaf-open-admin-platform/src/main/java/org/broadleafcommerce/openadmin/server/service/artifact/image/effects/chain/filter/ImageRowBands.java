@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies an operation to an image in bands of rows (or columns), in parallel on a shared fork/join pool for images
+ * large enough to benefit. Bands never overlap, so operations that only write the rows they are given need no further
+ * synchronization.
+ */
+public class ImageRowBands {
+
+    /**
+     * Images with fewer pixels than this are processed as a single band on the calling thread
+     */
+    public static final int MIN_BAND_PIXELS = 128 * 1024;
+
+    protected static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public interface RowBandOperation {
+
+        /**
+         * @param startRow the first row of the band
+         * @param endRow the row after the last row of the band
+         */
+        void apply(int startRow, int endRow);
+
+    }
+
+    public static void process(int width, int height, RowBandOperation operation) {
+        int parallelism = POOL.getParallelism();
+        // no smaller than MIN_BAND_PIXELS, and a few bands per thread at most to keep the per band overhead low
+        int minRows = Math.max(1, Math.max(MIN_BAND_PIXELS / Math.max(1, width), height / (parallelism * 4)));
+        if (parallelism == 1 || height <= minRows) {
+            operation.apply(0, height);
+        } else {
+            POOL.invoke(new BandTask(operation, 0, height, minRows));
+        }
+    }
+
+    /**
+     * Same as {@link #process(int, int, RowBandOperation)}, except that the operation is given bands of columns
+     */
+    public static void processColumns(int width, int height, RowBandOperation operation) {
+        process(height, width, operation);
+    }
+
+    protected static class BandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final RowBandOperation operation;
+        protected final int startRow;
+        protected final int endRow;
+        protected final int minRows;
+
+        public BandTask(RowBandOperation operation, int startRow, int endRow, int minRows) {
+            this.operation = operation;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.minRows = minRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - startRow <= minRows) {
+                operation.apply(startRow, endRow);
+            } else {
+                int middle = (startRow + endRow) >>> 1;
+                invokeAll(new BandTask(operation, startRow, middle, minRows),
+                        new BandTask(operation, middle, endRow, minRows));
+            }
+        }
+    }
+}
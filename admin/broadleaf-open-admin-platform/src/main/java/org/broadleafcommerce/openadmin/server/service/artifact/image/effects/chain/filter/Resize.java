@@ -125,25 +125,42 @@ public class Resize extends BaseFilter {
         return dst;
     }
     
-    private BufferedImage getScaledInstance(BufferedImage img, int targetWidth, int targetHeight, Object hint, boolean higherQuality, boolean maintainAspectRatio, boolean reduceOnly) {
-        BufferedImage ret = (BufferedImage) img;
-        int w, h, destW, destH;
+    /**
+     * Returns the width and height of the image this filter produces from a source of the given size, or null if it
+     * returns the source unchanged
+     */
+    public int[] getResultDimensions(int width, int height) {
+        if (width <= targetWidth && height <= targetHeight && reduceOnly) {
+            return null;
+        }
+        int destW, destH;
 
         if (maintainAspectRatio) {
-            int wDiff = Math.abs(img.getWidth() - targetWidth);
-            int hDiff = Math.abs(img.getHeight() - targetHeight);
+            int wDiff = Math.abs(width - targetWidth);
+            int hDiff = Math.abs(height - targetHeight);
             if (wDiff > hDiff) {
                 destH = targetHeight;
-                destW = Double.valueOf((((double) img.getWidth()) * ((double) destH))/((double) img.getHeight())).intValue();
+                destW = Double.valueOf((((double) width) * ((double) destH))/((double) height)).intValue();
             } else {
                 destW = targetWidth;
-                destH = Double.valueOf((((double) img.getHeight()) * ((double) destW))/((double) img.getWidth())).intValue();
+                destH = Double.valueOf((((double) height) * ((double) destW))/((double) width)).intValue();
             }
         } else {
             destW = targetWidth;
             destH = targetHeight;
         }
 
+        return new int[] { destW, destH };
+    }
+
+    private BufferedImage getScaledInstance(BufferedImage img, int targetWidth, int targetHeight, Object hint, boolean higherQuality, boolean maintainAspectRatio, boolean reduceOnly) {
+        BufferedImage ret = (BufferedImage) img;
+        int w, h;
+
+        int[] dimensions = getResultDimensions(img.getWidth(), img.getHeight());
+        int destW = dimensions[0];
+        int destH = dimensions[1];
+
         if (higherQuality) {
             // Use multi-step technique: start with original size, then
             // scale down in multiple passes with drawImage()
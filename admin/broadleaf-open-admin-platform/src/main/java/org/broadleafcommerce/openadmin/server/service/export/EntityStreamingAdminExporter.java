@@ -0,0 +1,564 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service.export;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.BroadleafEnumerationType;
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.common.presentation.client.SupportedFieldType;
+import org.broadleafcommerce.common.presentation.client.VisibilityEnum;
+import org.broadleafcommerce.common.util.FormatUtil;
+import org.broadleafcommerce.openadmin.dto.BasicFieldMetadata;
+import org.broadleafcommerce.openadmin.dto.CriteriaTransferObject;
+import org.broadleafcommerce.openadmin.dto.FieldMetadata;
+import org.broadleafcommerce.openadmin.dto.PersistencePackage;
+import org.broadleafcommerce.openadmin.dto.PersistencePerspective;
+import org.broadleafcommerce.openadmin.dto.Property;
+import org.broadleafcommerce.openadmin.dto.SortDirection;
+import org.broadleafcommerce.openadmin.server.dao.DynamicEntityDao;
+import org.broadleafcommerce.openadmin.server.service.persistence.ArchiveStatusPersistenceEventHandler;
+import org.broadleafcommerce.openadmin.server.service.persistence.PersistenceManagerFactory;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.EmptyFilterValues;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.FieldManager;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.FieldNotAvailableException;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.CriteriaTranslator;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.FieldPath;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.FieldPathBuilder;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.FilterMapping;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.Restriction;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.predicate.PredicateProvider;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import javax.servlet.ServletOutputStream;
+
+/**
+ * <p>
+ * Generic {@link AdminExporter} that streams every instance of {@link #getCeilingEntity()} as CSV or JSON. Unlike
+ * exporters built on the admin fetch pipeline, records are read with keyset paging over the entity's id rather than
+ * offset paging, each page is written straight to the response and the persistence context is cleared before the next
+ * page is read, so memory use does not grow with the number of exported records.
+ * </p>
+ * <p>
+ * Pages are still read through the {@link CriteriaTranslator}, so the admin user's row level security restrictions
+ * apply, and archived records are left out the same way {@link ArchiveStatusPersistenceEventHandler} leaves them out
+ * of admin list grids. The to-one associations behind dotted field names are loaded with one query per page and
+ * association rather than lazily for every record.
+ * </p>
+ * <p>
+ * The exported columns are the simple (non-collection) fields of the entity's merged admin {@link FieldMetadata},
+ * leaving out excluded, hidden and password fields. Many-to-one fields are exported as the id of the referenced
+ * entity. Exporters are registered through the <b>blAdminExporters</b> list, for instance:
+ * <pre>
+ * {@code
+ * <bean class="org.broadleafcommerce.openadmin.server.service.export.EntityStreamingAdminExporter">
+ *     <property name="name" value="orderCsvExport" />
+ *     <property name="friendlyName" value="All Orders (CSV)" />
+ *     <property name="type" value="org.broadleafcommerce.core.order.domain.Order" />
+ *     <property name="ceilingEntity" value="org.broadleafcommerce.core.order.domain.Order" />
+ *     <property name="fileName" value="orders.csv" />
+ * </bean>
+ * }
+ * </pre>
+ * </p>
+ * <p>
+ * Clearing the persistence context detaches anything else the current request has loaded, so this exporter should only
+ * be used from requests that do nothing but export, such as {@code AdminExportController#export}.
+ * </p>
+ */
+public class EntityStreamingAdminExporter implements AdminExporter {
+
+    private static final Log LOG = LogFactory.getLog(EntityStreamingAdminExporter.class);
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON = "json";
+
+    @Resource(name = "blDynamicEntityDao")
+    protected DynamicEntityDao dynamicEntityDao;
+
+    @Resource(name = "blCriteriaTranslator")
+    protected CriteriaTranslator criteriaTranslator;
+
+    @Resource(name = "blArchiveStatusPersistenceEventHandler")
+    protected ArchiveStatusPersistenceEventHandler archiveStatusPersistenceEventHandler;
+
+    @Value("${admin.export.pageSize:500}")
+    protected int pageSize = 500;
+
+    protected String name;
+    protected String friendlyName;
+    protected String type;
+    protected String fileName;
+    protected String ceilingEntity;
+    protected String format = FORMAT_CSV;
+
+    @Override
+    public void writeExport(ServletOutputStream out, Map<String, String> params) throws IOException {
+        Class<?> entityClass = dynamicEntityDao.getCeilingImplClass(ceilingEntity);
+        String idProperty = (String) dynamicEntityDao.getIdMetadata(entityClass).get("name");
+        List<BasicFieldMetadata> fields = getExportFields();
+
+        RecordWriter writer = FORMAT_JSON.equalsIgnoreCase(format) ? new JsonRecordWriter(out) : new CsvRecordWriter(out);
+        writer.start(fields);
+
+        EntityManager em = dynamicEntityDao.getStandardEntityManager();
+        FieldManager fieldManager = dynamicEntityDao.getFieldManager();
+        List<FilterMapping> filterMappings = getFilterMappings(entityClass);
+        List<String> associationQueries = getAssociationQueries(em.getMetamodel(), entityClass, idProperty, fields);
+        SimpleDateFormat dateFormat = FormatUtil.getDateFormat();
+        List<String> values = new ArrayList<String>(fields.size());
+        Object lastId = null;
+        long count = 0;
+        List<?> page;
+        do {
+            page = readPage(filterMappings, idProperty, lastId);
+            loadAssociations(em, associationQueries, page);
+            for (Object record : page) {
+                values.clear();
+                for (BasicFieldMetadata field : fields) {
+                    values.add(getValue(fieldManager, record, field, dateFormat));
+                }
+                writer.write(fields, values);
+                lastId = dynamicEntityDao.getIdentifier(record);
+            }
+            count += page.size();
+            writer.flush();
+            // Everything on this page has been written, so there is no reason to keep it in the persistence context
+            em.clear();
+        } while (page.size() >= pageSize);
+
+        writer.finish();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Exported %s records of %s", count, ceilingEntity));
+        }
+    }
+
+    /**
+     * Reads the records following <b>lastId</b> through the {@link CriteriaTranslator}, which adds the row level security
+     * restrictions of the current admin user to the given filter mappings.
+     */
+    protected List<?> readPage(List<FilterMapping> filterMappings, String idProperty, Object lastId) {
+        List<FilterMapping> pageFilterMappings = new ArrayList<FilterMapping>(filterMappings);
+        pageFilterMappings.add(buildKeysetFilterMapping(idProperty, lastId));
+        return criteriaTranslator.translateQuery(dynamicEntityDao, ceilingEntity, pageFilterMappings, null, pageSize)
+                .getResultList();
+    }
+
+    /**
+     * @return a filter mapping that sorts by id and, after the first page, restricts to the ids following <b>lastId</b>
+     */
+    protected FilterMapping buildKeysetFilterMapping(String idProperty, final Object lastId) {
+        return new FilterMapping()
+            .withFieldPath(new FieldPath().withTargetProperty(idProperty))
+            .withDirectFilterValues(new EmptyFilterValues())
+            .withSortDirection(SortDirection.ASCENDING)
+            .withRestriction(new Restriction()
+                    .withPredicateProvider(new PredicateProvider<Comparable, Comparable>() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Predicate buildPredicate(CriteriaBuilder builder, FieldPathBuilder fieldPathBuilder,
+                                                        From root, String ceilingEntity, String fullPropertyName,
+                                                        Path<Comparable> explicitPath, List<Comparable> directValues) {
+                            return lastId == null ? null : builder.greaterThan(explicitPath, (Comparable) lastId);
+                        }
+                    })
+            );
+    }
+
+    /**
+     * @return the filter mappings the admin fetch pipeline adds to every list grid of the ceiling entity, which leave out
+     * archived records
+     */
+    protected List<FilterMapping> getFilterMappings(Class<?> entityClass) {
+        PersistencePackage persistencePackage = new PersistencePackage();
+        persistencePackage.setCeilingEntityFullyQualifiedClassname(ceilingEntity);
+        persistencePackage.setPersistencePerspective(new PersistencePerspective());
+        CriteriaTransferObject cto = new CriteriaTransferObject();
+        try {
+            archiveStatusPersistenceEventHandler.preFetch(PersistenceManagerFactory.getPersistenceManager(entityClass),
+                    persistencePackage, cto);
+        } catch (ServiceException e) {
+            throw new RuntimeException(e);
+        }
+        return cto.getAdditionalFilterMappings();
+    }
+
+    /**
+     * Builds a query for each to-one association on the way to a dotted field, such as <b>defaultSku</b> for
+     * <b>defaultSku.name</b>, that selects the associated entities of a page of records. Embedded paths are followed
+     * without a query, and fields that only exist on a subtype of the ceiling entity are skipped.
+     */
+    protected List<String> getAssociationQueries(Metamodel metamodel, Class<?> entityClass, String idProperty,
+            List<BasicFieldMetadata> fields) {
+        ManagedType<?> root;
+        try {
+            root = metamodel.managedType(entityClass);
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+        Set<String> queries = new LinkedHashSet<String>();
+        for (BasicFieldMetadata field : fields) {
+            String[] segments = field.getName().split("\\.");
+            ManagedType<?> type = root;
+            StringBuilder joins = new StringBuilder();
+            String alias = "entity";
+            String path = null;
+            for (int i = 0; i < segments.length - 1; i++) {
+                Attribute<?, ?> attribute;
+                try {
+                    attribute = type.getAttribute(segments[i]);
+                } catch (IllegalArgumentException e) {
+                    break;
+                }
+                if (attribute.isCollection() || !(attribute instanceof SingularAttribute)) {
+                    break;
+                }
+                Type<?> attributeType = ((SingularAttribute<?, ?>) attribute).getType();
+                if (!(attributeType instanceof ManagedType)) {
+                    break;
+                }
+                path = path == null ? segments[i] : path + "." + segments[i];
+                if (attribute.isAssociation()) {
+                    String joinAlias = "association" + i;
+                    joins.append(" JOIN ").append(alias).append('.').append(path).append(' ').append(joinAlias);
+                    alias = joinAlias;
+                    path = null;
+                    queries.add("SELECT " + alias + " FROM " + entityClass.getName() + " entity" + joins
+                            + " WHERE entity." + idProperty + " IN :ids");
+                }
+                type = (ManagedType<?>) attributeType;
+            }
+        }
+        return new ArrayList<String>(queries);
+    }
+
+    /**
+     * Loads the associations of the records on the page into the persistence context, so reading their dotted fields
+     * does not hit the database again for every record.
+     */
+    protected void loadAssociations(EntityManager em, List<String> associationQueries, List<?> page) {
+        if (associationQueries.isEmpty() || page.isEmpty()) {
+            return;
+        }
+        List<Object> ids = new ArrayList<Object>(page.size());
+        for (Object record : page) {
+            ids.add(dynamicEntityDao.getIdentifier(record));
+        }
+        for (String associationQuery : associationQueries) {
+            em.createQuery(associationQuery).setParameter("ids", ids).getResultList();
+        }
+    }
+
+    /**
+     * @return the fields to export, in the order they are displayed in the admin
+     */
+    protected List<BasicFieldMetadata> getExportFields() {
+        Map<String, FieldMetadata> mergedProperties;
+        try {
+            mergedProperties = dynamicEntityDao.getMergedProperties(Class.forName(ceilingEntity));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unable to find the ceiling entity " + ceilingEntity, e);
+        }
+        List<BasicFieldMetadata> fields = new ArrayList<BasicFieldMetadata>();
+        for (Map.Entry<String, FieldMetadata> entry : mergedProperties.entrySet()) {
+            if (entry.getValue() instanceof BasicFieldMetadata) {
+                BasicFieldMetadata metadata = (BasicFieldMetadata) entry.getValue();
+                if (isExportable(metadata)) {
+                    fields.add(metadata);
+                }
+            }
+        }
+        Collections.sort(fields, new Comparator<BasicFieldMetadata>() {
+            @Override
+            public int compare(BasicFieldMetadata o1, BasicFieldMetadata o2) {
+                int order1 = o1.getOrder() == null ? Integer.MAX_VALUE : o1.getOrder();
+                int order2 = o2.getOrder() == null ? Integer.MAX_VALUE : o2.getOrder();
+                if (order1 != order2) {
+                    return order1 < order2 ? -1 : 1;
+                }
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return fields;
+    }
+
+    protected boolean isExportable(BasicFieldMetadata metadata) {
+        if (metadata.getName() == null || Boolean.TRUE.equals(metadata.getExcluded())
+                || VisibilityEnum.HIDDEN_ALL == metadata.getVisibility()) {
+            return false;
+        }
+        SupportedFieldType fieldType = metadata.getFieldType();
+        return fieldType != SupportedFieldType.PASSWORD && fieldType != SupportedFieldType.PASSWORD_CONFIRM;
+    }
+
+    protected String getValue(FieldManager fieldManager, Object record, BasicFieldMetadata field, SimpleDateFormat dateFormat) {
+        Object value;
+        try {
+            value = fieldManager.getFieldValue(record, field.getName());
+        } catch (FieldNotAvailableException e) {
+            // The field belongs to a different type in the polymorphic hierarchy than this record
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp) {
+            return dateFormat.format(new Date(((Timestamp) value).getTime()));
+        }
+        if (value instanceof Date) {
+            return dateFormat.format((Date) value);
+        }
+        if (value instanceof Calendar) {
+            return dateFormat.format(((Calendar) value).getTime());
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof BroadleafEnumerationType) {
+            return ((BroadleafEnumerationType) value).getType();
+        }
+        if (value instanceof Serializable && field.getForeignKeyClass() != null) {
+            Serializable id = dynamicEntityDao.getIdentifier(value);
+            return id == null ? null : id.toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Writes records in a particular format without holding on to them.
+     */
+    protected interface RecordWriter {
+
+        void start(List<BasicFieldMetadata> fields) throws IOException;
+
+        void write(List<BasicFieldMetadata> fields, List<String> values) throws IOException;
+
+        void flush() throws IOException;
+
+        void finish() throws IOException;
+
+    }
+
+    /**
+     * RFC 4180 CSV with a header row of field names.
+     */
+    protected static class CsvRecordWriter implements RecordWriter {
+
+        protected final Writer writer;
+
+        public CsvRecordWriter(ServletOutputStream out) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void start(List<BasicFieldMetadata> fields) throws IOException {
+            List<String> names = new ArrayList<String>(fields.size());
+            for (BasicFieldMetadata field : fields) {
+                names.add(field.getName());
+            }
+            write(fields, names);
+        }
+
+        @Override
+        public void write(List<BasicFieldMetadata> fields, List<String> values) throws IOException {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeValue(values.get(i));
+            }
+            writer.write("\r\n");
+        }
+
+        protected void writeValue(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+    }
+
+    /**
+     * A JSON array with one object per record, keyed by field name.
+     */
+    protected static class JsonRecordWriter implements RecordWriter {
+
+        protected final JsonGenerator generator;
+
+        public JsonRecordWriter(ServletOutputStream out) throws IOException {
+            generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void start(List<BasicFieldMetadata> fields) throws IOException {
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void write(List<BasicFieldMetadata> fields, List<String> values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.size(); i++) {
+                generator.writeStringField(fields.get(i).getName(), values.get(i));
+            }
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getFriendlyName() {
+        return friendlyName;
+    }
+
+    public void setFriendlyName(String friendlyName) {
+        this.friendlyName = friendlyName;
+    }
+
+    @Override
+    public List<Property> getCriteriaFields() {
+        return null;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return the fully qualified class name of the entity to export, as used for its admin section
+     */
+    public String getCeilingEntity() {
+        return ceilingEntity;
+    }
+
+    public void setCeilingEntity(String ceilingEntity) {
+        this.ceilingEntity = ceilingEntity;
+    }
+
+    /**
+     * @return {@link #FORMAT_CSV} (the default) or {@link #FORMAT_JSON}
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+}
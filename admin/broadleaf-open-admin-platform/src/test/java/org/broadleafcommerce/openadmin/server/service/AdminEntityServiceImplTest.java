@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service;
+
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.openadmin.dto.ClassMetadata;
+import org.broadleafcommerce.openadmin.dto.DynamicResultSet;
+import org.broadleafcommerce.openadmin.dto.Entity;
+import org.broadleafcommerce.openadmin.dto.FilterAndSortCriteria;
+import org.broadleafcommerce.openadmin.dto.Property;
+import org.broadleafcommerce.openadmin.dto.SectionCrumb;
+import org.broadleafcommerce.openadmin.server.service.persistence.PersistenceResponse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+public class AdminEntityServiceImplTest extends TestCase {
+
+    protected RecordingAdminEntityService service;
+    protected ClassMetadata cmd;
+    protected Entity containingEntity;
+    protected Map<String, Object> requestAttributes;
+
+    @Override
+    protected void setUp() throws Exception {
+        service = new RecordingAdminEntityService();
+        cmd = new ClassMetadata();
+        cmd.setCeilingType("org.broadleafcommerce.core.catalog.domain.Product");
+        containingEntity = new Entity();
+        containingEntity.setType(new String[] { "org.broadleafcommerce.core.catalog.domain.ProductImpl" });
+        Property id = new Property();
+        id.setName("id");
+        id.setValue("1");
+        containingEntity.setProperties(new Property[] { id });
+
+        requestAttributes = new ConcurrentHashMap<>();
+        requestAttributes.put("blSandBox", "original");
+        BroadleafRequestContext context = new BroadleafRequestContext();
+        context.setRequest(request(requestAttributes));
+        BroadleafRequestContext.setBroadleafRequestContext(context);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        service.destroy();
+        BroadleafRequestContext.setBroadleafRequestContext(null);
+    }
+
+    public void testSequentialFetchUsesTheCallersObjects() throws Exception {
+        Map<String, DynamicResultSet> results = service.getRecordsForCollections(cmd, containingEntity,
+                properties("skus", "allParentCategoryXrefs"), null, null, null);
+
+        assertEquals(Arrays.asList("skus", "allParentCategoryXrefs"), new ArrayList<>(results.keySet()));
+        for (Fetch fetch : service.fetches.values()) {
+            assertSame(Thread.currentThread(), fetch.thread);
+            assertSame(cmd, fetch.cmd);
+            assertSame(containingEntity, fetch.containingEntity);
+        }
+    }
+
+    public void testParallelFetchSharesOneCopyAcrossWorkers() throws Exception {
+        service.parallelSubCollectionFetch = true;
+        service.subCollectionFetchThreads = 2;
+        service.init();
+        service.barrier = new CountDownLatch(2);
+
+        Map<String, DynamicResultSet> results = service.getRecordsForCollections(cmd, containingEntity,
+                properties("skus", "allParentCategoryXrefs"), null, null, null);
+
+        assertEquals(Arrays.asList("skus", "allParentCategoryXrefs"), new ArrayList<>(results.keySet()));
+        assertEquals("skus", results.get("skus").getRecords()[0].getType()[0]);
+        assertEquals("allParentCategoryXrefs", results.get("allParentCategoryXrefs").getRecords()[0].getType()[0]);
+
+        Fetch skus = service.fetches.get("skus");
+        Fetch xrefs = service.fetches.get("allParentCategoryXrefs");
+        assertNotSame(Thread.currentThread(), skus.thread);
+        assertNotSame(Thread.currentThread(), xrefs.thread);
+        assertNotSame(skus.thread, xrefs.thread);
+
+        assertNotSame(cmd, skus.cmd);
+        assertSame("The metadata should be copied once per call", skus.cmd, xrefs.cmd);
+        assertEquals(cmd.getCeilingType(), skus.cmd.getCeilingType());
+        assertNotSame(containingEntity, skus.containingEntity);
+        assertSame("The entity should be copied once per call", skus.containingEntity, xrefs.containingEntity);
+        assertEquals("1", skus.containingEntity.findProperty("id").getValue());
+        assertNotSame(skus.request, xrefs.request);
+    }
+
+    public void testParallelFetchKeepsRequestAttributesPrivate() throws Exception {
+        service.parallelSubCollectionFetch = true;
+        service.subCollectionFetchThreads = 2;
+        service.init();
+        service.barrier = new CountDownLatch(2);
+
+        service.getRecordsForCollections(cmd, containingEntity, properties("skus", "allParentCategoryXrefs"), null,
+                null, null);
+
+        assertEquals("original", service.fetches.get("skus").sandBoxAttribute);
+        assertEquals("original", service.fetches.get("allParentCategoryXrefs").sandBoxAttribute);
+        assertEquals("original", requestAttributes.get("blSandBox"));
+        assertFalse(requestAttributes.containsKey("skus"));
+        assertFalse(requestAttributes.containsKey("allParentCategoryXrefs"));
+        assertEquals("skus", service.fetches.get("skus").request.getAttribute("skus"));
+        assertNull(service.fetches.get("skus").request.getAttribute("allParentCategoryXrefs"));
+    }
+
+    public void testWorkerFailureIsRethrown() throws Exception {
+        service.parallelSubCollectionFetch = true;
+        service.subCollectionFetchThreads = 2;
+        service.init();
+        service.failing = "allParentCategoryXrefs";
+
+        try {
+            service.getRecordsForCollections(cmd, containingEntity, properties("skus", "allParentCategoryXrefs"),
+                    null, null, null);
+            fail("Expected the worker's exception");
+        } catch (IllegalStateException e) {
+            assertEquals("allParentCategoryXrefs", e.getMessage());
+        }
+    }
+
+    protected List<Property> properties(String... names) {
+        List<Property> properties = new ArrayList<>();
+        for (String name : names) {
+            Property property = new Property();
+            property.setName(name);
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    protected HttpServletRequest request(final Map<String, Object> attributes) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getAttribute":
+                                return attributes.get(args[0]);
+                            case "getAttributeNames":
+                                return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+                            case "setAttribute":
+                                attributes.put((String) args[0], args[1]);
+                                return null;
+                            case "removeAttribute":
+                                attributes.remove(args[0]);
+                                return null;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    protected static class Fetch {
+
+        protected Thread thread;
+        protected ClassMetadata cmd;
+        protected Entity containingEntity;
+        protected HttpServletRequest request;
+        protected Object sandBoxAttribute;
+    }
+
+    protected static class RecordingAdminEntityService extends AdminEntityServiceImpl {
+
+        protected final Map<String, Fetch> fetches = Collections.synchronizedMap(new HashMap<String, Fetch>());
+        protected CountDownLatch barrier;
+        protected String failing;
+
+        @Override
+        public PersistenceResponse getRecordsForCollection(ClassMetadata containingClassMetadata,
+                Entity containingEntity, Property collectionProperty, FilterAndSortCriteria[] fascs,
+                Integer startIndex, Integer maxIndex, List<SectionCrumb> sectionCrumb) throws ServiceException {
+            String name = collectionProperty.getName();
+            if (name.equals(failing)) {
+                throw new IllegalStateException(name);
+            }
+            if (barrier != null) {
+                barrier.countDown();
+                try {
+                    assertTrue(barrier.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new ServiceException(e);
+                }
+            }
+            Fetch fetch = new Fetch();
+            fetch.thread = Thread.currentThread();
+            fetch.cmd = containingClassMetadata;
+            fetch.containingEntity = containingEntity;
+            fetch.request = BroadleafRequestContext.getBroadleafRequestContext().getRequest();
+            fetch.sandBoxAttribute = fetch.request.getAttribute("blSandBox");
+            fetch.request.setAttribute(name, name);
+            fetches.put(name, fetch);
+
+            Entity record = new Entity();
+            record.setType(new String[] { name });
+            DynamicResultSet drs = new DynamicResultSet();
+            drs.setRecords(new Entity[] { record });
+            return new PersistenceResponse().withDynamicResultSet(drs);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.broadleafcommerce.common.presentation.client.SupportedFieldType;
+import org.broadleafcommerce.openadmin.dto.BasicCollectionMetadata;
+import org.broadleafcommerce.openadmin.dto.BasicFieldMetadata;
+import org.broadleafcommerce.openadmin.dto.ClassMetadata;
+import org.broadleafcommerce.openadmin.dto.Entity;
+import org.broadleafcommerce.openadmin.dto.FieldMetadata;
+import org.broadleafcommerce.openadmin.dto.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the copies {@link AdminEntityServiceImpl#getRecordsForCollections} hands to its parallel
+ * sub-collection workers: one copy of the {@link ClassMetadata} and containing {@link Entity} per collection
+ * property, against a single copy per request shared read-only by every worker.
+ *
+ * The metadata resembles a large entity form (basic fields plus collection fields) and the entity carries a value
+ * for each of them. Run with the main method (the test classpath must include jmh-core and its annotation processor).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubCollectionFetchBenchmark {
+
+    @Param({"50", "200"})
+    protected int propertyCount;
+
+    @Param({"4", "12"})
+    protected int collectionCount;
+
+    protected ClassMetadata cmd;
+    protected Entity containingEntity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Property> metadataProperties = new ArrayList<Property>();
+        List<Property> entityProperties = new ArrayList<Property>();
+        for (int i = 0; i < propertyCount; i++) {
+            BasicFieldMetadata metadata = new BasicFieldMetadata();
+            metadata.setFieldType(SupportedFieldType.STRING);
+            metadata.setLength(255);
+            metadata.setRequired(i % 5 == 0);
+            metadata.setProminent(i % 7 == 0);
+            metadata.setGridOrder(i);
+            metadata.setHelpText("Help text for field " + i);
+            metadata.setName("field" + i);
+            addProperty(metadataProperties, entityProperties, "field" + i, metadata);
+        }
+        for (int i = 0; i < collectionCount; i++) {
+            BasicCollectionMetadata metadata = new BasicCollectionMetadata();
+            metadata.setCollectionCeilingEntity("org.broadleafcommerce.core.catalog.domain.Collection" + i);
+            metadata.setSortProperty("sequence");
+            addProperty(metadataProperties, entityProperties, "collection" + i, metadata);
+        }
+
+        cmd = new ClassMetadata();
+        cmd.setCeilingType("org.broadleafcommerce.core.catalog.domain.Product");
+        cmd.setProperties(metadataProperties.toArray(new Property[metadataProperties.size()]));
+        containingEntity = new Entity();
+        containingEntity.setType(new String[] { "org.broadleafcommerce.core.catalog.domain.ProductImpl" });
+        containingEntity.setProperties(entityProperties.toArray(new Property[entityProperties.size()]));
+    }
+
+    @Benchmark
+    public int copyPerCollection() {
+        int copies = 0;
+        for (int i = 0; i < collectionCount; i++) {
+            copies += copy();
+        }
+        return copies;
+    }
+
+    @Benchmark
+    public int copyPerRequest() {
+        return copy();
+    }
+
+    protected int copy() {
+        ClassMetadata workerCmd = SerializationUtils.clone(cmd);
+        Entity workerContainingEntity = SerializationUtils.clone(containingEntity);
+        return workerCmd.getProperties().length + workerContainingEntity.getProperties().length;
+    }
+
+    protected static void addProperty(List<Property> metadataProperties, List<Property> entityProperties, String name,
+            FieldMetadata metadata) {
+        metadata.setFieldName(name);
+        metadata.setFriendlyName(name);
+        metadata.setOwningClass("org.broadleafcommerce.core.catalog.domain.ProductImpl");
+        metadata.setTab("General");
+        metadata.setGroup("General");
+        Property metadataProperty = new Property();
+        metadataProperty.setName(name);
+        metadataProperty.setMetadata(metadata);
+        metadataProperties.add(metadataProperty);
+        entityProperties.add(new Property(name, "value of " + name));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(SubCollectionFetchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
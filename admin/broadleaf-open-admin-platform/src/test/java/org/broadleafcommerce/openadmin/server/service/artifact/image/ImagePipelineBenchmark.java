@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service.artifact.image;
+
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.EffectsManager;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.conversion.ConversionManager;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.AlterHSB;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.AutoLevelsRGB;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.GaussianBlur;
+import org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter.UnsharpMask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * JMH benchmarks for the image pipeline behind static asset derivatives: full conversions through
+ * {@link ImageArtifactProcessor} (with and without subsampled decoding) and the individual effects filters on a
+ * decoded image.
+ *
+ * By default the source is a generated 4000x4000 JPEG resembling a product photo (a lit, rounded object with a
+ * shadow on a gradient backdrop plus sensor noise). Pass -Dbenchmark.image=/path/to/photo.jpg to use a real photo.
+ * Run with the main method (the test classpath must include jmh-core and its annotation processor).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImagePipelineBenchmark {
+
+    protected static final int SIZE = 4000;
+
+    protected byte[] jpeg;
+    protected BufferedImage decoded;
+    protected ImageArtifactProcessor processor;
+    protected ImageArtifactProcessor fullDecodeProcessor;
+    protected Map<String, String> thumbnailParameters;
+    protected Map<String, String> colorAdjustedParameters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String imagePath = System.getProperty("benchmark.image");
+        jpeg = imagePath == null ? encodeJpeg(generateProductPhoto(SIZE, SIZE)) : Files.readAllBytes(new File(imagePath).toPath());
+        decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        if (decoded.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage rgb = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.drawImage(decoded, 0, 0, null);
+            g.dispose();
+            decoded = rgb;
+        }
+
+        EffectsManager effectsManager = new EffectsManager();
+        effectsManager.setConversionManager(new ConversionManager());
+        processor = new ImageArtifactProcessor();
+        processor.effectsManager = effectsManager;
+        processor.setSubsamplingHeadroom(3);
+        fullDecodeProcessor = new ImageArtifactProcessor();
+        fullDecodeProcessor.effectsManager = effectsManager;
+        fullDecodeProcessor.setSubsamplingHeadroom(0);
+
+        thumbnailParameters = new HashMap<String, String>();
+        thumbnailParameters.put("resize-width-amount", "300");
+        thumbnailParameters.put("resize-height-amount", "300");
+        thumbnailParameters.put("resize-high-quality", "true");
+        thumbnailParameters.put("resize-maintain-aspect-ratio", "true");
+        thumbnailParameters.put("resize-reduce-only", "true");
+
+        colorAdjustedParameters = new HashMap<String, String>(thumbnailParameters);
+        colorAdjustedParameters.put("alterhsb-hue-amount", "1");
+        colorAdjustedParameters.put("alterhsb-saturation-amount", "1.2");
+        colorAdjustedParameters.put("alterhsb-brightness-amount", "1.05");
+    }
+
+    @Benchmark
+    public int thumbnail() throws Exception {
+        return convert(processor, thumbnailParameters);
+    }
+
+    @Benchmark
+    public int thumbnailFullDecode() throws Exception {
+        return convert(fullDecodeProcessor, thumbnailParameters);
+    }
+
+    @Benchmark
+    public int colorAdjustedThumbnail() throws Exception {
+        return convert(processor, colorAdjustedParameters);
+    }
+
+    @Benchmark
+    public BufferedImage alterHsb() {
+        return new AlterHSB(1F, 1.2F, 1.05F, null).filter(decoded, null);
+    }
+
+    @Benchmark
+    public BufferedImage autoLevels() {
+        return new AutoLevelsRGB(null).filter(decoded, null);
+    }
+
+    @Benchmark
+    public BufferedImage gaussianBlur() {
+        return new GaussianBlur(5, 2, null).filter(decoded, null);
+    }
+
+    @Benchmark
+    public BufferedImage unsharpMask() {
+        return new UnsharpMask(1.5F, 3, null).filter(decoded, null);
+    }
+
+    protected int convert(ImageArtifactProcessor artifactProcessor, Map<String, String> parameters) throws Exception {
+        InputStream original = new BufferedInputStream(new ByteArrayInputStream(jpeg));
+        original.mark(0);
+        Operation[] operations = artifactProcessor.buildOperations(new HashMap<String, String>(parameters), original, "image/jpeg");
+        InputStream converted = artifactProcessor.convert(original, operations, "image/jpeg");
+        return converted.available();
+    }
+
+    protected static BufferedImage generateProductPhoto(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, new Color(245, 245, 242), 0, height, new Color(200, 200, 196)));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(60, 60, 60, 90));
+        g.fill(new Ellipse2D.Double(width * 0.2, height * 0.78, width * 0.6, height * 0.08));
+        g.setPaint(new GradientPaint(width * 0.25F, height * 0.2F, new Color(180, 40, 35), width * 0.75F, height * 0.8F, new Color(90, 15, 20)));
+        g.fill(new RoundRectangle2D.Double(width * 0.25, height * 0.15, width * 0.5, height * 0.65, width * 0.12, height * 0.12));
+        g.setPaint(new GradientPaint(width * 0.3F, height * 0.2F, new Color(255, 255, 255, 140), width * 0.45F, height * 0.5F, new Color(255, 255, 255, 0)));
+        g.fill(new Ellipse2D.Double(width * 0.3, height * 0.2, width * 0.15, height * 0.35));
+        g.dispose();
+
+        Random random = new Random(4000);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(9) - 4;
+                int r = Math.max(0, Math.min(255, ((row[x] >> 16) & 0xff) + noise));
+                int gr = Math.max(0, Math.min(255, ((row[x] >> 8) & 0xff) + noise));
+                int b = Math.max(0, Math.min(255, (row[x] & 0xff) + noise));
+                row[x] = (r << 16) | (gr << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    protected static byte[] encodeJpeg(BufferedImage image) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9F);
+        MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes);
+        writer.setOutput(output);
+        writer.write(null, new IIOImage(image, null, null), param);
+        output.close();
+        writer.dispose();
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ImagePipelineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
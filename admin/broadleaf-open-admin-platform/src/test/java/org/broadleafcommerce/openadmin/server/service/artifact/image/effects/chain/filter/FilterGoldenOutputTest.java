@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service.artifact.image.effects.chain.filter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the output of the pixel filters against checksums recorded from the original, sequential implementations,
+ * for every common image type and for an image small enough to be processed inline as well as one large enough to be
+ * processed in parallel row bands.
+ */
+public class FilterGoldenOutputTest extends TestCase {
+
+    protected static final int[] IMAGE_TYPES = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY };
+
+    protected static final String[] IMAGE_TYPE_NAMES = { "TYPE_INT_RGB", "TYPE_INT_ARGB", "TYPE_3BYTE_BGR",
+            "TYPE_4BYTE_ABGR", "TYPE_BYTE_GRAY" };
+
+    protected static final int[][] IMAGE_SIZES = { { 37, 23 }, { 640, 480 } };
+
+    protected static final long[] GOLDEN_ALTER_RGB = { 0x518de739L, 0x7679292eL, 0x518de739L, 0x7679292eL, 0xd96fa360L };
+    protected static final long[] GOLDEN_ALTER_HSB = { 0x1de062b5L, 0x5a811546L, 0x1de062b5L, 0x5a811546L, 0x2c1f7e8bL };
+    protected static final long[] GOLDEN_AUTO_LEVELS_RGB = { 0x85f54b5dL, 0x788144bcL, 0x85f54b5dL, 0x788144bcL, 0x60517ac1L };
+    protected static final long[] GOLDEN_UNSHARP_MASK = { 0xffeefaa4L, 0xb9333273L, 0xffeefaa4L, 0xb9333273L, 0x7a9e0e5cL };
+    protected static final long[] GOLDEN_GAUSSIAN_BLUR = { 0xa20f7ae3L, 0x3367a32eL, 0xa20f7ae3L, 0x3367a32eL, 0x49a33956L };
+
+    /**
+     * Unlike the filters, these differ from the original implementation for the translucent images: getImage used to
+     * draw the pixels through a premultiplied pipeline, which rounded the color of translucent pixels. It now wraps
+     * them as they are (see {@link #testImageConverterRoundTripIsLossless()}).
+     */
+    protected static final long[] GOLDEN_IMAGE_CONVERTER = { 0x76f62affL, 0x8c184463L, 0x76f62affL, 0x8c184463L, 0x2c80b99fL };
+
+    public void testAlterRGB() {
+        assertGoldenOutput("AlterRGB", new AlterRGB(40, -30, 15, null), GOLDEN_ALTER_RGB);
+    }
+
+    public void testAlterHSB() {
+        assertGoldenOutput("AlterHSB", new AlterHSB(0.1F, -0.25F, 0.15F, null), GOLDEN_ALTER_HSB);
+    }
+
+    public void testAutoLevelsRGB() {
+        assertGoldenOutput("AutoLevelsRGB", new AutoLevelsRGB(null), GOLDEN_AUTO_LEVELS_RGB);
+    }
+
+    public void testUnsharpMask() {
+        assertGoldenOutput("UnsharpMask", new UnsharpMask(0.6F, 3, null), GOLDEN_UNSHARP_MASK);
+    }
+
+    public void testGaussianBlur() {
+        assertGoldenOutput("GaussianBlur", new GaussianBlur(5, 2, null), GOLDEN_GAUSSIAN_BLUR);
+    }
+
+    public void testImageConverter() {
+        long[] actual = new long[IMAGE_TYPES.length];
+        for (int i = 0; i < IMAGE_TYPES.length; i++) {
+            CRC32 crc = new CRC32();
+            for (int[] size : IMAGE_SIZES) {
+                BufferedImage source = createSource(IMAGE_TYPES[i], size[0], size[1]);
+                int[] pixels = ImageConverter.getPixels(source);
+                update(crc, ImageConverter.getImage(pixels, size[0], size[1]));
+                update(crc, ImageConverter.convertImage(source));
+            }
+            actual[i] = crc.getValue();
+        }
+        assertGolden("ImageConverter", GOLDEN_IMAGE_CONVERTER, actual);
+    }
+
+    public void testImageConverterRoundTripIsLossless() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage source = createSource(type, 37, 23);
+            int[] expected = source.getRGB(0, 0, 37, 23, null, 0, 37);
+            int[] pixels = ImageConverter.getPixels(source);
+            assertTrue(Arrays.equals(expected, pixels));
+            BufferedImage image = ImageConverter.getImage(pixels, 37, 23);
+            assertTrue(Arrays.equals(expected, image.getRGB(0, 0, 37, 23, null, 0, 37)));
+        }
+    }
+
+    protected void assertGoldenOutput(String name, BufferedImageOp filter, long[] golden) {
+        long[] actual = new long[IMAGE_TYPES.length];
+        for (int i = 0; i < IMAGE_TYPES.length; i++) {
+            CRC32 crc = new CRC32();
+            for (int[] size : IMAGE_SIZES) {
+                BufferedImage source = createSource(IMAGE_TYPES[i], size[0], size[1]);
+                update(crc, filter.filter(source, null));
+            }
+            actual[i] = crc.getValue();
+        }
+        assertGolden(name, golden, actual);
+    }
+
+    protected void assertGolden(String name, long[] golden, long[] actual) {
+        for (int i = 0; i < golden.length; i++) {
+            assertEquals(name + " output changed for " + IMAGE_TYPE_NAMES[i] + " (0x" + Long.toHexString(actual[i])
+                    + "L)", golden[i], actual[i]);
+        }
+    }
+
+    /**
+     * A noisy gradient with varying alpha, the same on every run
+     */
+    protected static BufferedImage createSource(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = x * 200 / width + random.nextInt(56);
+                int green = y * 200 / height + random.nextInt(56);
+                int blue = (x + y) * 200 / (width + height) + random.nextInt(56);
+                int alpha = 128 + random.nextInt(128);
+                image.setRGB(x, y, alpha << 24 | red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    protected static void update(CRC32 crc, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        updateInt(crc, width);
+        updateInt(crc, height);
+        for (int argb : image.getRGB(0, 0, width, height, null, 0, width)) {
+            updateInt(crc, argb);
+        }
+    }
+
+    protected static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * BroadleafCommerce Open Admin Platform
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.openadmin.server.service.export;
+
+import org.broadleafcommerce.openadmin.dto.BasicFieldMetadata;
+import org.broadleafcommerce.openadmin.dto.SortDirection;
+import org.broadleafcommerce.openadmin.server.dao.DynamicEntityDao;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.CriteriaTranslator;
+import org.broadleafcommerce.openadmin.server.service.persistence.module.criteria.FilterMapping;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+
+import junit.framework.TestCase;
+
+public class EntityStreamingAdminExporterTest extends TestCase {
+
+    protected EntityStreamingAdminExporter exporter;
+
+    @Override
+    protected void setUp() throws Exception {
+        exporter = new EntityStreamingAdminExporter();
+        exporter.setCeilingEntity(TestEntity.class.getName());
+        exporter.setPageSize(2);
+    }
+
+    public void testPagesAreReadThroughTheCriteriaTranslator() {
+        final List<Object> arguments = new ArrayList<Object>();
+        final List<?> page = Arrays.asList("first", "second");
+        exporter.criteriaTranslator = proxy(CriteriaTranslator.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals("translateQuery", method.getName());
+                arguments.addAll(Arrays.asList(args));
+                return proxy(TypedQuery.class, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        assertEquals("getResultList", method.getName());
+                        return page;
+                    }
+                });
+            }
+        });
+        FilterMapping archiveMapping = new FilterMapping();
+        List<FilterMapping> filterMappings = Collections.singletonList(archiveMapping);
+
+        assertSame(page, exporter.readPage(filterMappings, "id", 5L));
+
+        assertEquals(TestEntity.class.getName(), arguments.get(1));
+        List<?> pageFilterMappings = (List<?>) arguments.get(2);
+        assertEquals(2, pageFilterMappings.size());
+        assertSame(archiveMapping, pageFilterMappings.get(0));
+        FilterMapping keysetMapping = (FilterMapping) pageFilterMappings.get(1);
+        assertEquals("id", keysetMapping.getFieldPath().getTargetProperty());
+        assertEquals(SortDirection.ASCENDING, keysetMapping.getSortDirection());
+        assertNull(arguments.get(3));
+        assertEquals(2, arguments.get(4));
+        assertEquals("The shared filter mappings must not be modified", 1, filterMappings.size());
+    }
+
+    public void testKeysetRestrictionStartsAfterTheLastId() {
+        final Predicate greaterThan = proxy(Predicate.class, null);
+        final List<Object> comparedTo = new ArrayList<Object>();
+        CriteriaBuilder builder = proxy(CriteriaBuilder.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals("greaterThan", method.getName());
+                comparedTo.add(args[1]);
+                return greaterThan;
+            }
+        });
+        Path<?> path = proxy(Path.class, null);
+
+        FilterMapping firstPage = exporter.buildKeysetFilterMapping("id", null);
+        assertNull(firstPage.getRestriction().getPredicateProvider()
+                .buildPredicate(builder, null, null, null, "id", path, Collections.emptyList()));
+        assertTrue(comparedTo.isEmpty());
+
+        FilterMapping nextPage = exporter.buildKeysetFilterMapping("id", 5L);
+        assertSame(greaterThan, nextPage.getRestriction().getPredicateProvider()
+                .buildPredicate(builder, null, null, null, "id", path, Collections.emptyList()));
+        assertEquals(Collections.<Object>singletonList(5L), comparedTo);
+    }
+
+    public void testAssociationQueriesFollowToOneAssociationsOnly() {
+        ManagedType<?> product = managedType(Collections.singletonMap("name", basic()));
+        Map<String, SingularAttribute<?, ?>> skuAttributes = new HashMap<String, SingularAttribute<?, ?>>();
+        skuAttributes.put("name", basic());
+        skuAttributes.put("defaultProduct", singular(product, true));
+        ManagedType<?> sku = managedType(skuAttributes);
+        ManagedType<?> user = managedType(Collections.singletonMap("login", basic()));
+        ManagedType<?> audit = managedType(Collections.singletonMap("createdBy", singular(user, true)));
+        ManagedType<?> archiveStatus = managedType(Collections.singletonMap("archived", basic()));
+        Map<String, SingularAttribute<?, ?>> entityAttributes = new HashMap<String, SingularAttribute<?, ?>>();
+        entityAttributes.put("name", basic());
+        entityAttributes.put("defaultSku", singular(sku, true));
+        entityAttributes.put("auditable", singular(audit, false));
+        entityAttributes.put("archiveStatus", singular(archiveStatus, false));
+        final ManagedType<?> entity = managedType(entityAttributes);
+        Metamodel metamodel = proxy(Metamodel.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals(TestEntity.class, args[0]);
+                return entity;
+            }
+        });
+
+        List<BasicFieldMetadata> fields = new ArrayList<BasicFieldMetadata>();
+        for (String name : new String[] { "name", "defaultSku.name", "defaultSku.defaultProduct.name",
+                "auditable.createdBy.login", "archiveStatus.archived", "subTypeOnly.name" }) {
+            BasicFieldMetadata field = new BasicFieldMetadata();
+            field.setName(name);
+            fields.add(field);
+        }
+
+        String from = "FROM " + TestEntity.class.getName() + " entity ";
+        assertEquals(Arrays.asList(
+                "SELECT association0 " + from + "JOIN entity.defaultSku association0 WHERE entity.id IN :ids",
+                "SELECT association1 " + from + "JOIN entity.defaultSku association0 JOIN association0.defaultProduct association1 WHERE entity.id IN :ids",
+                "SELECT association1 " + from + "JOIN entity.auditable.createdBy association1 WHERE entity.id IN :ids"),
+                exporter.getAssociationQueries(metamodel, TestEntity.class, "id", fields));
+    }
+
+    public void testAssociationsAreLoadedOncePerPage() {
+        exporter.dynamicEntityDao = proxy(DynamicEntityDao.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals("getIdentifier", method.getName());
+                return ((TestEntity) args[0]).id;
+            }
+        });
+        final List<String> executed = new ArrayList<String>();
+        final List<Object> parameters = new ArrayList<Object>();
+        EntityManager em = proxy(EntityManager.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals("createQuery", method.getName());
+                executed.add((String) args[0]);
+                return proxy(Query.class, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("setParameter".equals(method.getName())) {
+                            parameters.add(args[1]);
+                            return proxy;
+                        }
+                        return Collections.emptyList();
+                    }
+                });
+            }
+        });
+        List<String> queries = Arrays.asList("first query", "second query");
+
+        exporter.loadAssociations(em, queries, Collections.emptyList());
+        assertTrue(executed.isEmpty());
+
+        exporter.loadAssociations(em, queries, Arrays.asList(new TestEntity(1L), new TestEntity(2L)));
+        assertEquals(queries, executed);
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(1L, 2L)), parameters);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        if (handler == null) {
+            handler = new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            };
+        }
+        return (T) Proxy.newProxyInstance(EntityStreamingAdminExporterTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    protected static ManagedType<?> managedType(final Map<String, ? extends SingularAttribute<?, ?>> attributes) {
+        return proxy(ManagedType.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                assertEquals("getAttribute", method.getName());
+                if (!attributes.containsKey(args[0])) {
+                    throw new IllegalArgumentException((String) args[0]);
+                }
+                return attributes.get(args[0]);
+            }
+        });
+    }
+
+    protected static SingularAttribute<?, ?> basic() {
+        return singular(proxy(Type.class, null), false);
+    }
+
+    protected static SingularAttribute<?, ?> singular(final Type<?> type, final boolean association) {
+        return proxy(SingularAttribute.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getType".equals(method.getName())) {
+                    return type;
+                }
+                if ("isAssociation".equals(method.getName())) {
+                    return association;
+                }
+                if ("isCollection".equals(method.getName())) {
+                    return false;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    protected static class TestEntity {
+
+        protected final Long id;
+
+        protected TestEntity(Long id) {
+            this.id = id;
+        }
+
+    }
+
+}
@@ -18,50 +18,180 @@
 package org.broadleafcommerce.common.cache;
 
 import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.broadleafcommerce.common.time.SystemTime;
 
 /**
+ * Hit and request counts for a cache, over its lifetime and over rolling windows of up to {@link #MAX_WINDOW_MILLIS},
+ * plus the time spent loading entries on a miss.
+ * <p>
+ * Counts are kept in {@link StripedCounter}s so that recording is contention free. Rolling windows are served from
+ * snapshots of those totals taken at most every {@link #SNAPSHOT_INTERVAL_MILLIS} by whichever thread records first
+ * after the interval has elapsed, which makes windowed figures accurate to within one snapshot interval. Because nothing
+ * was recorded between the end of the interval and that first thread, each snapshot is dated at the end of the interval.
+ *
  * @author Jeff Fischer
  */
 public class CacheStat {
 
-    protected AtomicLong requestCount = new AtomicLong(0L);
-    protected AtomicLong cacheHitCount = new AtomicLong(0L);
-    protected Long lastLogTime = SystemTime.asMillis(true);
+    public static final long SNAPSHOT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final long MAX_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    protected static final int SNAPSHOT_CAPACITY = (int) (MAX_WINDOW_MILLIS / SNAPSHOT_INTERVAL_MILLIS) + 2;
+
+    protected StripedCounter requestCount = new StripedCounter();
+    protected StripedCounter cacheHitCount = new StripedCounter();
+    protected TimingStat loadTime = new TimingStat();
+    protected AtomicLong lastLogTime = new AtomicLong(SystemTime.asMillis(true));
+
+    protected AtomicReferenceArray<Snapshot> snapshots = new AtomicReferenceArray<Snapshot>(SNAPSHOT_CAPACITY);
+    protected AtomicLong snapshotCount = new AtomicLong(0L);
+    protected AtomicLong nextSnapshotTime = new AtomicLong(lastLogTime.get());
+
+    public CacheStat() {
+        takeSnapshot(nextSnapshotTime.get());
+    }
 
     public Long getCacheHitCount() {
-        return cacheHitCount.longValue();
+        return cacheHitCount.sum();
     }
 
     public Long getLastLogTime() {
-        return lastLogTime;
+        return lastLogTime.get();
     }
 
-    public synchronized void setLastLogTime(Long lastLogTime) {
-        this.lastLogTime = lastLogTime;
+    public void setLastLogTime(Long lastLogTime) {
+        this.lastLogTime.set(lastLogTime);
+    }
+
+    /**
+     * Moves the last log time to <b>now</b> if more than <b>logResolution</b> has passed since it was last moved.
+     *
+     * @return true for exactly one of the threads that observe the resolution to have elapsed
+     */
+    public boolean checkLogTime(long now, long logResolution) {
+        long last = lastLogTime.get();
+        return last + logResolution < now && lastLogTime.compareAndSet(last, now);
     }
 
     public Long getRequestCount() {
-        return requestCount.longValue();
+        return requestCount.sum();
     }
 
     public void incrementRequest() {
-        requestCount.incrementAndGet();
+        requestCount.increment();
     }
 
     public void incrementHit() {
-        cacheHitCount.incrementAndGet();
+        cacheHitCount.increment();
+    }
+
+    /**
+     * Records one lookup against this cache at time <b>now</b>.
+     */
+    public void record(boolean isHit, long now) {
+        if (now >= nextSnapshotTime.get()) {
+            takeSnapshot(now);
+        }
+        // count the request before the hit, and read hits before requests, so a sum never shows more hits than requests
+        incrementRequest();
+        if (isHit) {
+            incrementHit();
+        }
+    }
+
+    public void addLoadTime(long elapsedNanos) {
+        loadTime.add(elapsedNanos);
+    }
+
+    /**
+     * @return the time spent loading entries into this cache after a miss
+     */
+    public TimingStat getLoadTime() {
+        return loadTime;
     }
 
     public BigDecimal getHitRate() {
-        if (getRequestCount() == 0) {
+        return calculateHitRate(getCacheHitCount(), getRequestCount());
+    }
+
+    /**
+     * @param windowMillis the length of the window, at most {@link #MAX_WINDOW_MILLIS}
+     * @return the hit percentage over the window ending at <b>now</b>, or -1 if there were no requests in it
+     */
+    public BigDecimal getHitRate(long windowMillis, long now) {
+        Snapshot baseline = getBaseline(now - windowMillis);
+        return calculateHitRate(getCacheHitCount() - baseline.hits, getRequestCount() - baseline.requests);
+    }
+
+    /**
+     * @param windowMillis the length of the window, at most {@link #MAX_WINDOW_MILLIS}
+     * @return the number of requests over the window ending at <b>now</b>
+     */
+    public Long getRequestCount(long windowMillis, long now) {
+        return getRequestCount() - getBaseline(now - windowMillis).requests;
+    }
+
+    protected BigDecimal calculateHitRate(long hits, long requests) {
+        if (requests <= 0) {
             return new BigDecimal(-1);
         }
-        BigDecimal percentage = new BigDecimal(getCacheHitCount()).divide(new BigDecimal(getRequestCount
-                ()), 2, BigDecimal.ROUND_HALF_UP);
+        BigDecimal percentage = new BigDecimal(hits).divide(new BigDecimal(requests), 2, BigDecimal.ROUND_HALF_UP);
         percentage = percentage.multiply(new BigDecimal(100)).setScale(2, BigDecimal.ROUND_HALF_UP);
         return percentage;
     }
+
+    protected void takeSnapshot(long now) {
+        long next = nextSnapshotTime.get();
+        if (now >= next && nextSnapshotTime.compareAndSet(next, now + SNAPSHOT_INTERVAL_MILLIS)) {
+            int index = (int) (snapshotCount.getAndIncrement() % SNAPSHOT_CAPACITY);
+            snapshots.set(index, new Snapshot(next, getCacheHitCount(), getRequestCount()));
+        }
+    }
+
+    /**
+     * @return the latest snapshot taken at or before <b>windowStart</b>, or the oldest one retained if the statistic
+     * is younger than the window
+     */
+    protected Snapshot getBaseline(long windowStart) {
+        // totals recorded since the last snapshot all predate the end of its interval; snapshot them so that a window
+        // starting after a quiet period does not fall back to an older baseline
+        if (windowStart >= nextSnapshotTime.get()) {
+            takeSnapshot(windowStart);
+        }
+        Snapshot baseline = null;
+        Snapshot oldest = null;
+        for (int i = 0; i < SNAPSHOT_CAPACITY; i++) {
+            Snapshot snapshot = snapshots.get(i);
+            if (snapshot == null) {
+                continue;
+            }
+            if (snapshot.time <= windowStart && (baseline == null || snapshot.time > baseline.time)) {
+                baseline = snapshot;
+            }
+            if (oldest == null || snapshot.time < oldest.time) {
+                oldest = snapshot;
+            }
+        }
+        return baseline != null ? baseline : oldest;
+    }
+
+    /**
+     * Lifetime totals as they stood at a point in time
+     */
+    protected static class Snapshot {
+
+        protected final long time;
+        protected final long hits;
+        protected final long requests;
+
+        protected Snapshot(long time, long hits, long requests) {
+            this.time = time;
+            this.hits = hits;
+            this.requests = requests;
+        }
+    }
 }
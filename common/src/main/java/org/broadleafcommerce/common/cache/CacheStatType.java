@@ -29,5 +29,8 @@ public enum CacheStatType {
     SKU_URL_MISSING_CACHE_HIT_RATE,
     TRANSLATION_CACHE_HIT_RATE,
     RESOURCE_BUNDLING_CACHE_HIT_RATE,
-    GENERATED_RESOURCE_CACHE_HIT_RATE
+    GENERATED_RESOURCE_CACHE_HIT_RATE,
+    SEARCH_PRODUCT_HYDRATION_CACHE_HIT_RATE,
+    SEARCH_SKU_HYDRATION_CACHE_HIT_RATE,
+    MVEL_EXPRESSION_CACHE_HIT_RATE
 }
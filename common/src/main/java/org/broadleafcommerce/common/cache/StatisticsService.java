@@ -23,6 +23,14 @@ package org.broadleafcommerce.common.cache;
 public interface StatisticsService {
     void addCacheStat(String key, boolean isHit);
 
+    /**
+     * Records how long it took to load an entry into the cache identified by <b>key</b> after a miss.
+     *
+     * @param key the same key passed to {@link #addCacheStat(String, boolean)}
+     * @param elapsedNanos
+     */
+    void addCacheLoadTime(String key, long elapsedNanos);
+
     Long getLogResolution();
 
     void setLogResolution(Long logResolution);
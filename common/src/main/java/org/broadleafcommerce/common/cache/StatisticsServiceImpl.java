@@ -25,13 +25,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jmx.export.naming.SelfNaming;
 import org.springframework.jmx.support.ObjectNameManager;
 import org.springframework.stereotype.Service;
-import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
@@ -46,13 +45,38 @@ import javax.management.ObjectName;
 import javax.management.ReflectionException;
 
 /**
+ * Collects cache hit rates and operation timings and publishes them as attributes of a {@link DynamicMBean}.
+ * Each cache statistic named <i>key</i> is exposed as its lifetime hit rate (<i>key</i>), its hit rate over the
+ * trailing {@link #HIT_RATE_WINDOW_MINUTES} (<i>key</i>.HIT_RATE_1M and so on) and the average time and
+ * histogram of the loads performed after a miss (<i>key</i>.LOAD_TIME and <i>key</i>.LOAD_TIME.HISTOGRAM).
+ *
  * @author Jeff Fischer
  */
 @Service("blStatisticsService")
-public class StatisticsServiceImpl implements DynamicMBean, StatisticsService, SelfNaming {
+public class StatisticsServiceImpl implements DynamicMBean, TimingStatisticsService, SelfNaming {
 
     private static final Log LOG = LogFactory.getLog(StatisticsServiceImpl.class);
 
+    /**
+     * Suffix of the JMX attribute that exposes the {@link TimingStat#getHistogram()} of a timing statistic
+     */
+    public static final String HISTOGRAM_SUFFIX = ".HISTOGRAM";
+
+    /**
+     * Suffix of the JMX attribute that exposes the average time to load an entry into a cache after a miss
+     */
+    public static final String LOAD_TIME_SUFFIX = ".LOAD_TIME";
+
+    /**
+     * Prefix of the suffix of the JMX attributes that expose a cache hit rate over a rolling window, e.g. ".HIT_RATE_5M"
+     */
+    public static final String HIT_RATE_SUFFIX = ".HIT_RATE_";
+
+    /**
+     * Lengths of the rolling windows, in minutes, over which cache hit rates are published
+     */
+    protected static final int[] HIT_RATE_WINDOW_MINUTES = {1, 5, 15};
+
     @Value("${cache.stat.log.resolution}")
     protected Long logResolution = 30000L;
 
@@ -60,30 +84,106 @@ public class StatisticsServiceImpl implements DynamicMBean, StatisticsService, S
 
     protected StatisticsServiceLogAdapter adapter;
 
-    protected Map<String, CacheStat> cacheStats = Collections.synchronizedMap(new HashMap<String, CacheStat>());
+    protected ConcurrentMap<String, CacheStat> cacheStats = new ConcurrentHashMap<String, CacheStat>();
+
+    protected ConcurrentMap<String, TimingStat> timingStats = new ConcurrentHashMap<String, TimingStat>();
 
     @Override
     public void addCacheStat(String key, boolean isHit) {
+        long now = SystemTime.asMillis();
         CacheStat myStat = getCacheStat(key);
-        if (isHit) {
-            myStat.incrementHit();
+        myStat.record(isHit, now);
+        if (myStat.checkLogTime(now, logResolution) && LOG.isInfoEnabled()) {
+            StringBuilder message = new StringBuilder("Cache hit percentage for ").append(key).append(" is: ")
+                    .append(myStat.getHitRate()).append("%");
+            for (int minutes : HIT_RATE_WINDOW_MINUTES) {
+                message.append(", ").append(getWindowedHitRate(myStat, minutes, now)).append("% over ")
+                        .append(minutes).append("m");
+            }
+            if (myStat.getLoadTime().getCount() > 0) {
+                message.append(" (average load ").append(myStat.getLoadTime().getAverageMillis()).append("ms)");
+            }
+            LOG.info(message.toString());
         }
-        myStat.incrementRequest();
-        if (myStat.getLastLogTime() + logResolution < SystemTime.asMillis()) {
-            myStat.setLastLogTime(SystemTime.asMillis());
-            BigDecimal percentage = myStat.getHitRate();
+    }
+
+    @Override
+    public void addCacheLoadTime(String key, long elapsedNanos) {
+        getCacheStat(key).addLoadTime(elapsedNanos);
+    }
+
+    @Override
+    public void addTimingStat(String key, long elapsedNanos) {
+        TimingStat myStat = getTimingStat(key);
+        myStat.add(elapsedNanos);
+        long now = SystemTime.asMillis();
+        if (myStat.getLastLogTime() + logResolution < now) {
+            myStat.setLastLogTime(now);
             if (LOG.isInfoEnabled()) {
-                LOG.info("Cache hit percentage for " + key + " is: " + percentage.toString() + "%");
+                LOG.info("Average time for " + key + " is: " + myStat.getAverageMillis().toString() + "ms over "
+                        + myStat.getCount() + " samples (max " + myStat.getMaxMillis().toString() + "ms, histogram "
+                        + myStat.getHistogram() + ")");
             }
         }
     }
 
+    protected TimingStat getTimingStat(String key) {
+        TimingStat stat = timingStats.get(key);
+        if (stat == null) {
+            stat = new TimingStat();
+            TimingStat existing = timingStats.putIfAbsent(key, stat);
+            if (existing != null) {
+                stat = existing;
+            }
+        }
+        return stat;
+    }
+
     protected CacheStat getCacheStat(String key) {
-        if (!cacheStats.containsKey(key)) {
-            CacheStat stat = new CacheStat();
-            cacheStats.put(key, stat);
+        CacheStat stat = cacheStats.get(key);
+        if (stat == null) {
+            stat = new CacheStat();
+            CacheStat existing = cacheStats.putIfAbsent(key, stat);
+            if (existing != null) {
+                stat = existing;
+            }
+        }
+        return stat;
+    }
+
+    protected Double getWindowedHitRate(CacheStat stat, int minutes, long now) {
+        return stat.getHitRate(TimeUnit.MINUTES.toMillis(minutes), now).doubleValue();
+    }
+
+    /**
+     * @return every cache statistic attribute, keyed by name, in name order
+     */
+    protected SortedMap<String, Object> getCacheAttributes() {
+        long now = SystemTime.asMillis();
+        SortedMap<String, Object> attributes = new TreeMap<String, Object>();
+        for (Map.Entry<String, CacheStat> stats : cacheStats.entrySet()) {
+            String key = stats.getKey();
+            CacheStat stat = stats.getValue();
+            attributes.put(key, stat.getHitRate().doubleValue());
+            for (int minutes : HIT_RATE_WINDOW_MINUTES) {
+                attributes.put(key + HIT_RATE_SUFFIX + minutes + "M", getWindowedHitRate(stat, minutes, now));
+            }
+            attributes.put(key + LOAD_TIME_SUFFIX, stat.getLoadTime().getAverageMillis().doubleValue());
+            attributes.put(key + LOAD_TIME_SUFFIX + HISTOGRAM_SUFFIX, stat.getLoadTime().getHistogram().toString());
         }
-        return cacheStats.get(key);
+        return attributes;
+    }
+
+    /**
+     * @return every timing statistic attribute, keyed by name, in name order
+     */
+    protected SortedMap<String, Object> getTimingAttributes() {
+        SortedMap<String, Object> attributes = new TreeMap<String, Object>();
+        for (Map.Entry<String, TimingStat> stats : timingStats.entrySet()) {
+            attributes.put(stats.getKey(), stats.getValue().getAverageMillis().doubleValue());
+            attributes.put(stats.getKey() + HISTOGRAM_SUFFIX, stats.getValue().getHistogram().toString());
+        }
+        return attributes;
     }
 
     @Override
@@ -123,7 +223,24 @@ public class StatisticsServiceImpl implements DynamicMBean, StatisticsService, S
         if (attribute.equals("LOG_RESOLUTION")) {
             return getLogResolution();
         }
-        return getCacheStat(attribute).getHitRate().doubleValue();
+        if (timingStats.containsKey(attribute)) {
+            return timingStats.get(attribute).getAverageMillis().doubleValue();
+        }
+        if (attribute.endsWith(HISTOGRAM_SUFFIX)) {
+            TimingStat stat = timingStats.get(attribute.substring(0, attribute.length() - HISTOGRAM_SUFFIX.length()));
+            if (stat != null) {
+                return stat.getHistogram().toString();
+            }
+        }
+        if (cacheStats.containsKey(attribute)) {
+            return cacheStats.get(attribute).getHitRate().doubleValue();
+        }
+        Object value = getCacheAttributes().get(attribute);
+        if (value != null) {
+            return value;
+        }
+        // an unknown cache has no requests yet
+        return -1D;
     }
 
     @Override
@@ -137,8 +254,11 @@ public class StatisticsServiceImpl implements DynamicMBean, StatisticsService, S
     @Override
     public AttributeList getAttributes(String[] attributes) {
         AttributeList list = new AttributeList();
-        for (Map.Entry<String, CacheStat> stats : cacheStats.entrySet()) {
-            list.add(new Attribute(stats.getKey(), stats.getValue().getHitRate().doubleValue()));
+        for (Map.Entry<String, Object> attribute : getCacheAttributes().entrySet()) {
+            list.add(new Attribute(attribute.getKey(), attribute.getValue()));
+        }
+        for (Map.Entry<String, Object> attribute : getTimingAttributes().entrySet()) {
+            list.add(new Attribute(attribute.getKey(), attribute.getValue()));
         }
         return list;
     }
@@ -175,21 +295,17 @@ public class StatisticsServiceImpl implements DynamicMBean, StatisticsService, S
 
     @Override
     public MBeanInfo getMBeanInfo() {
-        SortedSet<String> names = new TreeSet<String>();
-        for (Map.Entry<String, CacheStat> stats : cacheStats.entrySet()) {
-            names.add(stats.getKey());
-        }
-        MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[names.size()];
-        Iterator<String> it = names.iterator();
-        for (int i = 0; i < attrs.length; i++) {
-            String name = it.next();
-            attrs[i] = new MBeanAttributeInfo(
-                    name,
-                    "java.lang.Double",
-                    name,
+        SortedMap<String, Object> attributes = getCacheAttributes();
+        attributes.putAll(getTimingAttributes());
+        MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[0];
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            attrs = ArrayUtils.add(attrs, new MBeanAttributeInfo(
+                    attribute.getKey(),
+                    attribute.getValue().getClass().getName(),
+                    attribute.getKey(),
                     true,   // isReadable
                     false,   // isWritable
-                    false); // isIs
+                    false)); // isIs
         }
         attrs = ArrayUtils.add(attrs, new MBeanAttributeInfo(
                             "LOG_RESOLUTION",
@@ -0,0 +1,68 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads increments over several cells, chosen by the calling thread, so that threads updating the
+ * same statistic do not all contend on a single {@link java.util.concurrent.atomic.AtomicLong}. Cells are padded
+ * apart to keep them on separate cache lines. {@link #sum()} adds the cells up and is therefore only a moment-in-time
+ * estimate while other threads are still writing.
+ */
+public class StripedCounter {
+
+    /**
+     * Distance, in longs, between two cells (64 bytes, a typical cache line)
+     */
+    protected static final int PADDING = 8;
+
+    protected static final int STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    protected final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    protected static int stripesFor(int processors) {
+        int stripes = 1;
+        while (stripes < processors * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(getCell(), delta);
+    }
+
+    public long sum() {
+        long sum = 0L;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    protected int getCell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.cache;
+
+import org.broadleafcommerce.common.time.SystemTime;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count, total and maximum duration of an operation recorded through {@link StatisticsService#addTimingStat(String, long)}.
+ * Samples are also counted in power-of-two millisecond buckets (under 1ms, under 2ms, under 4ms and so on) so that
+ * the shape of the distribution can be seen, not just its average.
+ */
+public class TimingStat {
+
+    protected static final BigDecimal NANOS_PER_MILLI = new BigDecimal(1000000);
+
+    /**
+     * Bucket <i>i</i> counts samples under 2^<i>i</i> ms; the last bucket counts everything above that.
+     */
+    protected static final int HISTOGRAM_BUCKETS = 18;
+
+    protected AtomicLong count = new AtomicLong(0L);
+    protected AtomicLong totalNanos = new AtomicLong(0L);
+    protected AtomicLong maxNanos = new AtomicLong(0L);
+    protected AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    protected Long lastLogTime = SystemTime.asMillis(true);
+
+    public void add(long elapsedNanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+        long max = maxNanos.get();
+        while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = maxNanos.get();
+        }
+        histogram.incrementAndGet(getBucket(elapsedNanos));
+    }
+
+    protected int getBucket(long elapsedNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0L, elapsedNanos));
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    public Long getCount() {
+        return count.longValue();
+    }
+
+    public Long getLastLogTime() {
+        return lastLogTime;
+    }
+
+    public synchronized void setLastLogTime(Long lastLogTime) {
+        this.lastLogTime = lastLogTime;
+    }
+
+    public BigDecimal getAverageMillis() {
+        long samples = count.get();
+        if (samples == 0) {
+            return new BigDecimal(-1);
+        }
+        return new BigDecimal(totalNanos.get()).divide(NANOS_PER_MILLI.multiply(new BigDecimal(samples)), 3, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal getMaxMillis() {
+        return new BigDecimal(maxNanos.get()).divide(NANOS_PER_MILLI, 3, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal getTotalMillis() {
+        return new BigDecimal(totalNanos.get()).divide(NANOS_PER_MILLI, 3, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Estimate the duration below which the given fraction of the samples fall. The estimate is the upper bound of the
+     * histogram bucket containing the percentile, capped at the maximum, so it is accurate to within a factor of two.
+     * 
+     * @param percentile a value between 0 and 1 (e.g. 0.99)
+     * @return the estimated duration in milliseconds, or -1 if nothing has been recorded
+     */
+    public BigDecimal getPercentileMillis(double percentile) {
+        long[] snapshot = new long[HISTOGRAM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            snapshot[i] = histogram.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return new BigDecimal(-1);
+        }
+        long threshold = Math.max(1L, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS - 1; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return new BigDecimal(1L << i).min(getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram.set(i, 0L);
+        }
+        count.set(0L);
+        totalNanos.set(0L);
+        maxNanos.set(0L);
+    }
+
+    /**
+     * @return the sample count of each non-empty histogram bucket, in ascending order and keyed by a label
+     * such as "&lt;4ms" or "&gt;=65536ms"
+     */
+    public Map<String, Long> getHistogram() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            long samples = histogram.get(i);
+            if (samples > 0) {
+                String label;
+                if (i == HISTOGRAM_BUCKETS - 1) {
+                    label = ">=" + (1L << (i - 1)) + "ms";
+                } else {
+                    label = "<" + (1L << i) + "ms";
+                }
+                result.put(label, samples);
+            }
+        }
+        return result;
+    }
+}
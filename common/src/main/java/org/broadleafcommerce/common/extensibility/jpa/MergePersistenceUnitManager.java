@@ -26,7 +26,10 @@ import org.broadleafcommerce.common.exception.ExceptionHelper;
 import org.broadleafcommerce.common.extensibility.jpa.convert.BroadleafClassTransformer;
 import org.broadleafcommerce.common.extensibility.jpa.convert.BroadleafPersistenceUnitDeclaringClassTransformer;
 import org.broadleafcommerce.common.extensibility.jpa.convert.EntityMarkerClassTransformer;
+import org.broadleafcommerce.common.extensibility.jpa.convert.TimedClassTransformer;
+import org.broadleafcommerce.common.extensibility.jpa.copy.DirectCopyClassTransformer;
 import org.broadleafcommerce.common.extensibility.jpa.copy.NullClassTransformer;
+import org.broadleafcommerce.common.weave.WeavingCache;
 import org.hibernate.ejb.AvailableSettings;
 import org.hibernate.ejb.instrument.InterceptFieldClassFileTransformer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,6 +48,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -78,6 +82,11 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
     protected HashMap<String, PersistenceUnitInfo> mergedPus = new HashMap<>();
     protected List<BroadleafClassTransformer> classTransformers = new ArrayList<>();
 
+    /**
+     * The wrappers actually registered with the persistence units, keyed by the transformer they time
+     */
+    protected Map<BroadleafClassTransformer, TimedClassTransformer> timedClassTransformers = new LinkedHashMap<>();
+
     @Resource(name="blMergedPersistenceXmlLocations")
     protected Set<String> mergedPersistenceXmlLocations;
 
@@ -94,6 +103,9 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
     @Qualifier("blAutoDDLStatusExporter")
     protected MBeanExporter mBeanExporter;
     
+    @Autowired(required = false)
+    protected WeavingCache weavingCache;
+
     @Autowired
     protected ApplicationContext applicationContext;
 
@@ -162,6 +174,8 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
                 exceptionIfEntityMarkerNotFound();
                 
                 triggerClassLoadForManagedClasses();
+
+                logClassTransformerTimings();
                 
                 List<String> nonTransformedClasses = detectNonTransformedClasses();
                 if (CollectionUtils.isNotEmpty(nonTransformedClasses)) {
@@ -201,7 +215,7 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
                             pui.getPersistenceUnitName().equals(((BroadleafPersistenceUnitDeclaringClassTransformer) transformer).getPersistenceUnitName())
                         );
                     if (isTransformerQualified) {
-                        pui.addTransformer(transformer);
+                        pui.addTransformer(getTimedClassTransformer(transformer));
                     }
                 } catch (Exception e) {
                     weaverRegistered = handleClassTransformerRegistrationProblem(transformer, e);
@@ -214,6 +228,41 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
         return weaverRegistered;
     }
 
+    protected TimedClassTransformer getTimedClassTransformer(BroadleafClassTransformer transformer) {
+        TimedClassTransformer timed = timedClassTransformers.get(transformer);
+        if (timed == null) {
+            timed = new TimedClassTransformer(transformer);
+            timedClassTransformers.put(transformer, timed);
+        }
+        return timed;
+    }
+
+    /**
+     * Reports how long each class transformer has taken so far. Called once the managed classes have been loaded, by
+     * which point nearly all of the startup transformation work has happened.
+     */
+    protected void logClassTransformerTimings() {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+        for (TimedClassTransformer timed : timedClassTransformers.values()) {
+            LOG.info(String.format("Class transformer %s took %dms to examine %d classes and transform %d of them",
+                    describe(timed.getDelegate()), timed.getElapsedMillis(), timed.getClassCount(),
+                    timed.getTransformedCount()));
+        }
+        if (weavingCache != null && weavingCache.isEnabled()) {
+            LOG.info(String.format("Weaving cache served %d classes and wove %d", weavingCache.getHitCount(),
+                    weavingCache.getMissCount()));
+        }
+    }
+
+    protected String describe(BroadleafClassTransformer transformer) {
+        if (transformer instanceof DirectCopyClassTransformer) {
+            return transformer.getClass().getSimpleName() + " (" + ((DirectCopyClassTransformer) transformer).getModuleName() + ")";
+        }
+        return transformer.getClass().getSimpleName();
+    }
+
     protected boolean addNamedQueriesToPersistenceUnits(boolean weaverRegistered) throws Exception {
         //Do this last in case any of the query config classes happens to cause an entity class to be loaded - they will
         // still be transformed by the previous registered transformers
@@ -236,7 +285,7 @@ public class MergePersistenceUnitManager extends DefaultPersistenceUnitManager {
             if (!namedQueries.isEmpty() || !nativeQueries.isEmpty()) {
                 QueryConfigurationClassTransformer transformer = new QueryConfigurationClassTransformer(namedQueries, nativeQueries, pui.getManagedClassNames());
                 try {
-                    pui.addTransformer(transformer);
+                    pui.addTransformer(getTimedClassTransformer(transformer));
                 } catch (Exception e) {
                     weaverRegistered = handleClassTransformerRegistrationProblem(transformer, e);
                 }
@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.extensibility.jpa.convert;
+
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a {@link BroadleafClassTransformer} to record how many classes it was offered, how many it changed and how long
+ * it spent doing so, for the startup report of {@link org.broadleafcommerce.common.extensibility.jpa.MergePersistenceUnitManager}.
+ * Times are inclusive: a transformation that causes another class to be loaded also counts the time spent transforming
+ * that class.
+ */
+public class TimedClassTransformer implements BroadleafClassTransformer {
+
+    protected final BroadleafClassTransformer delegate;
+    protected final AtomicLong classCount = new AtomicLong();
+    protected final AtomicLong transformedCount = new AtomicLong();
+    protected final AtomicLong elapsedNanos = new AtomicLong();
+
+    public TimedClassTransformer(BroadleafClassTransformer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void compileJPAProperties(Properties props, Object key) throws Exception {
+        delegate.compileJPAProperties(props, key);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+        long start = System.nanoTime();
+        try {
+            byte[] result = delegate.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+            if (result != null) {
+                transformedCount.incrementAndGet();
+            }
+            return result;
+        } finally {
+            elapsedNanos.addAndGet(System.nanoTime() - start);
+            classCount.incrementAndGet();
+        }
+    }
+
+    public BroadleafClassTransformer getDelegate() {
+        return delegate;
+    }
+
+    public long getClassCount() {
+        return classCount.get();
+    }
+
+    public long getTransformedCount() {
+        return transformedCount.get();
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos.get());
+    }
+}
@@ -24,6 +24,7 @@ import org.broadleafcommerce.common.extensibility.jpa.convert.BroadleafClassTran
 import org.broadleafcommerce.common.logging.LifeCycleEvent;
 import org.broadleafcommerce.common.weave.ConditionalDirectCopyTransformMemberDto;
 import org.broadleafcommerce.common.weave.ConditionalDirectCopyTransformersManager;
+import org.broadleafcommerce.common.weave.WeavingCache;
 
 import java.io.ByteArrayInputStream;
 import java.lang.instrument.IllegalClassFormatException;
@@ -38,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.annotation.Resource;
 import javax.persistence.EntityListeners;
@@ -86,6 +88,15 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
     @Resource(name="blConditionalDirectCopyTransformersManager")
     protected ConditionalDirectCopyTransformersManager conditionalDirectCopyTransformersManager;
 
+    @Resource(name="blWeavingCache")
+    protected WeavingCache weavingCache;
+
+    /**
+     * Fingerprint of this transformer's own configuration, built on first use since the template token map is still being
+     * merged while the transformer beans are created. The setters clear it.
+     */
+    protected volatile String transformerConfiguration;
+
     public DirectCopyClassTransformer(String moduleName) {
         this.moduleName = moduleName;
     }
@@ -104,63 +115,152 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
             return null;
         }
 
+        String convertedClassName = className.replace('/', '.');
+        List<DirectCopyIgnorePattern> matchedPatterns = null;
+        if (!xformTemplates.isEmpty()) {
+            if (!xformTemplates.containsKey(convertedClassName)) {
+                return null;
+            }
+        } else {
+            if (annotationTransformedClasses.contains(convertedClassName)) {
+                logger.warn(convertedClassName + " has already been transformed by a previous instance of DirectCopyTransfomer. " +
+                        "Skipping this annotation based transformation. Generally, annotation-based transformation is handled " +
+                        "by bean id blAnnotationDirectCopyClassTransformer with template tokens being added to " +
+                        "blDirectCopyTransformTokenMap via EarlyStageMergeBeanPostProcessor.");
+            }
+            matchedPatterns = getMatchedIgnorePatterns(convertedClassName);
+            if (matchedPatterns == null) {
+                return null;
+            }
+        }
+
+        if (weavingCache == null || !weavingCache.isEnabled()) {
+            return weave(convertedClassName, classfileBuffer, matchedPatterns, new ArrayList<String>(), new ArrayList<String>());
+        }
+        String cacheKey = weavingCache.computeKey(classfileBuffer, getWeavingConfiguration(convertedClassName));
+        List<String> replacedMethods = new ArrayList<>();
+        byte[] cached = weavingCache.get(cacheKey, loader, replacedMethods);
+        if (cached != null) {
+            if (cached.length == 0) {
+                return null;
+            }
+            markReplacedMethods(replacedMethods);
+            if (xformTemplates.isEmpty()) {
+                annotationTransformedClasses.add(convertedClassName);
+            }
+            return cached;
+        }
+        List<String> templateClassNames = new ArrayList<>();
+        byte[] woven = weave(convertedClassName, classfileBuffer, matchedPatterns, templateClassNames, replacedMethods);
+        weavingCache.put(cacheKey, woven, templateClassNames, replacedMethods, loader);
+        return woven;
+    }
+
+    /**
+     * Tracks the methods that a cached class had replaced when it was woven, failing just like {@link #weave} does
+     * if one of them has already been replaced by another transformation.
+     */
+    protected void markReplacedMethods(List<String> replacedMethods) {
+        for (String description : replacedMethods) {
+            if (transformedMethods.contains(description)) {
+                throw new RuntimeException("Unable to transform class",
+                        new RuntimeException("Method already replaced " + description));
+            }
+            logger.debug(String.format("Marking as replaced [%s]", description));
+            transformedMethods.add(description);
+        }
+    }
+
+    /**
+     * @return everything besides the class bytes and the template classes that determines how the class is woven,
+     * for use in the {@link WeavingCache} key
+     */
+    protected String getWeavingConfiguration(String convertedClassName) {
+        if (transformerConfiguration == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(getClass().getName()).append('|').append(moduleName)
+                .append('|').append(weavingCache.hashClass(getClass().getName(), getClass().getClassLoader()))
+                .append('|').append(weavingCache.hashClass(DirectCopyClassTransformer.class.getName(), DirectCopyClassTransformer.class.getClassLoader()))
+                .append('|').append(CtClass.version)
+                .append('|').append(new TreeMap<>(xformTemplates))
+                .append('|').append(new TreeMap<>(templateTokens))
+                .append('|').append(skipOverlaps).append(',').append(renameMethodOverlaps).append(',').append(renameMethodPrefix);
+            for (DirectCopyIgnorePattern pattern : ignorePatterns) {
+                sb.append('|').append(Arrays.toString(pattern.getPatterns()))
+                    .append(Arrays.toString(pattern.getTemplateTokenPatterns()));
+            }
+            transformerConfiguration = sb.toString();
+        }
+        StringBuilder sb = new StringBuilder(transformerConfiguration);
+        if (conditionalDirectCopyTransformersManager != null && conditionalDirectCopyTransformersManager.isEntityEnabled(convertedClassName)) {
+            ConditionalDirectCopyTransformMemberDto dto = conditionalDirectCopyTransformersManager.getTransformMember(convertedClassName);
+            sb.append("|conditional=").append(Arrays.toString(dto.getTemplateTokens()))
+                .append(',').append(dto.isSkipOverlaps()).append(',').append(dto.isRenameMethodOverlaps());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the ignore patterns matching the class, or null if one of them excludes the class from transformation
+     * altogether
+     */
+    protected List<DirectCopyIgnorePattern> getMatchedIgnorePatterns(String convertedClassName) {
+        List<DirectCopyIgnorePattern> matchedPatterns = new ArrayList<>();
+        for (DirectCopyIgnorePattern pattern : ignorePatterns) {
+            boolean isPatternMatch = false;
+            for (String patternString : pattern.getPatterns()) {
+                isPatternMatch = convertedClassName.matches(patternString);
+                if (isPatternMatch) {
+                    break;
+                }
+            }
+            if (isPatternMatch) {
+                if (pattern.getTemplateTokenPatterns() == null) {
+                    return null;
+                }
+                matchedPatterns.add(pattern);
+            }
+        }
+        return matchedPatterns;
+    }
+
+    /**
+     * Copies the templates that apply to the class into it.
+     *
+     * @param convertedClassName
+     * @param classfileBuffer
+     * @param matchedPatterns the ignore patterns matching the class, for annotation based transformation
+     * @param templateClassNames receives the name of every template copied into the class
+     * @param replacedMethods receives the description of every method of the class replaced by a template method
+     * @return the woven class, or null if no template applies to it
+     */
+    protected byte[] weave(String convertedClassName, byte[] classfileBuffer, List<DirectCopyIgnorePattern> matchedPatterns,
+                           List<String> templateClassNames, List<String> replacedMethods) {
         //Be careful with Apache library usage in this class (e.g. ArrayUtils). Usage will likely cause a ClassCircularityError
         //under JRebel. Favor not including outside libraries and unnecessary classes.
         CtClass clazz = null;
         try {
             boolean mySkipOverlaps = skipOverlaps;
             boolean myRenameMethodOverlaps = renameMethodOverlaps;
-            String convertedClassName = className.replace('/', '.');
-            ClassPool classPool = null;
             String xformKey = convertedClassName;
             Set<String> buildXFormVals = new HashSet<>();
             Boolean[] xformSkipOverlaps = null;
             Boolean[] xformRenameMethodOverlaps = null;
+            ClassPool classPool = ClassPool.getDefault();
+            clazz = classPool.makeClass(new ByteArrayInputStream(classfileBuffer), false);
             if (!xformTemplates.isEmpty()) {
-                if (xformTemplates.containsKey(xformKey)) {
-                    buildXFormVals.addAll(Arrays.asList(xformTemplates.get(xformKey).split(",")));
-                    classPool = ClassPool.getDefault();
-                    clazz = classPool.makeClass(new ByteArrayInputStream(classfileBuffer), false);
-                }
+                buildXFormVals.addAll(Arrays.asList(xformTemplates.get(xformKey).split(",")));
             } else {
-                if (annotationTransformedClasses.contains(convertedClassName)) {
-                    logger.warn(convertedClassName + " has already been transformed by a previous instance of DirectCopyTransfomer. " +
-                            "Skipping this annotation based transformation. Generally, annotation-based transformation is handled " +
-                            "by bean id blAnnotationDirectCopyClassTransformer with template tokens being added to " +
-                            "blDirectCopyTransformTokenMap via EarlyStageMergeBeanPostProcessor.");
+                XFormParams params = reviewDirectCopyTransformAnnotations(clazz, mySkipOverlaps, myRenameMethodOverlaps, matchedPatterns);
+                XFormParams conditionalParams = reviewConditionalDirectCopyTransforms(convertedClassName, matchedPatterns);
+                if (conditionalParams != null && !conditionalParams.isEmpty()) {
+                    params = combineXFormParams(params, conditionalParams);
                 }
-                boolean isValidPattern = true;
-                List<DirectCopyIgnorePattern> matchedPatterns = new ArrayList<>();
-                for (DirectCopyIgnorePattern pattern : ignorePatterns) {
-                    boolean isPatternMatch = false;
-                    for (String patternString : pattern.getPatterns()) {
-                        isPatternMatch = convertedClassName.matches(patternString);
-                        if (isPatternMatch) {
-                            break;
-                        }
-                    }
-                    if (isPatternMatch) {
-                        matchedPatterns.add(pattern);
-                    }
-                    isValidPattern = !(isPatternMatch && pattern.getTemplateTokenPatterns() == null);
-                    if (!isValidPattern) {
-                        return null;
-                    }
-                }
-                if (isValidPattern) {
-                    classPool = ClassPool.getDefault();
-                    clazz = classPool.makeClass(new ByteArrayInputStream(classfileBuffer), false);
-                    XFormParams params = reviewDirectCopyTransformAnnotations(clazz, mySkipOverlaps, myRenameMethodOverlaps, matchedPatterns);
-                    XFormParams conditionalParams = reviewConditionalDirectCopyTransforms(convertedClassName, matchedPatterns);
-                    if (conditionalParams != null && !conditionalParams.isEmpty()) {
-                        params = combineXFormParams(params, conditionalParams);
-                    }
-                    if (params.getXformVals() != null && params.getXformVals().length > 0) {
-                        buildXFormVals.addAll(Arrays.asList(params.getXformVals()));
-                    }
-                    xformSkipOverlaps = params.getXformSkipOverlaps();
-                    xformRenameMethodOverlaps = params.getXformRenameMethodOverlaps();
+                if (params.getXformVals() != null && params.getXformVals().length > 0) {
+                    buildXFormVals.addAll(Arrays.asList(params.getXformVals()));
                 }
+                xformSkipOverlaps = params.getXformSkipOverlaps();
+                xformRenameMethodOverlaps = params.getXformRenameMethodOverlaps();
             }
             if (buildXFormVals.size() > 0) {
                 String[] xformVals = buildXFormVals.toArray(new String[buildXFormVals.size()]);
@@ -173,6 +273,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
                 for (String xformVal : xformVals) {
                     // Load the source class
                     String trimmed = xformVal.trim();
+                    templateClassNames.add(trimmed);
                     classPool.appendClassPath(new LoaderClassPath(Class.forName(trimmed).getClassLoader()));
                     CtClass template = classPool.get(trimmed);
 
@@ -279,6 +380,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
                                 } else {
                                     logger.debug(String.format("Marking as replaced [%s]", methodDescription(originalMethod)));
                                     transformedMethods.add(methodDescription(originalMethod));
+                                    replacedMethods.add(methodDescription(originalMethod));
                                 }
 
                                 logger.debug(String.format("Removing method [%s]", method.getName()));
@@ -584,6 +686,10 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
         return method.getDeclaringClass().getName() + "|" + method.getName() + "|" + method.getSignature();
     }
 
+    public String getModuleName() {
+        return moduleName;
+    }
+
     public Map<String, String> getXformTemplates() {
         return xformTemplates;
     }
@@ -596,11 +702,13 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
      */
     public DirectCopyClassTransformer addXformTemplate(String classToTransform, String contributingClass) {
         xformTemplates.put(classToTransform, contributingClass);
+        transformerConfiguration = null;
         return this;
     }
     
     public void setXformTemplates(Map<String, String> xformTemplates) {
         this.xformTemplates = xformTemplates;
+        transformerConfiguration = null;
     }
 
     public Boolean getRenameMethodOverlaps() {
@@ -609,6 +717,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
 
     public void setRenameMethodOverlaps(Boolean renameMethodOverlaps) {
         this.renameMethodOverlaps = renameMethodOverlaps;
+        transformerConfiguration = null;
     }
 
     public String getRenameMethodPrefix() {
@@ -617,6 +726,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
 
     public void setRenameMethodPrefix(String renameMethodPrefix) {
         this.renameMethodPrefix = renameMethodPrefix;
+        transformerConfiguration = null;
     }
 
     public Boolean getSkipOverlaps() {
@@ -625,6 +735,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
 
     public void setSkipOverlaps(Boolean skipOverlaps) {
         this.skipOverlaps = skipOverlaps;
+        transformerConfiguration = null;
     }
 
     public Map<String, String> getTemplateTokens() {
@@ -633,6 +744,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
 
     public void setTemplateTokens(Map<String, String> templateTokens) {
         this.templateTokens = templateTokens;
+        transformerConfiguration = null;
     }
 
     public List<DirectCopyIgnorePattern> getIgnorePatterns() {
@@ -641,6 +753,7 @@ public class DirectCopyClassTransformer extends AbstractClassTransformer impleme
 
     public void setIgnorePatterns(List<DirectCopyIgnorePattern> ignorePatterns) {
         this.ignorePatterns = ignorePatterns;
+        transformerConfiguration = null;
     }
 
     private class XFormParams {
@@ -17,7 +17,7 @@
  */
 package org.broadleafcommerce.common.extension;
 
-
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base {@link ExtensionHandler} class that provide basic extension handler properties including
@@ -28,8 +28,14 @@ package org.broadleafcommerce.common.extension;
  */
 public abstract class AbstractExtensionHandler implements ExtensionHandler {
 
+    /**
+     * Incremented whenever any handler is enabled or disabled through {@link #setEnabled(boolean)}, so that
+     * {@link ExtensionManager}s know to rebuild their snapshot of enabled handlers
+     */
+    protected static final AtomicLong ENABLED_STATE_VERSION = new AtomicLong();
+
     protected int priority;
-    protected boolean enabled = true;
+    protected volatile boolean enabled = true;
 
     /**
      * Determines the priority of this extension handler.
@@ -50,7 +56,14 @@ public abstract class AbstractExtensionHandler implements ExtensionHandler {
     }
 
     public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
+        if (this.enabled != enabled) {
+            this.enabled = enabled;
+            ENABLED_STATE_VERSION.incrementAndGet();
+        }
+    }
+
+    static long getEnabledStateVersion() {
+        return ENABLED_STATE_VERSION.get();
     }
     
 }
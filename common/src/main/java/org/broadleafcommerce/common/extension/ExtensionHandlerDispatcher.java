@@ -0,0 +1,40 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.extension;
+
+/**
+ * A typed, reflection-free bridge between an {@link ExtensionManager} and the {@link ExtensionHandler} interface it manages.
+ * Implementations are generated at runtime by {@link ExtensionHandlerDispatcherFactory} and contain a direct call to each
+ * handler interface method, selected by the index of the method in the {@link java.lang.reflect.Method} table supplied
+ * at generation time.
+ *
+ * @see ExtensionManager#isCompiledDispatchEnabled()
+ */
+public interface ExtensionHandlerDispatcher {
+
+    /**
+     * Invoke the handler interface method identified by methodIndex on the given handler
+     *
+     * @param methodIndex the index of the method in the table used to generate this dispatcher
+     * @param handler the handler to invoke
+     * @param args the arguments passed to the proxy
+     * @return the result of the handler method
+     */
+    ExtensionResultStatusType dispatch(int methodIndex, ExtensionHandler handler, Object[] args);
+
+}
@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.extension;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Generates an {@link ExtensionHandlerDispatcher} implementation for an {@link ExtensionHandler} interface using Javassist.
+ * The generated class casts the proxy arguments to their declared types and calls the handler interface method directly,
+ * which removes the {@link Method#invoke(Object, Object...)} cost from each handler call made through
+ * {@link ExtensionManager#getProxy()}.
+ * </p>
+ * Only methods declared to return {@link ExtensionResultStatusType} are compiled. Any other method invoked on the proxy
+ * (e.g. methods from {@link Object}) continues to use the reflective path in {@link ExtensionManager}.
+ * </p>
+ * Generated dispatchers are cached per handler interface, so managers sharing a handler interface share a dispatcher.
+ */
+public class ExtensionHandlerDispatcherFactory {
+
+    private static final Log LOG = LogFactory.getLog(ExtensionHandlerDispatcherFactory.class);
+
+    protected static final String DISPATCHER_SUFFIX = "$$BLCExtensionHandlerDispatcher";
+
+    protected static final ConcurrentMap<Class<?>, CompiledDispatch> DISPATCH_CACHE = new ConcurrentHashMap<Class<?>, CompiledDispatch>();
+
+    /**
+     * Cached for interfaces whose dispatcher could not be generated, since the cache cannot hold null
+     */
+    protected static final CompiledDispatch UNAVAILABLE = new CompiledDispatch(null, new HashMap<Method, Integer>());
+
+    /**
+     * Retrieve, or generate if necessary, the compiled dispatch for the given handler interface.
+     *
+     * @param handlerInterface the {@link ExtensionHandler} interface
+     * @return the compiled dispatch, or null if a dispatcher could not be generated for this interface
+     */
+    public static CompiledDispatch getCompiledDispatch(Class<?> handlerInterface) {
+        CompiledDispatch dispatch = DISPATCH_CACHE.get(handlerInterface);
+        if (dispatch == null) {
+            // generation defines a class with a fixed name, so it must only happen once per interface
+            synchronized (DISPATCH_CACHE) {
+                dispatch = DISPATCH_CACHE.get(handlerInterface);
+                if (dispatch == null) {
+                    try {
+                        dispatch = generate(handlerInterface);
+                    } catch (Exception e) {
+                        LOG.warn(String.format("Unable to generate a compiled extension handler dispatcher for %s. Reflective dispatch " +
+                                "will be used instead.", handlerInterface.getName()), e);
+                        dispatch = UNAVAILABLE;
+                    }
+                    DISPATCH_CACHE.put(handlerInterface, dispatch);
+                }
+            }
+        }
+        return dispatch == UNAVAILABLE ? null : dispatch;
+    }
+
+    protected static CompiledDispatch generate(Class<?> handlerInterface) throws Exception {
+        List<Method> methods = new ArrayList<Method>();
+        for (Method method : handlerInterface.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && ExtensionResultStatusType.class.equals(method.getReturnType())) {
+                methods.add(method);
+            }
+        }
+        // Sort for a stable method table, since getMethods() does not guarantee ordering
+        Collections.sort(methods, new Comparator<Method>() {
+            @Override
+            public int compare(Method o1, Method o2) {
+                return o1.toGenericString().compareTo(o2.toGenericString());
+            }
+        });
+
+        ClassLoader classLoader = handlerInterface.getClassLoader();
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(classLoader));
+        CtClass dispatcherClass = pool.makeClass(handlerInterface.getName() + DISPATCHER_SUFFIX);
+        dispatcherClass.addInterface(pool.get(ExtensionHandlerDispatcher.class.getName()));
+        dispatcherClass.addMethod(CtNewMethod.make(buildDispatchMethod(handlerInterface, methods), dispatcherClass));
+        Class<?> clazz = dispatcherClass.toClass(classLoader, handlerInterface.getProtectionDomain());
+        dispatcherClass.detach();
+
+        Map<Method, Integer> methodIndexes = new HashMap<Method, Integer>();
+        for (int j = 0; j < methods.size(); j++) {
+            methodIndexes.put(methods.get(j), j);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Generated compiled extension handler dispatcher for %s covering %s methods",
+                    handlerInterface.getName(), methods.size()));
+        }
+        return new CompiledDispatch((ExtensionHandlerDispatcher) clazz.newInstance(), methodIndexes);
+    }
+
+    protected static String buildDispatchMethod(Class<?> handlerInterface, List<Method> methods) {
+        String handlerType = getSourceName(handlerInterface);
+        StringBuilder sb = new StringBuilder();
+        sb.append("public ").append(ExtensionResultStatusType.class.getName()).append(" dispatch(int methodIndex, ")
+                .append(ExtensionHandler.class.getName()).append(" handler, java.lang.Object[] args) {\n");
+        sb.append(handlerType).append(" typedHandler = (").append(handlerType).append(") handler;\n");
+        sb.append("switch (methodIndex) {\n");
+        for (int j = 0; j < methods.size(); j++) {
+            Method method = methods.get(j);
+            sb.append("case ").append(j).append(": return typedHandler.").append(method.getName()).append("(");
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(buildArgument(parameterTypes[i], i));
+            }
+            sb.append(");\n");
+        }
+        sb.append("default: throw new java.lang.IllegalArgumentException(\"Unknown method index \" + methodIndex);\n");
+        sb.append("}\n}");
+        return sb.toString();
+    }
+
+    protected static String buildArgument(Class<?> type, int position) {
+        String arg = "args[" + position + "]";
+        if (type.isPrimitive()) {
+            if (boolean.class.equals(type)) {
+                return "((java.lang.Boolean) " + arg + ").booleanValue()";
+            }
+            if (char.class.equals(type)) {
+                return "((java.lang.Character) " + arg + ").charValue()";
+            }
+            // byte, short, int, long, float and double are all boxed as a java.lang.Number subtype
+            return "((java.lang.Number) " + arg + ")." + type.getName() + "Value()";
+        }
+        return "(" + getSourceName(type) + ") " + arg;
+    }
+
+    /**
+     * Javassist expects the binary name for nested classes (e.g. Outer$Inner) and source syntax for arrays (e.g. Type[]).
+     */
+    protected static String getSourceName(Class<?> type) {
+        if (type.isArray()) {
+            return getSourceName(type.getComponentType()) + "[]";
+        }
+        return type.getName();
+    }
+
+    /**
+     * The result of generating a dispatcher for a handler interface: the dispatcher itself and the index of each compiled
+     * method in its dispatch table.
+     */
+    public static class CompiledDispatch {
+
+        protected final ExtensionHandlerDispatcher dispatcher;
+        protected final Map<Method, Integer> methodIndexes;
+
+        public CompiledDispatch(ExtensionHandlerDispatcher dispatcher, Map<Method, Integer> methodIndexes) {
+            this.dispatcher = dispatcher;
+            this.methodIndexes = Collections.unmodifiableMap(methodIndexes);
+        }
+
+        public ExtensionHandlerDispatcher getDispatcher() {
+            return dispatcher;
+        }
+
+        /**
+         * @param method the method invoked on the proxy
+         * @return the dispatch index for the method, or -1 if the method was not compiled
+         */
+        public int getMethodIndex(Method method) {
+            Integer index = methodIndexes.get(method);
+            return index == null ? -1 : index;
+        }
+
+        public List<Method> getCompiledMethods() {
+            Method[] sorted = new Method[methodIndexes.size()];
+            for (Map.Entry<Method, Integer> entry : methodIndexes.entrySet()) {
+                sorted[entry.getValue()] = entry.getKey();
+            }
+            return Arrays.asList(sorted);
+        }
+    }
+}
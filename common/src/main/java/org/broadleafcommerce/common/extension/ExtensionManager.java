@@ -18,6 +18,8 @@
 package org.broadleafcommerce.common.extension;
 
 import org.apache.commons.beanutils.BeanComparator;
+import org.broadleafcommerce.common.extension.ExtensionHandlerDispatcherFactory.CompiledDispatch;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -28,6 +30,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 /**
  * The ExtensionManager pattern is intended for out of box components to be extended by Broadleaf modules.
  * 
@@ -37,17 +41,38 @@ import java.util.List;
  * The default extension manager pattern loops through all handlers and examines their {@link ExtensionResultStatusType} 
  * to determine whether or not to continue with other handlers.
  * 
+ * Handlers are dispatched from an immutable, priority-sorted snapshot of the enabled handlers that is replaced
+ * (copy-on-write) whenever the handler list changes or an {@link AbstractExtensionHandler} is enabled or disabled.
+ * Handlers that compute {@link ExtensionHandler#isEnabled()} themselves are always kept in the snapshot and checked on
+ * each call. When no enabled handlers remain, calls through the proxy return {@link ExtensionResultStatusType#NOT_HANDLED}
+ * without touching any handler.
+ * 
+ * When the "extension.manager.compiled.dispatch.enabled" property is true, a typed {@link ExtensionHandlerDispatcher} is
+ * generated for the handler interface when this manager is initialized and is used instead of reflection for calls made
+ * through {@link #getProxy()}. See {@link ExtensionHandlerDispatcherFactory}.
+ * 
  * @author bpolster
  *
  * @param <T>
  */
 public abstract class ExtensionManager<T extends ExtensionHandler> implements InvocationHandler {
 
-    protected boolean handlersSorted = false;
+    protected static final ExtensionHandler[] EMPTY_HANDLERS = new ExtensionHandler[0];
+
+    protected volatile boolean handlersSorted = false;
     protected static String LOCK_OBJECT = new String("EM_LOCK");
     
     protected T extensionHandler;
+    protected Class<T> handlerClass;
     protected List<T> handlers = new ArrayList<T>();
+    protected volatile ExtensionHandler[] handlerSnapshot = EMPTY_HANDLERS;
+    protected volatile int snapshotHandlerCount = 0;
+    protected volatile long snapshotEnabledStateVersion = -1L;
+
+    @Value("${extension.manager.compiled.dispatch.enabled:false}")
+    protected boolean compiledDispatchEnabled = false;
+
+    protected volatile CompiledDispatch compiledDispatch;
 
     /**
      * Should take in a className that matches the ExtensionHandler interface being managed.
@@ -55,6 +80,7 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
      */
     @SuppressWarnings("unchecked")
     public ExtensionManager(Class<T> _clazz) {
+        handlerClass = _clazz;
         extensionHandler = (T) Proxy.newProxyInstance(_clazz.getClassLoader(),
                 new Class[] { _clazz },
                 this);
@@ -64,6 +90,34 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
         return extensionHandler;
     }
 
+    /**
+     * Generates the compiled dispatcher for the managed handler interface up front, so that the Javassist cost is paid
+     * during context startup rather than on the first call through the proxy.
+     */
+    @PostConstruct
+    public void initializeCompiledDispatch() {
+        if (isCompiledDispatchEnabled()) {
+            compiledDispatch = ExtensionHandlerDispatcherFactory.getCompiledDispatch(handlerClass);
+        }
+    }
+
+    /**
+     * Whether or not calls through {@link #getProxy()} should use a generated {@link ExtensionHandlerDispatcher} rather
+     * than {@link Method#invoke(Object, Object...)}. Controlled by the "extension.manager.compiled.dispatch.enabled" property.
+     * 
+     * @return
+     */
+    public boolean isCompiledDispatchEnabled() {
+        return compiledDispatchEnabled;
+    }
+
+    public void setCompiledDispatchEnabled(boolean compiledDispatchEnabled) {
+        this.compiledDispatchEnabled = compiledDispatchEnabled;
+        if (!compiledDispatchEnabled) {
+            compiledDispatch = null;
+        }
+    }
+
     /**
      * If you are attempting to register a handler with this manager and are invoking this outside of an {@link ExtensionManager}
      * subclass, consider using {@link #registerHandler(ExtensionHandler)} instead.
@@ -82,14 +136,74 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
         return handlers;
     }
 
+    /**
+     * Returns the immutable snapshot of enabled handlers, sorted by priority, that is used for dispatch. The snapshot is
+     * rebuilt whenever a handler is registered, the handler list is replaced or modified directly, or a handler is
+     * enabled or disabled.
+     * 
+     * @return the sorted handlers
+     */
+    protected ExtensionHandler[] getHandlerSnapshot() {
+        ExtensionHandler[] snapshot = handlerSnapshot;
+        if (!handlersSorted || snapshotHandlerCount != handlers.size()
+                || snapshotEnabledStateVersion != AbstractExtensionHandler.getEnabledStateVersion()) {
+            synchronized (LOCK_OBJECT) {
+                if (snapshotHandlerCount != handlers.size()) {
+                    handlersSorted = false;
+                }
+                if (handlersSorted) {
+                    buildHandlerSnapshot();
+                } else {
+                    sortHandlers();
+                }
+                snapshot = handlerSnapshot;
+            }
+        }
+        return snapshot;
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     protected void sortHandlers() {
         if (!handlersSorted) {
             Comparator fieldCompare = new BeanComparator("priority");
             Collections.sort(handlers, fieldCompare);
+            buildHandlerSnapshot();
             handlersSorted = true;
         }
     }
+
+    /**
+     * Rebuilds {@link #handlerSnapshot} from the (sorted) handler list, leaving out handlers known to be disabled
+     */
+    protected void buildHandlerSnapshot() {
+        // read the version first so that a concurrent enable or disable triggers another rebuild
+        long version = AbstractExtensionHandler.getEnabledStateVersion();
+        List<ExtensionHandler> snapshot = new ArrayList<ExtensionHandler>(handlers.size());
+        for (T handler : handlers) {
+            if (!isEnabledStateTracked(handler) || handler.isEnabled()) {
+                snapshot.add(handler);
+            }
+        }
+        handlerSnapshot = snapshot.toArray(new ExtensionHandler[snapshot.size()]);
+        snapshotHandlerCount = handlers.size();
+        snapshotEnabledStateVersion = version;
+    }
+
+    /**
+     * @return whether changes to the handler's enabled state are announced through
+     * {@link AbstractExtensionHandler#setEnabled(boolean)}, i.e. it does not compute {@link ExtensionHandler#isEnabled()}
+     * itself
+     */
+    protected boolean isEnabledStateTracked(ExtensionHandler handler) {
+        if (!(handler instanceof AbstractExtensionHandler)) {
+            return false;
+        }
+        try {
+            return AbstractExtensionHandler.class.equals(handler.getClass().getMethod("isEnabled").getDeclaringClass());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
     
     /**
      * Intended to be invoked from the extension handlers themselves. This will add the given handler to this manager's list of
@@ -120,7 +234,10 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
     }
 
     public void setHandlers(List<T> handlers) {
-        this.handlers = handlers;
+        synchronized (LOCK_OBJECT) {
+            this.handlers = handlers;
+            handlersSorted = false;
+        }
     }
     
     /**
@@ -166,8 +283,19 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        ExtensionHandler[] snapshot = getHandlerSnapshot();
+        if (snapshot.length == 0) {
+            return ExtensionResultStatusType.NOT_HANDLED;
+        }
+        CompiledDispatch dispatch = getCompiledDispatch();
+        if (dispatch != null) {
+            int methodIndex = dispatch.getMethodIndex(method);
+            if (methodIndex >= 0) {
+                return dispatch(dispatch.getDispatcher(), methodIndex, snapshot, method, args);
+            }
+        }
         boolean notHandled = true;
-        for (ExtensionHandler handler : getHandlers()) {
+        for (ExtensionHandler handler : snapshot) {
             try {
                 if (handler.isEnabled()) {
                     ExtensionResultStatusType result = (ExtensionResultStatusType) method.invoke(handler, args);
@@ -189,6 +317,40 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
         }
     }
 
+    protected CompiledDispatch getCompiledDispatch() {
+        if (!isCompiledDispatchEnabled()) {
+            return null;
+        }
+        CompiledDispatch dispatch = compiledDispatch;
+        if (dispatch == null) {
+            // Not initialized through the container (e.g. manually constructed), generate on first use
+            dispatch = ExtensionHandlerDispatcherFactory.getCompiledDispatch(handlerClass);
+            compiledDispatch = dispatch;
+        }
+        return dispatch;
+    }
+
+    protected ExtensionResultStatusType dispatch(ExtensionHandlerDispatcher dispatcher, int methodIndex,
+            ExtensionHandler[] snapshot, Method method, Object[] args) {
+        boolean notHandled = true;
+        for (ExtensionHandler handler : snapshot) {
+            if (handler.isEnabled()) {
+                ExtensionResultStatusType result = dispatcher.dispatch(methodIndex, handler, args);
+                if (!ExtensionResultStatusType.NOT_HANDLED.equals(result)) {
+                    notHandled = false;
+                }
+                if (!shouldContinue(result, handler, method, args)) {
+                    break;
+                }
+            }
+        }
+        if (notHandled) {
+            return ExtensionResultStatusType.NOT_HANDLED;
+        } else {
+            return ExtensionResultStatusType.HANDLED;
+        }
+    }
+
     /**
      * Provides a mechanism for executing multiple extension handler touchpoints without utilizing reflection. This is a reasonable
      * alternative when the ExtensionManager is used in an operation that is very sensitive to the time cost involved in reflection
@@ -199,8 +361,12 @@ public abstract class ExtensionManager<T extends ExtensionHandler> implements In
      * @return
      */
     protected ExtensionResultStatusType execute(ExtensionManagerOperation operation, Object... params) {
+        ExtensionHandler[] snapshot = getHandlerSnapshot();
+        if (snapshot.length == 0) {
+            return ExtensionResultStatusType.NOT_HANDLED;
+        }
         boolean notHandled = true;
-        for (ExtensionHandler handler : getHandlers()) {
+        for (ExtensionHandler handler : snapshot) {
             if (handler.isEnabled()) {
                 ExtensionResultStatusType result = operation.execute(handler, params);
                 if (!ExtensionResultStatusType.NOT_HANDLED.equals(result)) {
@@ -17,9 +17,23 @@
  */
 package org.broadleafcommerce.common.id.service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.persistence.OptimisticLockException;
 
@@ -27,8 +41,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.id.dao.IdGenerationDao;
 import org.broadleafcommerce.common.id.domain.IdGeneration;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Hands out ids from ranges reserved in the database through {@link IdGenerationDao}. Each id type is served by its own
+ * {@link IdAllocator}, so types never contend with each other, and ids within a reserved range are handed out with a
+ * single atomic increment. When the consumed portion of a range crosses the configured watermark, the next range is
+ * reserved on a background thread so that callers normally never wait on the database. As before, each new range is
+ * reserved with the batch size of the call that needs it.
+ */
 @Service("blIdGenerationService")
 public class IdGenerationServiceImpl implements IdGenerationService {
 
@@ -37,7 +59,15 @@ public class IdGenerationServiceImpl implements IdGenerationService {
     @Resource(name="blIdGenerationDao")
     protected IdGenerationDao idGenerationDao;
 
-    protected Map<String, Id> idTypeIdMap = new HashMap<String, Id>();
+    @Value("${id.generation.prefetch.enabled:false}")
+    protected boolean prefetchEnabled = false;
+
+    @Value("${id.generation.prefetch.watermark:0.2}")
+    protected double prefetchWatermark = 0.2D;
+
+    protected ConcurrentMap<String, IdAllocator> idTypeIdMap = new ConcurrentHashMap<String, IdAllocator>();
+
+    protected volatile ExecutorService prefetchExecutor;
 
     @Override
     public Long findNextId(String idType) {
@@ -46,40 +76,26 @@ public class IdGenerationServiceImpl implements IdGenerationService {
 
     @Override
     public Long findNextId(String idType, Long batchSize) {
-        Id id;
-        synchronized (idTypeIdMap) {
-            id = idTypeIdMap.get(idType);
-            if (id == null) {
-                // recheck, another thread may have added this.
-                id = idTypeIdMap.get(idType);
-                if (id == null) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Getting the initial id from the database.");
-                    }
-                    IdGeneration idGeneration = getCurrentIdRange(idType, batchSize);
-                    id = new Id(idGeneration.getBatchStart(), idGeneration.getBatchSize());
-                }
-                idTypeIdMap.put(idType, id);
+        IdAllocator allocator = idTypeIdMap.get(idType);
+        if (allocator == null) {
+            IdAllocator newAllocator = new IdAllocator(idType);
+            allocator = idTypeIdMap.putIfAbsent(idType, newAllocator);
+            if (allocator == null) {
+                allocator = newAllocator;
             }
         }
+        return allocator.next(batchSize);
+    }
 
-        synchronized(id) {
-            if (id.batchSize == 0L) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Updating batch size for idType " + idType);
-                }
-                IdGeneration idGeneration = getCurrentIdRange(idType, batchSize);
-                id.nextId = idGeneration.getBatchStart();
-                id.batchSize = idGeneration.getBatchSize();
-            }
-            Long retId = id.nextId++;
-            id.batchSize--;
-
-            return retId;
+    @PreDestroy
+    public void destroy() {
+        ExecutorService executor = prefetchExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
         }
     }
-    
-    private IdGeneration getCurrentIdRange(String idType, Long batchSize) {
+
+    protected IdGeneration getCurrentIdRange(String idType, Long batchSize) {
         IdGeneration idGeneration = null;
         int retryCount = 0;
         boolean stale = true;
@@ -103,13 +119,150 @@ public class IdGenerationServiceImpl implements IdGenerationService {
         return idGeneration;
     }
 
-    private class Id {
-        public Long nextId;
-        public Long batchSize;
+    protected IdRange createIdRange(IdGeneration idGeneration) {
+        long start = idGeneration.getBatchStart();
+        long size = idGeneration.getBatchSize();
+        long remainingAtWatermark = Math.max(1L, Math.round(size * prefetchWatermark));
+        return new IdRange(start, start + size, start + size - remainingAtWatermark);
+    }
+
+    protected ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            synchronized (this) {
+                if (prefetchExecutor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                                protected final AtomicInteger count = new AtomicInteger();
+
+                                @Override
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, "blIdGenerationPrefetch-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+                    pool.allowCoreThreadTimeOut(true);
+                    prefetchExecutor = pool;
+                }
+            }
+        }
+        return prefetchExecutor;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    public void setPrefetchEnabled(boolean prefetchEnabled) {
+        this.prefetchEnabled = prefetchEnabled;
+    }
+
+    public double getPrefetchWatermark() {
+        return prefetchWatermark;
+    }
+
+    public void setPrefetchWatermark(double prefetchWatermark) {
+        this.prefetchWatermark = prefetchWatermark;
+    }
+
+    /**
+     * A range of ids reserved from the database. Ids from <code>start</code> (inclusive) to <code>end</code> (exclusive)
+     * are claimed by incrementing <code>next</code>; a claim at or past <code>end</code> means the range is exhausted.
+     */
+    protected static class IdRange {
+
+        protected final long end;
+        protected final long watermark;
+        protected final AtomicLong next;
 
-        public Id(Long nextId, Long batchSize) {
-            this.nextId = nextId;
-            this.batchSize = batchSize;
+        public IdRange(long start, long end, long watermark) {
+            this.end = end;
+            this.watermark = watermark;
+            this.next = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * Allocates ids for a single id type. Only switching to a new range is synchronized, and that is done against this
+     * allocator rather than the whole service.
+     */
+    protected class IdAllocator {
+
+        protected final String idType;
+        protected volatile IdRange current;
+        protected final AtomicReference<Future<IdRange>> prefetchedRange = new AtomicReference<Future<IdRange>>();
+
+        public IdAllocator(String idType) {
+            this.idType = idType;
+        }
+
+        public Long next(Long batchSize) {
+            while (true) {
+                IdRange range = current;
+                if (range != null) {
+                    long id = range.next.getAndIncrement();
+                    if (id < range.end) {
+                        if (id == range.watermark) {
+                            schedulePrefetch(batchSize);
+                        }
+                        return id;
+                    }
+                }
+                advance(range, batchSize);
+            }
+        }
+
+        protected synchronized void advance(IdRange exhausted, Long batchSize) {
+            if (current != exhausted) {
+                // another thread already moved on to a fresh range
+                return;
+            }
+            IdRange range = takePrefetchedRange();
+            if (range == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Getting the next id range from the database for idType " + idType);
+                }
+                range = createIdRange(getCurrentIdRange(idType, batchSize));
+            }
+            current = range;
+        }
+
+        protected void schedulePrefetch(final Long batchSize) {
+            if (!prefetchEnabled) {
+                return;
+            }
+            FutureTask<IdRange> task = new FutureTask<IdRange>(new Callable<IdRange>() {
+                @Override
+                public IdRange call() throws Exception {
+                    return createIdRange(getCurrentIdRange(idType, batchSize));
+                }
+            });
+            if (prefetchedRange.compareAndSet(null, task)) {
+                try {
+                    getPrefetchExecutor().execute(task);
+                } catch (RejectedExecutionException e) {
+                    prefetchedRange.compareAndSet(task, null);
+                }
+            }
+        }
+
+        protected IdRange takePrefetchedRange() {
+            Future<IdRange> future = prefetchedRange.getAndSet(null);
+            if (future == null) {
+                return null;
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the next id range for " + idType, e);
+            } catch (ExecutionException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Unable to prefetch the next id range for " + idType + ". Retrieving it synchronously.", e.getCause());
+                }
+                return null;
+            }
         }
     }
 }
@@ -0,0 +1,284 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.rule;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A bounded, concurrent cache of compiled MVEL expressions, keyed by the expression text.
+ * </p>
+ * <p>
+ * Lookups never lock. An expression is compiled by a single thread at a time: other threads asking for it while it is
+ * being compiled wait for that compilation rather than starting their own. Failed compilations are not cached.
+ * </p>
+ * <p>
+ * Once the cache grows past its maximum size, a small sample of entries is inspected and the one used least often is
+ * evicted, unless the expression just added has been asked for even less often, in which case it is the one dropped
+ * (TinyLFU admission). Usage is tracked approximately by a {@link FrequencySketch} that also remembers expressions that
+ * are no longer cached, so rules evaluated on every request are not pushed out by a burst of one-off expressions. The
+ * size may briefly exceed the maximum while several threads add entries at once.
+ * </p>
+ *
+ * @see MvelHelper#evaluateRule(String, java.util.Map, CompiledExpressionCache, java.util.Map)
+ */
+public class CompiledExpressionCache {
+
+    protected static final int EVICTION_SAMPLE_SIZE = 8;
+
+    protected final int maximumSize;
+    protected final ConcurrentMap<String, FutureTask<Serializable>> expressions = new ConcurrentHashMap<>();
+    protected final FrequencySketch sketch;
+    protected final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    /**
+     * Walks the keys across successive evictions so that sampling covers the whole map. Only used by the thread that
+     * holds {@link #evicting}.
+     */
+    protected Iterator<String> evictionHand;
+
+    public CompiledExpressionCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * @param expression
+     * @return the compiled expression, or null if it is not cached or still being compiled
+     */
+    public Serializable getIfPresent(String expression) {
+        sketch.increment(expression);
+        FutureTask<Serializable> task = expressions.get(expression);
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        return getResult(expression, task);
+    }
+
+    /**
+     * Returns the compiled expression, compiling it with <b>compiler</b> if no other thread is already doing so.
+     * Exceptions thrown by the compiler are rethrown to every thread waiting for the compilation.
+     *
+     * @param expression
+     * @param compiler compiles <b>expression</b>
+     * @return the compiled expression
+     */
+    public Serializable get(String expression, Callable<Serializable> compiler) {
+        FutureTask<Serializable> task = expressions.get(expression);
+        if (task == null) {
+            FutureTask<Serializable> newTask = new FutureTask<>(compiler);
+            task = expressions.putIfAbsent(expression, newTask);
+            if (task == null) {
+                task = newTask;
+                newTask.run();
+                if (expressions.size() > maximumSize) {
+                    evict(expression);
+                }
+            }
+        }
+        return getResult(expression, task);
+    }
+
+    public void invalidate(String expression) {
+        expressions.remove(expression);
+    }
+
+    public void clear() {
+        expressions.clear();
+    }
+
+    public int size() {
+        return expressions.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    protected Serializable getResult(String expression, FutureTask<Serializable> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // the compilation is running on another thread that will not be interrupted, keep waiting for it
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            expressions.remove(expression, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the cache is back within its maximum size. Only one thread evicts at a time, other threads
+     * adding entries meanwhile leave the work to it.
+     *
+     * @param candidate the expression that was just added
+     */
+    protected void evict(String candidate) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (expressions.size() > maximumSize) {
+                String victim = null;
+                int victimFrequency = Integer.MAX_VALUE;
+                for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+                    String key = nextSample();
+                    if (key == null) {
+                        break;
+                    }
+                    if (key.equals(candidate)) {
+                        continue;
+                    }
+                    int frequency = sketch.frequency(key);
+                    if (frequency < victimFrequency) {
+                        victim = key;
+                        victimFrequency = frequency;
+                    }
+                }
+                if (candidate != null && (victim == null || sketch.frequency(candidate) < victimFrequency)) {
+                    victim = candidate;
+                    candidate = null;
+                }
+                if (victim == null) {
+                    break;
+                }
+                expressions.remove(victim);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    protected String nextSample() {
+        if (evictionHand == null || !evictionHand.hasNext()) {
+            evictionHand = expressions.keySet().iterator();
+            if (!evictionHand.hasNext()) {
+                return null;
+            }
+        }
+        return evictionHand.next();
+    }
+
+    /**
+     * An approximate, lock-free count of how often each key has been asked for: a count-min sketch with four rows of
+     * 4 bit counters, sixteen to a long, that saturate at 15. Each row is four times as wide as the cache can hold
+     * entries, to keep collisions between rarely used keys low. All counters are halved once the number of increments
+     * reaches ten times the maximum size of the cache, so that keys popular in the past do not stay popular forever.
+     */
+    protected static class FrequencySketch {
+
+        protected static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        protected static final int MAX_FREQUENCY = 15;
+        protected static final long HALF_MASK = 0x7777777777777777L;
+
+        protected final AtomicLongArray table;
+        protected final int width;
+        protected final int resetThreshold;
+        protected final AtomicInteger additions = new AtomicInteger();
+
+        public FrequencySketch(int maximumSize) {
+            int w = 64;
+            while (w < 4L * maximumSize && w < (1 << 26)) {
+                w <<= 1;
+            }
+            width = w;
+            table = new AtomicLongArray(SEEDS.length * width / 16);
+            resetThreshold = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        }
+
+        public void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = indexOf(hash, row);
+                int index = counter >>> 4;
+                int shift = (counter & 15) << 2;
+                long current;
+                do {
+                    current = table.get(index);
+                } while (((current >>> shift) & 15) < MAX_FREQUENCY && !table.compareAndSet(index, current, current + (1L << shift)));
+            }
+            if (additions.incrementAndGet() == resetThreshold) {
+                reset();
+            }
+        }
+
+        public int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_FREQUENCY;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = indexOf(hash, row);
+                frequency = Math.min(frequency, (int) ((table.get(counter >>> 4) >>> ((counter & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        protected void reset() {
+            for (int i = 0; i < table.length(); i++) {
+                long current;
+                do {
+                    current = table.get(i);
+                } while (!table.compareAndSet(i, current, (current >>> 1) & HALF_MASK));
+            }
+            additions.set(0);
+        }
+
+        /**
+         * @return the position of the counter for <b>hash</b> in <b>row</b>, counting 4 bit counters from the start of the table
+         */
+        protected int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return row * width + ((int) h & (width - 1));
+        }
+
+        protected int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+}
@@ -22,20 +22,29 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.RequestDTO;
 import org.broadleafcommerce.common.TimeDTO;
+import org.broadleafcommerce.common.cache.CacheStatType;
+import org.broadleafcommerce.common.cache.StatisticsService;
+import org.broadleafcommerce.common.cache.TimingStatisticsService;
 import org.broadleafcommerce.common.presentation.client.SupportedFieldType;
 import org.broadleafcommerce.common.time.SystemTime;
-import org.broadleafcommerce.common.util.EfficientLRUMap;
+import org.broadleafcommerce.common.util.ApplicationContextHolder;
 import org.broadleafcommerce.common.util.FormatUtil;
 import org.broadleafcommerce.common.util.StringUtil;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.impl.MapVariableResolver;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.springframework.context.ApplicationContext;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -52,7 +61,7 @@ import javax.servlet.http.HttpServletRequest;
  */
 public class MvelHelper {
 
-    private static final Map<String, Serializable> DEFAULT_EXPRESSION_CACHE = new EfficientLRUMap<String, Serializable>(5000);
+    private static final CompiledExpressionCache DEFAULT_EXPRESSION_CACHE = new CompiledExpressionCache(5000);
     private static final Log LOG = LogFactory.getLog(MvelHelper.class);
 
     private static boolean TEST_MODE = false;
@@ -62,6 +71,10 @@ public class MvelHelper {
     // The following attribute is set in BroadleafProcessURLFilter
     public static final String REQUEST_DTO = "blRequestDTO";
 
+    public static final String COMPILE_TIME_STAT = "MVEL_EXPRESSION_COMPILE_TIME";
+
+    private static volatile StatisticsService statisticsService;
+
     static {
         System.setProperty("mvel2.disable.jit", "true");
     }
@@ -104,9 +117,9 @@ public class MvelHelper {
      * 
      * Also returns true if the rule is blank or null.
      * 
-     * Calls the {@link #evaluateRule(String, Map, Map)} method passing in the DEFAULT_EXPRESSION_CACHE.
+     * Calls the {@link #evaluateRule(String, Map, CompiledExpressionCache)} method passing in the DEFAULT_EXPRESSION_CACHE.
      * For systems that need to cache a large number of rule expressions, an alternate cache can be passed in.   The
-     * default cache is able to cache up to 1,000 rule expressions which should suffice for most systems.
+     * default cache is able to cache up to 5,000 rule expressions which should suffice for most systems.
      * 
      * @param rule
      * @param ruleParameters
@@ -123,6 +136,50 @@ public class MvelHelper {
      * @param ruleParameters
      * @return
      */
+    public static boolean evaluateRule(String rule, Map<String, Object> ruleParameters,
+            CompiledExpressionCache expressionCache) {
+        return evaluateRule(rule, ruleParameters, expressionCache, null);
+    }
+
+    /**
+     * Evaluates the passed in rule, compiling it at most once at a time per <b>expressionCache</b>.
+     * 
+     * @param rule
+     * @param ruleParameters
+     * @param expressionCache
+     * @param additionalContextImports additional imports to give to the {@link ParserContext} besides "MVEL" ({@link MVEL} and
+     * "MvelHelper" ({@link MvelHelper}) since they are automatically added 
+     * @return
+     */
+    public static boolean evaluateRule(final String rule, final Map<String, Object> ruleParameters,
+            CompiledExpressionCache expressionCache, final Map<String, Class<?>> additionalContextImports) {
+        // Null or empty is a match
+        if (rule == null || "".equals(rule)) {
+            return true;
+        }
+        Serializable exp = expressionCache.getIfPresent(rule);
+        addCacheStat(exp != null);
+        if (exp == null) {
+            exp = expressionCache.get(rule, new Callable<Serializable>() {
+                @Override
+                public Serializable call() {
+                    return compileExpression(rule, ruleParameters, additionalContextImports);
+                }
+            });
+        }
+        return executeExpression(rule, exp, ruleParameters);
+    }
+
+    /**
+     * Evaluates the passed in rule given the passed in parameters.   
+     * 
+     * @param rule
+     * @param ruleParameters
+     * @param expressionCache a map that is safe for concurrent use, such as an
+     * {@link org.broadleafcommerce.common.util.EfficientLRUMap}, or a {@link CompiledExpressionCache} when misses
+     * should not compile the same rule more than once
+     * @return
+     */
     public static boolean evaluateRule(String rule, Map<String, Object> ruleParameters,
             Map<String, Serializable> expressionCache) {
         return evaluateRule(rule, ruleParameters, expressionCache, null);
@@ -148,50 +205,88 @@ public class MvelHelper {
             if (expressionCache != null) {
                 exp = expressionCache.get(rule);
             }
+            addCacheStat(exp != null);
             if (exp == null) {
-                ParserContext context = new ParserContext();
-                context.addImport("MVEL", MVEL.class);
-                context.addImport("MvelHelper", MvelHelper.class);
-                context.addImport("CollectionUtils", SelectizeCollectionUtils.class);
-                if (MapUtils.isNotEmpty(additionalContextImports)) {
-                    for (Entry<String, Class<?>> entry : additionalContextImports.entrySet()) {
-                        context.addImport(entry.getKey(), entry.getValue());
+                exp = compileExpression(rule, ruleParameters, additionalContextImports);
+                if (expressionCache != null) {
+                    synchronized (expressionCache) {
+                        expressionCache.put(rule, exp);
                     }
                 }
-                
-                String modifiedRule = modifyExpression(rule, ruleParameters, context);
+            }
+            return executeExpression(rule, exp, ruleParameters);
+        }
+    }
 
-                synchronized (expressionCache) {
-                    exp = MVEL.compileExpression(modifiedRule, context);
-                    expressionCache.put(rule, exp);
-                }
+    /**
+     * Compiles the passed in rule, after {@link #modifyExpression(String, Map, ParserContext)}, with the default imports
+     * and <b>additionalContextImports</b>.
+     */
+    protected static Serializable compileExpression(String rule, Map<String, Object> ruleParameters,
+            Map<String, Class<?>> additionalContextImports) {
+        long start = System.nanoTime();
+        ParserContext context = new ParserContext();
+        context.addImport("MVEL", MVEL.class);
+        context.addImport("MvelHelper", MvelHelper.class);
+        context.addImport("CollectionUtils", SelectizeCollectionUtils.class);
+        if (MapUtils.isNotEmpty(additionalContextImports)) {
+            for (Entry<String, Class<?>> entry : additionalContextImports.entrySet()) {
+                context.addImport(entry.getKey(), entry.getValue());
             }
+        }
 
-            Map<String, Object> mvelParameters = new HashMap<String, Object>();
+        String modifiedRule = modifyExpression(rule, ruleParameters, context);
+        Serializable exp = MVEL.compileExpression(modifiedRule, context);
+        StatisticsService stats = getStatisticsService();
+        if (stats instanceof TimingStatisticsService) {
+            ((TimingStatisticsService) stats).addTimingStat(COMPILE_TIME_STAT, System.nanoTime() - start);
+        }
+        return exp;
+    }
 
-            if (ruleParameters != null) {
-                for (String parameter : ruleParameters.keySet()) {
-                    mvelParameters.put(parameter, ruleParameters.get(parameter));
-                }
+    /**
+     * Executes a compiled rule. The parameters are resolved straight from <b>ruleParameters</b> rather than from a copy,
+     * through a {@link RuleVariableResolverFactory} that keeps anything the rule assigns to itself.
+     */
+    protected static boolean executeExpression(String rule, Serializable exp, Map<String, Object> ruleParameters) {
+        try {
+            Object test = MVEL.executeExpression(exp, new RuleVariableResolverFactory(ruleParameters));
+            if (test == null) {
+                // This can occur if there is no actual rule
+                return true;
             }
+            return (Boolean) test;
+        } catch (Exception e) {
+            //Unable to execute the MVEL expression for some reason
+            //Return false, but notify about the bad expression through logs
+            if (!TEST_MODE && LOG.isInfoEnabled()) {
+                LOG.info("Unable to parse and/or execute the mvel expression (" + StringUtil.sanitize(rule)
+                        + "). Reporting to the logs and returning false for the match expression", e);
+            }
+            return false;
+        }
+    }
 
-            try {
-                Object test = MVEL.executeExpression(exp, mvelParameters);
-                if (test == null) {
-                    // This can occur if there is no actual rule
-                    return true;
-                }
-                return (Boolean) test;
-            } catch (Exception e) {
-                //Unable to execute the MVEL expression for some reason
-                //Return false, but notify about the bad expression through logs
-                if (!TEST_MODE && LOG.isInfoEnabled()) {
-                    LOG.info("Unable to parse and/or execute the mvel expression (" + StringUtil.sanitize(rule)
-                            + "). Reporting to the logs and returning false for the match expression", e);
-                }
-                return false;
+    protected static void addCacheStat(boolean hit) {
+        StatisticsService stats = getStatisticsService();
+        if (stats != null) {
+            stats.addCacheStat(CacheStatType.MVEL_EXPRESSION_CACHE_HIT_RATE.toString(), hit);
+        }
+    }
+
+    /**
+     * @return the "blStatisticsService" bean, or null until the application context is available
+     */
+    protected static StatisticsService getStatisticsService() {
+        StatisticsService stats = statisticsService;
+        if (stats == null) {
+            ApplicationContext applicationContext = ApplicationContextHolder.getApplicationContext();
+            if (applicationContext != null && applicationContext.containsBean("blStatisticsService")) {
+                stats = (StatisticsService) applicationContext.getBean("blStatisticsService");
+                statisticsService = stats;
             }
         }
+        return stats;
     }
     
     /**
@@ -274,4 +369,39 @@ public class MvelHelper {
 
        return mvelParameters;
    }    
+    /**
+     * Resolves the variables of a rule from a read-only view of its parameters, layered under a writable map of its own.
+     * Variables the rule declares, and parameters it assigns to, are created in the local map and shadow the parameters,
+     * so executing a rule never changes the caller's map.
+     */
+    protected static class RuleVariableResolverFactory extends MapVariableResolverFactory {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final Map<String, Object> localVariables;
+
+        public RuleVariableResolverFactory(Map<String, Object> ruleParameters) {
+            this(new HashMap<String, Object>(), ruleParameters);
+        }
+
+        protected RuleVariableResolverFactory(Map<String, Object> localVariables, Map<String, Object> ruleParameters) {
+            super(localVariables, new MapVariableResolverFactory(ruleParameters == null
+                    ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(ruleParameters)));
+            this.localVariables = localVariables;
+        }
+
+        @Override
+        public VariableResolver createVariable(String name, Object value) {
+            localVariables.put(name, value);
+            return getVariableResolver(name);
+        }
+
+        @Override
+        public VariableResolver createVariable(String name, Object value, Class<?> type) {
+            VariableResolver resolver = new MapVariableResolver(localVariables, name, type);
+            resolver.setValue(value);
+            return resolver;
+        }
+    }
+
 }
@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods for taking apart the MVEL rule expressions produced by the admin rule builder without compiling them.
+ */
+public class RuleExpressionUtils {
+
+    /**
+     * Split the expression on "&&" at the top level, honoring parentheses, brackets and string literals.
+     *
+     * @return the conjuncts, or null if the expression contains a top level "||" or is not well formed
+     */
+    public static List<String> splitConjuncts(String expression) {
+        List<String> conjuncts = new ArrayList<>();
+        int depth = 0;
+        boolean inString = false;
+        int start = 0;
+        for (int j = 0; j < expression.length(); j++) {
+            char c = expression.charAt(j);
+            if (inString) {
+                if (c == '\\') {
+                    j++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+            } else if (depth == 0 && j + 1 < expression.length()) {
+                char next = expression.charAt(j + 1);
+                if (c == '|' && next == '|') {
+                    return null;
+                }
+                if (c == '&' && next == '&') {
+                    conjuncts.add(expression.substring(start, j));
+                    start = j + 2;
+                    j++;
+                }
+            }
+        }
+        if (depth != 0 || inString) {
+            return null;
+        }
+        conjuncts.add(expression.substring(start));
+        return conjuncts;
+    }
+
+    /**
+     * Remove any parentheses that enclose the whole expression, e.g. "((a==b))" becomes "a==b".
+     */
+    public static String stripEnclosingParentheses(String expression) {
+        while (expression.startsWith("(") && expression.endsWith(")")) {
+            int depth = 0;
+            boolean enclosing = true;
+            for (int j = 0; j < expression.length() - 1; j++) {
+                char c = expression.charAt(j);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                if (depth == 0) {
+                    enclosing = false;
+                    break;
+                }
+            }
+            if (!enclosing) {
+                break;
+            }
+            expression = expression.substring(1, expression.length() - 1).trim();
+        }
+        return expression;
+    }
+
+}
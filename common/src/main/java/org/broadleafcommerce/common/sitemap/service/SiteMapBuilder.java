@@ -18,46 +18,78 @@
 
 package org.broadleafcommerce.common.sitemap.service;
 
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.file.domain.FileWorkArea;
 import org.broadleafcommerce.common.file.service.BroadleafFileUtils;
 import org.broadleafcommerce.common.sitemap.domain.SiteMapConfiguration;
-import org.broadleafcommerce.common.sitemap.wrapper.SiteMapIndexWrapper;
+import org.broadleafcommerce.common.sitemap.wrapper.SiteMapImageWrapper;
 import org.broadleafcommerce.common.sitemap.wrapper.SiteMapURLSetWrapper;
 import org.broadleafcommerce.common.sitemap.wrapper.SiteMapURLWrapper;
-import org.broadleafcommerce.common.sitemap.wrapper.SiteMapWrapper;
 import org.broadleafcommerce.common.util.FormatUtil;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Handles creating the various sitemap files. 
  * 
+ * URLs are streamed to the current sitemap file as they are added rather than collected in memory, and, when gzip is
+ * enabled, the ".gz" copy of each file is written in the same pass. The builder is safe to share between generators
+ * running on different threads.
+ * 
  * @author bpolster
  */
 public class SiteMapBuilder {
 
     protected static final Log LOG = LogFactory.getLog(SiteMapBuilder.class);
+
+    protected static final String SITEMAP_NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    protected static final String IMAGE_PREFIX = "image";
+    protected static final String IMAGE_NAMESPACE = "http://www.google.com/schemas/sitemap-image/1.1";
+    protected static final String ENCODING_EXTENSION = ".gz";
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    protected static final ConcurrentMap<Class<?>, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
     protected FileWorkArea fileWorkArea;
 
     protected SiteMapConfiguration siteMapConfig;
+
+    /**
+     * @deprecated URLs are no longer collected here, they are written to the current file as they are added
+     */
+    @Deprecated
     protected SiteMapURLSetWrapper currentURLSetWrapper;
     protected List<String> indexedFileNames = new ArrayList<String>();
     protected String baseUrl;
     protected boolean gzipSiteMapFiles = true;
 
+    protected OutputStream currentOutputStream;
+    protected XMLStreamWriter currentWriter;
+    protected int currentUrlCount;
+
     public SiteMapBuilder(SiteMapConfiguration siteMapConfig, FileWorkArea fileWorkArea, String baseUrl, boolean gzipSiteMapFiles) {
         this.fileWorkArea = fileWorkArea;
         this.siteMapConfig = siteMapConfig;
@@ -67,15 +99,138 @@ public class SiteMapBuilder {
     }
 
     /**
-     * Returns the SiteMapURLSetWrapper that a Generator should use to add its next URL element.
-     * 
+     * Writes the URL element to the current sitemap file, starting a new file once the current one holds the maximum
+     * number of entries.
      */
-    public void addUrl(SiteMapURLWrapper urlWrapper) {
-        if (currentURLSetWrapper.getSiteMapUrlWrappers().size() >= siteMapConfig.getMaximumUrlEntriesPerFile()) {
-            persistIndexedURLSetWrapper(currentURLSetWrapper);
-            currentURLSetWrapper = new SiteMapURLSetWrapper();
+    public synchronized void addUrl(SiteMapURLWrapper urlWrapper) {
+        try {
+            if (currentWriter != null && currentUrlCount >= siteMapConfig.getMaximumUrlEntriesPerFile()) {
+                closeURLSetFile();
+            }
+            if (currentWriter == null) {
+                openURLSetFile(createNextIndexedFileName());
+            }
+            writeUrl(currentWriter, urlWrapper);
+            currentUrlCount++;
+        } catch (IOException | XMLStreamException e) {
+            LOG.error("Exception occurred writing SiteMap URL", e);
+            throw new RuntimeException("Error persisting XML document when trying to build Sitemap", e);
         }
-        currentURLSetWrapper.getSiteMapUrlWrappers().add(urlWrapper);
+    }
+
+    /**
+     * Starts a new urlset file in the work area and registers it with the indexed files
+     */
+    protected void openURLSetFile(String fileName) throws IOException, XMLStreamException {
+        indexedFileNames.add(fileName);
+        currentOutputStream = openOutputStream(fileName);
+        try {
+            currentWriter = XML_OUTPUT_FACTORY.createXMLStreamWriter(currentOutputStream, "UTF-8");
+        } catch (XMLStreamException e) {
+            closeQuietly(currentOutputStream);
+            currentOutputStream = null;
+            throw e;
+        }
+        currentUrlCount = 0;
+        currentWriter.writeStartDocument("UTF-8", "1.0");
+        currentWriter.writeCharacters("\n");
+        currentWriter.writeStartElement("urlset");
+        currentWriter.writeDefaultNamespace(SITEMAP_NAMESPACE);
+        currentWriter.writeNamespace(IMAGE_PREFIX, IMAGE_NAMESPACE);
+    }
+
+    protected void closeURLSetFile() throws IOException, XMLStreamException {
+        XMLStreamWriter writer = currentWriter;
+        currentWriter = null;
+        try (OutputStream out = currentOutputStream) {
+            currentOutputStream = null;
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+    }
+
+    /**
+     * Closes the file currently being written, if any, without finishing it. Used to release the file handles when
+     * building the sitemap fails part way through.
+     */
+    public synchronized void close() {
+        if (currentWriter != null) {
+            try {
+                currentWriter.close();
+            } catch (XMLStreamException e) {
+                LOG.debug("Unable to close the SiteMap writer", e);
+            }
+            currentWriter = null;
+        }
+        closeQuietly(currentOutputStream);
+        currentOutputStream = null;
+    }
+
+    protected void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close SiteMap file", e);
+            }
+        }
+    }
+
+    protected void writeUrl(XMLStreamWriter writer, SiteMapURLWrapper urlWrapper) throws XMLStreamException {
+        writer.writeCharacters("\n    ");
+        writer.writeStartElement("url");
+        writeElement(writer, "loc", urlWrapper.getLoc(), "\n        ");
+        writeElement(writer, "lastmod", urlWrapper.getLastmod(), "\n        ");
+        writeElement(writer, "changefreq", urlWrapper.getChangefreq(), "\n        ");
+        writeElement(writer, "priority", urlWrapper.getPriority(), "\n        ");
+        for (SiteMapImageWrapper image : urlWrapper.getSiteMapImageWrappers()) {
+            writer.writeCharacters("\n        ");
+            writer.writeStartElement(IMAGE_PREFIX, "image", IMAGE_NAMESPACE);
+            if (image.getLoc() != null) {
+                writer.writeCharacters("\n            ");
+                writer.writeStartElement(IMAGE_PREFIX, "loc", IMAGE_NAMESPACE);
+                writer.writeCharacters(image.getLoc());
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n        ");
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+    }
+
+    protected void writeElement(XMLStreamWriter writer, String name, String value, String indent) throws XMLStreamException {
+        if (value != null) {
+            writer.writeCharacters(indent);
+            writer.writeStartElement(name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Opens a file in the work area for writing. When gzip is enabled the bytes also go to the file's ".gz" copy.
+     */
+    protected OutputStream openOutputStream(String fileName) throws IOException {
+        File file = new File(fileWorkArea.getFilePathLocation() + fileName);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Persisting SiteMap document " + file.getAbsolutePath());
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        if (gzipSiteMapFiles) {
+            FileOutputStream gzipFile = null;
+            try {
+                gzipFile = new FileOutputStream(file.getAbsolutePath() + ENCODING_EXTENSION);
+                out = new TeeOutputStream(out, new GZIPOutputStream(gzipFile, BUFFER_SIZE));
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(gzipFile);
+                closeQuietly(out);
+                throw e;
+            }
+        }
+        return out;
     }
 
     /**
@@ -87,23 +242,19 @@ public class SiteMapBuilder {
     protected void persistXMLDocument(String fileName, Object xmlObject) {
 
         try {
-            JAXBContext context = JAXBContext.newInstance(xmlObject.getClass());
+            JAXBContext context = JAXB_CONTEXTS.get(xmlObject.getClass());
+            if (context == null) {
+                context = JAXBContext.newInstance(xmlObject.getClass());
+                JAXB_CONTEXTS.putIfAbsent(xmlObject.getClass(), context);
+            }
             Marshaller m = context.createMarshaller();
             m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             m.setProperty(Marshaller.JAXB_FRAGMENT, true);
 
-            File file = new File(fileWorkArea.getFilePathLocation() + fileName);
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Persisting SiteMap document " + file.getAbsolutePath());
+            try (Writer writer = new OutputStreamWriter(openOutputStream(fileName), "UTF-8")) {
+                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                m.marshal(xmlObject, writer);
             }
-
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            Writer writer = new BufferedWriter(new FileWriter(file.getAbsoluteFile()));
-            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            m.marshal(xmlObject, writer);
-            writer.close();
         } catch (IOException ioe) {
             LOG.error("IOException occurred persisting XML Document", ioe);
             throw new RuntimeException("Error persisting XML document when trying to build Sitemap", ioe);
@@ -125,13 +276,37 @@ public class SiteMapBuilder {
     }
 
     /**
-     * Save the passed in URL set to a non-indexed file. 
+     * Finish the only URL set file and give it the non-indexed file name. 
      * 
      * @return
      */
-    protected void persistNonIndexedSiteMap() {
-        indexedFileNames.add(siteMapConfig.getSiteMapFileName());
-        persistXMLDocument(siteMapConfig.getSiteMapFileName(), currentURLSetWrapper);
+    protected void persistNonIndexedSiteMap() throws IOException, XMLStreamException {
+        String fileName = siteMapConfig.getSiteMapFileName();
+        if (currentWriter == null) {
+            openURLSetFile(fileName);
+            closeURLSetFile();
+            return;
+        }
+        closeURLSetFile();
+        String indexedFileName = indexedFileNames.get(0);
+        if (!indexedFileName.equals(fileName)) {
+            renameFile(indexedFileName, fileName);
+            if (gzipSiteMapFiles) {
+                renameFile(indexedFileName + ENCODING_EXTENSION, fileName + ENCODING_EXTENSION);
+            }
+            indexedFileNames.set(0, fileName);
+        }
+    }
+
+    protected void renameFile(String fileName, String newFileName) throws IOException {
+        File file = new File(fileWorkArea.getFilePathLocation() + fileName);
+        File newFile = new File(fileWorkArea.getFilePathLocation() + newFileName);
+        if (newFile.exists()) {
+            newFile.delete();
+        }
+        if (!file.renameTo(newFile)) {
+            throw new IOException("Unable to rename " + file.getAbsolutePath() + " to " + newFile.getAbsolutePath());
+        }
     }
 
     /**
@@ -139,33 +314,51 @@ public class SiteMapBuilder {
      * 
      * @return
      */
-    protected void persistIndexedSiteMap() {
+    protected void persistIndexedSiteMap() throws IOException, XMLStreamException {
         String now = FormatUtil.formatDateUsingW3C(new Date());
         
-        // Save the leftover URL set
-        persistIndexedURLSetWrapper(currentURLSetWrapper);
+        // Finish the leftover URL set
+        if (currentWriter != null) {
+            closeURLSetFile();
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Persisting sitemap.xml file for indexed site map ");
+        }
 
         // Build the siteMapIndex
-        SiteMapIndexWrapper siteMapIndexWrapper = new SiteMapIndexWrapper();
+        try (OutputStream out = openOutputStream(siteMapConfig.getIndexedSiteMapFileName())) {
+            writeSiteMapIndex(out, now);
+        }
+
+        indexedFileNames.add(siteMapConfig.getIndexedSiteMapFileName());
+    }
+
+    protected void writeSiteMapIndex(OutputStream out, String now) throws XMLStreamException {
+        XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("sitemapindex");
+        writer.writeDefaultNamespace(SITEMAP_NAMESPACE);
+        writer.writeNamespace(IMAGE_PREFIX, IMAGE_NAMESPACE);
         for (String fileName : indexedFileNames) {
-            SiteMapWrapper siteMapWrapper = new SiteMapWrapper();
             String fileLoc = null;
             if (gzipSiteMapFiles) {
-                fileLoc = BroadleafFileUtils.appendUnixPaths(baseUrl, fileName + ".gz");
+                fileLoc = BroadleafFileUtils.appendUnixPaths(baseUrl, fileName + ENCODING_EXTENSION);
             } else {
                 fileLoc = BroadleafFileUtils.appendUnixPaths(baseUrl, fileName);
             }
-            siteMapWrapper.setLoc(fileLoc)   ;         
-            siteMapWrapper.setLastmod(now);
-            siteMapIndexWrapper.getSiteMapWrappers().add(siteMapWrapper);
-        }
-
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Persisting sitemap.xml file for indexed site map ");
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("sitemap");
+            writeElement(writer, "loc", fileLoc, "\n        ");
+            writeElement(writer, "lastmod", now, "\n        ");
+            writer.writeCharacters("\n    ");
+            writer.writeEndElement();
         }
-        indexedFileNames.add(siteMapConfig.getIndexedSiteMapFileName());
-        persistXMLDocument(siteMapConfig.getIndexedSiteMapFileName(),
-                siteMapIndexWrapper);
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
     }
 
     /**
@@ -181,14 +374,26 @@ public class SiteMapBuilder {
         return fileName;
     }
 
-    protected void persistSiteMap() {
-        if (indexedFileNames.size() > 0) {
-            persistIndexedSiteMap();
-        } else {
-            persistNonIndexedSiteMap();
+    protected synchronized void persistSiteMap() {
+        try {
+            if (indexedFileNames.size() > 1) {
+                persistIndexedSiteMap();
+            } else {
+                persistNonIndexedSiteMap();
+            }
+        } catch (IOException | XMLStreamException e) {
+            LOG.error("Exception occurred persisting SiteMap", e);
+            throw new RuntimeException("Error persisting XML document when trying to build Sitemap", e);
         }
     }
 
+    /**
+     * @return whether or not the files written by this builder include their ".gz" copies
+     */
+    public boolean isGzipSiteMapFiles() {
+        return gzipSiteMapFiles;
+    }
+
     public List<String> getIndexedFileNames() {
         return indexedFileNames;
     }
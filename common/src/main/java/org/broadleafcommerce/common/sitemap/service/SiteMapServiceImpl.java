@@ -29,9 +29,15 @@ import org.broadleafcommerce.common.file.service.BroadleafFileService;
 import org.broadleafcommerce.common.sitemap.domain.SiteMapConfiguration;
 import org.broadleafcommerce.common.sitemap.domain.SiteMapGeneratorConfiguration;
 import org.broadleafcommerce.common.sitemap.exception.SiteMapException;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
 import org.broadleafcommerce.common.util.BLCSystemProperty;
 import org.broadleafcommerce.common.web.BaseUrlResolver;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,9 +45,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Resource;
+import javax.persistence.EntityManagerFactory;
 
 /**
  * Component responsible for generating a sitemap.   Relies on SiteMapGenerators to 
@@ -73,6 +86,13 @@ public class SiteMapServiceImpl implements SiteMapService {
     @Resource(name = "blBaseUrlResolver")
     protected BaseUrlResolver baseUrlResolver;
 
+    /**
+     * The number of threads used to run the site map generators. With more than one, the generators for the different
+     * generator configurations run concurrently and their URLs are interleaved in the site map files.
+     */
+    @Value("${sitemap.generator.threads:1}")
+    protected int siteMapGeneratorThreads = 1;
+
     @Override
     public SiteMapGenerationResponse generateSiteMap() throws SiteMapException, IOException {
         SiteMapGenerationResponse smgr = new SiteMapGenerationResponse();
@@ -92,6 +112,7 @@ public class SiteMapServiceImpl implements SiteMapService {
         if (LOG.isTraceEnabled()) {
             LOG.trace("File work area initalized with path " + fileWorkArea.getFilePathLocation());
         }
+        List<SiteMapGeneratorConfiguration> configurations = new ArrayList<SiteMapGeneratorConfiguration>();
         for (SiteMapGeneratorConfiguration currentConfiguration : smc.getSiteMapGeneratorConfigurations()) {
             if (currentConfiguration.isDisabled()) {
                 if (LOG.isTraceEnabled()) {
@@ -99,23 +120,31 @@ public class SiteMapServiceImpl implements SiteMapService {
                 }
                 continue;
             }
-            SiteMapGenerator generator = selectSiteMapGenerator(currentConfiguration);
-            if (generator != null) {
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("SiteMapGenerator found, adding entries" + generator.getClass());
-                }
-                generator.addSiteMapEntries(currentConfiguration, siteMapBuilder);
+            configurations.add(currentConfiguration);
+        }
+
+        boolean generated = false;
+        try {
+            if (siteMapGeneratorThreads > 1 && configurations.size() > 1) {
+                addSiteMapEntriesInParallel(configurations, siteMapBuilder);
             } else {
-                LOG.warn("No site map generator found to process generator configuration for " + currentConfiguration.getSiteMapGeneratorType());
+                for (SiteMapGeneratorConfiguration currentConfiguration : configurations) {
+                    addSiteMapEntries(currentConfiguration, siteMapBuilder);
+                }
             }
-        }
 
-        siteMapBuilder.persistSiteMap();
+            siteMapBuilder.persistSiteMap();
+            generated = true;
+        } finally {
+            if (!generated) {
+                siteMapBuilder.close();
+                broadleafFileService.closeWorkArea(fileWorkArea);
+            }
+        }
 
 
-        // Check for GZip
+        // Check for GZip - the builder writes the gzipped copy of each file along with it
         if (getGzipSiteMapFiles()) {
-            gzipAndDeleteFiles(fileWorkArea, siteMapBuilder.getIndexedFileNames(), false);
             List<String> indexFileNames = new ArrayList<String>();
             for (String fileName: siteMapBuilder.getIndexedFileNames()) {
                 indexFileNames.add(fileName + ENCODING_EXTENSION);
@@ -133,6 +162,103 @@ public class SiteMapServiceImpl implements SiteMapService {
         return smgr;
     }
 
+    protected void addSiteMapEntries(SiteMapGeneratorConfiguration currentConfiguration, SiteMapBuilder siteMapBuilder) {
+        SiteMapGenerator generator = selectSiteMapGenerator(currentConfiguration);
+        if (generator != null) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("SiteMapGenerator found, adding entries" + generator.getClass());
+            }
+            generator.addSiteMapEntries(currentConfiguration, siteMapBuilder);
+        } else {
+            LOG.warn("No site map generator found to process generator configuration for " + currentConfiguration.getSiteMapGeneratorType());
+        }
+    }
+
+    /**
+     * Runs the generators for the passed in configurations concurrently. Each one gets a lightweight copy of the
+     * calling thread's request context, and an entity manager of its own for each entity manager factory bound to the
+     * calling thread, so lazy loading works as it would on the calling thread. The first failure is rethrown once all
+     * of them have finished.
+     */
+    protected void addSiteMapEntriesInParallel(List<SiteMapGeneratorConfiguration> configurations,
+            final SiteMapBuilder siteMapBuilder) throws SiteMapException {
+        final BroadleafRequestContext context = BroadleafRequestContext.getBroadleafRequestContext();
+        final List<EntityManagerFactory> entityManagerFactories = new ArrayList<EntityManagerFactory>();
+        for (Object key : TransactionSynchronizationManager.getResourceMap().keySet()) {
+            if (key instanceof EntityManagerFactory) {
+                entityManagerFactories.add((EntityManagerFactory) key);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(siteMapGeneratorThreads, configurations.size()),
+                createThreadFactory());
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final SiteMapGeneratorConfiguration currentConfiguration : configurations) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<EntityManagerFactory> bound = new ArrayList<EntityManagerFactory>();
+                        try {
+                            if (context != null) {
+                                BroadleafRequestContext.setBroadleafRequestContext(context.createLightWeightClone());
+                            }
+                            for (EntityManagerFactory emf : entityManagerFactories) {
+                                if (!TransactionSynchronizationManager.hasResource(emf)) {
+                                    TransactionSynchronizationManager.bindResource(emf,
+                                            new EntityManagerHolder(emf.createEntityManager()));
+                                    bound.add(emf);
+                                }
+                            }
+                            addSiteMapEntries(currentConfiguration, siteMapBuilder);
+                        } finally {
+                            for (EntityManagerFactory emf : bound) {
+                                EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.unbindResource(emf);
+                                EntityManagerFactoryUtils.closeEntityManager(holder.getEntityManager());
+                            }
+                            ThreadLocalManager.remove();
+                        }
+                    }
+                }));
+            }
+            Throwable failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new SiteMapException(failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SiteMapException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected ThreadFactory createThreadFactory() {
+        return new ThreadFactory() {
+
+            protected final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "blSiteMapGenerator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     @Override
     public File getSiteMapFile(String fileName) throws SiteMapException, IOException {
         if (LOG.isTraceEnabled()) {
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.weave;
+
+import java.util.List;
+
+/**
+ * Persists the output of class transformers between JVM runs so that a restart does not have to weave unchanged
+ * classes again. Entries are addressed by a hash of the original class bytes and the configuration of the transformer,
+ * and remember the hash of every template class that was copied in so that a change to any of them invalidates the
+ * entry. They also remember the methods the transformer replaced, so that it can track them on a cached boot just as
+ * it does when weaving.
+ *
+ * @see org.broadleafcommerce.common.extensibility.jpa.copy.DirectCopyClassTransformer
+ */
+public interface WeavingCache {
+
+    boolean isEnabled();
+
+    /**
+     * @param classfileBuffer the original bytes of the class being transformed
+     * @param configuration everything else that determines the output of the transformer for this class
+     * @return the key under which the transformed class is cached
+     */
+    String computeKey(byte[] classfileBuffer, String configuration);
+
+    /**
+     * @param key a key from {@link #computeKey(byte[], String)}
+     * @param loader the loader the class is being defined in, used to find the template classes
+     * @param replacedMethods receives the descriptions of the methods the transformer replaced, when there is an entry
+     * @return the transformed bytes, an empty array if the transformer left the class unchanged, or null if there is
+     * no entry or any of its template classes has changed
+     */
+    byte[] get(String key, ClassLoader loader, List<String> replacedMethods);
+
+    /**
+     * @param key a key from {@link #computeKey(byte[], String)}
+     * @param transformedBytes the transformed class, or null if the transformer left the class unchanged
+     * @param templateClassNames the classes that were copied into the transformed class
+     * @param replacedMethods the descriptions of the methods of the class that the transformer replaced
+     * @param loader the loader the class is being defined in, used to find the template classes
+     */
+    void put(String key, byte[] transformedBytes, List<String> templateClassNames, List<String> replacedMethods,
+            ClassLoader loader);
+
+    /**
+     * @return a hash of the bytes of the named class as found through <b>loader</b>, or null if it cannot be read
+     */
+    String hashClass(String className, ClassLoader loader);
+
+    /**
+     * @return the number of lookups since startup that found a valid entry
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups since startup that found no entry or a stale one
+     */
+    long getMissCount();
+}
@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.weave;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * {@link WeavingCache} that keeps one file per entry under {@link #getCacheDirectory()}. Each file holds the names and
+ * hashes of the template classes and the replaced methods, followed by the transformed bytes. Files are written to a temporary name and moved into
+ * place, so concurrent or interrupted writers never leave a partial entry behind, and an unreadable entry is simply
+ * treated as a miss.
+ */
+@Service("blWeavingCache")
+public class WeavingCacheImpl implements WeavingCache {
+
+    private static final Log LOG = LogFactory.getLog(WeavingCacheImpl.class);
+
+    protected static final int FORMAT_VERSION = 2;
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Value("${weaving.cache.enabled:false}")
+    protected boolean enabled = false;
+
+    @Value("${weaving.cache.directory:}")
+    protected String directory;
+
+    protected File cacheDirectory;
+
+    /**
+     * Template classes do not change while the JVM is running, so each is only read and hashed once
+     */
+    protected ConcurrentMap<String, String> classHashes = new ConcurrentHashMap<>();
+
+    protected AtomicLong hitCount = new AtomicLong();
+    protected AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The cache directory has to be configured explicitly. Whoever can write to it can change the classes this
+     * application loads, so a shared location such as java.io.tmpdir must not be picked by default.
+     */
+    @PostConstruct
+    public void init() {
+        if (directory == null || directory.trim().length() == 0) {
+            cacheDirectory = null;
+            if (enabled) {
+                LOG.warn("weaving.cache.enabled is set without a weaving.cache.directory, woven classes will not be cached");
+                enabled = false;
+            }
+            return;
+        }
+        cacheDirectory = new File(directory.trim());
+        if (enabled) {
+            LOG.info("Caching woven classes in " + cacheDirectory.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String computeKey(byte[] classfileBuffer, String configuration) {
+        MessageDigest digest = getDigest();
+        digest.update((FORMAT_VERSION + "|" + configuration + "|").getBytes(UTF8));
+        digest.update(classfileBuffer);
+        return toHex(digest.digest());
+    }
+
+    @Override
+    public byte[] get(String key, ClassLoader loader, List<String> replacedMethods) {
+        File entry = getEntryFile(key);
+        if (!entry.isFile()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(entry))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            int templateCount = in.readInt();
+            for (int i = 0; i < templateCount; i++) {
+                String templateClassName = in.readUTF();
+                String templateHash = in.readUTF();
+                if (!templateHash.equals(hashClass(templateClassName, loader))) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Template " + templateClassName + " has changed, weaving entry " + key + " again");
+                    }
+                    missCount.incrementAndGet();
+                    return null;
+                }
+            }
+            List<String> entryReplacedMethods = new ArrayList<>();
+            int replacedMethodCount = in.readInt();
+            for (int i = 0; i < replacedMethodCount; i++) {
+                entryReplacedMethods.add(in.readUTF());
+            }
+            byte[] transformedBytes = new byte[in.readInt()];
+            in.readFully(transformedBytes);
+            replacedMethods.addAll(entryReplacedMethods);
+            hitCount.incrementAndGet();
+            return transformedBytes;
+        } catch (IOException e) {
+            LOG.warn("Unable to read weaving cache entry " + entry.getAbsolutePath() + ", weaving again", e);
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] transformedBytes, List<String> templateClassNames, List<String> replacedMethods,
+            ClassLoader loader) {
+        List<String> templateHashes = new ArrayList<>();
+        for (String templateClassName : templateClassNames) {
+            String templateHash = hashClass(templateClassName, loader);
+            if (templateHash == null) {
+                // without the template bytes a later change to the template could not be detected, so don't cache
+                return;
+            }
+            templateHashes.add(templateHash);
+        }
+        File entry = getEntryFile(key);
+        File parent = entry.getParentFile();
+        File temp = null;
+        try {
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Unable to create " + parent.getAbsolutePath());
+            }
+            temp = File.createTempFile(key, ".tmp", parent);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(templateClassNames.size());
+                for (int i = 0; i < templateClassNames.size(); i++) {
+                    out.writeUTF(templateClassNames.get(i));
+                    out.writeUTF(templateHashes.get(i));
+                }
+                out.writeInt(replacedMethods.size());
+                for (String replacedMethod : replacedMethods) {
+                    out.writeUTF(replacedMethod);
+                }
+                byte[] bytes = transformedBytes == null ? new byte[0] : transformedBytes;
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Unable to write weaving cache entry " + entry.getAbsolutePath(), e);
+            if (temp != null && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public String hashClass(String className, ClassLoader loader) {
+        String hash = classHashes.get(className);
+        if (hash == null) {
+            String resource = className.replace('.', '/') + ".class";
+            InputStream in = loader == null ? null : loader.getResourceAsStream(resource);
+            if (in == null) {
+                in = WeavingCacheImpl.class.getClassLoader().getResourceAsStream(resource);
+            }
+            if (in == null) {
+                return null;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                MessageDigest digest = getDigest();
+                hash = toHex(digest.digest(bytes.toByteArray()));
+            } catch (IOException e) {
+                return null;
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //do nothing
+                }
+            }
+            classHashes.put(className, hash);
+        }
+        return hash;
+    }
+
+    protected File getEntryFile(String key) {
+        return new File(new File(cacheDirectory, key.substring(0, 2)), key + ".bin");
+    }
+
+    protected MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class CacheStatTest extends TestCase {
+
+    protected static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    public void testWindowedHitRate() {
+        CacheStat stat = new CacheStat();
+        long start = stat.getLastLogTime();
+
+        for (int i = 0; i < 10; i++) {
+            stat.record(false, start + 1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            stat.record(true, start + 5 * MINUTE);
+        }
+        long now = start + 5 * MINUTE + 30000;
+
+        assertEquals("Lifetime hit rate covers every request", 50D, stat.getHitRate().doubleValue());
+        assertEquals("Only the hits fall in the last minute", 100D, stat.getHitRate(MINUTE, now).doubleValue());
+        assertEquals("Only the hits fall in the last minute", 10L, stat.getRequestCount(MINUTE, now).longValue());
+        assertEquals("Both the misses and the hits fall in the last 15 minutes", 50D,
+                stat.getHitRate(15 * MINUTE, now).doubleValue());
+        assertEquals("No requests in the last minute", -1D, stat.getHitRate(MINUTE, now + 2 * MINUTE).doubleValue());
+    }
+
+    public void testWindowsSurviveSnapshotWrapAround() {
+        CacheStat stat = new CacheStat();
+        long time = stat.getLastLogTime();
+        for (int i = 0; i < CacheStat.SNAPSHOT_CAPACITY * 3; i++) {
+            time += CacheStat.SNAPSHOT_INTERVAL_MILLIS;
+            stat.record(i % 10 != 0, time);
+        }
+        long now = time + CacheStat.SNAPSHOT_INTERVAL_MILLIS;
+        assertEquals(90D, stat.getHitRate(15 * MINUTE, now).doubleValue());
+        assertEquals(15 * MINUTE / CacheStat.SNAPSHOT_INTERVAL_MILLIS, stat.getRequestCount(15 * MINUTE, now).longValue());
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final CacheStat stat = new CacheStat();
+        final long now = stat.getLastLogTime();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        stat.record(j % 2 == 0, now);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000L, stat.getRequestCount().longValue());
+        assertEquals(40000L, stat.getCacheHitCount().longValue());
+    }
+
+    public void testServiceAttributes() throws Exception {
+        StatisticsServiceImpl service = new StatisticsServiceImpl();
+        service.addCacheStat("TEST_CACHE", true);
+        service.addCacheStat("TEST_CACHE", false);
+        service.addCacheLoadTime("TEST_CACHE", TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertEquals(50D, service.getAttribute("TEST_CACHE"));
+        assertEquals(50D, service.getAttribute("TEST_CACHE" + StatisticsServiceImpl.HIT_RATE_SUFFIX + "5M"));
+        assertEquals(3D, service.getAttribute("TEST_CACHE" + StatisticsServiceImpl.LOAD_TIME_SUFFIX));
+        assertEquals(-1D, service.getAttribute("UNKNOWN_CACHE"));
+        assertEquals(service.getAttributes(null).size(), service.getMBeanInfo().getAttributes().length - 1);
+    }
+}
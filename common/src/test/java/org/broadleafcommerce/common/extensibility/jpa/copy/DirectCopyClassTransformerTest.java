@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.extensibility.jpa.copy;
+
+import org.broadleafcommerce.common.weave.WeavingCache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DirectCopyClassTransformerTest extends TestCase {
+
+    protected static final String ENTITY = "com.example.EntityImpl";
+    protected static final String REPLACED_METHOD = ENTITY + "|getName|()Ljava/lang/String;";
+
+    protected DirectCopyClassTransformer transformer;
+    protected CachedWeavingCache weavingCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        DirectCopyClassTransformer.transformedMethods.clear();
+        weavingCache = new CachedWeavingCache();
+        transformer = new DirectCopyClassTransformer("test");
+        transformer.addXformTemplate(ENTITY, "com.example.EntityTemplate");
+        transformer.weavingCache = weavingCache;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DirectCopyClassTransformer.transformedMethods.clear();
+    }
+
+    public void testCachedClassMarksItsReplacedMethods() throws Exception {
+        byte[] transformed = transformer.transform(getClass().getClassLoader(), ENTITY.replace('.', '/'), null, null,
+                new byte[] {1});
+
+        assertTrue(Arrays.equals(weavingCache.transformedBytes, transformed));
+        assertEquals(Collections.singletonList(REPLACED_METHOD), DirectCopyClassTransformer.transformedMethods);
+    }
+
+    public void testCachedClassFailsWhenAMethodIsAlreadyReplaced() throws Exception {
+        DirectCopyClassTransformer.transformedMethods.add(REPLACED_METHOD);
+        try {
+            transformer.transform(getClass().getClassLoader(), ENTITY.replace('.', '/'), null, null, new byte[] {1});
+            fail("Expected the method to be reported as already replaced, as it is when weaving");
+        } catch (RuntimeException e) {
+            assertEquals("Unable to transform class", e.getMessage());
+            assertEquals("Method already replaced " + REPLACED_METHOD, e.getCause().getMessage());
+        }
+    }
+
+    protected static class CachedWeavingCache implements WeavingCache {
+
+        protected byte[] transformedBytes = new byte[] {1, 2};
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public String computeKey(byte[] classfileBuffer, String configuration) {
+            return "key";
+        }
+
+        @Override
+        public byte[] get(String key, ClassLoader loader, List<String> replacedMethods) {
+            replacedMethods.add(REPLACED_METHOD);
+            return transformedBytes;
+        }
+
+        @Override
+        public void put(String key, byte[] transformedBytes, List<String> templateClassNames,
+                List<String> replacedMethods, ClassLoader loader) {
+            fail("A cached class must not be woven again");
+        }
+
+        @Override
+        public String hashClass(String className, ClassLoader loader) {
+            return "hash";
+        }
+
+        @Override
+        public long getHitCount() {
+            return 1;
+        }
+
+        @Override
+        public long getMissCount() {
+            return 0;
+        }
+    }
+}
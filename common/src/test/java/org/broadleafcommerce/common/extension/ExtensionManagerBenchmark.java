@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.extension;
+
+import org.broadleafcommerce.common.extension.ExtensionManagerTest.CollectingExtensionHandler;
+import org.broadleafcommerce.common.extension.ExtensionManagerTest.OtherCollectingExtensionHandler;
+import org.broadleafcommerce.common.extension.ExtensionManagerTest.TestExtensionHandler;
+import org.broadleafcommerce.common.extension.ExtensionManagerTest.TestExtensionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for a call through {@link ExtensionManager#getProxy()} with no handlers, with only disabled handlers,
+ * and with two enabled handlers using reflective or compiled dispatch, compared with the same call made through
+ * {@link ExtensionManager#execute(ExtensionManagerOperation, Object...)}. Run with the main method (the test classpath
+ * must include jmh-core and its annotation processor).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtensionManagerBenchmark {
+
+    protected static final ExtensionManagerOperation COLLECT = new ExtensionManagerOperation() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public ExtensionResultStatusType execute(ExtensionHandler handler, Object... params) {
+            return ((TestExtensionHandler) handler).collect((List<String>) params[0], (String) params[1], (Integer) params[2]);
+        }
+    };
+
+    @Param({"none", "disabled", "reflective", "compiled"})
+    public String handlers;
+
+    protected TestExtensionManager manager;
+    protected List<String> values = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        manager = new TestExtensionManager();
+        manager.setCompiledDispatchEnabled("compiled".equals(handlers));
+        if (!"none".equals(handlers)) {
+            CollectingExtensionHandler first = new CollectingExtensionHandler(1, ExtensionResultStatusType.HANDLED_CONTINUE);
+            CollectingExtensionHandler second = new OtherCollectingExtensionHandler(2, ExtensionResultStatusType.HANDLED_CONTINUE);
+            if ("disabled".equals(handlers)) {
+                first.setEnabled(false);
+                second.setEnabled(false);
+            }
+            manager.registerHandler(first);
+            manager.registerHandler(second);
+        }
+        manager.initializeCompiledDispatch();
+    }
+
+    @Benchmark
+    public ExtensionResultStatusType dispatch() {
+        values.clear();
+        return manager.getProxy().collect(values, "a", 1);
+    }
+
+    @Benchmark
+    public ExtensionResultStatusType operation() {
+        values.clear();
+        return manager.execute(COLLECT, values, "a", 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ExtensionManagerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
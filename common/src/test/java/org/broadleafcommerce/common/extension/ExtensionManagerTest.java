@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+
+package org.broadleafcommerce.common.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ExtensionManagerTest extends TestCase {
+
+    public interface TestExtensionHandler extends ExtensionHandler {
+
+        ExtensionResultStatusType collect(List<String> values, String value, int count);
+
+    }
+
+    public static class TestExtensionManager extends ExtensionManager<TestExtensionHandler> {
+
+        public TestExtensionManager() {
+            super(TestExtensionHandler.class);
+        }
+
+    }
+
+    public static class CollectingExtensionHandler extends AbstractExtensionHandler implements TestExtensionHandler {
+
+        protected final ExtensionResultStatusType status;
+
+        public CollectingExtensionHandler(int priority, ExtensionResultStatusType status) {
+            setPriority(priority);
+            this.status = status;
+        }
+
+        @Override
+        public ExtensionResultStatusType collect(List<String> values, String value, int count) {
+            for (int j = 0; j < count; j++) {
+                values.add(value + getPriority());
+            }
+            return status;
+        }
+    }
+
+    public static class OtherCollectingExtensionHandler extends CollectingExtensionHandler {
+
+        public OtherCollectingExtensionHandler(int priority, ExtensionResultStatusType status) {
+            super(priority, status);
+        }
+    }
+
+    public void testNoHandlers() {
+        TestExtensionManager manager = new TestExtensionManager();
+        List<String> values = new ArrayList<>();
+        assertEquals(ExtensionResultStatusType.NOT_HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertTrue(values.isEmpty());
+    }
+
+    public void testReflectiveDispatch() {
+        verifyDispatch(false);
+    }
+
+    public void testCompiledDispatch() {
+        verifyDispatch(true);
+    }
+
+    public void testRegistrationAfterFirstCall() {
+        TestExtensionManager manager = new TestExtensionManager();
+        manager.setCompiledDispatchEnabled(true);
+        List<String> values = new ArrayList<>();
+        manager.getProxy().collect(values, "a", 1);
+        manager.registerHandler(new CollectingExtensionHandler(5, ExtensionResultStatusType.HANDLED_CONTINUE));
+        assertEquals(ExtensionResultStatusType.HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertEquals(1, values.size());
+    }
+
+    public void testDisabledHandlersAreLeftOutOfTheSnapshot() {
+        TestExtensionManager manager = new TestExtensionManager();
+        CollectingExtensionHandler handler = new CollectingExtensionHandler(1, ExtensionResultStatusType.HANDLED_CONTINUE);
+        handler.setEnabled(false);
+        manager.registerHandler(handler);
+
+        List<String> values = new ArrayList<>();
+        assertEquals(ExtensionResultStatusType.NOT_HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertEquals(0, manager.getHandlerSnapshot().length);
+        assertEquals("The handler is still registered", 1, manager.getHandlers().size());
+
+        handler.setEnabled(true);
+        assertEquals(ExtensionResultStatusType.HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertEquals(1, values.size());
+
+        handler.setEnabled(false);
+        assertEquals(ExtensionResultStatusType.NOT_HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertEquals(1, values.size());
+    }
+
+    public void testSelfManagedEnabledStateIsCheckedPerCall() {
+        TestExtensionManager manager = new TestExtensionManager();
+        final boolean[] handlerEnabled = new boolean[] {false};
+        manager.registerHandler(new CollectingExtensionHandler(1, ExtensionResultStatusType.HANDLED_CONTINUE) {
+            @Override
+            public boolean isEnabled() {
+                return handlerEnabled[0];
+            }
+        });
+
+        List<String> values = new ArrayList<>();
+        assertEquals(ExtensionResultStatusType.NOT_HANDLED, manager.getProxy().collect(values, "a", 1));
+        handlerEnabled[0] = true;
+        assertEquals(ExtensionResultStatusType.HANDLED, manager.getProxy().collect(values, "a", 1));
+        assertEquals(1, values.size());
+    }
+
+    protected void verifyDispatch(boolean compiled) {
+        TestExtensionManager manager = new TestExtensionManager();
+        manager.setCompiledDispatchEnabled(compiled);
+        manager.registerHandler(new OtherCollectingExtensionHandler(10, ExtensionResultStatusType.HANDLED_STOP));
+        manager.registerHandler(new CollectingExtensionHandler(1, ExtensionResultStatusType.HANDLED_CONTINUE));
+        manager.initializeCompiledDispatch();
+        if (compiled) {
+            assertNotNull("A compiled dispatcher should have been generated", manager.getCompiledDispatch());
+        }
+
+        List<String> values = new ArrayList<>();
+        ExtensionResultStatusType result = manager.getProxy().collect(values, "a", 2);
+
+        assertEquals(ExtensionResultStatusType.HANDLED, result);
+        // Handlers are called in priority order and processing stops after HANDLED_STOP
+        assertEquals(4, values.size());
+        assertEquals("a1", values.get(0));
+        assertEquals("a10", values.get(3));
+    }
+}
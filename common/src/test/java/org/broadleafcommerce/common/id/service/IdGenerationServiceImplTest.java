@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.id.service;
+
+import org.broadleafcommerce.common.id.dao.IdGenerationDao;
+import org.broadleafcommerce.common.id.domain.IdGeneration;
+import org.broadleafcommerce.common.id.domain.IdGenerationImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class IdGenerationServiceImplTest extends TestCase {
+
+    protected List<Long> requestedBatchSizes = Collections.synchronizedList(new ArrayList<Long>());
+
+    protected IdGenerationServiceImpl createService(final long batchSize, boolean prefetchEnabled) {
+        IdGenerationServiceImpl service = new IdGenerationServiceImpl();
+        service.setPrefetchEnabled(prefetchEnabled);
+        service.idGenerationDao = new IdGenerationDao() {
+
+            protected long batchStart = 1L;
+
+            @Override
+            public IdGeneration findNextId(String idType) {
+                return findNextId(idType, null);
+            }
+
+            @Override
+            public synchronized IdGeneration findNextId(String idType, Long requestedBatchSize) {
+                pauseForRange();
+                requestedBatchSizes.add(requestedBatchSize);
+                long size = requestedBatchSize == null ? batchSize : requestedBatchSize;
+                IdGeneration idGeneration = new IdGenerationImpl();
+                idGeneration.setType(idType);
+                idGeneration.setBatchStart(batchStart);
+                idGeneration.setBatchSize(size);
+                batchStart += size;
+                return idGeneration;
+            }
+        };
+        return service;
+    }
+
+    /**
+     * Called by the DAO for each range it reserves, to simulate the database round trip
+     */
+    protected void pauseForRange() {
+    }
+
+    public void testSequentialIds() {
+        for (boolean prefetchEnabled : new boolean[] { false, true }) {
+            IdGenerationServiceImpl service = createService(10L, prefetchEnabled);
+            try {
+                for (long i = 1; i <= 100; i++) {
+                    assertEquals("Ids should be handed out in order", Long.valueOf(i), service.findNextId("test"));
+                }
+            } finally {
+                service.destroy();
+            }
+        }
+    }
+
+    public void testEachRangeUsesTheBatchSizeOfTheCallThatNeedsIt() {
+        IdGenerationServiceImpl service = createService(10L, false);
+        assertEquals(Long.valueOf(1L), service.findNextId("test", 2L));
+        assertEquals(Long.valueOf(2L), service.findNextId("test", 2L));
+        assertEquals(Long.valueOf(3L), service.findNextId("test", 5L));
+        for (long i = 4; i <= 7; i++) {
+            assertEquals(Long.valueOf(i), service.findNextId("test", 5L));
+        }
+        assertEquals(Long.valueOf(8L), service.findNextId("test"));
+        assertEquals(Arrays.asList(2L, 5L, null), requestedBatchSizes);
+    }
+
+    public void testPrefetchIsDisabledByDefault() {
+        assertFalse(new IdGenerationServiceImpl().isPrefetchEnabled());
+    }
+
+    public void testConcurrentIdsAreUnique() throws Exception {
+        final IdGenerationServiceImpl service = createService(7L, true);
+        final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final int threadCount = 8;
+        final int idsPerThread = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids.add(service.findNextId("test"));
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        service.destroy();
+        assertEquals("Every id handed out should be unique", threadCount * idsPerThread, ids.size());
+    }
+}
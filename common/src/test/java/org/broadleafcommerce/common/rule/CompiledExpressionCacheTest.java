@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.rule;
+
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class CompiledExpressionCacheTest extends TestCase {
+
+    /**
+     * Threads asking for the same expression at the same time should share a single compilation
+     */
+    public void testConcurrentMissesCompileOnce() throws Exception {
+        final CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        final AtomicInteger compilations = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    cache.get("rule", new Callable<Serializable>() {
+                        @Override
+                        public Serializable call() throws Exception {
+                            compilations.incrementAndGet();
+                            Thread.sleep(50);
+                            return "compiled";
+                        }
+                    });
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, compilations.get());
+        assertEquals("compiled", cache.getIfPresent("rule"));
+    }
+
+    /**
+     * A failed compilation should be reported to the caller and retried by the next one
+     */
+    public void testFailedCompilationIsNotCached() {
+        CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        try {
+            cache.get("rule", new Callable<Serializable>() {
+                @Override
+                public Serializable call() {
+                    throw new IllegalStateException("bad rule");
+                }
+            });
+            fail("Expected the compilation failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("bad rule", e.getMessage());
+        }
+        assertNull(cache.getIfPresent("rule"));
+        assertEquals("compiled", cache.get("rule", constant("compiled")));
+    }
+
+    /**
+     * The cache should stay within its bounds and keep the expressions that are used the most
+     */
+    public void testFrequentlyUsedExpressionsSurviveEviction() {
+        CompiledExpressionCache cache = new CompiledExpressionCache(100);
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 5; j++) {
+                cache.getIfPresent("hot" + i);
+            }
+            cache.get("hot" + i, constant("hot" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.getIfPresent("cold" + i);
+            cache.get("cold" + i, constant("cold" + i));
+        }
+        assertTrue(cache.size() <= 100);
+        int hotRetained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.getIfPresent("hot" + i) != null) {
+                hotRetained++;
+            }
+        }
+        assertTrue("Only " + hotRetained + " frequently used expressions were retained", hotRetained >= 45);
+    }
+
+    protected Callable<Serializable> constant(final String value) {
+        return new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                return value;
+            }
+        };
+    }
+
+}
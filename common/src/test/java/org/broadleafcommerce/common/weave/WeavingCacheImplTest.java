@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * BroadleafCommerce Common Libraries
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.common.weave;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class WeavingCacheImplTest extends TestCase {
+
+    protected File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("weaving-cache").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    public void testEntriesSurviveRestartUntilATemplateChanges() {
+        TemplateLoader loader = new TemplateLoader();
+        loader.templates.put("com/example/Template.class", new byte[] {1, 2, 3});
+        byte[] original = new byte[] {10, 11};
+        byte[] woven = new byte[] {10, 11, 12};
+
+        WeavingCacheImpl cache = newCache();
+        String key = cache.computeKey(original, "config");
+        assertNull(cache.get(key, loader, new ArrayList<String>()));
+        cache.put(key, woven, Arrays.asList("com.example.Template"), Collections.<String>emptyList(), loader);
+
+        // a restart with the same inputs is served from disk
+        WeavingCacheImpl restarted = newCache();
+        assertTrue(Arrays.equals(woven, restarted.get(restarted.computeKey(original, "config"), loader, new ArrayList<String>())));
+        assertFalse("A different configuration must not share the entry", key.equals(restarted.computeKey(original, "other")));
+        assertFalse("Different class bytes must not share the entry", key.equals(restarted.computeKey(new byte[] {10}, "config")));
+
+        // a restart after the template changed weaves again
+        loader.templates.put("com/example/Template.class", new byte[] {1, 2, 4});
+        restarted = newCache();
+        assertNull(restarted.get(key, loader, new ArrayList<String>()));
+        assertEquals(1L, restarted.getMissCount());
+    }
+
+    public void testUnchangedClassesAreCached() {
+        WeavingCacheImpl cache = newCache();
+        String key = cache.computeKey(new byte[] {1}, "config");
+        cache.put(key, null, Collections.<String>emptyList(), Collections.<String>emptyList(), getClass().getClassLoader());
+        byte[] cached = newCache().get(key, getClass().getClassLoader(), new ArrayList<String>());
+        assertNotNull(cached);
+        assertEquals(0, cached.length);
+    }
+
+    public void testUnreadableTemplatesAreNotCached() {
+        WeavingCacheImpl cache = newCache();
+        String key = cache.computeKey(new byte[] {1}, "config");
+        cache.put(key, new byte[] {2}, Arrays.asList("com.example.Missing"), Collections.<String>emptyList(),
+                new TemplateLoader());
+        assertNull(cache.get(key, new TemplateLoader(), new ArrayList<String>()));
+    }
+
+    public void testReplacedMethodsAreCached() {
+        WeavingCacheImpl cache = newCache();
+        String key = cache.computeKey(new byte[] {1}, "config");
+        List<String> replacedMethods = Arrays.asList("com.example.Entity|getName|()Ljava/lang/String;",
+                "com.example.Entity|setName|(Ljava/lang/String;)V");
+        cache.put(key, new byte[] {2}, Collections.<String>emptyList(), replacedMethods, getClass().getClassLoader());
+
+        List<String> cachedReplacedMethods = new ArrayList<>();
+        assertNotNull(newCache().get(key, getClass().getClassLoader(), cachedReplacedMethods));
+        assertEquals(replacedMethods, cachedReplacedMethods);
+    }
+
+    public void testCacheRequiresADirectory() {
+        WeavingCacheImpl cache = new WeavingCacheImpl();
+        cache.setEnabled(true);
+        cache.setDirectory(" ");
+        cache.init();
+        assertFalse(cache.isEnabled());
+        assertNull(cache.getCacheDirectory());
+    }
+
+    protected WeavingCacheImpl newCache() {
+        WeavingCacheImpl cache = new WeavingCacheImpl();
+        cache.setEnabled(true);
+        cache.setDirectory(directory.getAbsolutePath());
+        cache.init();
+        return cache;
+    }
+
+    protected static class TemplateLoader extends ClassLoader {
+
+        protected Map<String, byte[]> templates = new HashMap<>();
+
+        protected TemplateLoader() {
+            super(null);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            byte[] bytes = templates.get(name);
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        }
+    }
+}
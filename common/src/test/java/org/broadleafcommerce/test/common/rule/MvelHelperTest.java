@@ -27,6 +27,7 @@ import org.broadleafcommerce.common.RequestDTO;
 import org.broadleafcommerce.common.RequestDTOImpl;
 import org.broadleafcommerce.common.locale.domain.Locale;
 import org.broadleafcommerce.common.locale.domain.LocaleImpl;
+import org.broadleafcommerce.common.rule.CompiledExpressionCache;
 import org.broadleafcommerce.common.rule.MvelHelper;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
 
@@ -97,6 +98,53 @@ public class MvelHelperTest extends TestCase {
         assertFalse(result);
     }
 
+    /**
+     * Test that a variable declared by a rule is kept out of the caller's parameters
+     */
+    public void testRuleVariablesDoNotChangeTheParameters() {
+        Map<String, Object> parameters = createLocaleParameters("US");
+
+        assertTrue(MvelHelper.evaluateRule("code = 'US'; locale.localeCode == code", parameters));
+        assertTrue(MvelHelper.evaluateRule("String typedCode = 'US'; locale.localeCode == typedCode", parameters));
+        assertEquals(1, parameters.size());
+        assertFalse(parameters.containsKey("code"));
+        assertFalse(parameters.containsKey("typedCode"));
+    }
+
+    /**
+     * Test that a rule assigning to a parameter only shadows it
+     */
+    public void testRuleAssigningToAParameterShadowsIt() {
+        Map<String, Object> parameters = createLocaleParameters("US");
+        Object locale = parameters.get("locale");
+
+        assertTrue(MvelHelper.evaluateRule("locale = null; locale == null", parameters));
+        assertSame(locale, parameters.get("locale"));
+    }
+
+    /**
+     * Test that a cached expression is executed against the parameters of each call
+     */
+    public void testCachedExpressionUsesTheParametersOfEachCall() {
+        CompiledExpressionCache cache = new CompiledExpressionCache(10);
+        String rule = "locale.localeCode == 'US'";
+
+        assertTrue(MvelHelper.evaluateRule(rule, createLocaleParameters("US"), cache));
+        assertFalse(MvelHelper.evaluateRule(rule, createLocaleParameters("GB"), cache));
+        assertTrue(MvelHelper.evaluateRule(rule, createLocaleParameters("US"), cache));
+        assertEquals(1, cache.size());
+    }
+
+    protected Map<String, Object> createLocaleParameters(String localeCode) {
+        // Locale used as an illustrative domain class only.  Any object could have been used.
+        Locale testLocale = new LocaleImpl();
+        testLocale.setLocaleCode(localeCode);
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("locale", testLocale);
+        return parameters;
+    }
+
     /**
      * Tests MVEL syntax for accessing request property map values.   
      */
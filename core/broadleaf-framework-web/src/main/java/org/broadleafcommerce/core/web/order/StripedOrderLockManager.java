@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.web.order;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.cache.StatisticsService;
+import org.broadleafcommerce.common.cache.TimingStatisticsService;
+import org.broadleafcommerce.common.util.BLCSystemProperty;
+import org.broadleafcommerce.core.order.domain.NullOrderImpl;
+import org.broadleafcommerce.core.order.domain.Order;
+import org.broadleafcommerce.core.order.service.OrderLockManager;
+import org.broadleafcommerce.core.order.service.OrderService;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+/**
+ * An implementation of the {@link OrderLockManager} that serializes requests for the same {@link Order} with
+ * in-JVM locks instead of polling the database. Orders are hashed onto a fixed number of fair {@link ReentrantLock}
+ * stripes, so waiting threads are queued in arrival order and are woken as soon as the lock is released.
+ * <p/>
+ * Local locks only provide exclusion within a single node. When <b>order.lock.cluster.enabled</b> is set, the
+ * thread that owns the local stripe additionally takes the database backed {@link OrderService#acquireLock(Order)}
+ * lock, retrying with the same <b>order.lock.databaseLockPollingIntervalMs</b> and
+ * <b>order.lock.databaseLockAcquisitionNumRetries</b> settings as {@link DatabaseOrderLockManager}. Since only one
+ * thread per node can ever be contending for the database lock, the polling is confined to cross-node contention.
+ * <p/>
+ * When the {@link StatisticsService} is a {@link TimingStatisticsService}, the time spent waiting for each lock is
+ * recorded under {@link #LOCK_WAIT_TIME_STAT}, which includes a histogram of the wait times.
+ */
+public class StripedOrderLockManager implements OrderLockManager {
+
+    protected static final Log LOG = LogFactory.getLog(StripedOrderLockManager.class);
+
+    public static final String LOCK_WAIT_TIME_STAT = "ORDER_LOCK_WAIT_TIME";
+
+    @Resource(name = "blOrderService")
+    protected OrderService orderService;
+
+    @Resource(name = "blStatisticsService")
+    protected StatisticsService statisticsService;
+
+    @Value("${order.lock.stripes:1024}")
+    protected int stripeCount = 1024;
+
+    @Value("${order.lock.acquisitionTimeoutMs:5000}")
+    protected long acquisitionTimeoutMs = 5000L;
+
+    @Value("${order.lock.cluster.enabled:false}")
+    protected boolean clusterEnabled = false;
+
+    protected ReentrantLock[] stripes;
+
+    @PostConstruct
+    public void init() {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        ReentrantLock[] locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+        stripes = locks;
+    }
+
+    @Override
+    public Object acquireLock(Order order) {
+        if (order == null || order instanceof NullOrderImpl) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Thread[" + Thread.currentThread().getId() + "] Attempted to grab a lock for a NullOrderImpl. ");
+            }
+            return order;
+        }
+
+        ReentrantLock stripe = getStripe(order);
+        long start = System.nanoTime();
+        boolean lockAcquired;
+        try {
+            lockAcquired = stripe.tryLock(acquisitionTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (!lockAcquired) {
+            recordWaitTime(start);
+            LOG.warn(String.format("Timed out waiting for a lock on current Order (%s)", order.getId()));
+            throw new RuntimeException("Timed out waiting for a lock on current Order");
+        }
+
+        boolean databaseLocked = false;
+        try {
+            if (clusterEnabled) {
+                acquireDatabaseLock(order);
+                databaseLocked = true;
+            }
+        } finally {
+            if (clusterEnabled && !databaseLocked) {
+                stripe.unlock();
+            }
+        }
+        recordWaitTime(start);
+
+        return new OrderLockHandle(order, stripe, databaseLocked);
+    }
+
+    @Override
+    public Object acquireLockIfAvailable(Order order) {
+        if (order == null || order instanceof NullOrderImpl) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Attempted to grab a lock for a NullOrderImpl. Not blocking");
+            }
+            return order;
+        }
+
+        ReentrantLock stripe = getStripe(order);
+        if (!stripe.tryLock()) {
+            return null;
+        }
+        if (clusterEnabled) {
+            boolean databaseLocked = false;
+            try {
+                databaseLocked = orderService.acquireLock(order);
+            } finally {
+                if (!databaseLocked) {
+                    stripe.unlock();
+                }
+            }
+            if (!databaseLocked) {
+                return null;
+            }
+        }
+
+        return new OrderLockHandle(order, stripe, clusterEnabled);
+    }
+
+    @Override
+    public void releaseLock(Object lockObject) {
+        if (!(lockObject instanceof OrderLockHandle)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Thread[" + Thread.currentThread().getId() + "] Attempted to release a lock for a NullOrderImpl");
+            }
+            return;
+        }
+
+        OrderLockHandle handle = (OrderLockHandle) lockObject;
+        if (!handle.stripe.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("Thread[" + Thread.currentThread().getId()
+                    + "] attempted to release a lock for order[" + handle.order.getId() + "] that it does not own");
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Thread[" + Thread.currentThread().getId() + "] releasing lock for order[" + handle.order.getId() + "]");
+        }
+        try {
+            if (handle.databaseLocked) {
+                orderService.releaseLock(handle.order);
+            }
+        } finally {
+            handle.stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    /**
+     * Called while holding the local stripe for the order, so at most one thread per node polls the database lock
+     * for a given order at any time.
+     */
+    protected void acquireDatabaseLock(Order order) {
+        int count = 0;
+        while (true) {
+            try {
+                if (orderService.acquireLock(order)) {
+                    return;
+                }
+            } catch (Exception e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Couldn't acquire database lock - that's ok, we'll retry shortly", e);
+                }
+            }
+
+            count++;
+            if (count >= getDatabaseLockAcquisitionNumRetries()) {
+                LOG.warn(String.format("Exceeded max retries to attempt to acquire a lock on current Order (%s)", order.getId()));
+                throw new RuntimeException("Exceeded max retries to attempt to acquire a lock on current Order");
+            }
+            try {
+                Thread.sleep(getDatabaseLockPollingIntervalMs());
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    protected ReentrantLock getStripe(Order order) {
+        int hash = order.getId().hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    protected void recordWaitTime(long start) {
+        if (statisticsService instanceof TimingStatisticsService) {
+            ((TimingStatisticsService) statisticsService).addTimingStat(LOCK_WAIT_TIME_STAT, System.nanoTime() - start);
+        }
+    }
+
+    protected long getDatabaseLockPollingIntervalMs() {
+        return BLCSystemProperty.resolveLongSystemProperty("order.lock.databaseLockPollingIntervalMs");
+    }
+
+    protected int getDatabaseLockAcquisitionNumRetries() {
+        return BLCSystemProperty.resolveIntSystemProperty("order.lock.databaseLockAcquisitionNumRetries", 5);
+    }
+
+    /**
+     * The lock object handed out by {@link StripedOrderLockManager}; remembers which stripe to unlock and whether
+     * the database lock has to be released as well.
+     */
+    protected static class OrderLockHandle {
+
+        protected final Order order;
+        protected final ReentrantLock stripe;
+        protected final boolean databaseLocked;
+
+        protected OrderLockHandle(Order order, ReentrantLock stripe, boolean databaseLocked) {
+            this.order = order;
+            this.stripe = stripe;
+            this.databaseLocked = databaseLocked;
+        }
+
+    }
+}
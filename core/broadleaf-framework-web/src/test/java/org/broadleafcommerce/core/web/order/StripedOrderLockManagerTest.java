@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.web.order;
+
+import org.broadleafcommerce.core.order.domain.Order;
+import org.broadleafcommerce.core.order.domain.OrderImpl;
+import org.broadleafcommerce.core.order.service.OrderService;
+import org.easymock.EasyMock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+public class StripedOrderLockManagerTest extends TestCase {
+
+    protected StripedOrderLockManager buildLockManager(int stripeCount, long acquisitionTimeoutMs) {
+        StripedOrderLockManager lockManager = new StripedOrderLockManager();
+        lockManager.stripeCount = stripeCount;
+        lockManager.acquisitionTimeoutMs = acquisitionTimeoutMs;
+        lockManager.init();
+        return lockManager;
+    }
+
+    protected Order buildOrder(long id) {
+        Order order = new OrderImpl();
+        order.setId(id);
+        return order;
+    }
+
+    protected Thread start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    protected void awaitQueueLength(ReentrantLock stripe, int length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (stripe.getQueueLength() < length) {
+            assertTrue("Timed out waiting for " + length + " queued threads", System.currentTimeMillis() < deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+    public void testStripeCountIsRoundedUpToAPowerOfTwo() {
+        StripedOrderLockManager lockManager = buildLockManager(5, 1000L);
+        assertEquals(8, lockManager.stripes.length);
+    }
+
+    public void testCollidingOrdersShareAStripe() throws Exception {
+        final StripedOrderLockManager lockManager = buildLockManager(2, 1000L);
+        Order order = buildOrder(1L);
+        final Order colliding = buildOrder(3L);
+        final Order other = buildOrder(2L);
+        assertSame(lockManager.getStripe(order), lockManager.getStripe(colliding));
+        assertNotSame(lockManager.getStripe(order), lockManager.getStripe(other));
+
+        Object lock = lockManager.acquireLock(order);
+        final AtomicReference<Object> collidingLock = new AtomicReference<Object>();
+        final AtomicReference<Object> otherLock = new AtomicReference<Object>();
+        Thread thread = start(new Runnable() {
+
+            @Override
+            public void run() {
+                collidingLock.set(lockManager.acquireLockIfAvailable(colliding));
+                otherLock.set(lockManager.acquireLockIfAvailable(other));
+                if (otherLock.get() != null) {
+                    lockManager.releaseLock(otherLock.get());
+                }
+            }
+        });
+        thread.join(5000L);
+        lockManager.releaseLock(lock);
+
+        assertNull("A colliding order must wait for the stripe", collidingLock.get());
+        assertNotNull("An order on another stripe must not wait", otherLock.get());
+    }
+
+    public void testWaitersAreGrantedTheLockInArrivalOrder() throws Exception {
+        final StripedOrderLockManager lockManager = buildLockManager(16, 5000L);
+        final Order order = buildOrder(42L);
+        ReentrantLock stripe = lockManager.getStripe(order);
+        final List<Integer> acquisitions = Collections.synchronizedList(new ArrayList<Integer>());
+
+        Object lock = lockManager.acquireLock(order);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            final int position = i;
+            threads.add(start(new Runnable() {
+
+                @Override
+                public void run() {
+                    Object waiterLock = lockManager.acquireLock(order);
+                    try {
+                        acquisitions.add(position);
+                    } finally {
+                        lockManager.releaseLock(waiterLock);
+                    }
+                }
+            }));
+            awaitQueueLength(stripe, i + 1);
+        }
+        lockManager.releaseLock(lock);
+        for (Thread thread : threads) {
+            thread.join(5000L);
+        }
+
+        assertEquals(5, acquisitions.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), acquisitions.get(i));
+        }
+    }
+
+    public void testAcquireTimesOut() throws Exception {
+        final StripedOrderLockManager lockManager = buildLockManager(16, 50L);
+        final Order order = buildOrder(7L);
+        Object lock = lockManager.acquireLock(order);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread thread = start(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    lockManager.releaseLock(lockManager.acquireLock(order));
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        thread.join(5000L);
+        assertFalse(thread.isAlive());
+        assertTrue(failure.get() instanceof RuntimeException);
+        assertEquals("Timed out waiting for a lock on current Order", failure.get().getMessage());
+
+        lockManager.releaseLock(lock);
+        assertFalse(lockManager.getStripe(order).isLocked());
+    }
+
+    public void testReleaseByNonOwnerIsRejected() throws Exception {
+        final StripedOrderLockManager lockManager = buildLockManager(16, 1000L);
+        Order order = buildOrder(9L);
+        OrderService orderService = EasyMock.createMock(OrderService.class);
+        EasyMock.expect(orderService.acquireLock(order)).andReturn(true);
+        EasyMock.expect(orderService.releaseLock(order)).andReturn(true);
+        EasyMock.replay(orderService);
+        lockManager.orderService = orderService;
+        lockManager.clusterEnabled = true;
+
+        final Object lock = lockManager.acquireLock(order);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread thread = start(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    lockManager.releaseLock(lock);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        thread.join(5000L);
+
+        assertTrue(failure.get() instanceof IllegalMonitorStateException);
+        assertTrue("The owner must still hold the stripe", lockManager.getStripe(order).isHeldByCurrentThread());
+
+        lockManager.releaseLock(lock);
+        assertFalse(lockManager.getStripe(order).isLocked());
+        EasyMock.verify(orderService);
+    }
+
+}
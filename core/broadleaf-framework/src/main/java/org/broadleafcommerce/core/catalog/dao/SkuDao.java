@@ -21,6 +21,7 @@ import org.broadleafcommerce.core.catalog.domain.Sku;
 import org.broadleafcommerce.core.catalog.domain.SkuFee;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * {@code SkuDao} provides persistence access to {@code Sku} instances
@@ -183,4 +184,28 @@ public interface SkuDao {
      * 
      */
     List<Sku> findSkuByURI(String uri);
+
+    /**
+     * Decrements the quantity available of each of the given skus directly in the database. Every sku is updated
+     * with a conditional update that only applies when at least the requested quantity is available, so no
+     * read-modify-write of the {@link Sku} entity takes place and concurrent decrements cannot oversell.
+     * <p/>
+     * Skus that did not have enough quantity available are left untouched; all of them are reported, not only the
+     * first one. Only the decremented skus are evicted from the second level cache, and those already loaded in the
+     * current persistence context are refreshed.
+     *
+     * @param skuQuantities the quantity to decrement, keyed by sku id
+     * @return the current quantity available of each sku that could not be decremented, keyed by sku id - empty if
+     * every sku was decremented
+     */
+    Map<Long, Integer> decrementQuantitiesAvailable(Map<Long, Integer> skuQuantities);
+
+    /**
+     * Increments the quantity available of each of the given skus directly in the database, without a read-modify-write
+     * of the {@link Sku} entity. Only the incremented skus are evicted from the second level cache, and those already
+     * loaded in the current persistence context are refreshed.
+     *
+     * @param skuQuantities the quantity to increment, keyed by sku id
+     */
+    void incrementQuantitiesAvailable(Map<Long, Integer> skuQuantities);
 }
@@ -26,16 +26,25 @@ import org.broadleafcommerce.common.persistence.EntityConfiguration;
 import org.broadleafcommerce.common.sandbox.SandBoxHelper;
 import org.broadleafcommerce.common.time.SystemTime;
 import org.broadleafcommerce.common.util.DateUtil;
+import org.broadleafcommerce.common.util.UpdateExecutor;
 import org.broadleafcommerce.common.util.dao.TypedQueryBuilder;
 import org.broadleafcommerce.core.catalog.domain.Sku;
 import org.broadleafcommerce.core.catalog.domain.SkuFee;
 import org.broadleafcommerce.core.catalog.domain.SkuImpl;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
 import org.hibernate.ejb.QueryHints;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.annotation.Resource;
 import javax.persistence.EntityManager;
@@ -58,6 +67,12 @@ public class SkuDaoImpl implements SkuDao {
 
     private static final SupportLogger logger = SupportLogManager.getLogger("Enterprise", SkuDaoImpl.class);
 
+    protected static final String DECREMENT_QUANTITY_AVAILABLE_SQL = "UPDATE BLC_SKU SET QUANTITY_AVAILABLE = QUANTITY_AVAILABLE - ? "
+            + "WHERE SKU_ID = ? AND QUANTITY_AVAILABLE >= ?";
+
+    protected static final String INCREMENT_QUANTITY_AVAILABLE_SQL = "UPDATE BLC_SKU SET QUANTITY_AVAILABLE = COALESCE(QUANTITY_AVAILABLE, 0) + ? "
+            + "WHERE SKU_ID = ?";
+
     @PersistenceContext(unitName = "blPU")
     protected EntityManager em;
 
@@ -315,4 +330,105 @@ public class SkuDaoImpl implements SkuDao {
         criteria.orderBy(builder.asc(sku.get("id")));
         return criteria;
     }
+
+    @Override
+    public Map<Long, Integer> decrementQuantitiesAvailable(Map<Long, Integer> skuQuantities) {
+        Map<Long, Object> managedSkus = findManagedSkus(skuQuantities.keySet());
+        List<Long> updatedSkuIds = new ArrayList<Long>();
+        List<Long> failedSkuIds = new ArrayList<Long>();
+        // Update in ascending id order so that concurrent checkouts acquire the row locks in the same order
+        for (Map.Entry<Long, Integer> entry : new TreeMap<Long, Integer>(skuQuantities).entrySet()) {
+            SQLQuery query = createQuantityAvailableUpdate(DECREMENT_QUANTITY_AVAILABLE_SQL);
+            query.setInteger(0, entry.getValue());
+            query.setLong(1, entry.getKey());
+            query.setInteger(2, entry.getValue());
+            if (query.executeUpdate() == 1) {
+                updatedSkuIds.add(entry.getKey());
+            } else {
+                failedSkuIds.add(entry.getKey());
+            }
+        }
+        refreshUpdatedSkus(updatedSkuIds, managedSkus);
+
+        Map<Long, Integer> failures = new HashMap<Long, Integer>();
+        if (!failedSkuIds.isEmpty()) {
+            // The failed skus were not modified, so their current quantities are exactly what was available
+            for (Long skuId : failedSkuIds) {
+                failures.put(skuId, 0);
+            }
+            Query query = em.createNamedQuery("BC_READ_SKU_QUANTITIES_AVAILABLE");
+            query.setParameter("skuIds", failedSkuIds);
+            query.setHint(QueryHints.HINT_CACHEABLE, false);
+            for (Object result : query.getResultList()) {
+                Object[] row = (Object[]) result;
+                if (row[1] != null) {
+                    failures.put((Long) row[0], (Integer) row[1]);
+                }
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public void incrementQuantitiesAvailable(Map<Long, Integer> skuQuantities) {
+        Map<Long, Object> managedSkus = findManagedSkus(skuQuantities.keySet());
+        List<Long> updatedSkuIds = new ArrayList<Long>();
+        for (Map.Entry<Long, Integer> entry : new TreeMap<Long, Integer>(skuQuantities).entrySet()) {
+            SQLQuery query = createQuantityAvailableUpdate(INCREMENT_QUANTITY_AVAILABLE_SQL);
+            query.setInteger(0, entry.getValue());
+            query.setLong(1, entry.getKey());
+            if (query.executeUpdate() == 1) {
+                updatedSkuIds.add(entry.getKey());
+            }
+        }
+        refreshUpdatedSkus(updatedSkuIds, managedSkus);
+    }
+
+    /**
+     * Creates a native update of the quantity available. The update is synchronized with an empty query space, so
+     * Hibernate does not evict the whole sku cache region and every query cache space along with it; the updated
+     * skus are evicted individually by {@link #refreshUpdatedSkus(List, Map)} instead.
+     */
+    protected SQLQuery createQuantityAvailableUpdate(String sql) {
+        SQLQuery query = em.unwrap(Session.class).createSQLQuery(sql);
+        query.addSynchronizedQuerySpace("");
+        return query;
+    }
+
+    /**
+     * Finds the skus with the given ids that are already loaded in the current persistence context, without loading
+     * any others. Pending changes are flushed first, so that refreshing those skus after the update does not lose them.
+     */
+    protected Map<Long, Object> findManagedSkus(Collection<Long> skuIds) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getEntityPersister(SkuImpl.class.getName());
+        Map<Long, Object> managedSkus = new HashMap<Long, Object>();
+        for (Long skuId : skuIds) {
+            Object sku = session.getPersistenceContext().getEntity(session.generateEntityKey(skuId, persister));
+            if (sku != null) {
+                managedSkus.put(skuId, sku);
+            }
+        }
+        if (!managedSkus.isEmpty()) {
+            em.flush();
+        }
+        return managedSkus;
+    }
+
+    /**
+     * Evicts the updated skus from the second level cache, invalidates the cached queries on the sku table and
+     * refreshes the updated skus that are loaded in the current persistence context.
+     */
+    protected void refreshUpdatedSkus(List<Long> updatedSkuIds, Map<Long, Object> managedSkus) {
+        if (updatedSkuIds.isEmpty()) {
+            return;
+        }
+        UpdateExecutor.executeTargetedCacheInvalidation(em, SkuImpl.class, updatedSkuIds);
+        for (Long skuId : updatedSkuIds) {
+            Object sku = managedSkus.get(skuId);
+            if (sku != null) {
+                em.refresh(sku);
+            }
+        }
+    }
 }
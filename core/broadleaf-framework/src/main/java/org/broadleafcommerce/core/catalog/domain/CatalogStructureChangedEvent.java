@@ -0,0 +1,54 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.catalog.domain;
+
+import org.broadleafcommerce.common.event.BroadleafApplicationEvent;
+
+/**
+ * An event for whenever the category assignments of a product or the parents of a category may have changed. Published
+ * after commit by {@link CatalogStructureEntityListener}.
+ *
+ * @see org.broadleafcommerce.core.search.service.solr.index.CatalogStructureSnapshotService
+ */
+public class CatalogStructureChangedEvent extends BroadleafApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    protected Long productId;
+    protected Long categoryId;
+
+    /**
+     * @param entity the persisted, updated or removed entity
+     * @param productId the product whose category assignments changed, if any
+     * @param categoryId the category whose parents changed, if any
+     */
+    public CatalogStructureChangedEvent(Object entity, Long productId, Long categoryId) {
+        super(entity);
+        this.productId = productId;
+        this.categoryId = categoryId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.catalog.domain;
+
+import org.broadleafcommerce.common.util.ApplicationContextHolder;
+import org.broadleafcommerce.common.util.BLCSystemProperty;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Publishes a {@link CatalogStructureChangedEvent} after commit whenever a category/product or category/category
+ * relationship, or a category itself, is persisted, updated or removed. This lets caches of the catalog structure drop
+ * only what changed instead of being rebuilt. Nothing is registered unless
+ * <code>solr.index.catalog.structure.snapshot.enabled</code> is set, since the snapshot is the only consumer.
+ *
+ * @see CategoryProductXrefImpl
+ * @see CategoryXrefImpl
+ * @see CategoryImpl
+ */
+public class CatalogStructureEntityListener {
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void catalogStructureChanged(final Object entity) {
+        if (!isSnapshotEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Long productId = null;
+        Long categoryId = null;
+        if (entity instanceof CategoryProductXref) {
+            Product product = ((CategoryProductXref) entity).getProduct();
+            productId = product == null ? null : product.getId();
+        } else if (entity instanceof CategoryXref) {
+            Category subCategory = ((CategoryXref) entity).getSubCategory();
+            categoryId = subCategory == null ? null : subCategory.getId();
+        } else if (entity instanceof Category) {
+            categoryId = ((Category) entity).getId();
+        }
+        if (productId == null && categoryId == null) {
+            return;
+        }
+        final CatalogStructureChangedEvent event = new CatalogStructureChangedEvent(entity, productId, categoryId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                ApplicationContextHolder.getApplicationContext().publishEvent(event);
+            }
+        });
+    }
+
+    protected boolean isSnapshotEnabled() {
+        return BLCSystemProperty.resolveBooleanSystemProperty("solr.index.catalog.structure.snapshot.enabled");
+    }
+
+}
@@ -36,6 +36,7 @@ import java.math.BigDecimal;
 @Entity
 @Inheritance(strategy = InheritanceType.JOINED)
 @Table(name = "BLC_CATEGORY_XREF")
+@EntityListeners(value = { CatalogStructureEntityListener.class, IndexableChangeEntityListener.class })
 @AdminPresentationClass(excludeFromPolymorphism = false)
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region="blCategories")
 @DirectCopyTransform({
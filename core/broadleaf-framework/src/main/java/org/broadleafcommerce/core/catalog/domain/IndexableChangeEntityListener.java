@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.catalog.domain;
+
+import org.broadleafcommerce.common.util.ApplicationContextHolder;
+import org.broadleafcommerce.common.util.BLCSystemProperty;
+import org.broadleafcommerce.core.search.service.solr.index.SolrIndexQueueService;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Collects the ids of products, skus and categories persisted, updated or removed in a transaction, queues them for
+ * reindexing right before the transaction commits, as part of it, and publishes them as a single
+ * {@link IndexableChangedEvent} after the transaction commits. Changes to the category/product and category/category
+ * relationships are reported as a change to the product or to the sub category, respectively. Nothing is collected
+ * unless <code>solr.index.queue.enabled</code> is set.
+ *
+ * @see ProductImpl
+ * @see SkuImpl
+ * @see CategoryImpl
+ * @see CategoryProductXrefImpl
+ * @see CategoryXrefImpl
+ */
+public class IndexableChangeEntityListener {
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void indexableChanged(final Object entity) {
+        if (!isQueueEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        IndexableChangedEvent event = getTransactionEvent(entity);
+        if (entity instanceof Product) {
+            event.addProductId(((Product) entity).getId());
+        } else if (entity instanceof Sku) {
+            event.addSkuId(((Sku) entity).getId());
+        } else if (entity instanceof Category) {
+            event.addCategoryId(((Category) entity).getId());
+        } else if (entity instanceof CategoryProductXref) {
+            Product product = ((CategoryProductXref) entity).getProduct();
+            if (product != null) {
+                event.addProductId(product.getId());
+            }
+        } else if (entity instanceof CategoryXref) {
+            Category subCategory = ((CategoryXref) entity).getSubCategory();
+            if (subCategory != null) {
+                event.addCategoryId(subCategory.getId());
+            }
+        }
+    }
+
+    /**
+     * Finds the event collecting the changes of the current transaction, registering a synchronization to queue it
+     * before commit and publish it after commit the first time around. Synchronizations are suspended along with their transaction, so changes made
+     * in a nested REQUIRES_NEW transaction are published with that transaction and not with the outer one.
+     */
+    protected IndexableChangedEvent getTransactionEvent(Object entity) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PublishingSynchronization) {
+                return ((PublishingSynchronization) synchronization).event;
+            }
+        }
+        PublishingSynchronization synchronization = new PublishingSynchronization(new IndexableChangedEvent(entity));
+        TransactionSynchronizationManager.registerSynchronization(synchronization);
+        return synchronization.event;
+    }
+
+    protected boolean isQueueEnabled() {
+        return BLCSystemProperty.resolveBooleanSystemProperty("solr.index.queue.enabled");
+    }
+
+    protected static class PublishingSynchronization extends TransactionSynchronizationAdapter {
+
+        protected final IndexableChangedEvent event;
+
+        public PublishingSynchronization(IndexableChangedEvent event) {
+            this.event = event;
+        }
+
+        /**
+         * Queues the changes in the committing transaction, so they are queued if and only if they commit. A failure
+         * to queue them rolls the transaction back.
+         */
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            ApplicationContextHolder.getApplicationContext()
+                    .getBean("blSolrIndexQueueService", SolrIndexQueueService.class).enqueue(event);
+        }
+
+        @Override
+        public void afterCommit() {
+            if (!event.isEmpty()) {
+                ApplicationContextHolder.getApplicationContext().publishEvent(event);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.catalog.domain;
+
+import org.broadleafcommerce.common.event.BroadleafApplicationEvent;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An event for whenever products, skus or categories that may be part of the search index have changed. Published once
+ * per transaction, after commit, by {@link IndexableChangeEntityListener}.
+ *
+ * @see org.broadleafcommerce.core.search.service.solr.index.SolrIndexQueueService
+ */
+public class IndexableChangedEvent extends BroadleafApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    protected Set<Long> productIds = new LinkedHashSet<>();
+    protected Set<Long> skuIds = new LinkedHashSet<>();
+    protected Set<Long> categoryIds = new LinkedHashSet<>();
+
+    public IndexableChangedEvent(Object source) {
+        super(source);
+    }
+
+    public void addProductId(Long productId) {
+        if (productId != null) {
+            productIds.add(productId);
+        }
+    }
+
+    public void addSkuId(Long skuId) {
+        if (skuId != null) {
+            skuIds.add(skuId);
+        }
+    }
+
+    public void addCategoryId(Long categoryId) {
+        if (categoryId != null) {
+            categoryIds.add(categoryId);
+        }
+    }
+
+    public boolean isEmpty() {
+        return productIds.isEmpty() && skuIds.isEmpty() && categoryIds.isEmpty();
+    }
+
+    public Set<Long> getProductIds() {
+        return Collections.unmodifiableSet(productIds);
+    }
+
+    public Set<Long> getSkuIds() {
+        return Collections.unmodifiableSet(skuIds);
+    }
+
+    /**
+     * @return the categories whose own documents, or the documents of whose products, may need to be rebuilt
+     */
+    public Set<Long> getCategoryIds() {
+        return Collections.unmodifiableSet(categoryIds);
+    }
+
+}
@@ -59,11 +59,15 @@ public class ProductSiteMapGenerator implements SiteMapGenerator {
     @Override
     public void addSiteMapEntries(SiteMapGeneratorConfiguration smgc, SiteMapBuilder siteMapBuilder) {
 
-        int pageNum = 0;
+        // keyset paging, so each page is read from the last id of the previous one rather than from an offset
+        Long lastId = null;
         List<Product> products;
 
         do {
-            products = productDao.readAllActiveProducts(pageNum++, pageSize);
+            products = productDao.readAllActiveProducts(pageSize, lastId);
+            if (!products.isEmpty()) {
+                lastId = products.get(products.size() - 1).getId();
+            }
             for (Product product : products) {
                 if (StringUtils.isEmpty(product.getUrl())) {
                     continue;
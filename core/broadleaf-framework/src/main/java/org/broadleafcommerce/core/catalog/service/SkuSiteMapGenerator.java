@@ -62,11 +62,15 @@ public class SkuSiteMapGenerator implements SiteMapGenerator {
     @Override
     public void addSiteMapEntries(SiteMapGeneratorConfiguration smgc, SiteMapBuilder siteMapBuilder) {
 
-        int pageNum = 0;
+        // keyset paging, so each page is read from the last id of the previous one rather than from an offset
+        Long lastId = null;
         List<Sku> skus;
 
         do {
-            skus = skuDao.readAllActiveSkus(pageNum++, pageSize);
+            skus = skuDao.readAllActiveSkus(pageSize, lastId);
+            if (!skus.isEmpty()) {
+                lastId = skus.get(skus.size() - 1).getId();
+            }
             for (Sku sku : skus) {
                 Product defaultProduct = sku.getDefaultProduct();
                 if (defaultProduct != null && CollectionUtils.isNotEmpty(defaultProduct.getAdditionalSkus())) {
@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+
+package org.broadleafcommerce.core.inventory.service;
+
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.checkout.service.workflow.DecrementInventoryRollbackHandler;
+
+import java.util.Map;
+
+/**
+ * <p>Optional reservation layer for "hot" skus, such as the handful of skus of a flash sale that thousands of checkouts
+ * decrement at the same time. Instead of every checkout updating the same BLC_SKU row, each node claims stock from
+ * the database in chunks and hands out single units from an in-memory counter. Unused units are periodically returned
+ * to BLC_SKU.QUANTITY_AVAILABLE so that the database converges on the true stock level.</p>
+ *
+ * <p>Used by {@link InventoryServiceImpl}; units returned through {@link InventoryService#incrementInventory(Map)},
+ * for instance by the {@link DecrementInventoryRollbackHandler}, go back to the buffer they were taken from.</p>
+ */
+public interface InventoryReservationService {
+
+    /**
+     * @return whether the inventory of the given <b>sku</b> is handed out by this service
+     */
+    boolean isHotSku(Sku sku);
+
+    /**
+     * Takes the given quantities out of the buffers, claiming more stock from the database when a buffer runs dry. Either
+     * all of the quantities are taken or none of them are.
+     *
+     * @param skuQuantities the quantity to take, keyed by sku id; every sku must be a hot sku
+     * @return the quantity that could be handed out of each sku that did not have enough stock, keyed by sku id - empty
+     * if the reservation succeeded
+     */
+    Map<Long, Integer> reserve(Map<Long, Integer> skuQuantities);
+
+    /**
+     * Returns previously reserved units to the buffers.
+     *
+     * @param skuQuantities the quantity to return, keyed by sku id; every sku must be a hot sku
+     */
+    void release(Map<Long, Integer> skuQuantities);
+
+    /**
+     * @return the number of units of the given sku held by this node that are not yet reflected in
+     * BLC_SKU.QUANTITY_AVAILABLE
+     */
+    int getBufferedQuantity(Long skuId);
+
+    /**
+     * Returns units that are no longer needed by this node to BLC_SKU.QUANTITY_AVAILABLE. Called periodically.
+     */
+    void reconcile();
+
+}
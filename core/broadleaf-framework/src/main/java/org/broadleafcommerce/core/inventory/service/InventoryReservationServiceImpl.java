@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+
+package org.broadleafcommerce.core.inventory.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.util.TransactionUtils;
+import org.broadleafcommerce.core.catalog.dao.SkuDao;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.inventory.service.type.InventoryType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+/**
+ * Default {@link InventoryReservationService}. Hot skus are configured by id through
+ * <b>inventory.reservation.hotSkuIds</b>; when none are configured this service is inactive.
+ * <p/>
+ * Stock is claimed from the database with the same guarded update used by
+ * {@link SkuDao#decrementQuantitiesAvailable(Map)}, in its own transaction, so a claim is never undone by a checkout
+ * that rolls back. Units taken from the buffer by such a checkout are given back through {@link #release(Map)}.
+ * Units held in the buffers of other nodes are invisible to this node until they reconcile, so a sku may be reported
+ * as sold out while up to <b>inventory.reservation.chunkSize</b> units per node are still buffered elsewhere.
+ */
+@Service("blInventoryReservationService")
+public class InventoryReservationServiceImpl implements InventoryReservationService {
+
+    private static final Log LOG = LogFactory.getLog(InventoryReservationServiceImpl.class);
+
+    @Value("${inventory.reservation.hotSkuIds:}")
+    protected String hotSkuIds = "";
+
+    @Value("${inventory.reservation.chunkSize:50}")
+    protected int chunkSize = 50;
+
+    @Value("${inventory.reservation.reconcileInterval:10000}")
+    protected long reconcileInterval = 10000;
+
+    @Resource(name = "blSkuDao")
+    protected SkuDao skuDao;
+
+    @Resource(name = "blTransactionManager")
+    protected PlatformTransactionManager transactionManager;
+
+    protected Set<Long> hotSkus = Collections.emptySet();
+
+    protected ConcurrentMap<Long, SkuBuffer> buffers = new ConcurrentHashMap<>();
+
+    protected ScheduledExecutorService reconciler;
+
+    @PostConstruct
+    public void init() {
+        Set<Long> ids = new HashSet<>();
+        for (String id : StringUtils.split(hotSkuIds, ',')) {
+            if (StringUtils.isNotBlank(id)) {
+                ids.add(Long.valueOf(id.trim()));
+            }
+        }
+        hotSkus = Collections.unmodifiableSet(ids);
+        if (!hotSkus.isEmpty()) {
+            reconciler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "blInventoryReservationReconciler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reconciler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reconcile();
+                    } catch (RuntimeException e) {
+                        LOG.error("Unable to reconcile reserved inventory, it will be retried", e);
+                    }
+                }
+            }, reconcileInterval, reconcileInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            // Hand everything back so the stock held by this node is not lost until someone corrects it manually
+            for (Map.Entry<Long, SkuBuffer> entry : buffers.entrySet()) {
+                returnToDatabase(entry.getKey(), entry.getValue(), entry.getValue().units.getAndSet(0));
+            }
+        }
+    }
+
+    @Override
+    public boolean isHotSku(Sku sku) {
+        return sku != null && sku.getId() != null && hotSkus.contains(sku.getId())
+                && InventoryType.CHECK_QUANTITY.equals(sku.getInventoryType());
+    }
+
+    @Override
+    public Map<Long, Integer> reserve(Map<Long, Integer> skuQuantities) {
+        Map<Long, Integer> taken = new LinkedHashMap<>();
+        Map<Long, Integer> failures = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : skuQuantities.entrySet()) {
+            SkuBuffer buffer = getBuffer(entry.getKey());
+            if (take(entry.getKey(), buffer, entry.getValue())) {
+                taken.put(entry.getKey(), entry.getValue());
+            } else {
+                failures.put(entry.getKey(), buffer.units.get());
+            }
+        }
+        if (!failures.isEmpty()) {
+            release(taken);
+        }
+        return failures;
+    }
+
+    @Override
+    public void release(Map<Long, Integer> skuQuantities) {
+        for (Map.Entry<Long, Integer> entry : skuQuantities.entrySet()) {
+            getBuffer(entry.getKey()).units.addAndGet(entry.getValue());
+        }
+    }
+
+    @Override
+    public int getBufferedQuantity(Long skuId) {
+        SkuBuffer buffer = buffers.get(skuId);
+        return buffer == null ? 0 : buffer.units.get();
+    }
+
+    @Override
+    public void reconcile() {
+        for (Map.Entry<Long, SkuBuffer> entry : buffers.entrySet()) {
+            SkuBuffer buffer = entry.getValue();
+            // An idle buffer gives back everything, a busy one only what was released beyond a chunk
+            int keep = buffer.active ? chunkSize : 0;
+            buffer.active = false;
+            int surplus;
+            do {
+                int units = buffer.units.get();
+                surplus = units - keep;
+                if (surplus <= 0) {
+                    break;
+                }
+                if (buffer.units.compareAndSet(units, keep)) {
+                    returnToDatabase(entry.getKey(), buffer, surplus);
+                    break;
+                }
+            } while (true);
+        }
+    }
+
+    protected boolean take(Long skuId, SkuBuffer buffer, int quantity) {
+        buffer.active = true;
+        while (true) {
+            int units = buffer.units.get();
+            if (units >= quantity) {
+                if (buffer.units.compareAndSet(units, units - quantity)) {
+                    return true;
+                }
+                continue;
+            }
+            // Nobody waits for another thread's claim: a waiting checkout keeps its connection while the claim needs
+            // one of its own, which can exhaust the pool. Only one thread per sku refills the buffer with a chunk, the
+            // others claim what they need directly.
+            if (!buffer.claiming.compareAndSet(false, true)) {
+                return claimFromDatabase(skuId, quantity) > 0;
+            }
+            try {
+                if (buffer.units.get() >= quantity) {
+                    continue;
+                }
+                if (quantity < chunkSize) {
+                    int claimed = claimFromDatabase(skuId, chunkSize);
+                    if (claimed > 0) {
+                        buffer.units.addAndGet(claimed - quantity);
+                        return true;
+                    }
+                }
+                return claimFromDatabase(skuId, quantity) > 0;
+            } finally {
+                buffer.claiming.set(false);
+            }
+        }
+    }
+
+    /**
+     * Claims stock in a transaction of its own. Never call this while holding a lock other checkouts may wait for.
+     *
+     * @return the number of units claimed, which is either <b>quantity</b> or 0 if the database does not have that many
+     */
+    protected int claimFromDatabase(Long skuId, int quantity) {
+        TransactionStatus status = TransactionUtils.createTransaction("claimReservedInventory",
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW, transactionManager, false);
+        try {
+            Map<Long, Integer> failures = skuDao.decrementQuantitiesAvailable(Collections.singletonMap(skuId, quantity));
+            TransactionUtils.finalizeTransaction(status, transactionManager, false);
+            return failures.isEmpty() ? quantity : 0;
+        } catch (RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, transactionManager, true);
+            throw e;
+        }
+    }
+
+    protected void returnToDatabase(Long skuId, SkuBuffer buffer, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        TransactionStatus status = TransactionUtils.createTransaction("returnReservedInventory",
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW, transactionManager, false);
+        try {
+            skuDao.incrementQuantitiesAvailable(Collections.singletonMap(skuId, quantity));
+            TransactionUtils.finalizeTransaction(status, transactionManager, false);
+        } catch (RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, transactionManager, true);
+            buffer.units.addAndGet(quantity);
+            throw e;
+        }
+    }
+
+    protected SkuBuffer getBuffer(Long skuId) {
+        SkuBuffer buffer = buffers.get(skuId);
+        if (buffer == null) {
+            buffer = new SkuBuffer();
+            SkuBuffer existing = buffers.putIfAbsent(skuId, buffer);
+            if (existing != null) {
+                buffer = existing;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Units of a single hot sku claimed by this node and not yet handed out.
+     */
+    protected static class SkuBuffer {
+
+        protected final AtomicInteger units = new AtomicInteger(0);
+
+        /**
+         * Whether a thread is currently refilling this buffer from the database
+         */
+        protected final AtomicBoolean claiming = new AtomicBoolean(false);
+
+        /**
+         * Whether units were requested since the last reconciliation
+         */
+        protected volatile boolean active;
+
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.extension.ExtensionResultHolder;
 import org.broadleafcommerce.common.extension.ExtensionResultStatusType;
 import org.broadleafcommerce.common.util.TransactionUtils;
+import org.broadleafcommerce.core.catalog.dao.SkuDao;
 import org.broadleafcommerce.core.catalog.domain.Sku;
 import org.broadleafcommerce.core.catalog.service.CatalogService;
 import org.broadleafcommerce.core.inventory.service.type.InventoryType;
@@ -30,12 +31,15 @@ import org.broadleafcommerce.core.order.domain.BundleOrderItem;
 import org.broadleafcommerce.core.order.domain.DiscreteOrderItem;
 import org.broadleafcommerce.core.order.domain.Order;
 import org.broadleafcommerce.core.order.domain.OrderItem;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -53,6 +57,19 @@ public class InventoryServiceImpl implements ContextualInventoryService {
     @Resource(name = "blInventoryServiceExtensionManager")
     protected InventoryServiceExtensionManager extensionManager;
 
+    @Resource(name = "blSkuDao")
+    protected SkuDao skuDao;
+
+    /**
+     * When true, quantities are decremented with conditional database updates through
+     * {@link SkuDao#decrementQuantitiesAvailable(Map)} instead of reading, adjusting and saving every {@link Sku}
+     */
+    @Value("${inventory.decrement.bulk.enabled:false}")
+    protected boolean bulkDecrementEnabled = false;
+
+    @Resource(name = "blInventoryReservationService")
+    protected InventoryReservationService inventoryReservationService;
+
     @Override
     public boolean checkBasicAvailablility(Sku sku) {
         if(sku != null) {
@@ -131,6 +148,9 @@ public class InventoryServiceImpl implements ContextualInventoryService {
                         if(sku.getQuantityAvailable() != null) {
                             quantityAvailable = sku.getQuantityAvailable();
                         }
+                        if (inventoryReservationService.isHotSku(sku)) {
+                            quantityAvailable += inventoryReservationService.getBufferedQuantity(sku.getId());
+                        }
                     } else if(sku.getInventoryType() == null || InventoryType.ALWAYS_AVAILABLE.equals(skuInventoryType)) {
                         quantityAvailable = null;
                     }
@@ -180,6 +200,65 @@ public class InventoryServiceImpl implements ContextualInventoryService {
     }
 
     protected void decrementSku(Map<Sku, Integer> skuQuantities, Map<String, Object> context) throws InventoryUnavailableException {
+        Map<Long, Integer> reserved = reserveHotSkus(skuQuantities);
+        if (!reserved.isEmpty()) {
+            Map<Sku, Integer> remaining = new HashMap<Sku, Integer>();
+            for (Entry<Sku, Integer> entry : skuQuantities.entrySet()) {
+                if (!reserved.containsKey(entry.getKey().getId())) {
+                    remaining.put(entry.getKey(), entry.getValue());
+                }
+            }
+            try {
+                decrementSkuInDatabase(remaining, context);
+            } catch (InventoryUnavailableException | RuntimeException e) {
+                inventoryReservationService.release(reserved);
+                throw e;
+            }
+        } else {
+            decrementSkuInDatabase(skuQuantities, context);
+        }
+    }
+
+    /**
+     * Takes the hot skus of the request out of the {@link InventoryReservationService}.
+     *
+     * @return the quantities that were reserved, keyed by sku id
+     * @throws InventoryUnavailableException if any of the hot skus did not have enough inventory, in which case nothing
+     * was reserved
+     */
+    protected Map<Long, Integer> reserveHotSkus(Map<Sku, Integer> skuQuantities) throws InventoryUnavailableException {
+        Map<Long, Integer> quantities = new LinkedHashMap<Long, Integer>();
+        for (Entry<Sku, Integer> entry : skuQuantities.entrySet()) {
+            Sku sku = entry.getKey();
+            if (inventoryReservationService.isHotSku(sku) && checkBasicAvailablility(sku)) {
+                Integer quantity = entry.getValue();
+                if (quantity == null || quantity < 1) {
+                    throw new IllegalArgumentException("Quantity " + quantity + " is not valid. Must be greater than zero and not null.");
+                }
+                Integer previous = quantities.get(sku.getId());
+                quantities.put(sku.getId(), previous == null ? quantity : previous + quantity);
+            }
+        }
+        if (quantities.isEmpty()) {
+            return quantities;
+        }
+        Map<Long, Integer> failures = inventoryReservationService.reserve(quantities);
+        if (!failures.isEmpty()) {
+            Map<Long, Integer> requested = new LinkedHashMap<Long, Integer>();
+            for (Long skuId : failures.keySet()) {
+                requested.put(skuId, quantities.get(skuId));
+            }
+            throw new InventoryUnavailableException("There was not enough inventory to fulfill this request for skus "
+                    + requested.keySet() + ".", requested, failures);
+        }
+        return quantities;
+    }
+
+    protected void decrementSkuInDatabase(Map<Sku, Integer> skuQuantities, Map<String, Object> context) throws InventoryUnavailableException {
+        if (bulkDecrementEnabled) {
+            bulkDecrementSku(skuQuantities, context);
+            return;
+        }
         for (Entry<Sku, Integer> entry : skuQuantities.entrySet()) {
             Sku sku = entry.getKey();
             Integer quantity = entry.getValue();
@@ -209,6 +288,47 @@ public class InventoryServiceImpl implements ContextualInventoryService {
         }
     }
 
+    /**
+     * Decrements all of the {@link InventoryType#CHECK_QUANTITY} skus with guarded updates of the form
+     * "quantity = quantity - ? where quantity &gt;= ?" rather than a read-modify-write of each {@link Sku}. Every sku
+     * without enough inventory is reported in the resulting {@link InventoryUnavailableException}; since that exception
+     * rolls back the transaction, the skus that were decremented are restored as well.
+     */
+    protected void bulkDecrementSku(Map<Sku, Integer> skuQuantities, Map<String, Object> context) throws InventoryUnavailableException {
+        Map<Long, Integer> quantities = new LinkedHashMap<Long, Integer>();
+        for (Entry<Sku, Integer> entry : skuQuantities.entrySet()) {
+            Sku sku = entry.getKey();
+            Integer quantity = entry.getValue();
+            if (quantity == null || quantity < 1) {
+                throw new IllegalArgumentException("Quantity " + quantity + " is not valid. Must be greater than zero and not null.");
+            }
+
+            if (checkBasicAvailablility(sku)) {
+                if (InventoryType.CHECK_QUANTITY.equals(sku.getInventoryType())) {
+                    Integer previous = quantities.get(sku.getId());
+                    quantities.put(sku.getId(), previous == null ? quantity : previous + quantity);
+                } else {
+                    LOG.info("Not decrementing inventory as the Sku has been marked as always available");
+                }
+            } else {
+                throw new InventoryUnavailableException("The Sku has been marked as unavailable", sku.getId(), quantity, 0);
+            }
+        }
+
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> failures = skuDao.decrementQuantitiesAvailable(quantities);
+        if (!failures.isEmpty()) {
+            Map<Long, Integer> requested = new LinkedHashMap<Long, Integer>();
+            for (Long skuId : failures.keySet()) {
+                requested.put(skuId, quantities.get(skuId));
+            }
+            throw new InventoryUnavailableException("There was not enough inventory to fulfill this request for skus "
+                    + requested.keySet() + ".", requested, failures);
+        }
+    }
+
     @Override
     @Transactional(TransactionUtils.DEFAULT_TRANSACTION_MANAGER)
     public void incrementInventory(Sku sku, int quantity, Map<String, Object> context) {
@@ -233,7 +353,10 @@ public class InventoryServiceImpl implements ContextualInventoryService {
             if (quantity == null || quantity < 1) {
                 throw new IllegalArgumentException("Quantity " + quantity + " is not valid. Must be greater than zero and not null.");
             }
-            if (InventoryType.CHECK_QUANTITY.equals(sku.getInventoryType())) {
+            if (inventoryReservationService.isHotSku(sku)) {
+                // Hot sku units go back to the reservation buffer, which returns them to the database when reconciling
+                inventoryReservationService.release(Collections.singletonMap(sku.getId(), quantity));
+            } else if (InventoryType.CHECK_QUANTITY.equals(sku.getInventoryType())) {
                 Integer currentInventoryAvailable = retrieveQuantityAvailable(sku, context);
                 if (currentInventoryAvailable == null) {
                     throw new IllegalArgumentException("The current inventory for this Sku is null");
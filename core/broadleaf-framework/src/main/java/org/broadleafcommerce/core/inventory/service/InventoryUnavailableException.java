@@ -18,6 +18,7 @@
 
 package org.broadleafcommerce.core.inventory.service;
 
+import java.util.Map;
 
 public class InventoryUnavailableException extends Exception {
 
@@ -29,6 +30,10 @@ public class InventoryUnavailableException extends Exception {
 
     protected Integer quantityAvailable;
 
+    protected Map<Long, Integer> quantitiesRequested;
+
+    protected Map<Long, Integer> quantitiesAvailable;
+
     public InventoryUnavailableException(String msg) {
         super(msg);
     }
@@ -47,6 +52,24 @@ public class InventoryUnavailableException extends Exception {
         this.quantityRequested = quantityRequested;
     }
     
+    /**
+     * Reports every sku of a request that could not be fulfilled. The single sku accessors describe the first of them.
+     *
+     * @param msg
+     * @param quantitiesRequested the requested quantity of each unavailable sku, keyed by sku id
+     * @param quantitiesAvailable the quantity that was available of each unavailable sku, keyed by sku id
+     */
+    public InventoryUnavailableException(String msg, Map<Long, Integer> quantitiesRequested, Map<Long, Integer> quantitiesAvailable) {
+        super(msg);
+        this.quantitiesRequested = quantitiesRequested;
+        this.quantitiesAvailable = quantitiesAvailable;
+        if (!quantitiesRequested.isEmpty()) {
+            this.skuId = quantitiesRequested.keySet().iterator().next();
+            this.quantityRequested = quantitiesRequested.get(skuId);
+            this.quantityAvailable = quantitiesAvailable.get(skuId);
+        }
+    }
+
     public InventoryUnavailableException(String msg, Throwable cause) {
         super(msg, cause);
     }
@@ -75,4 +98,20 @@ public class InventoryUnavailableException extends Exception {
         this.quantityAvailable = quantityAvailable;
     }
 
+    /**
+     * @return the requested quantity of each unavailable sku, keyed by sku id - null unless the exception was raised
+     * for several skus at once
+     */
+    public Map<Long, Integer> getQuantitiesRequested() {
+        return quantitiesRequested;
+    }
+
+    /**
+     * @return the quantity available of each unavailable sku, keyed by sku id - null unless the exception was raised
+     * for several skus at once
+     */
+    public Map<Long, Integer> getQuantitiesAvailable() {
+        return quantitiesAvailable;
+    }
+
 }
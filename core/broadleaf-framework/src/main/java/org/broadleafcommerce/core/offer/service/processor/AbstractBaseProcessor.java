@@ -18,14 +18,15 @@
 package org.broadleafcommerce.core.offer.service.processor;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.broadleafcommerce.common.RequestDTO;
 import org.broadleafcommerce.common.TimeDTO;
 import org.broadleafcommerce.common.money.Money;
+import org.broadleafcommerce.common.rule.CompiledExpressionCache;
 import org.broadleafcommerce.common.rule.MvelHelper;
 import org.broadleafcommerce.common.time.SystemTime;
+import org.broadleafcommerce.common.util.EfficientLRUMap;
 import org.broadleafcommerce.common.util.TypedPredicate;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.broadleafcommerce.core.offer.domain.Offer;
@@ -43,6 +44,7 @@ import org.broadleafcommerce.core.order.domain.OrderItem;
 import org.broadleafcommerce.core.order.service.type.FulfillmentType;
 import org.broadleafcommerce.profile.core.domain.Customer;
 import org.joda.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -65,7 +67,8 @@ import javax.annotation.Resource;
 public abstract class AbstractBaseProcessor implements BaseProcessor {
 
     private static final Log LOG = LogFactory.getLog(AbstractBaseProcessor.class);
-    private static final Map EXPRESSION_CACHE = new LRUMap(1000);
+    private static final CompiledExpressionCache EXPRESSION_CACHE = new CompiledExpressionCache(1000);
+    private static final Map<String, OfferItemCriteriaPrefilter> PREFILTER_CACHE = new EfficientLRUMap<>(1000);
 
     @Resource(name = "blOfferTimeZoneProcessor")
     protected OfferTimeZoneProcessor offerTimeZoneProcessor;
@@ -73,6 +76,13 @@ public abstract class AbstractBaseProcessor implements BaseProcessor {
     @Resource(name = "blOfferServiceExtensionManager")
     protected OfferServiceExtensionManager extensionManager;
 
+    /**
+     * When true, simple sku, product, category and manufacturer conditions are extracted from item criteria match rules
+     * and checked against each order item before the MVEL rule is evaluated. See {@link OfferItemCriteriaPrefilter}.
+     */
+    @Value("${offer.item.criteria.prefilter.enabled:true}")
+    protected boolean itemCriteriaPrefilterEnabled = true;
+
     protected CandidatePromotionItems couldOfferApplyToOrderItems(Offer offer, List<PromotableOrderItem> promotableOrderItems) {
         CandidatePromotionItems candidates = new CandidatePromotionItems();
         if (offer.getQualifyingItemCriteriaXref() == null || offer.getQualifyingItemCriteriaXref().size() == 0) {
@@ -235,6 +245,9 @@ public abstract class AbstractBaseProcessor implements BaseProcessor {
         boolean appliesToItem = false;
 
         if (criteria.getMatchRule() != null && criteria.getMatchRule().trim().length() != 0) {
+            if (itemCriteriaPrefilterEnabled && !getItemCriteriaPrefilter(criteria.getMatchRule()).couldMatch(orderItem)) {
+                return false;
+            }
             HashMap<String, Object> vars = new HashMap<String, Object>();
             orderItem.updateRuleVariables(vars);
 
@@ -253,6 +266,22 @@ public abstract class AbstractBaseProcessor implements BaseProcessor {
         return appliesToItem;
     }
     
+    /**
+     * Returns the prefilter for an item criteria match rule. Prefilters are keyed by the rule text, so a modified offer
+     * rule is re-indexed the first time it is evaluated.
+     * 
+     * @param matchRule the MVEL match rule
+     * @return the prefilter for the rule
+     */
+    protected OfferItemCriteriaPrefilter getItemCriteriaPrefilter(String matchRule) {
+        OfferItemCriteriaPrefilter prefilter = PREFILTER_CACHE.get(matchRule);
+        if (prefilter == null) {
+            prefilter = OfferItemCriteriaPrefilter.build(matchRule);
+            PREFILTER_CACHE.put(matchRule, prefilter);
+        }
+        return prefilter;
+    }
+
     /**
      * Private method used by couldOfferApplyToOrder to execute the MVEL expression in the
      * appliesToOrderRules to determine if this offer can be applied.
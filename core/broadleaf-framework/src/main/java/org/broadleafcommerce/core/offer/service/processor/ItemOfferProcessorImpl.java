@@ -33,6 +33,7 @@ import org.broadleafcommerce.core.offer.service.discount.PromotionDiscount;
 import org.broadleafcommerce.core.offer.service.discount.PromotionQualifier;
 import org.broadleafcommerce.core.offer.service.discount.domain.PromotableCandidateItemOffer;
 import org.broadleafcommerce.core.offer.service.discount.domain.PromotableCandidateOrderOffer;
+import org.broadleafcommerce.core.offer.service.discount.domain.PromotableOfferUtility;
 import org.broadleafcommerce.core.offer.service.discount.domain.PromotableFulfillmentGroup;
 import org.broadleafcommerce.core.offer.service.discount.domain.PromotableOrder;
 import org.broadleafcommerce.core.offer.service.discount.domain.PromotableOrderItem;
@@ -42,9 +43,11 @@ import org.broadleafcommerce.core.offer.service.type.OfferItemRestrictionRuleTyp
 import org.broadleafcommerce.core.offer.service.type.OfferType;
 import org.broadleafcommerce.core.order.domain.OrderItem;
 import org.broadleafcommerce.core.order.domain.dto.OrderItemHolder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -68,6 +71,14 @@ public class ItemOfferProcessorImpl extends OrderOfferProcessorImpl implements I
     
     protected static final Log LOG = LogFactory.getLog(ItemOfferProcessorImpl.class);
 
+    /**
+     * When true, {@link #determineBestPermutation(List, PromotableOrder)} abandons a permutation as soon as it can no
+     * longer produce a lower subtotal than the best permutation found so far, based on the maximum savings of the offers
+     * it has yet to apply.
+     */
+    @Value("${pricing.item.offer.permutation.pruning.enabled:true}")
+    protected boolean permutationPruningEnabled = true;
+
     /* (non-Javadoc)
      * @see org.broadleafcommerce.core.offer.service.processor.ItemOfferProcessor#filterItemLevelOffer(org.broadleafcommerce.core.order.domain.Order, java.util.List, java.util.List, org.broadleafcommerce.core.offer.domain.Offer)
      */
@@ -157,15 +168,41 @@ public class ItemOfferProcessorImpl extends OrderOfferProcessorImpl implements I
         // particular OrderItem.  Multiple CandidateItemOffers may contain a reference to the same OrderItem object.
         // The same offer may be applied to different Order Items
         
+        applyAllItemOffers(itemOffers, order, null);
+    }
+
+    /**
+     * Applies the item offers, consulting and populating the given cache of subtotal requirement results. The subtotal
+     * requirements of an offer only depend on the prices before adjustments and the order subtotal, neither of which
+     * change while permutations are being evaluated, so the results can be shared across permutations.
+     * 
+     * @param itemOffers the offers to apply, in order
+     * @param order the order
+     * @param requirementsCache cache of whether each offer meets its subtotal requirements, or null to always evaluate
+     */
+    protected void applyAllItemOffers(List<PromotableCandidateItemOffer> itemOffers, PromotableOrder order,
+            Map<PromotableCandidateItemOffer, Boolean> requirementsCache) {
         for (PromotableCandidateItemOffer itemOffer : itemOffers) {
-            if (orderMeetsQualifyingSubtotalRequirements(order, itemOffer)
-                    && orderMeetsTargetSubtotalRequirements(order, itemOffer)
-                    && orderMeetsSubtotalRequirements(order, itemOffer)) {
+            if (orderMeetsAllSubtotalRequirements(order, itemOffer, requirementsCache)) {
                 applyItemOffer(order, itemOffer);
             }
         }
     }
 
+    protected boolean orderMeetsAllSubtotalRequirements(PromotableOrder order, PromotableCandidateItemOffer itemOffer,
+            Map<PromotableCandidateItemOffer, Boolean> requirementsCache) {
+        Boolean meetsRequirements = requirementsCache == null ? null : requirementsCache.get(itemOffer);
+        if (meetsRequirements == null) {
+            meetsRequirements = orderMeetsQualifyingSubtotalRequirements(order, itemOffer)
+                    && orderMeetsTargetSubtotalRequirements(order, itemOffer)
+                    && orderMeetsSubtotalRequirements(order, itemOffer);
+            if (requirementsCache != null) {
+                requirementsCache.put(itemOffer, meetsRequirements);
+            }
+        }
+        return meetsRequirements;
+    }
+
     protected boolean orderMeetsQualifyingSubtotalRequirements(PromotableOrder order, PromotableCandidateItemOffer itemOffer) {
         return offerServiceUtilities.orderMeetsQualifyingSubtotalRequirements(order, itemOffer.getOffer(), itemOffer.getCandidateQualifiersMap());
     }
@@ -604,18 +641,25 @@ public class ItemOfferProcessorImpl extends OrderOfferProcessorImpl implements I
         List<PromotableCandidateItemOffer> bestOfferList = null;
         Money lowestSubtotal = null;
         if (permutations.size() > 1) {
+            Map<PromotableCandidateItemOffer, Boolean> requirementsCache = new HashMap<PromotableCandidateItemOffer, Boolean>();
+            Map<PromotableCandidateItemOffer, Money> maximumSavings = permutationPruningEnabled ?
+                    calculateMaximumSavings(itemOffers, order) : null;
             for (List<PromotableCandidateItemOffer> offerList : permutations) {
                 for (PromotableCandidateItemOffer offer : offerList) {
                     offer.resetUses();
                 }
                 
-                applyAllItemOffers(offerList, order);
-                chooseSaleOrRetailAdjustments(order);
-                Money testSubtotal = order.calculateSubtotalWithAdjustments();
+                if (applyAllItemOffers(offerList, order, requirementsCache, maximumSavings, lowestSubtotal)) {
+                    chooseSaleOrRetailAdjustments(order);
+                    Money testSubtotal = order.calculateSubtotalWithAdjustments();
 
-                if (lowestSubtotal == null || testSubtotal.lessThan(lowestSubtotal)) {
-                    lowestSubtotal = testSubtotal;
-                    bestOfferList = offerList;
+                    if (lowestSubtotal == null || testSubtotal.lessThan(lowestSubtotal)) {
+                        lowestSubtotal = testSubtotal;
+                        bestOfferList = offerList;
+                    }
+                } else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Abandoned item offer permutation " + convertToIdList(offerList)
+                            + " as it cannot produce a subtotal below " + lowestSubtotal);
                 }
 
                 // clear price details
@@ -634,6 +678,166 @@ public class ItemOfferProcessorImpl extends OrderOfferProcessorImpl implements I
         return bestOfferList;
     }
 
+    /**
+     * Applies the offers of a permutation in order, abandoning it as soon as it can no longer produce a subtotal below
+     * the lowest subtotal found so far. Before each offer is applied, the lowest subtotal the order could still reach is
+     * bounded by {@link #calculateSubtotalLowerBound(PromotableOrder)} for the offers applied so far, less the maximum
+     * savings of each remaining offer that meets its subtotal requirements. The best permutation is only replaced by a
+     * strictly lower subtotal, so an abandoned permutation could not have been chosen.
+     * 
+     * @param offerList the permutation
+     * @param order the order
+     * @param requirementsCache cache of whether each offer meets its subtotal requirements
+     * @param maximumSavings the result of {@link #calculateMaximumSavings(List, PromotableOrder)}, or null to apply
+     * every offer
+     * @param lowestSubtotal the lowest subtotal found so far, or null if this is the first permutation
+     * @return whether all offers were applied, false if the permutation was abandoned
+     */
+    protected boolean applyAllItemOffers(List<PromotableCandidateItemOffer> offerList, PromotableOrder order,
+            Map<PromotableCandidateItemOffer, Boolean> requirementsCache, Map<PromotableCandidateItemOffer, Money> maximumSavings,
+            Money lowestSubtotal) {
+        if (maximumSavings == null || lowestSubtotal == null) {
+            applyAllItemOffers(offerList, order, requirementsCache);
+            return true;
+        }
+
+        // remainingSavings[i] is the most that offers i..n could still save
+        Money[] remainingSavings = new Money[offerList.size() + 1];
+        remainingSavings[offerList.size()] = new Money(order.getOrderCurrency());
+        for (int i = offerList.size() - 1; i >= 0; i--) {
+            PromotableCandidateItemOffer itemOffer = offerList.get(i);
+            remainingSavings[i] = remainingSavings[i + 1];
+            if (orderMeetsAllSubtotalRequirements(order, itemOffer, requirementsCache)) {
+                remainingSavings[i] = remainingSavings[i].add(maximumSavings.get(itemOffer));
+            }
+        }
+
+        for (int i = 0; i < offerList.size(); i++) {
+            if (calculateSubtotalLowerBound(order).subtract(remainingSavings[i]).greaterThanOrEqual(lowestSubtotal)) {
+                return false;
+            }
+            PromotableCandidateItemOffer itemOffer = offerList.get(i);
+            if (orderMeetsAllSubtotalRequirements(order, itemOffer, requirementsCache)) {
+                applyItemOffer(order, itemOffer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the lowest subtotal the order could have once the adjustments applied so far are finalized by
+     * {@link #chooseSaleOrRetailAdjustments(PromotableOrder)}: every unit is counted at the lowest of its sale and retail
+     * prices, with and without the adjustments applied to it. Adjustments are only ever added while offers are applied,
+     * so the finalized price of each unit can only be lower than this by the savings of the offers still to be applied.
+     * 
+     * @param order the order
+     * @return the lower bound of the subtotal, before any further offers are applied
+     */
+    protected Money calculateSubtotalLowerBound(PromotableOrder order) {
+        Money lowerBound = new Money(order.getOrderCurrency());
+        for (PromotableOrderItem item : order.getAllOrderItems()) {
+            Money unitPrice = item.getRetailPriceBeforeAdjustments();
+            if (item.getSalePriceBeforeAdjustments() != null) {
+                unitPrice = unitPrice.min(item.getSalePriceBeforeAdjustments());
+            }
+            for (PromotableOrderItemPriceDetail detail : item.getPromotableOrderItemPriceDetails()) {
+                Money detailUnitPrice = unitPrice.min(detail.calculateItemUnitPriceWithAdjustments(true))
+                        .min(detail.calculateItemUnitPriceWithAdjustments(false));
+                lowerBound = lowerBound.add(detailUnitPrice.multiply(detail.getQuantity()));
+            }
+        }
+        return lowerBound;
+    }
+
+    /**
+     * Calculates the most each offer could save, in any permutation, as the sum over its candidate target items of the
+     * item quantity times the largest adjustment the offer could make to one unit. The candidate targets and unit bounds
+     * are evaluated once per item and offer and shared by all permutations.
+     * </p>
+     * Adjustment values are rounded to the "roundingScale" of the offer (2 by default), which this bound assumes is at
+     * least 2. Implementations that alter savings through {@link OfferServiceExtensionManager} should return null here,
+     * or disable pruning through "pricing.item.offer.permutation.pruning.enabled".
+     * 
+     * @param itemOffers the offers being permuted
+     * @param order the order
+     * @return the maximum savings of each offer, or null if they cannot be determined
+     */
+    protected Map<PromotableCandidateItemOffer, Money> calculateMaximumSavings(List<PromotableCandidateItemOffer> itemOffers,
+            PromotableOrder order) {
+        // A fixed price adjustment raises prices below the fixed price, so later adjustments may start from that price
+        BigDecimal highestFixedPrice = BigDecimal.ZERO;
+        for (PromotableCandidateItemOffer itemOffer : itemOffers) {
+            if (OfferDiscountType.FIX_PRICE.equals(itemOffer.getOffer().getDiscountType())) {
+                BigDecimal fixedPrice = PromotableOfferUtility.determineOfferUnitValue(itemOffer.getOffer(), itemOffer);
+                if (fixedPrice != null && fixedPrice.compareTo(highestFixedPrice) > 0) {
+                    highestFixedPrice = fixedPrice;
+                }
+            }
+        }
+
+        Map<PromotableCandidateItemOffer, Money> maximumSavings = new HashMap<PromotableCandidateItemOffer, Money>();
+        Map<PromotableOrderItem, Money> highestUnitPrices = new HashMap<PromotableOrderItem, Money>();
+        for (PromotableCandidateItemOffer itemOffer : itemOffers) {
+            BigDecimal offerUnitValue = PromotableOfferUtility.determineOfferUnitValue(itemOffer.getOffer(), itemOffer);
+            if (offerUnitValue == null) {
+                return null;
+            }
+            Set<PromotableOrderItem> targets = new HashSet<PromotableOrderItem>();
+            for (List<PromotableOrderItem> candidateTargets : itemOffer.getCandidateTargetsMap().values()) {
+                targets.addAll(candidateTargets);
+            }
+            Money savings = new Money(order.getOrderCurrency());
+            for (PromotableOrderItem target : targets) {
+                Money highestUnitPrice = highestUnitPrices.get(target);
+                if (highestUnitPrice == null) {
+                    highestUnitPrice = target.getRetailPriceBeforeAdjustments();
+                    if (target.getSalePriceBeforeAdjustments() != null) {
+                        highestUnitPrice = highestUnitPrice.max(target.getSalePriceBeforeAdjustments());
+                    }
+                    highestUnitPrice = highestUnitPrice.max(new Money(highestFixedPrice, highestUnitPrice.getCurrency()));
+                    highestUnitPrices.put(target, highestUnitPrice);
+                }
+                Money unitSavings = calculateMaximumUnitSavings(itemOffer.getOffer(), offerUnitValue, highestUnitPrice);
+                if (unitSavings == null) {
+                    return null;
+                }
+                savings = savings.add(unitSavings.multiply(target.getQuantity()));
+            }
+            maximumSavings.put(itemOffer, savings);
+        }
+        return maximumSavings;
+    }
+
+    /**
+     * @param offer the offer
+     * @param offerUnitValue the value of the offer, as determined by {@link PromotableOfferUtility#determineOfferUnitValue}
+     * @param highestUnitPrice the highest price a unit could have when the offer is applied to it
+     * @return the largest adjustment the offer could make to one unit, or null if it cannot be determined
+     */
+    protected Money calculateMaximumUnitSavings(Offer offer, BigDecimal offerUnitValue, Money highestUnitPrice) {
+        Money zero = new Money(BigDecimal.ZERO, highestUnitPrice.getCurrency());
+        if (OfferDiscountType.AMOUNT_OFF.equals(offer.getDiscountType())) {
+            return highestUnitPrice.min(new Money(offerUnitValue, highestUnitPrice.getCurrency())).max(zero);
+        }
+        if (OfferDiscountType.FIX_PRICE.equals(offer.getDiscountType())) {
+            return highestUnitPrice.subtract(new Money(offerUnitValue, highestUnitPrice.getCurrency())).max(zero);
+        }
+        if (OfferDiscountType.PERCENT_OFF.equals(offer.getDiscountType())) {
+            BigDecimal savings = highestUnitPrice.getAmount().multiply(offerUnitValue)
+                    .divide(new BigDecimal(100), 2, RoundingMode.CEILING);
+            return highestUnitPrice.min(new Money(savings, highestUnitPrice.getCurrency())).max(zero);
+        }
+        return null;
+    }
+
+    public boolean isPermutationPruningEnabled() {
+        return permutationPruningEnabled;
+    }
+
+    public void setPermutationPruningEnabled(boolean permutationPruningEnabled) {
+        this.permutationPruningEnabled = permutationPruningEnabled;
+    }
+
     protected void removeDuplicatePermutations(List<List<PromotableCandidateItemOffer>> permutations) {
         Set<List<Long>> offerIdListSet = new HashSet<>();
 
@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.offer.service.processor;
+
+import org.broadleafcommerce.common.rule.RuleExpressionUtils;
+import org.broadleafcommerce.core.catalog.domain.Category;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.offer.domain.OfferItemCriteria;
+import org.broadleafcommerce.core.offer.service.discount.domain.PromotableOrderItem;
+import org.broadleafcommerce.core.order.domain.BundleOrderItem;
+import org.broadleafcommerce.core.order.domain.DiscreteOrderItem;
+import org.broadleafcommerce.core.order.domain.OrderItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of simple, necessary conditions extracted from the MVEL match rule of an {@link OfferItemCriteria}. Each condition
+ * is a hash lookup of a single order item attribute (sku id, product id, category id or name, or manufacturer), so an
+ * order item that fails any of them can be rejected without evaluating the MVEL expression.
+ * </p>
+ * Conditions are only extracted from top level conjuncts of the rule that use one of the forms produced by the admin
+ * rule builder, for example:
+ * <pre>
+ * discreteOrderItem.?sku.?id==100
+ * [100,101] contains discreteOrderItem.?product.?id
+ * MvelHelper.toUpperCase(discreteOrderItem.?category.?name)==MvelHelper.toUpperCase("merchandise")
+ * discreteOrderItem.?product.?manufacturer=="Acme"
+ * </pre>
+ * Any other conjunct is left to the MVEL evaluation, as is any rule containing a top level "||". A prefilter never rejects
+ * an item that the full rule would accept; it only lets the caller skip MVEL for items that cannot match.
+ *
+ * @see AbstractBaseProcessor#couldOrderItemMeetOfferRequirement(OfferItemCriteria, PromotableOrderItem)
+ */
+public class OfferItemCriteriaPrefilter {
+
+    protected static final String ITEM = "(?:discreteOrderItem|orderItem)\\.\\??";
+    protected static final Pattern ID_EQUALS = Pattern.compile(
+            "^" + ITEM + "(sku|product|category)\\.\\??id\\s*==\\s*(-?\\d+)L?$");
+    protected static final Pattern ID_CONTAINS = Pattern.compile(
+            "^\\[\\s*(-?\\d+L?(?:\\s*,\\s*-?\\d+L?)*)\\s*\\]\\s*contains\\s+" + ITEM
+            + "(sku|product|category)\\.\\??id(?:\\.intValue\\(\\))?$");
+    protected static final Pattern VALUE_EQUALS = Pattern.compile(
+            "^" + ITEM + "(category\\.\\??name|product\\.\\??manufacturer)\\s*==\\s*\"([^\"\\\\]*)\"$");
+    protected static final Pattern VALUE_EQUALS_IGNORE_CASE = Pattern.compile(
+            "^MvelHelper\\.toUpperCase\\(" + ITEM + "(category\\.\\??name|product\\.\\??manufacturer)\\)\\s*==\\s*"
+            + "MvelHelper\\.toUpperCase\\(\"([^\"\\\\]*)\"\\)$");
+
+    /**
+     * Shared instance for rules from which no condition could be extracted
+     */
+    public static final OfferItemCriteriaPrefilter NONE = new OfferItemCriteriaPrefilter(Collections.<Condition>emptyList());
+
+    protected final List<Condition> conditions;
+
+    protected OfferItemCriteriaPrefilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Extract the prefilter conditions for an item criteria match rule.
+     *
+     * @param matchRule the MVEL match rule
+     * @return the prefilter, or {@link #NONE} if no conditions could be extracted
+     */
+    public static OfferItemCriteriaPrefilter build(String matchRule) {
+        if (matchRule == null) {
+            return NONE;
+        }
+        List<String> conjuncts = RuleExpressionUtils.splitConjuncts(matchRule.trim());
+        if (conjuncts == null) {
+            return NONE;
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String conjunct : conjuncts) {
+            Condition condition = parseCondition(RuleExpressionUtils.stripEnclosingParentheses(conjunct.trim()));
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+        return conditions.isEmpty() ? NONE : new OfferItemCriteriaPrefilter(conditions);
+    }
+
+    /**
+     * @return whether or not any conditions were extracted
+     */
+    public boolean isIndexed() {
+        return !conditions.isEmpty();
+    }
+
+    /**
+     * @param item the order item
+     * @return false if the item definitely does not satisfy the rule, true if the rule must be evaluated to know
+     */
+    public boolean couldMatch(PromotableOrderItem item) {
+        if (conditions.isEmpty()) {
+            return true;
+        }
+        OrderItem orderItem = item.getOrderItem();
+        for (Condition condition : conditions) {
+            if (!condition.couldMatch(orderItem)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static Condition parseCondition(String expression) {
+        Matcher matcher = ID_EQUALS.matcher(expression);
+        if (matcher.matches()) {
+            Set<Long> ids = new HashSet<>();
+            ids.add(Long.valueOf(matcher.group(2)));
+            return new IdCondition(matcher.group(1), ids);
+        }
+        matcher = ID_CONTAINS.matcher(expression);
+        if (matcher.matches()) {
+            Set<Long> ids = new HashSet<>();
+            for (String id : matcher.group(1).split(",")) {
+                id = id.trim();
+                if (id.endsWith("L")) {
+                    id = id.substring(0, id.length() - 1);
+                }
+                ids.add(Long.valueOf(id));
+            }
+            return new IdCondition(matcher.group(2), ids);
+        }
+        matcher = VALUE_EQUALS.matcher(expression);
+        if (matcher.matches()) {
+            return new ValueCondition(matcher.group(1).replace("?", ""), matcher.group(2), false);
+        }
+        matcher = VALUE_EQUALS_IGNORE_CASE.matcher(expression);
+        if (matcher.matches()) {
+            return new ValueCondition(matcher.group(1).replace("?", ""), matcher.group(2), true);
+        }
+        return null;
+    }
+
+    protected static Sku getSku(OrderItem orderItem) {
+        if (orderItem instanceof DiscreteOrderItem) {
+            return ((DiscreteOrderItem) orderItem).getSku();
+        }
+        if (orderItem instanceof BundleOrderItem) {
+            return ((BundleOrderItem) orderItem).getSku();
+        }
+        return null;
+    }
+
+    protected static Product getProduct(OrderItem orderItem) {
+        if (orderItem instanceof DiscreteOrderItem) {
+            return ((DiscreteOrderItem) orderItem).getProduct();
+        }
+        if (orderItem instanceof BundleOrderItem) {
+            return ((BundleOrderItem) orderItem).getProduct();
+        }
+        return null;
+    }
+
+    protected static boolean isSkuAware(OrderItem orderItem) {
+        return orderItem instanceof DiscreteOrderItem || orderItem instanceof BundleOrderItem;
+    }
+
+    protected interface Condition {
+
+        boolean couldMatch(OrderItem orderItem);
+
+    }
+
+    protected static class IdCondition implements Condition {
+
+        protected final String entity;
+        protected final Set<Long> ids;
+
+        public IdCondition(String entity, Set<Long> ids) {
+            this.entity = entity;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean couldMatch(OrderItem orderItem) {
+            Long id;
+            if ("category".equals(entity)) {
+                Category category = orderItem.getCategory();
+                id = category == null ? null : category.getId();
+            } else if (!isSkuAware(orderItem)) {
+                // Unknown item type - leave the decision to the rule itself
+                return true;
+            } else if ("sku".equals(entity)) {
+                Sku sku = getSku(orderItem);
+                id = sku == null ? null : sku.getId();
+            } else {
+                Product product = getProduct(orderItem);
+                id = product == null ? null : product.getId();
+            }
+            return id != null && ids.contains(id);
+        }
+    }
+
+    protected static class ValueCondition implements Condition {
+
+        protected final String property;
+        protected final String value;
+        protected final boolean ignoreCase;
+
+        public ValueCondition(String property, String value, boolean ignoreCase) {
+            this.property = property;
+            // Matches MvelHelper.toUpperCase, which uses the default locale
+            this.value = ignoreCase ? value.toUpperCase() : value;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean couldMatch(OrderItem orderItem) {
+            String itemValue;
+            if ("category.name".equals(property)) {
+                Category category = orderItem.getCategory();
+                itemValue = category == null ? null : category.getName();
+            } else if (!isSkuAware(orderItem)) {
+                return true;
+            } else {
+                Product product = getProduct(orderItem);
+                itemValue = product == null ? null : product.getManufacturer();
+            }
+            if (itemValue == null) {
+                return false;
+            }
+            return value.equals(ignoreCase ? itemValue.toUpperCase() : itemValue);
+        }
+    }
+}
@@ -110,11 +110,10 @@ public class ConsolidateFulfillmentFeesActivity extends BaseActivity<ProcessCont
         String feeExpression = fee.getExpression();
         
         if (StringUtils.isNotEmpty(feeExpression)) {
-            synchronized (EXPRESSION_CACHE) {
-                HashMap<String, Object> vars = new HashMap<>();
-                vars.put("fulfillmentGroup", fulfillmentGroup);
-                MvelHelper.evaluateRule(feeExpression, vars, EXPRESSION_CACHE);
-            }
+            // EXPRESSION_CACHE is safe for concurrent use, so evaluations don't need to be serialized
+            HashMap<String, Object> vars = new HashMap<>();
+            vars.put("fulfillmentGroup", fulfillmentGroup);
+            MvelHelper.evaluateRule(feeExpression, vars, EXPRESSION_CACHE);
         }
         
         return appliesToFulfillmentGroup;
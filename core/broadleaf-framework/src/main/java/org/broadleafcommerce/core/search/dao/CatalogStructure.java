@@ -19,6 +19,8 @@ package org.broadleafcommerce.core.search.dao;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +33,11 @@ import java.util.Set;
  * (2) All the immediate parent categories for a give category and
  * (3) All the child products for a given category
  * </p>
+ * <p>
+ * A structure may be backed by a shared, immutable {@link CatalogStructureSnapshot} from an earlier indexing run. The
+ * maps only hold what has been populated during the current run; the lookup methods such as
+ * {@link #getParentCategoriesForProduct(Long)} consult the maps first and fall back to the snapshot.
+ * </p>
  *
  * @author Jeff Fischer
  */
@@ -42,6 +49,59 @@ public class CatalogStructure implements Serializable {
     protected Map<Long, Set<Long>> parentCategoriesByCategory = new HashMap<Long, Set<Long>>();
     protected Map<Long, List<Long>> productsByCategory = new HashMap<Long, List<Long>>();
     protected Map<String, BigDecimal> displayOrdersByCategoryProduct = new HashMap<String, BigDecimal>();
+    protected CatalogStructureSnapshot snapshot = CatalogStructureSnapshot.EMPTY;
+
+    public CatalogStructure() {
+        // empty structure not backed by a snapshot
+    }
+
+    public CatalogStructure(CatalogStructureSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public boolean containsProduct(Long productId) {
+        return parentCategoriesByProduct.containsKey(productId)
+                || (productId != null && snapshot.containsProduct(productId));
+    }
+
+    /**
+     * @return the immediate parent categories of the product, or an empty collection if the product is not known
+     */
+    public Collection<Long> getParentCategoriesForProduct(Long productId) {
+        Collection<Long> parents = parentCategoriesByProduct.get(productId);
+        if (parents == null && productId != null) {
+            parents = snapshot.getParentCategoriesForProduct(productId);
+        }
+        return parents == null ? Collections.<Long>emptySet() : parents;
+    }
+
+    public boolean containsCategory(Long categoryId) {
+        return parentCategoriesByCategory.containsKey(categoryId)
+                || (categoryId != null && snapshot.containsCategory(categoryId));
+    }
+
+    /**
+     * @return the immediate parent categories of the category, or an empty collection if the category is not known
+     */
+    public Collection<Long> getParentCategoriesForCategory(Long categoryId) {
+        Collection<Long> parents = parentCategoriesByCategory.get(categoryId);
+        if (parents == null && categoryId != null) {
+            parents = snapshot.getParentCategoriesForCategory(categoryId);
+        }
+        return parents == null ? Collections.<Long>emptySet() : parents;
+    }
+
+    public BigDecimal getDisplayOrder(Long categoryId, Long productId) {
+        BigDecimal displayOrder = displayOrdersByCategoryProduct.get(categoryId + "-" + productId);
+        if (displayOrder == null && categoryId != null && productId != null) {
+            displayOrder = snapshot.getDisplayOrder(categoryId, productId);
+        }
+        return displayOrder;
+    }
+
+    public CatalogStructureSnapshot getSnapshot() {
+        return snapshot;
+    }
 
     public Map<Long, Set<Long>> getParentCategoriesByProduct() {
         return parentCategoriesByProduct;
@@ -59,6 +119,14 @@ public class CatalogStructure implements Serializable {
         this.parentCategoriesByCategory = parentCategoriesByCategory;
     }
 
+    public Map<Long, List<Long>> getProductsByCategory() {
+        return productsByCategory;
+    }
+
+    public void setProductsByCategory(Map<Long, List<Long>> productsByCategory) {
+        this.productsByCategory = productsByCategory;
+    }
+
     public Map<String, BigDecimal> getDisplayOrdersByCategoryProduct() {
         return displayOrdersByCategoryProduct;
     }
@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.dao;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, compact copy of the relationships held by a {@link CatalogStructure}. The parent categories of products
+ * and categories as well as the category/product display orders are stored in {@link PackedLongMultimap}s, so a
+ * snapshot of a large catalog takes a fraction of the memory of the equivalent maps of boxed values, and it can be
+ * shared by every indexing thread and reused by later indexing runs.
+ * <p>
+ * Display orders are kept as unscaled longs at a scale of {@value #DISPLAY_ORDER_SCALE}, which matches the column
+ * definition of <code>CategoryProductXrefImpl.displayOrder</code>.
+ * </p>
+ *
+ * @see org.broadleafcommerce.core.search.service.solr.index.CatalogStructureSnapshotService
+ */
+public class CatalogStructureSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DISPLAY_ORDER_SCALE = 6;
+
+    public static final CatalogStructureSnapshot EMPTY = new CatalogStructureSnapshot(PackedLongMultimap.EMPTY,
+            PackedLongMultimap.EMPTY, PackedLongMultimap.EMPTY);
+
+    protected final PackedLongMultimap parentCategoriesByProduct;
+    protected final PackedLongMultimap parentCategoriesByCategory;
+    protected final PackedLongMultimap displayOrdersByProduct;
+
+    protected CatalogStructureSnapshot(PackedLongMultimap parentCategoriesByProduct,
+            PackedLongMultimap parentCategoriesByCategory, PackedLongMultimap displayOrdersByProduct) {
+        this.parentCategoriesByProduct = parentCategoriesByProduct;
+        this.parentCategoriesByCategory = parentCategoriesByCategory;
+        this.displayOrdersByProduct = displayOrdersByProduct;
+    }
+
+    public boolean containsProduct(long productId) {
+        return parentCategoriesByProduct.containsKey(productId);
+    }
+
+    public List<Long> getParentCategoriesForProduct(long productId) {
+        return parentCategoriesByProduct.get(productId);
+    }
+
+    public boolean containsCategory(long categoryId) {
+        return parentCategoriesByCategory.containsKey(categoryId);
+    }
+
+    public List<Long> getParentCategoriesForCategory(long categoryId) {
+        return parentCategoriesByCategory.get(categoryId);
+    }
+
+    public BigDecimal getDisplayOrder(long categoryId, long productId) {
+        Long displayOrder = displayOrdersByProduct.getPairedValue(productId, categoryId);
+        return displayOrder == null ? null : BigDecimal.valueOf(displayOrder, DISPLAY_ORDER_SCALE);
+    }
+
+    public int getProductCount() {
+        return parentCategoriesByProduct.size();
+    }
+
+    public int getCategoryCount() {
+        return parentCategoriesByCategory.size();
+    }
+
+    /**
+     * Creates a new snapshot holding everything in this one plus the entries populated into the given structure. Entries
+     * in the structure replace the ones in this snapshot for the same product or category.
+     *
+     * @param structure a structure populated by {@link SolrIndexDao#populateProductCatalogStructure(List, CatalogStructure)}
+     * @return the merged snapshot
+     */
+    public CatalogStructureSnapshot merge(CatalogStructure structure) {
+        Map<Long, Set<Long>> productParents = structure.getParentCategoriesByProduct();
+        Map<Long, Set<Long>> categoryParents = structure.getParentCategoriesByCategory();
+
+        Map<Long, Set<Long>> displayOrderCategories = new HashMap<>();
+        Map<Long, Map<Long, Long>> displayOrders = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : structure.getDisplayOrdersByCategoryProduct().entrySet()) {
+            String key = entry.getKey();
+            int separator = key.indexOf('-', 1);
+            if (separator < 0 || entry.getValue() == null) {
+                continue;
+            }
+            Long categoryId = Long.valueOf(key.substring(0, separator));
+            Long productId = Long.valueOf(key.substring(separator + 1));
+            Set<Long> categories = displayOrderCategories.get(productId);
+            if (categories == null) {
+                categories = new LinkedHashSet<>();
+                displayOrderCategories.put(productId, categories);
+                displayOrders.put(productId, new HashMap<Long, Long>());
+            }
+            categories.add(categoryId);
+            displayOrders.get(productId).put(categoryId,
+                    entry.getValue().movePointRight(DISPLAY_ORDER_SCALE).longValue());
+        }
+
+        if (productParents.isEmpty() && categoryParents.isEmpty() && displayOrderCategories.isEmpty()) {
+            return this;
+        }
+        List<Long> none = Collections.emptyList();
+        return new CatalogStructureSnapshot(
+                parentCategoriesByProduct.merge(productParents, null, none),
+                parentCategoriesByCategory.merge(categoryParents, null, none),
+                displayOrdersByProduct.merge(displayOrderCategories, displayOrders, none));
+    }
+
+    /**
+     * Creates a new snapshot without the given products and categories, so that they are read from the database again
+     * the next time they are needed.
+     *
+     * @param productIds products whose category assignments have changed
+     * @param categoryIds categories whose parents have changed
+     * @return the reduced snapshot
+     */
+    public CatalogStructureSnapshot remove(Collection<Long> productIds, Collection<Long> categoryIds) {
+        if (productIds.isEmpty() && categoryIds.isEmpty()) {
+            return this;
+        }
+        return new CatalogStructureSnapshot(parentCategoriesByProduct.remove(productIds),
+                parentCategoriesByCategory.remove(categoryIds), displayOrdersByProduct.remove(productIds));
+    }
+}
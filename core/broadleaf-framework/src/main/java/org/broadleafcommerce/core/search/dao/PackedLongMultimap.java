@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.dao;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable map from a primitive <code>long</code> key to a group of <code>long</code> values, optionally paired with a
+ * second <code>long</code> per value. Keys are kept sorted in a single array and the values for all keys are packed
+ * one after another into one array, with an offsets array marking where each key's values start. Lookups are a binary
+ * search over the keys.
+ * <p>
+ * Compared to a <code>Map&lt;Long, Set&lt;Long&gt;&gt;</code> this avoids an entry, a set and a boxed value per
+ * relationship, which is what makes it cheap to hold the relationships of a large catalog for the lifetime of the
+ * application. Instances are never modified, so they can be shared across threads without synchronization;
+ * {@link #merge(Map, Map, Collection)} produces a new instance.
+ * </p>
+ */
+public class PackedLongMultimap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final PackedLongMultimap EMPTY = new PackedLongMultimap(new long[0], new int[] { 0 }, new long[0], null);
+
+    protected final long[] keys;
+    protected final int[] offsets;
+    protected final long[] values;
+    protected final long[] pairedValues;
+
+    protected PackedLongMultimap(long[] keys, int[] offsets, long[] values, long[] pairedValues) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.values = values;
+        this.pairedValues = pairedValues;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean containsKey(long key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /**
+     * @return a read only view of the values for the given key, or null if the key is not present
+     */
+    public List<Long> get(long key) {
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            return null;
+        }
+        return new ValueList(offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Finds the paired value stored alongside <code>value</code> for the given key
+     *
+     * @return the paired value, or null if the key, the value or paired values are not present
+     */
+    public Long getPairedValue(long key, long value) {
+        if (pairedValues == null) {
+            return null;
+        }
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            return null;
+        }
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            if (values[i] == value) {
+                return pairedValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds a new instance holding the contents of this one with the given keys replaced or removed.
+     *
+     * @param replacements keys whose values should be replaced by (or added as) the given values
+     * @param pairedReplacements for each replaced key, the paired value for each of its values, if this map holds
+     * paired values. May be null.
+     * @param removals keys to leave out of the new instance
+     * @return the merged instance
+     */
+    public PackedLongMultimap merge(Map<Long, ? extends Collection<Long>> replacements,
+            Map<Long, Map<Long, Long>> pairedReplacements, Collection<Long> removals) {
+        long[] replacementKeys = toSortedArray(replacements.keySet());
+        long[] removalKeys = toSortedArray(removals);
+        boolean paired = pairedValues != null || pairedReplacements != null;
+
+        int maxKeys = keys.length + replacementKeys.length;
+        int maxValues = values.length;
+        for (Collection<Long> replacement : replacements.values()) {
+            maxValues += replacement.size();
+        }
+        long[] newKeys = new long[maxKeys];
+        int[] newOffsets = new int[maxKeys + 1];
+        long[] newValues = new long[maxValues];
+        long[] newPairedValues = paired ? new long[maxValues] : null;
+
+        int keyCount = 0;
+        int valueCount = 0;
+        int existing = 0;
+        int replacement = 0;
+        while (existing < keys.length || replacement < replacementKeys.length) {
+            boolean takeReplacement = existing >= keys.length
+                    || (replacement < replacementKeys.length && replacementKeys[replacement] <= keys[existing]);
+            long key = takeReplacement ? replacementKeys[replacement] : keys[existing];
+            if (takeReplacement && existing < keys.length && keys[existing] == key) {
+                // the replacement wins over the existing entry
+                existing++;
+            }
+            if (Arrays.binarySearch(removalKeys, key) < 0) {
+                newKeys[keyCount] = key;
+                newOffsets[keyCount] = valueCount;
+                if (takeReplacement) {
+                    Map<Long, Long> pairs = pairedReplacements == null ? null : pairedReplacements.get(key);
+                    for (Long value : replacements.get(key)) {
+                        newValues[valueCount] = value;
+                        if (paired) {
+                            Long pair = pairs == null ? null : pairs.get(value);
+                            newPairedValues[valueCount] = pair == null ? 0L : pair;
+                        }
+                        valueCount++;
+                    }
+                } else {
+                    int start = offsets[existing];
+                    int length = offsets[existing + 1] - start;
+                    System.arraycopy(values, start, newValues, valueCount, length);
+                    if (paired && pairedValues != null) {
+                        System.arraycopy(pairedValues, start, newPairedValues, valueCount, length);
+                    }
+                    valueCount += length;
+                }
+                keyCount++;
+            }
+            if (takeReplacement) {
+                replacement++;
+            } else {
+                existing++;
+            }
+        }
+        newOffsets[keyCount] = valueCount;
+
+        return new PackedLongMultimap(Arrays.copyOf(newKeys, keyCount), Arrays.copyOf(newOffsets, keyCount + 1),
+                Arrays.copyOf(newValues, valueCount),
+                newPairedValues == null ? null : Arrays.copyOf(newPairedValues, valueCount));
+    }
+
+    public PackedLongMultimap remove(Collection<Long> removals) {
+        if (removals.isEmpty()) {
+            return this;
+        }
+        return merge(Collections.<Long, Set<Long>>emptyMap(), null, removals);
+    }
+
+    protected static long[] toSortedArray(Collection<Long> collection) {
+        long[] array = new long[collection.size()];
+        int i = 0;
+        for (Long value : collection) {
+            array[i++] = value;
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    protected class ValueList extends AbstractList<Long> {
+
+        protected final int start;
+        protected final int end;
+
+        public ValueList(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Long get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+            }
+            return values[start + index];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
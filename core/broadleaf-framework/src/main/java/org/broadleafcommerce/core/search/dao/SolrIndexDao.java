@@ -36,4 +36,13 @@ public interface SolrIndexDao {
      */
     void populateProductCatalogStructure(List<Long> productIds, CatalogStructure catalogStructure);
 
+    /**
+     * Populate {@link CatalogStructure#getProductsByCategory()} for a list of categories. The products of every descendant
+     * category (through category xrefs or a default parent) are included in the list of the category that was asked for.
+     *
+     * @param categoryIds
+     * @param catalogStructure lightweight container defining product and category hierarchies
+     */
+    void populateProductsByCategory(List<Long> categoryIds, CatalogStructure catalogStructure);
+
 }
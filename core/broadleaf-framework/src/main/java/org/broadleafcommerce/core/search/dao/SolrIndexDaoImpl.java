@@ -28,8 +28,13 @@ import org.springframework.stereotype.Repository;
 import com.google.common.collect.BiMap;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -61,8 +66,23 @@ public class SolrIndexDaoImpl implements SolrIndexDao {
         try {
             Map<Long, Set<Long>> parentCategoriesByProduct = new HashMap<>();
             Map<Long, Set<Long>> parentCategoriesByCategory = new HashMap<>();
+
+            // Products already known to the structure (or the snapshot backing it) are not read again. Their categories
+            // are only read if they have been evicted from the snapshot since.
+            List<Long> unknownProductIds = new ArrayList<>(productIds.size());
+            for (Long productId : productIds) {
+                if (catalogStructure.containsProduct(productId)) {
+                    for (Long categoryId : catalogStructure.getParentCategoriesForProduct(productId)) {
+                        if (!catalogStructure.containsCategory(categoryId)) {
+                            parentCategoriesByCategory.put(categoryId, new HashSet<Long>());
+                        }
+                    }
+                } else {
+                    unknownProductIds.add(productId);
+                }
+            }
     
-            Long[] products = productIds.toArray(new Long[productIds.size()]);
+            Long[] products = unknownProductIds.toArray(new Long[unknownProductIds.size()]);
             BiMap<Long, Long> sandBoxProductToOriginalMap = sandBoxHelper.getSandBoxToOriginalMap(ProductImpl.class, products);
             int batchSize = 800;
             int count = 0;
@@ -85,7 +105,7 @@ public class SolrIndexDaoImpl implements SolrIndexDao {
                     if (reverse.containsKey(sandBoxProductVal)) {
                         sandBoxProductVal = reverse.get(sandBoxProductVal);
                     }
-                    if (!catalogStructure.getParentCategoriesByProduct().containsKey(sandBoxProductVal)) {
+                    if (!catalogStructure.containsProduct(sandBoxProductVal)) {
                         if (!parentCategoriesByProduct.containsKey(sandBoxProductVal)) {
                             parentCategoriesByProduct.put(sandBoxProductVal, new HashSet<Long>());
                         }
@@ -104,7 +124,7 @@ public class SolrIndexDaoImpl implements SolrIndexDao {
                 }
                 for (Map.Entry<Long, Set<Long>> entry : parentCategoriesByProduct.entrySet()) {
                     for (Long categoryId : entry.getValue()) {
-                        if (!catalogStructure.getParentCategoriesByCategory().containsKey(categoryId)) {
+                        if (!catalogStructure.containsCategory(categoryId)) {
                             Set<Long> hierarchy = new HashSet<>();
                             parentCategoriesByCategory.put(categoryId, hierarchy);
                         }
@@ -121,6 +141,55 @@ public class SolrIndexDaoImpl implements SolrIndexDao {
         }
     }
 
+    @Override
+    public void populateProductsByCategory(List<Long> categoryIds, CatalogStructure catalogStructure) {
+        BroadleafRequestContext context = BroadleafRequestContext.getBroadleafRequestContext();
+        Boolean oldIgnoreFilters = context.getInternalIgnoreFilters();
+        context.setInternalIgnoreFilters(false);
+        try {
+            for (Long categoryId : categoryIds) {
+                if (catalogStructure.getProductsByCategory().containsKey(categoryId)) {
+                    continue;
+                }
+                // Walk down the tree one level at a time, the set doubles as a guard against circular references
+                Set<Long> categoryTree = new LinkedHashSet<>();
+                categoryTree.add(categoryId);
+                Collection<Long> level = Collections.singletonList(categoryId);
+                while (!level.isEmpty()) {
+                    Set<Long> children = readIdsByCategories("BC_READ_SUB_CATEGORY_IDS_BY_CATEGORIES", level);
+                    children.addAll(readIdsByCategories("BC_READ_DEFAULT_CHILD_CATEGORY_IDS_BY_CATEGORIES", level));
+                    children.removeAll(categoryTree);
+                    categoryTree.addAll(children);
+                    level = children;
+                }
+                Set<Long> productIds = readIdsByCategories("BC_READ_PRODUCT_IDS_BY_CATEGORY", categoryTree);
+                catalogStructure.getProductsByCategory().put(categoryId, new ArrayList<>(productIds));
+            }
+        } finally {
+            context.setInternalIgnoreFilters(oldIgnoreFilters);
+        }
+    }
+
+    /**
+     * Runs a named query taking a <b>categoryIds</b> parameter and returning ids, in batches.
+     *
+     * @param queryName
+     * @param categoryIds
+     * @return the distinct ids returned by the query, in the order they were read
+     */
+    protected Set<Long> readIdsByCategories(String queryName, Collection<Long> categoryIds) {
+        Set<Long> results = new LinkedHashSet<>();
+        Long[] categories = categoryIds.toArray(new Long[categoryIds.size()]);
+        int batchSize = 800;
+        for (int pos = 0; pos < categories.length; pos += batchSize) {
+            Long[] temp = Arrays.copyOfRange(categories, pos, Math.min(pos + batchSize, categories.length));
+            TypedQuery<Long> query = em.createNamedQuery(queryName, Long.class);
+            query.setParameter("categoryIds", sandBoxHelper.mergeCloneIds(CategoryImpl.class, temp));
+            results.addAll(query.getResultList());
+        }
+        return results;
+    }
+
     /**
      * Build up a map of category to parent categories
      *
@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.dao;
+
+import org.broadleafcommerce.core.search.domain.SolrIndexQueueEntry;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence for the queue of catalog changes waiting to be reindexed.
+ *
+ * @see org.broadleafcommerce.core.search.service.solr.index.SolrIndexQueueService
+ */
+public interface SolrIndexQueueDao {
+
+    /**
+     * Adds one entry per id to the queue.
+     *
+     * @param entityType one of the entity types declared on {@link SolrIndexQueueEntry}
+     * @param entityIds
+     */
+    void enqueue(String entityType, Collection<Long> entityIds);
+
+    /**
+     * Reads and claims the oldest entries of the queue. The entries are write locked until the current transaction
+     * ends, so they should be removed with {@link #deleteEntries(Collection)} in that same transaction once processed.
+     *
+     * @param limit the maximum number of entries to return
+     * @return the entries, ordered by id
+     */
+    List<SolrIndexQueueEntry> readEntries(int limit);
+
+    /**
+     * Removes entries from the queue once they have been processed.
+     *
+     * @param entryIds
+     * @return the number of entries removed
+     */
+    int deleteEntries(Collection<Long> entryIds);
+
+}
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.dao;
+
+import org.broadleafcommerce.common.persistence.EntityConfiguration;
+import org.broadleafcommerce.common.time.SystemTime;
+import org.broadleafcommerce.core.search.domain.SolrIndexQueueEntry;
+import org.hibernate.ejb.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+/**
+ * @see org.broadleafcommerce.core.search.dao.SolrIndexQueueDao
+ */
+@Repository("blSolrIndexQueueDao")
+public class SolrIndexQueueDaoImpl implements SolrIndexQueueDao {
+
+    @PersistenceContext(unitName = "blPU")
+    protected EntityManager em;
+
+    @Resource(name = "blEntityConfiguration")
+    protected EntityConfiguration entityConfiguration;
+
+    @Override
+    public void enqueue(String entityType, Collection<Long> entityIds) {
+        Date now = SystemTime.asDate();
+        for (Long entityId : entityIds) {
+            SolrIndexQueueEntry entry = (SolrIndexQueueEntry) entityConfiguration.createEntityInstance(SolrIndexQueueEntry.class.getName());
+            entry.setEntityType(entityType);
+            entry.setEntityId(entityId);
+            entry.setCreatedDate(now);
+            em.persist(entry);
+        }
+    }
+
+    @Override
+    public List<SolrIndexQueueEntry> readEntries(int limit) {
+        TypedQuery<SolrIndexQueueEntry> query = em.createNamedQuery("BC_READ_SOLR_INDEX_QUEUE_ENTRIES", SolrIndexQueueEntry.class);
+        query.setHint(QueryHints.HINT_CACHEABLE, false);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    @Override
+    public int deleteEntries(Collection<Long> entryIds) {
+        List<Long> ids = new ArrayList<>(entryIds);
+        int batchSize = 800;
+        int rowsAffected = 0;
+        for (int pos = 0; pos < ids.size(); pos += batchSize) {
+            Query query = em.createNamedQuery("BC_DELETE_SOLR_INDEX_QUEUE_ENTRIES");
+            query.setParameter("entryIds", ids.subList(pos, Math.min(pos + batchSize, ids.size())));
+            rowsAffected += query.executeUpdate();
+        }
+        return rowsAffected;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A pending change to a catalog entity whose search documents need to be rebuilt. Entries are written after the change
+ * commits and are removed once the affected documents have been reindexed.
+ *
+ * @see org.broadleafcommerce.core.search.service.solr.index.SolrIndexQueueService
+ */
+public interface SolrIndexQueueEntry extends Serializable {
+
+    public static final String PRODUCT = "PRODUCT";
+    public static final String SKU = "SKU";
+    public static final String CATEGORY = "CATEGORY";
+
+    public Long getId();
+
+    public void setId(Long id);
+
+    /**
+     * @return one of {@link #PRODUCT}, {@link #SKU} or {@link #CATEGORY}
+     */
+    public String getEntityType();
+
+    public void setEntityType(String entityType);
+
+    public Long getEntityId();
+
+    public void setEntityId(Long entityId);
+
+    public Date getCreatedDate();
+
+    public void setCreatedDate(Date createdDate);
+
+}
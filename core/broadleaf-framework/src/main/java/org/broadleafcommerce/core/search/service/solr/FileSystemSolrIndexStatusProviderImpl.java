@@ -187,14 +187,17 @@ public class FileSystemSolrIndexStatusProviderImpl implements SolrIndexStatusPro
         }
         String lastProcessed = indexElement.getAttribute("dateProcessed");
         //if we have a last processed from file and the new status index date is newer, update it.
-        if (lastProcessed != null && ! lastProcessed.equals("")) {
-            Date lastProcessedDate = format.parse(lastProcessed);
-            if (status.getLastIndexDate().compareTo(lastProcessedDate) > 0) {
+        //a status without a date (e.g. progress of the first full reindex) leaves the date as it is.
+        if (status.getLastIndexDate() != null) {
+            if (lastProcessed != null && ! lastProcessed.equals("")) {
+                Date lastProcessedDate = format.parse(lastProcessed);
+                if (status.getLastIndexDate().compareTo(lastProcessedDate) > 0) {
+                    indexElement.setAttribute("dateProcessed", format.format(status.getLastIndexDate()));
+                    clearNode(indexElement, "info");
+                }
+            } else {
                 indexElement.setAttribute("dateProcessed", format.format(status.getLastIndexDate()));
-                clearNode(indexElement, "info");
             }
-        } else {
-            indexElement.setAttribute("dateProcessed", format.format(status.getLastIndexDate()));
         }
         for (Map.Entry<String, String> entry : status.getAdditionalInfo().entrySet()) {
             NodeList infos = (NodeList) xPath.evaluate("info[@key='" + entry.getKey() + "']", indexElement, XPathConstants.NODESET);
@@ -204,6 +207,8 @@ public class FileSystemSolrIndexStatusProviderImpl implements SolrIndexStatusPro
                 addlInfo.setAttribute("val", entry.getValue());
                 indexElement.appendChild(addlInfo);
                 LOG.debug(String.format("Adding new solr index entry %s", entry.getValue()));
+            } else {
+                ((Element) infos.item(0)).setAttribute("val", entry.getValue());
             }
         }
     }
@@ -318,7 +323,10 @@ public class FileSystemSolrIndexStatusProviderImpl implements SolrIndexStatusPro
                     Document document = builder.parse(statusFile);
                     NodeList indexNodeList = (NodeList) xPath.evaluate("/status/index", document, XPathConstants.NODESET);
                     Element indexElement = (Element) indexNodeList.item(0);
-                    status.setLastIndexDate(format.parse(indexElement.getAttribute("dateProcessed")));
+                    String lastProcessed = indexElement.getAttribute("dateProcessed");
+                    if (lastProcessed != null && !lastProcessed.equals("")) {
+                        status.setLastIndexDate(format.parse(lastProcessed));
+                    }
                     NodeList infos = (NodeList) xPath.evaluate("info", indexElement, XPathConstants.NODESET);
                     for (int j = 0; j < infos.getLength(); j++) {
                         Element info = (Element) infos.item(j);
@@ -27,16 +27,21 @@ import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
+import org.broadleafcommerce.common.cache.CacheStatType;
+import org.broadleafcommerce.common.cache.StatisticsService;
 import org.broadleafcommerce.common.exception.ServiceException;
 import org.broadleafcommerce.common.extension.ExtensionResultHolder;
 import org.broadleafcommerce.common.extension.ExtensionResultStatusType;
 import org.broadleafcommerce.common.locale.domain.Locale;
+import org.broadleafcommerce.common.sandbox.SandBoxHelper;
 import org.broadleafcommerce.common.web.BroadleafRequestContext;
 import org.broadleafcommerce.core.catalog.dao.ProductDao;
 import org.broadleafcommerce.core.catalog.dao.SkuDao;
 import org.broadleafcommerce.core.catalog.domain.Category;
 import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.ProductImpl;
 import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.catalog.domain.SkuImpl;
 import org.broadleafcommerce.core.search.dao.FieldDao;
 import org.broadleafcommerce.core.search.dao.IndexFieldDao;
 import org.broadleafcommerce.core.search.dao.SearchFacetDao;
@@ -64,12 +69,18 @@ import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Resource;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 /**
  * An implementation of SearchService that uses Solr.
@@ -116,6 +127,18 @@ public class SolrSearchServiceImpl implements SearchService, DisposableBean {
     @Value("${solr.global.facets.category.search:false}")
     protected boolean globalFacetsForCategorySearch;
 
+    @Value("${solr.search.results.use.level2.cache:true}")
+    protected boolean useLevel2CacheForResults = true;
+
+    @Resource(name = "blStatisticsService")
+    protected StatisticsService statisticsService;
+
+    @Resource(name = "blSandBoxHelper")
+    protected SandBoxHelper sandBoxHelper;
+
+    @PersistenceContext(unitName = "blPU")
+    protected EntityManager em;
+
     /**
      * @return whether or not to enable debug query info for the SolrQuery
      */
@@ -556,23 +579,31 @@ public class SolrSearchServiceImpl implements SearchService, DisposableBean {
      * @return the actual Product instances as a result of the search
      */
     protected List<Product> getProducts(List<SolrDocument> responseDocuments) {
-        final List<Long> productIds = new ArrayList<>();
-        for (SolrDocument doc : responseDocuments) {
-            productIds.add((Long) doc.getFieldValue(shs.getIndexableIdFieldName()));
-        }
+        List<Long> productIds = getResponseDocumentIds(responseDocuments);
+
+        List<Product> products = hydrateSearchResults(productIds, ProductImpl.class,
+                CacheStatType.SEARCH_PRODUCT_HYDRATION_CACHE_HIT_RATE.toString(), new SearchResultHydrator<Product>() {
+
+                    @Override
+                    public Product readById(Long id) {
+                        return productDao.readProductById(id);
+                    }
 
-        List<Product> products = productDao.readProductsByIds(productIds);
+                    @Override
+                    public List<Product> readByIds(List<Long> ids) {
+                        return productDao.readProductsByIds(ids);
+                    }
+                });
 
         extensionManager.getProxy().batchFetchCatalogData(products);
 
         // We have to sort the products list by the order of the productIds list to maintain sortability in the UI
         if (products != null) {
+            final Map<Long, Integer> positions = getIdPositions(productIds);
             Collections.sort(products, new Comparator<Product>() {
                 @Override
                 public int compare(Product o1, Product o2) {
-                    Long o1id = shs.getIndexableId(o1);
-                    Long o2id = shs.getIndexableId(o2);
-                    return new Integer(productIds.indexOf(o1id)).compareTo(productIds.indexOf(o2id));
+                    return getIdPosition(positions, shs.getIndexableId(o1)).compareTo(getIdPosition(positions, shs.getIndexableId(o2)));
                 }
             });
         }
@@ -591,19 +622,29 @@ public class SolrSearchServiceImpl implements SearchService, DisposableBean {
      * @return the actual Sku instances as a result of the search
      */
     protected List<Sku> getSkus(List<SolrDocument> responseDocuments) {
-        final List<Long> skuIds = new ArrayList<>();
-        for (SolrDocument doc : responseDocuments) {
-            skuIds.add((Long) doc.getFieldValue(shs.getIndexableIdFieldName()));
-        }
+        List<Long> skuIds = getResponseDocumentIds(responseDocuments);
+
+        List<Sku> skus = hydrateSearchResults(skuIds, SkuImpl.class,
+                CacheStatType.SEARCH_SKU_HYDRATION_CACHE_HIT_RATE.toString(), new SearchResultHydrator<Sku>() {
+
+                    @Override
+                    public Sku readById(Long id) {
+                        return skuDao.readSkuById(id);
+                    }
 
-        List<Sku> skus = skuDao.readSkusByIds(skuIds);
+                    @Override
+                    public List<Sku> readByIds(List<Long> ids) {
+                        return skuDao.readSkusByIds(ids);
+                    }
+                });
 
         // We have to sort the skus list by the order of the skuIds list to maintain sortability in the UI
         if (skus != null) {
+            final Map<Long, Integer> positions = getIdPositions(skuIds);
             Collections.sort(skus, new Comparator<Sku>() {
                 @Override
                 public int compare(Sku o1, Sku o2) {
-                    return new Integer(skuIds.indexOf(o1.getId())).compareTo(skuIds.indexOf(o2.getId()));
+                    return getIdPosition(positions, o1.getId()).compareTo(getIdPosition(positions, o2.getId()));
                 }
             });
         }
@@ -611,6 +652,131 @@ public class SolrSearchServiceImpl implements SearchService, DisposableBean {
         return skus;
     }
 
+    protected List<Long> getResponseDocumentIds(List<SolrDocument> responseDocuments) {
+        List<Long> ids = new ArrayList<>(responseDocuments.size());
+        for (SolrDocument doc : responseDocuments) {
+            ids.add((Long) doc.getFieldValue(shs.getIndexableIdFieldName()));
+        }
+        return ids;
+    }
+
+    /**
+     * Loads the entities for the given ids, in no particular order. When the current request may use the level 2 cache
+     * (see {@link #isLevel2CacheAllowed()}), entities already held in it are read individually, which does not reach
+     * the database, and only the remaining ids are read with the batched query. Otherwise every id goes to the batched
+     * query, as before. Each id checked against the level 2 cache is recorded as a hit or miss under statisticsName.
+     * 
+     * @param ids the ids returned by Solr
+     * @param entityClass the mapped entity class, used to check the level 2 cache and to merge sandbox clone ids
+     * @param statisticsName the name to record cache hit statistics under
+     * @param hydrator reads the entities for a single id or a list of ids
+     * @return the entities, or null if nothing was read from the level 2 cache and the batched query returned null
+     */
+    protected <T> List<T> hydrateSearchResults(List<Long> ids, Class<?> entityClass, String statisticsName,
+            SearchResultHydrator<T> hydrator) {
+        if (ids.isEmpty() || !isLevel2CacheAllowed()) {
+            return hydrator.readByIds(ids);
+        }
+
+        Set<Long> cachableIds = getLevel2CachableIds(ids, entityClass);
+        Cache level2Cache = em.getEntityManagerFactory().getCache();
+        List<T> entities = new ArrayList<>(ids.size());
+        List<Long> misses = new ArrayList<>();
+        for (Long id : ids) {
+            T entity = null;
+            if (cachableIds.contains(id) && level2Cache.contains(entityClass, id)) {
+                entity = hydrator.readById(id);
+            }
+            if (entity != null) {
+                entities.add(entity);
+            } else {
+                misses.add(id);
+            }
+            statisticsService.addCacheStat(statisticsName, entity != null);
+        }
+
+        if (!misses.isEmpty()) {
+            List<T> loaded = hydrator.readByIds(misses);
+            if (loaded == null) {
+                return entities.isEmpty() ? null : entities;
+            }
+            entities.addAll(loaded);
+        }
+        return entities;
+    }
+
+    /**
+     * Determines which of the ids may be read on their own from the level 2 cache. The ids are first merged with
+     * {@link SandBoxHelper#mergeCloneIds(Class, Long...)}, as the batched queries do. If that adds or drops any id, some
+     * of the requested entities have sandbox or site clones that only the batched query can resolve, so none of them
+     * are read from the cache.
+     * 
+     * @param ids the ids returned by Solr
+     * @param entityClass the mapped entity class
+     * @return the ids whose entities may be read individually
+     */
+    protected Set<Long> getLevel2CachableIds(List<Long> ids, Class<?> entityClass) {
+        Set<Long> requestedIds = new HashSet<>(ids);
+        requestedIds.remove(null);
+        List<Long> mergedIds = sandBoxHelper.mergeCloneIds(entityClass, requestedIds.toArray(new Long[requestedIds.size()]));
+        if (mergedIds == null || !requestedIds.equals(new HashSet<>(mergedIds))) {
+            return Collections.emptySet();
+        }
+        return requestedIds;
+    }
+
+    /**
+     * Uses the same check as {@link org.broadleafcommerce.common.cache.AbstractCacheMissAware}: entities may only be
+     * served from the level 2 cache for the production sandbox, or when the request explicitly allows it.
+     * 
+     * @return whether or not search results may be read from the level 2 cache for the current request
+     */
+    protected boolean isLevel2CacheAllowed() {
+        if (!useLevel2CacheForResults) {
+            return false;
+        }
+        BroadleafRequestContext context = BroadleafRequestContext.getBroadleafRequestContext();
+        if (context == null) {
+            return false;
+        }
+        return context.isProductionSandBox()
+                || (context.getAdditionalProperties().containsKey("allowLevel2Cache")
+                    && (Boolean) context.getAdditionalProperties().get("allowLevel2Cache"));
+    }
+
+    /**
+     * Maps each id to its position in the given list, so that results can be sorted without scanning the list for
+     * every comparison. If an id occurs more than once, its first position is used, as with {@link List#indexOf(Object)}.
+     * 
+     * @param ids the ids in the order returned by Solr
+     * @return the position of each id
+     */
+    protected Map<Long, Integer> getIdPositions(List<Long> ids) {
+        Map<Long, Integer> positions = new HashMap<>(ids.size() * 2);
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            positions.put(ids.get(i), i);
+        }
+        return positions;
+    }
+
+    /**
+     * @return the position of the id, or -1 if it is not one of the ids returned by Solr
+     */
+    protected Integer getIdPosition(Map<Long, Integer> positions, Long id) {
+        Integer position = positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Reads search result entities for {@link #hydrateSearchResults(List, Class, String, SearchResultHydrator)}
+     */
+    protected interface SearchResultHydrator<T> {
+
+        T readById(Long id);
+
+        List<T> readByIds(List<Long> ids);
+    }
+
     /**
      * Create the wrapper DTO around the SearchFacet
      * 
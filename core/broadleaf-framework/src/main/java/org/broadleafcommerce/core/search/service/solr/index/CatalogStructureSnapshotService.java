@@ -0,0 +1,65 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.broadleafcommerce.core.search.dao.CatalogStructure;
+import org.broadleafcommerce.core.search.dao.CatalogStructureSnapshot;
+
+import java.util.Collection;
+
+/**
+ * Holds a shared {@link CatalogStructureSnapshot} per catalog so that the catalog structure read while indexing is kept
+ * between indexing runs and across threads instead of being read again from the database for every run. Products and
+ * categories are evicted from the snapshot as their relationships change.
+ *
+ * @see org.broadleafcommerce.core.catalog.domain.CatalogStructureChangedEvent
+ */
+public interface CatalogStructureSnapshotService {
+
+    /**
+     * Creates the structure to use for an indexing run in the current catalog.
+     *
+     * @param useSnapshot whether the structure should be backed by the current snapshot. A run that should read
+     * everything from the database again, such as a full reindex, passes false.
+     * @return a new structure, backed by the snapshot if enabled and allowed for the current request
+     */
+    CatalogStructure createCatalogStructure(boolean useSnapshot);
+
+    /**
+     * Merges everything populated into the given structure into the shared snapshot for the current catalog, unless
+     * anything was evicted while the structure was being populated.
+     *
+     * @param structure a structure created by {@link #createCatalogStructure(boolean)}
+     */
+    void publish(CatalogStructure structure);
+
+    void evictProducts(Collection<Long> productIds);
+
+    void evictCategories(Collection<Long> categoryIds);
+
+    /**
+     * Drops the snapshots of all catalogs
+     */
+    void clear();
+
+    /**
+     * @return the current snapshot for the current catalog, never null
+     */
+    CatalogStructureSnapshot getSnapshot();
+
+}
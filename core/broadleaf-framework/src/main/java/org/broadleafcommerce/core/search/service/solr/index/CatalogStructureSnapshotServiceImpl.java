@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.core.catalog.domain.CatalogStructureChangedEvent;
+import org.broadleafcommerce.core.search.dao.CatalogStructure;
+import org.broadleafcommerce.core.search.dao.CatalogStructureSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link CatalogStructureSnapshotService}. Snapshots are only used outside of a sandbox, since sandbox changes
+ * must not leak into the production structure. Evictions are collected and applied the next time a snapshot is read
+ * or published, so a bulk catalog change costs a single rebuild of the packed arrays rather than one per entity.
+ * <p>
+ * Eviction relies on {@link CatalogStructureChangedEvent}s, which are only published in the JVM that made the change.
+ * In a cluster where the catalog is changed on a different node than the one indexing, leave this disabled or call
+ * {@link #clear()} before indexing.
+ * </p>
+ */
+@Service("blCatalogStructureSnapshotService")
+public class CatalogStructureSnapshotServiceImpl implements CatalogStructureSnapshotService,
+        ApplicationListener<CatalogStructureChangedEvent> {
+
+    private static final Log LOG = LogFactory.getLog(CatalogStructureSnapshotServiceImpl.class);
+
+    @Value("${solr.index.catalog.structure.snapshot.enabled:false}")
+    protected boolean enabled = false;
+
+    protected final Map<Long, CatalogStructureSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    protected final Set<Long> pendingProductEvictions = new HashSet<>();
+    protected final Set<Long> pendingCategoryEvictions = new HashSet<>();
+
+    /**
+     * Incremented on every eviction. A structure populated while this changed may hold stale entries and is not published.
+     */
+    protected long generation;
+
+    @Override
+    public CatalogStructure createCatalogStructure(boolean useSnapshot) {
+        if (!isSnapshotAllowed()) {
+            return new CatalogStructure();
+        }
+        Long catalogKey = SolrIndexCachedOperation.getCurrentCatalogKey();
+        synchronized (this) {
+            applyPendingEvictions();
+            CatalogStructureSnapshot snapshot = useSnapshot ? getSnapshot(catalogKey) : CatalogStructureSnapshot.EMPTY;
+            return new SnapshotCatalogStructure(snapshot, catalogKey, generation);
+        }
+    }
+
+    @Override
+    public void publish(CatalogStructure structure) {
+        if (!(structure instanceof SnapshotCatalogStructure)) {
+            return;
+        }
+        SnapshotCatalogStructure snapshotStructure = (SnapshotCatalogStructure) structure;
+        synchronized (this) {
+            if (snapshotStructure.generation != generation) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("The catalog structure changed while indexing. Not publishing the structure read by this run.");
+                }
+                return;
+            }
+            applyPendingEvictions();
+            CatalogStructureSnapshot merged = getSnapshot(snapshotStructure.catalogKey).merge(structure);
+            snapshots.put(snapshotStructure.catalogKey, merged);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Catalog structure snapshot for catalog %s now holds %s products and %s categories",
+                        snapshotStructure.catalogKey, merged.getProductCount(), merged.getCategoryCount()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void evictProducts(Collection<Long> productIds) {
+        pendingProductEvictions.addAll(productIds);
+        generation++;
+    }
+
+    @Override
+    public synchronized void evictCategories(Collection<Long> categoryIds) {
+        pendingCategoryEvictions.addAll(categoryIds);
+        generation++;
+    }
+
+    @Override
+    public synchronized void clear() {
+        snapshots.clear();
+        pendingProductEvictions.clear();
+        pendingCategoryEvictions.clear();
+        generation++;
+    }
+
+    @Override
+    public synchronized CatalogStructureSnapshot getSnapshot() {
+        applyPendingEvictions();
+        return getSnapshot(SolrIndexCachedOperation.getCurrentCatalogKey());
+    }
+
+    @Override
+    public void onApplicationEvent(CatalogStructureChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.getProductId() != null) {
+            evictProducts(Collections.singleton(event.getProductId()));
+        }
+        if (event.getCategoryId() != null) {
+            evictCategories(Collections.singleton(event.getCategoryId()));
+        }
+    }
+
+    protected CatalogStructureSnapshot getSnapshot(Long catalogKey) {
+        CatalogStructureSnapshot snapshot = snapshots.get(catalogKey);
+        return snapshot == null ? CatalogStructureSnapshot.EMPTY : snapshot;
+    }
+
+    protected void applyPendingEvictions() {
+        if (pendingProductEvictions.isEmpty() && pendingCategoryEvictions.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, CatalogStructureSnapshot> entry : snapshots.entrySet()) {
+            entry.setValue(entry.getValue().remove(pendingProductEvictions, pendingCategoryEvictions));
+        }
+        pendingProductEvictions.clear();
+        pendingCategoryEvictions.clear();
+    }
+
+    protected boolean isSnapshotAllowed() {
+        if (!enabled) {
+            return false;
+        }
+        BroadleafRequestContext context = BroadleafRequestContext.getBroadleafRequestContext();
+        return context == null || context.getSandBox() == null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Remembers which catalog and which generation of the snapshots a structure was created for
+     */
+    protected static class SnapshotCatalogStructure extends CatalogStructure {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final Long catalogKey;
+        protected final long generation;
+
+        public SnapshotCatalogStructure(CatalogStructureSnapshot snapshot, Long catalogKey, long generation) {
+            super(snapshot);
+            this.catalogKey = catalogKey;
+            this.generation = generation;
+        }
+    }
+}
@@ -46,13 +46,16 @@ public class SolrIndexCachedOperation {
      * @return The cache for the current thread, or null if not set
      */
     public static CatalogStructure getCache() {
+        return MapUtils.getObject(CACHE.get(), getCurrentCatalogKey());
+    }
+
+    /**
+     * @return the id of the current catalog, or {@link #DEFAULT_CATALOG_CACHE_KEY} if there is none
+     */
+    public static Long getCurrentCatalogKey() {
         BroadleafRequestContext ctx = BroadleafRequestContext.getBroadleafRequestContext();
         Catalog currentCatalog = ctx == null ? null : ctx.getCurrentCatalog();
-        if (currentCatalog != null) {
-            return MapUtils.getObject(CACHE.get(), currentCatalog.getId());
-        } else {
-            return MapUtils.getObject(CACHE.get(), DEFAULT_CATALOG_CACHE_KEY);
-        }
+        return currentCatalog == null ? DEFAULT_CATALOG_CACHE_KEY : currentCatalog.getId();
     }
 
     /**
@@ -61,18 +64,12 @@ public class SolrIndexCachedOperation {
      * @param cache the cache object (usually an empty map)
      */
     public static void setCache(CatalogStructure cache) {
-        BroadleafRequestContext ctx = BroadleafRequestContext.getBroadleafRequestContext();
-        Catalog currentCatalog = ctx == null ? null : ctx.getCurrentCatalog();
         Map<Long, CatalogStructure> catalogCaches = CACHE.get();
         if (catalogCaches == null) {
             catalogCaches = new HashMap<Long, CatalogStructure>();
             CACHE.set(catalogCaches);
         }
-        if (currentCatalog != null) {
-            catalogCaches.put(currentCatalog.getId(), cache);
-        } else {
-            catalogCaches.put(DEFAULT_CATALOG_CACHE_KEY, cache);
-        }
+        catalogCaches.put(getCurrentCatalogKey(), cache);
     }
 
     /**
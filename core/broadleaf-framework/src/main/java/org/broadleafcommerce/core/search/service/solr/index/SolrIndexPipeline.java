@@ -0,0 +1,431 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.common.util.StopWatch;
+import org.broadleafcommerce.common.util.TransactionUtils;
+import org.broadleafcommerce.core.catalog.domain.Indexable;
+import org.broadleafcommerce.core.search.dao.CatalogStructure;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Executes a {@link SolrIndexOperation} as a pipeline instead of page by page on a single thread:
+ * </p>
+ * <ol>
+ * <li>A fixed number of builder threads take turns reading the next page with keyset paging
+ * (<code>readIndexables(pageSize, lastId)</code>). Only the read itself is serialized, since each page starts after the
+ * last id of the page before it. Each builder then builds the {@link SolrInputDocument}s for its page in parallel with
+ * the others, in the same read-only transaction it read the page in. All builders share a single
+ * {@link CatalogStructure}.</li>
+ * <li>A single writer thread sends the built documents to {@link SolrIndexOperation#getSolrServerForIndexing()} in
+ * batches and commits once at the end.</li>
+ * </ol>
+ * <p>
+ * The queue between the builders and the writer is bounded, so the builders wait while the writer is behind and memory
+ * use stays flat no matter how big the catalog is. Entities are never shared between threads: each page is read and
+ * built in the transaction, and therefore the Hibernate session, of a single builder. Progress is published through
+ * {@link SolrIndexStatusService} as additional info on the current index status. Because the before/after hooks of the
+ * operation are called from several threads at once, only operations whose hooks are thread safe should be run through
+ * this pipeline.
+ * </p>
+ *
+ * @see SolrIndexServiceImpl#isPipelinedIndexingEnabled(SolrIndexOperation)
+ */
+public class SolrIndexPipeline {
+
+    private static final Log LOG = LogFactory.getLog(SolrIndexPipeline.class);
+
+    public static final String ITEMS_TOTAL_INFO_KEY = "ReindexItemsTotal";
+    public static final String DOCUMENTS_WRITTEN_INFO_KEY = "ReindexDocumentsWritten";
+
+    protected static final List<SolrInputDocument> END_OF_DOCUMENTS = Collections.emptyList();
+
+    protected final SolrIndexServiceImpl indexService;
+    protected final SolrIndexOperation operation;
+    protected final Long numItemsToIndex;
+
+    protected int pageSize = 100;
+    protected int builderThreads = 4;
+    protected int queueCapacity = 8;
+    protected int writerBatchSize = 1000;
+    protected long progressReportIntervalMillis = 10000L;
+
+    protected final AtomicReference<Throwable> failure = new AtomicReference<>();
+    protected final AtomicLong documentsWritten = new AtomicLong();
+    protected volatile long lastProgressReport;
+
+    /**
+     * Guards the keyset paging state below, which the builders advance one page at a time
+     */
+    protected final Object readMonitor = new Object();
+    protected Long lastReadId;
+    protected long remainingNumItemsToIndex;
+    protected int pagesRead;
+    protected boolean readComplete;
+
+    public SolrIndexPipeline(SolrIndexServiceImpl indexService, SolrIndexOperation operation, Long numItemsToIndex) {
+        this.indexService = indexService;
+        this.operation = operation;
+        this.numItemsToIndex = numItemsToIndex;
+        this.remainingNumItemsToIndex = numItemsToIndex;
+    }
+
+    public void execute() throws ServiceException {
+        StopWatch s = new StopWatch();
+        final Object[] pack = indexService.saveState();
+        final CatalogStructure sharedCache = indexService.createSharedCatalogStructure();
+        final SolrClient solrServer = operation.getSolrServerForIndexing();
+        final BlockingQueue<Collection<SolrInputDocument>> documentQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        reportProgress(true);
+
+        ExecutorService writer = Executors.newSingleThreadExecutor(createThreadFactory("blSolrIndexWriter-"));
+        ExecutorService builders = Executors.newFixedThreadPool(builderThreads, createThreadFactory("blSolrIndexBuilder-"));
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeDocuments(solrServer, documentQueue);
+                    } catch (Throwable e) {
+                        fail(e);
+                    }
+                }
+            });
+
+            for (int i = 0; i < builderThreads; i++) {
+                builders.execute(new PageBuilder(documentQueue, sharedCache, pack));
+            }
+
+            builders.shutdown();
+            awaitTermination(builders);
+            putDocuments(documentQueue, END_OF_DOCUMENTS);
+            writer.shutdown();
+            awaitTermination(writer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } finally {
+            builders.shutdownNow();
+            writer.shutdownNow();
+        }
+
+        Throwable e = failure.get();
+        if (e != null) {
+            if (e instanceof ServiceException) {
+                throw (ServiceException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new ServiceException("Could not rebuild index", e);
+        }
+
+        try {
+            indexService.commit(solrServer);
+        } catch (Exception ex) {
+            throw new ServiceException("Could not commit the rebuilt index", ex);
+        }
+        indexService.catalogStructureSnapshotService.publish(sharedCache);
+        reportProgress(true);
+
+        LOG.info(String.format("Pipelined indexing of %s pages and %s documents completed in %s", getPagesRead(),
+                documentsWritten.get(), s.toLapString()));
+    }
+
+    /**
+     * Reads the page after the last page read by any builder. Must be called within the builder's transaction so that
+     * the returned entities can be lazily loaded while the page is built.
+     * 
+     * @return the next page, or null once every page has been read
+     */
+    protected List<? extends Indexable> readNextPage() throws ServiceException {
+        int page;
+        List<? extends Indexable> indexables;
+        synchronized (readMonitor) {
+            if (readComplete || remainingNumItemsToIndex <= 0 || failure.get() != null) {
+                readComplete = true;
+                return null;
+            }
+            indexables = readPage(lastReadId);
+            if (CollectionUtils.isEmpty(indexables)) {
+                readComplete = true;
+                return null;
+            }
+            lastReadId = indexables.get(indexables.size() - 1).getId();
+            remainingNumItemsToIndex -= pageSize;
+            page = ++pagesRead;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(indexService.buildPageNumberMessage(page, indexService.getTotalPageCount(numItemsToIndex)));
+        }
+        return indexables;
+    }
+
+    protected List<? extends Indexable> readPage(Long lastId) throws ServiceException {
+        TransactionStatus status = TransactionUtils.createTransaction("readItemsToIndex",
+                TransactionDefinition.PROPAGATION_REQUIRED, indexService.transactionManager, true);
+        try {
+            List<? extends Indexable> indexables;
+            try {
+                operation.beforeReadIndexables();
+                indexables = operation.readIndexables(pageSize, lastId);
+            } finally {
+                operation.afterReadIndexables();
+            }
+            TransactionUtils.finalizeTransaction(status, indexService.transactionManager, false);
+            return indexables;
+        } catch (RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, indexService.transactionManager, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the built documents to Solr in batches of {@link #writerBatchSize} until the end marker is seen
+     */
+    protected void writeDocuments(SolrClient solrServer, BlockingQueue<Collection<SolrInputDocument>> documentQueue)
+            throws Exception {
+        List<SolrInputDocument> batch = new ArrayList<>(writerBatchSize);
+        while (true) {
+            Collection<SolrInputDocument> documents = documentQueue.take();
+            if (documents == END_OF_DOCUMENTS) {
+                break;
+            }
+            batch.addAll(documents);
+            if (batch.size() >= writerBatchSize) {
+                flush(solrServer, batch);
+                batch = new ArrayList<>(writerBatchSize);
+            }
+        }
+        flush(solrServer, batch);
+    }
+
+    /**
+     * Adds a batch to Solr. The documents were already logged by
+     * {@link SolrIndexServiceImpl#buildIncrementalIndex(List, SolrClient)} when their page was built.
+     */
+    protected void flush(SolrClient solrServer, List<SolrInputDocument> batch) throws Exception {
+        if (batch.isEmpty() || failure.get() != null) {
+            return;
+        }
+        solrServer.add(batch);
+        documentsWritten.addAndGet(batch.size());
+        reportProgress(false);
+    }
+
+    /**
+     * Publishes the number of documents written so far. Intermediate updates are throttled to one per
+     * {@link #progressReportIntervalMillis} since the status providers may write to disk. If nothing has been indexed
+     * yet, the progress is published on a fresh status without a last index date.
+     */
+    protected void reportProgress(boolean force) {
+        SolrIndexStatusService statusService = indexService.solrIndexStatusService;
+        if (statusService == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && now - lastProgressReport < progressReportIntervalMillis) {
+            return;
+        }
+        lastProgressReport = now;
+        try {
+            IndexStatusInfo status = statusService.getIndexStatus();
+            if (status == null) {
+                status = statusService.getSeedStatusInstance();
+            }
+            status.getAdditionalInfo().put(ITEMS_TOTAL_INFO_KEY, String.valueOf(numItemsToIndex));
+            status.getAdditionalInfo().put(DOCUMENTS_WRITTEN_INFO_KEY, String.valueOf(documentsWritten.get()));
+            statusService.setIndexStatus(status);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to report the progress of the Solr index rebuild", e);
+        }
+    }
+
+    protected void putDocuments(BlockingQueue<Collection<SolrInputDocument>> documentQueue,
+            Collection<SolrInputDocument> documents) throws InterruptedException {
+        while (!documentQueue.offer(documents, 1, TimeUnit.SECONDS)) {
+            if (failure.get() != null) {
+                return;
+            }
+        }
+    }
+
+    protected void awaitTermination(ExecutorService executor) throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            if (failure.get() != null) {
+                return;
+            }
+        }
+    }
+
+    protected void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            LOG.error("Pipelined Solr indexing failed", e);
+        }
+    }
+
+    protected ThreadFactory createThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+
+            protected final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Reads and builds pages until every page has been read or the pipeline has failed
+     */
+    protected class PageBuilder implements Runnable {
+
+        protected final BlockingQueue<Collection<SolrInputDocument>> documentQueue;
+        protected final CatalogStructure sharedCache;
+        protected final Object[] pack;
+
+        public PageBuilder(BlockingQueue<Collection<SolrInputDocument>> documentQueue, CatalogStructure sharedCache,
+                Object[] pack) {
+            this.documentQueue = documentQueue;
+            this.sharedCache = sharedCache;
+            this.pack = pack;
+        }
+
+        @Override
+        public void run() {
+            try {
+                indexService.restoreState(pack);
+                SolrIndexCachedOperation.setCache(sharedCache);
+                while (failure.get() == null) {
+                    Collection<SolrInputDocument> documents = buildNextPage();
+                    if (documents == null) {
+                        break;
+                    }
+                    putDocuments(documentQueue, documents);
+                }
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                SolrIndexCachedOperation.clearCache();
+                ThreadLocalManager.remove();
+            }
+        }
+
+        /**
+         * @return the documents of the next page, or null once every page has been read
+         */
+        protected Collection<SolrInputDocument> buildNextPage() throws ServiceException {
+            TransactionStatus status = TransactionUtils.createTransaction("buildItemsToIndex",
+                    TransactionDefinition.PROPAGATION_REQUIRED, indexService.transactionManager, true);
+            try {
+                List<? extends Indexable> indexables = readNextPage();
+                Collection<SolrInputDocument> documents = null;
+                if (indexables != null) {
+                    try {
+                        operation.beforeBuildPage();
+                        documents = indexService.buildIncrementalIndex(indexables, null);
+                    } finally {
+                        operation.afterBuildPage();
+                    }
+                }
+                TransactionUtils.finalizeTransaction(status, indexService.transactionManager, false);
+                return documents;
+            } catch (RuntimeException e) {
+                TransactionUtils.finalizeTransaction(status, indexService.transactionManager, true);
+                throw e;
+            }
+        }
+    }
+
+    public int getPagesRead() {
+        synchronized (readMonitor) {
+            return pagesRead;
+        }
+    }
+
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getBuilderThreads() {
+        return builderThreads;
+    }
+
+    public void setBuilderThreads(int builderThreads) {
+        this.builderThreads = builderThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getWriterBatchSize() {
+        return writerBatchSize;
+    }
+
+    public void setWriterBatchSize(int writerBatchSize) {
+        this.writerBatchSize = writerBatchSize;
+    }
+
+    public long getProgressReportIntervalMillis() {
+        return progressReportIntervalMillis;
+    }
+
+    public void setProgressReportIntervalMillis(long progressReportIntervalMillis) {
+        this.progressReportIntervalMillis = progressReportIntervalMillis;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.core.catalog.domain.IndexableChangedEvent;
+
+/**
+ * <p>
+ * Keeps the search index up to date with catalog changes without a full reindex. Changes to products, skus, categories
+ * and their relationships are recorded in a database backed queue by the transaction that makes them, and a background worker reindexes
+ * only the documents they affect. Category changes are expanded to the products of the category and its descendants.
+ * </p>
+ * <p>
+ * Recording changes is enabled with <code>solr.index.queue.enabled</code>, on every node that modifies the catalog. The
+ * worker is enabled with <code>solr.index.queue.worker.enabled</code> and should only run on one node.
+ * </p>
+ *
+ * @see org.broadleafcommerce.core.catalog.domain.IndexableChangeEntityListener
+ */
+public interface SolrIndexQueueService {
+
+    /**
+     * Queues the changes collected in the current transaction. The persistence context is flushed first, so that changes
+     * which would otherwise only be flushed on commit are part of the given event.
+     *
+     * @param event the changes of the current transaction
+     */
+    void enqueue(IndexableChangedEvent event);
+
+    /**
+     * Removes the oldest batch of queued changes from the queue and reindexes the documents they affect. If reindexing
+     * fails, the changes are queued again and retried on a later call.
+     *
+     * @return the number of queued changes that were processed
+     * @throws ServiceException
+     */
+    int processQueue() throws ServiceException;
+
+    /**
+     * Calls {@link #processQueue()} until the queue is empty or an error occurs.
+     */
+    void drainQueue();
+
+}
@@ -0,0 +1,405 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.common.locale.domain.Locale;
+import org.broadleafcommerce.common.locale.service.LocaleService;
+import org.broadleafcommerce.common.util.StringUtil;
+import org.broadleafcommerce.common.util.TransactionUtils;
+import org.broadleafcommerce.common.util.tenant.IdentityExecutionUtils;
+import org.broadleafcommerce.common.util.tenant.IdentityOperation;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.core.catalog.dao.ProductDao;
+import org.broadleafcommerce.core.catalog.dao.SkuDao;
+import org.broadleafcommerce.core.catalog.domain.IndexableChangedEvent;
+import org.broadleafcommerce.core.catalog.domain.Indexable;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.search.dao.CatalogStructure;
+import org.broadleafcommerce.core.search.dao.SolrIndexDao;
+import org.broadleafcommerce.core.search.dao.SolrIndexQueueDao;
+import org.broadleafcommerce.core.search.domain.SolrIndexQueueEntry;
+import org.broadleafcommerce.core.search.service.solr.SolrConfiguration;
+import org.broadleafcommerce.core.search.service.solr.SolrHelperService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Default {@link SolrIndexQueueService}. Changes are queued by the transaction that makes them, right before it
+ * commits, so they are queued if and only if they commit. Queued changes are claimed by reading them with a write lock
+ * and deleting them in a short transaction of their own, so concurrent workers never process the same changes and no
+ * queue rows stay locked while documents are rebuilt. Changes whose reindex fails are queued again.
+ */
+@Service("blSolrIndexQueueService")
+public class SolrIndexQueueServiceImpl implements SolrIndexQueueService {
+
+    private static final Log LOG = LogFactory.getLog(SolrIndexQueueServiceImpl.class);
+
+    @PersistenceContext(unitName = "blPU")
+    protected EntityManager em;
+
+    @Value("${solr.index.queue.worker.enabled:false}")
+    protected boolean workerEnabled = false;
+
+    @Value("${solr.index.queue.worker.interval:30000}")
+    protected long workerInterval = 30000;
+
+    @Value("${solr.index.queue.batchSize:1000}")
+    protected int batchSize = 1000;
+
+    @Value("${solr.index.product.pageSize}")
+    protected int pageSize;
+
+    @Value("${solr.index.use.sku}")
+    protected boolean useSku;
+
+    @Qualifier("blCatalogSolrConfiguration")
+    @Autowired(required = false)
+    protected SolrConfiguration solrConfiguration;
+
+    @Resource(name = "blSolrIndexQueueDao")
+    protected SolrIndexQueueDao solrIndexQueueDao;
+
+    @Resource(name = "blSolrIndexService")
+    protected SolrIndexService solrIndexService;
+
+    @Resource(name = "blSolrIndexDao")
+    protected SolrIndexDao solrIndexDao;
+
+    @Resource(name = "blSolrHelperService")
+    protected SolrHelperService shs;
+
+    @Resource(name = "blProductDao")
+    protected ProductDao productDao;
+
+    @Resource(name = "blSkuDao")
+    protected SkuDao skuDao;
+
+    @Resource(name = "blLocaleService")
+    protected LocaleService localeService;
+
+    @Resource(name = "blTransactionManager")
+    protected PlatformTransactionManager transactionManager;
+
+    protected ScheduledExecutorService worker;
+
+    @PostConstruct
+    public void init() {
+        if (workerEnabled) {
+            worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "blSolrIndexQueueWorker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            worker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    drainQueue();
+                }
+            }, workerInterval, workerInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    @Override
+    public void enqueue(IndexableChangedEvent event) {
+        // Entities still dirty at this point are only reported to the event as they are flushed
+        em.flush();
+        solrIndexQueueDao.enqueue(SolrIndexQueueEntry.PRODUCT, event.getProductIds());
+        solrIndexQueueDao.enqueue(SolrIndexQueueEntry.SKU, event.getSkuIds());
+        solrIndexQueueDao.enqueue(SolrIndexQueueEntry.CATEGORY, event.getCategoryIds());
+    }
+
+    @Override
+    public void drainQueue() {
+        if (solrConfiguration == null) {
+            return;
+        }
+        boolean createdContext = BroadleafRequestContext.getBroadleafRequestContext() == null;
+        if (createdContext) {
+            BroadleafRequestContext.setBroadleafRequestContext(createRequestContext());
+        }
+        try {
+            IdentityExecutionUtils.runOperationAndIgnoreIdentifier(new IdentityOperation<Void, ServiceException>() {
+                @Override
+                public Void execute() throws ServiceException {
+                    int processed;
+                    do {
+                        processed = processQueue();
+                    } while (processed >= batchSize);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            LOG.error("Unable to reindex queued catalog changes, they will be retried", e);
+        } finally {
+            if (createdContext) {
+                ThreadLocalManager.remove();
+            }
+        }
+    }
+
+    @Override
+    public int processQueue() throws ServiceException {
+        List<SolrIndexQueueEntry> entries = claimEntries();
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        TransactionStatus status = TransactionUtils.createTransaction("reindexSolrIndexQueue",
+                TransactionDefinition.PROPAGATION_REQUIRED, transactionManager, true);
+        try {
+            reindex(entries);
+            TransactionUtils.finalizeTransaction(status, transactionManager, false);
+        } catch (ServiceException | RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, transactionManager, true);
+            requeue(entries);
+            throw e;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Processed %s queued catalog changes", entries.size()));
+        }
+        return entries.size();
+    }
+
+    /**
+     * Reads the oldest batch of queued changes and deletes them in a transaction of its own. The write locks taken on the
+     * queue rows are released when it commits, before any reindexing starts, so they never hold up the transactions that
+     * queue new changes.
+     */
+    protected List<SolrIndexQueueEntry> claimEntries() {
+        TransactionStatus status = TransactionUtils.createTransaction("claimSolrIndexQueueEntries",
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW, transactionManager, false);
+        try {
+            List<SolrIndexQueueEntry> entries = solrIndexQueueDao.readEntries(batchSize);
+            if (!entries.isEmpty()) {
+                List<Long> entryIds = new ArrayList<>(entries.size());
+                for (SolrIndexQueueEntry entry : entries) {
+                    entryIds.add(entry.getId());
+                }
+                solrIndexQueueDao.deleteEntries(entryIds);
+            }
+            TransactionUtils.finalizeTransaction(status, transactionManager, false);
+            return entries;
+        } catch (RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, transactionManager, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Puts claimed changes whose reindex failed back in the queue, so that a later call retries them. A failure to do so
+     * is logged rather than thrown, so that it does not hide the reindex failure.
+     */
+    protected void requeue(List<SolrIndexQueueEntry> entries) {
+        Map<String, Set<Long>> entityIdsByType = new LinkedHashMap<>();
+        for (SolrIndexQueueEntry entry : entries) {
+            Set<Long> entityIds = entityIdsByType.get(entry.getEntityType());
+            if (entityIds == null) {
+                entityIds = new LinkedHashSet<>();
+                entityIdsByType.put(entry.getEntityType(), entityIds);
+            }
+            entityIds.add(entry.getEntityId());
+        }
+        TransactionStatus status = TransactionUtils.createTransaction("requeueSolrIndexQueueEntries",
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW, transactionManager, false);
+        try {
+            for (Map.Entry<String, Set<Long>> entityIds : entityIdsByType.entrySet()) {
+                solrIndexQueueDao.enqueue(entityIds.getKey(), entityIds.getValue());
+            }
+            TransactionUtils.finalizeTransaction(status, transactionManager, false);
+        } catch (RuntimeException e) {
+            TransactionUtils.finalizeTransaction(status, transactionManager, true);
+            LOG.error(String.format("Unable to requeue %s catalog changes after a failed reindex, they will only be picked"
+                    + " up by the next full reindex", entries.size()), e);
+        }
+    }
+
+    /**
+     * Creates the context the worker reindexes in, the same one a full reindex started from a scheduled job runs in:
+     * no site or catalog restriction, production data and the default locale and currency. Only used when the calling
+     * thread has no context of its own.
+     */
+    protected BroadleafRequestContext createRequestContext() {
+        BroadleafRequestContext context = new BroadleafRequestContext();
+        context.setIgnoreSite(true);
+        Locale defaultLocale = localeService.findDefaultLocale();
+        if (defaultLocale != null) {
+            context.setLocale(defaultLocale);
+            context.setBroadleafCurrency(defaultLocale.getDefaultCurrency());
+        }
+        return context;
+    }
+
+    /**
+     * Coalesces the queued changes into the set of indexables whose documents need to be rebuilt and rebuilds them.
+     */
+    protected void reindex(List<SolrIndexQueueEntry> entries) throws ServiceException {
+        Set<Long> productIds = new LinkedHashSet<>();
+        Set<Long> skuIds = new LinkedHashSet<>();
+        Set<Long> categoryIds = new LinkedHashSet<>();
+        for (SolrIndexQueueEntry entry : entries) {
+            if (SolrIndexQueueEntry.PRODUCT.equals(entry.getEntityType())) {
+                productIds.add(entry.getEntityId());
+            } else if (SolrIndexQueueEntry.SKU.equals(entry.getEntityType())) {
+                skuIds.add(entry.getEntityId());
+            } else if (SolrIndexQueueEntry.CATEGORY.equals(entry.getEntityType())) {
+                categoryIds.add(entry.getEntityId());
+            }
+        }
+        if (!categoryIds.isEmpty()) {
+            CatalogStructure structure = new CatalogStructure();
+            solrIndexDao.populateProductsByCategory(new ArrayList<>(categoryIds), structure);
+            for (List<Long> categoryProductIds : structure.getProductsByCategory().values()) {
+                productIds.addAll(categoryProductIds);
+            }
+        }
+        final List<Long> indexableIds = new ArrayList<>(useSku ? readSkuIds(productIds, skuIds) : readProductIds(productIds, skuIds));
+        if (indexableIds.isEmpty()) {
+            return;
+        }
+        solrIndexService.performCachedOperation(new SolrIndexCachedOperation.CacheOperation() {
+            @Override
+            public void execute() throws ServiceException {
+                for (int pos = 0; pos < indexableIds.size(); pos += pageSize) {
+                    reindexPage(indexableIds.subList(pos, Math.min(pos + pageSize, indexableIds.size())));
+                }
+            }
+        });
+    }
+
+    protected Set<Long> readProductIds(Set<Long> productIds, Set<Long> skuIds) {
+        Set<Long> result = new LinkedHashSet<>(productIds);
+        if (skuIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(skuIds);
+        for (int pos = 0; pos < ids.size(); pos += pageSize) {
+            for (Sku sku : skuDao.readSkusByIds(ids.subList(pos, Math.min(pos + pageSize, ids.size())))) {
+                if (sku.getProduct() != null) {
+                    result.add(sku.getProduct().getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    protected Set<Long> readSkuIds(Set<Long> productIds, Set<Long> skuIds) {
+        Set<Long> result = new LinkedHashSet<>(skuIds);
+        if (productIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(productIds);
+        for (int pos = 0; pos < ids.size(); pos += pageSize) {
+            for (Product product : productDao.readProductsByIds(ids.subList(pos, Math.min(pos + pageSize, ids.size())))) {
+                for (Sku sku : product.getAllSkus()) {
+                    result.add(sku.getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the documents of the indexables that should still be in the index and deletes the documents of those that
+     * no longer exist or should no longer be indexed.
+     */
+    protected void reindexPage(List<Long> ids) throws ServiceException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<? extends Indexable> indexables;
+        if (useSku) {
+            indexables = solrIndexService.filterIndexableSkus(skuDao.readSkusByIds(ids));
+        } else {
+            List<Product> products = productDao.readProductsByIds(ids);
+            for (Iterator<Product> itr = products.iterator(); itr.hasNext();) {
+                if (!itr.next().isActive()) {
+                    itr.remove();
+                }
+            }
+            indexables = products;
+        }
+        Set<Long> removedIds = new LinkedHashSet<>(ids);
+        for (Indexable indexable : indexables) {
+            removedIds.remove(indexable.getId());
+        }
+        if (!indexables.isEmpty()) {
+            solrIndexService.buildIncrementalIndex(indexables, solrConfiguration.getServer());
+        }
+        if (!removedIds.isEmpty()) {
+            deleteDocuments(removedIds);
+        }
+    }
+
+    protected void deleteDocuments(Collection<Long> indexableIds) throws ServiceException {
+        StringBuilder ids = new StringBuilder();
+        for (Long indexableId : indexableIds) {
+            if (ids.length() > 0) {
+                ids.append(" OR ");
+            }
+            ids.append(indexableId);
+        }
+        String deleteQuery = StringUtil.sanitize(shs.getNamespaceFieldName()) + ":(\""
+                + StringUtil.sanitize(solrConfiguration.getNamespace()) + "\") AND "
+                + shs.getIndexableIdFieldName() + ":(" + ids + ")";
+        try {
+            solrIndexService.deleteByQuery(deleteQuery);
+            solrIndexService.commit(solrConfiguration.getServer());
+        } catch (Exception e) {
+            throw new ServiceException("Could not delete documents of removed catalog entities", e);
+        }
+    }
+
+}
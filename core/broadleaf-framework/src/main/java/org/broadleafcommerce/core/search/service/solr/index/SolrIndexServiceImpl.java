@@ -79,6 +79,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Resource;
 
@@ -119,6 +120,18 @@ public class SolrIndexServiceImpl implements SolrIndexService {
     @Value("${solr.index.waitFlush}")
     protected boolean waitFlush;
 
+    @Value("${solr.index.pipelined.enabled:false}")
+    protected boolean pipelinedIndexing = false;
+
+    @Value("${solr.index.pipelined.builderThreads:4}")
+    protected int pipelinedBuilderThreads = 4;
+
+    @Value("${solr.index.pipelined.queueCapacity:8}")
+    protected int pipelinedQueueCapacity = 8;
+
+    @Value("${solr.index.pipelined.writerBatchSize:1000}")
+    protected int pipelinedWriterBatchSize = 1000;
+
     @Resource(name = "blProductDao")
     protected ProductDao productDao;
 
@@ -155,12 +168,30 @@ public class SolrIndexServiceImpl implements SolrIndexService {
     @Resource(name = "blIndexFieldDao")
     protected IndexFieldDao indexFieldDao;
 
+    @Resource(name = "blSolrIndexStatusService")
+    protected SolrIndexStatusService solrIndexStatusService;
+
+    @Resource(name = "blCatalogStructureSnapshotService")
+    protected CatalogStructureSnapshotService catalogStructureSnapshotService;
+
     @Override
     public void performCachedOperation(SolrIndexCachedOperation.CacheOperation cacheOperation) throws ServiceException {
+        performCachedOperation(cacheOperation, true);
+    }
+
+    /**
+     * @param cacheOperation the block of work to perform
+     * @param useSnapshot whether to start from the shared catalog structure snapshot, or read the structure from the
+     * database again. Either way, the structure read by a successful operation is published to the snapshot.
+     * @see CatalogStructureSnapshotService
+     */
+    protected void performCachedOperation(SolrIndexCachedOperation.CacheOperation cacheOperation, boolean useSnapshot)
+            throws ServiceException {
         try {
-            CatalogStructure cache = new CatalogStructure();
+            CatalogStructure cache = catalogStructureSnapshotService.createCatalogStructure(useSnapshot);
             SolrIndexCachedOperation.setCache(cache);
             cacheOperation.execute();
+            catalogStructureSnapshotService.publish(cache);
         } finally {
             SolrIndexCachedOperation.clearCache();
         }
@@ -241,25 +272,29 @@ public class SolrIndexServiceImpl implements SolrIndexService {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("There are at most " + numItemsToIndex + " items to index");
                 }
-                performCachedOperation(new SolrIndexCachedOperation.CacheOperation() {
-
-                    @Override
-                    public void execute() throws ServiceException {
-                        int page = 1;
-                        Long lastId = null;
-                        Long remainingNumItemsToIndex = numItemsToIndex;
-                        Long totalPages = getTotalPageCount(numItemsToIndex);
-
-                        while (remainingNumItemsToIndex > 0) {
-                            String pageNumberMessage = buildPageNumberMessage(page, totalPages);
-                            LOG.info(pageNumberMessage);
-
-                            lastId = buildIncrementalIndex(pageSize, lastId, operation);
-                            remainingNumItemsToIndex -= pageSize;
-                            page++;
+                if (isPipelinedIndexingEnabled(operation)) {
+                    createIndexPipeline(operation, numItemsToIndex).execute();
+                } else {
+                    performCachedOperation(new SolrIndexCachedOperation.CacheOperation() {
+
+                        @Override
+                        public void execute() throws ServiceException {
+                            int page = 1;
+                            Long lastId = null;
+                            Long remainingNumItemsToIndex = numItemsToIndex;
+                            Long totalPages = getTotalPageCount(numItemsToIndex);
+
+                            while (remainingNumItemsToIndex > 0) {
+                                String pageNumberMessage = buildPageNumberMessage(page, totalPages);
+                                LOG.info(pageNumberMessage);
+
+                                lastId = buildIncrementalIndex(pageSize, lastId, operation);
+                                remainingNumItemsToIndex -= pageSize;
+                                page++;
+                            }
                         }
-                    }
-                });
+                    }, false);
+                }
 
             } finally {
                 restoreState(pack);
@@ -271,6 +306,43 @@ public class SolrIndexServiceImpl implements SolrIndexService {
         }
     }
 
+    /**
+     * Whether the given operation should be run through a {@link SolrIndexPipeline} rather than page by page on the
+     * calling thread. By default only full reindex operations are pipelined, and only when
+     * <code>solr.index.pipelined.enabled</code> is set. Note that the pipeline builds and writes the documents itself
+     * and therefore does not call {@link SolrIndexOperation#buildPage(List)}.
+     * 
+     * @param operation the operation about to be executed
+     * @return whether or not to pipeline the operation
+     */
+    protected boolean isPipelinedIndexingEnabled(SolrIndexOperation operation) {
+        return pipelinedIndexing && operation instanceof GlobalSolrFullReIndexOperation;
+    }
+
+    protected SolrIndexPipeline createIndexPipeline(SolrIndexOperation operation, Long numItemsToIndex) {
+        SolrIndexPipeline pipeline = new SolrIndexPipeline(this, operation, numItemsToIndex);
+        pipeline.setPageSize(pageSize);
+        pipeline.setBuilderThreads(pipelinedBuilderThreads);
+        pipeline.setQueueCapacity(pipelinedQueueCapacity);
+        pipeline.setWriterBatchSize(pipelinedWriterBatchSize);
+        return pipeline;
+    }
+
+    /**
+     * Creates a {@link CatalogStructure} that several indexing threads can populate and read at the same time. Entries
+     * are only ever added, and two threads adding the same entry compute the same value, so concurrent maps are all
+     * that is needed.
+     * 
+     * @return an empty, thread safe catalog structure
+     */
+    protected CatalogStructure createSharedCatalogStructure() {
+        CatalogStructure cache = catalogStructureSnapshotService.createCatalogStructure(false);
+        cache.setParentCategoriesByProduct(new ConcurrentHashMap<Long, Set<Long>>());
+        cache.setParentCategoriesByCategory(new ConcurrentHashMap<Long, Set<Long>>());
+        cache.setDisplayOrdersByCategoryProduct(new ConcurrentHashMap<String, BigDecimal>());
+        return cache;
+    }
+
     protected long getTotalPageCount(Long numItemsToIndex) {
         long numPagesToIndex = numItemsToIndex / pageSize;
         boolean hasRemainingItemsToIndex = numItemsToIndex % pageSize != 0;
@@ -610,17 +682,17 @@ public class SolrIndexServiceImpl implements SolrIndexService {
         extensionManager.getProxy().attachAdditionalBasicFields(indexable, document, shs);
 
         Long cacheKey = this.shs.getCurrentProductId(indexable); // current
-        if (!cache.getParentCategoriesByProduct().containsKey(cacheKey)) {
+        if (!cache.containsProduct(cacheKey)) {
             cacheKey = sandBoxHelper.getOriginalId(cacheKey); // parent
-            if (!cache.getParentCategoriesByProduct().containsKey(cacheKey)) {
+            if (!cache.containsProduct(cacheKey)) {
                 cacheKey = shs.getIndexableId(indexable); // master
             }
         }
 
         // TODO: figure this out more generally; this doesn't work for CMS content
         // The explicit categories are the ones defined by the product itself
-        if (cache.getParentCategoriesByProduct().containsKey(cacheKey)) {
-            for (Long categoryId : cache.getParentCategoriesByProduct().get(cacheKey)) {
+        if (cache.containsProduct(cacheKey)) {
+            for (Long categoryId : cache.getParentCategoriesForProduct(cacheKey)) {
                 document.addField(shs.getExplicitCategoryFieldName(), shs.getCategoryId(categoryId));
 
                 // Make sure that we're always referencing the parent for the sort field
@@ -629,12 +701,10 @@ public class SolrIndexServiceImpl implements SolrIndexService {
                 // by product id is the overridden versions. Need to always look at parent version for cache stuff, which
                 // is given from shs.getCategoryId
                 // First try the current level
-                String displayOrderKey = categoryId + "-" + cacheKey;
-                Long displayOrder = convertDisplayOrderToLong(cache, displayOrderKey);
+                Long displayOrder = convertDisplayOrderToLong(cache, categoryId, cacheKey);
                 if (displayOrder == null) {
                     // Didn't find the cache at the current level, this might be an override so look upwards
-                    displayOrderKey = shs.getCategoryId(categoryId) + "-" + cacheKey;
-                    displayOrder = convertDisplayOrderToLong(cache, displayOrderKey);
+                    displayOrder = convertDisplayOrderToLong(cache, shs.getCategoryId(categoryId), cacheKey);
                 }
                 
                 if (document.getField(categorySortFieldName) == null && displayOrder != null) {
@@ -662,8 +732,7 @@ public class SolrIndexServiceImpl implements SolrIndexService {
             document.addField(shs.getCategoryFieldName(), catIdToAdd);
         }
 
-        Set<Long> parents = cache.getParentCategoriesByCategory().get(categoryId);
-        for (Long parent : parents) {
+        for (Long parent : cache.getParentCategoriesForCategory(categoryId)) {
             if (!indexedParents.contains(parent)) {
                 indexedParents.add(parent);
                 buildFullCategoryHierarchy(document, cache, parent, indexedParents);
@@ -817,6 +886,22 @@ public class SolrIndexServiceImpl implements SolrIndexService {
     protected Long convertDisplayOrderToLong(CatalogStructure cache, String displayOrderKey) {
         BigDecimal displayOrder = cache.getDisplayOrdersByCategoryProduct().get(displayOrderKey);
 
+        if (displayOrder == null) {
+            int separator = displayOrderKey.indexOf('-', 1);
+            if (separator > 0) {
+                displayOrder = cache.getSnapshot().getDisplayOrder(Long.parseLong(displayOrderKey.substring(0, separator)),
+                        Long.parseLong(displayOrderKey.substring(separator + 1)));
+            }
+        }
+
+        return convertDisplayOrderToLong(displayOrder);
+    }
+
+    protected Long convertDisplayOrderToLong(CatalogStructure cache, Long categoryId, Long productId) {
+        return convertDisplayOrderToLong(cache.getDisplayOrder(categoryId, productId));
+    }
+
+    protected Long convertDisplayOrderToLong(BigDecimal displayOrder) {
         if (displayOrder == null) {
             return null;
         }
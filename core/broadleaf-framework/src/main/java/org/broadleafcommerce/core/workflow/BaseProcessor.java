@@ -22,6 +22,7 @@ import org.apache.commons.collections.Transformer;
 import org.broadleafcommerce.common.logging.LifeCycleEvent;
 import org.broadleafcommerce.common.logging.SupportLogManager;
 import org.broadleafcommerce.common.logging.SupportLogger;
+import org.broadleafcommerce.core.workflow.statistics.WorkflowStatisticsService;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -68,6 +69,9 @@ public abstract class BaseProcessor<U, T> implements BeanNameAware, BeanFactoryA
     
     protected SupportLogger supportLogger = SupportLogManager.getLogger("Workflows", BaseProcessor.class);
 
+    protected volatile WorkflowStatisticsService workflowStatisticsService;
+    protected volatile boolean workflowStatisticsServiceResolved = false;
+
     /**
      * Sets name of the spring bean in the application context that this
      * processor is configured under
@@ -233,4 +237,25 @@ public abstract class BaseProcessor<U, T> implements BeanNameAware, BeanFactoryA
     public BeanFactory getBeanFactory() {
         return beanFactory;
     }
+
+    /**
+     * Returns the service that per-workflow and per-activity timings are reported to. Unless explicitly set, this is the
+     * bean registered under the id blWorkflowStatisticsService, if any.
+     * 
+     * @return the statistics service, or null if none is available
+     */
+    public WorkflowStatisticsService getWorkflowStatisticsService() {
+        if (!workflowStatisticsServiceResolved) {
+            if (beanFactory != null && beanFactory.containsBean("blWorkflowStatisticsService")) {
+                workflowStatisticsService = beanFactory.getBean("blWorkflowStatisticsService", WorkflowStatisticsService.class);
+            }
+            workflowStatisticsServiceResolved = true;
+        }
+        return workflowStatisticsService;
+    }
+
+    public void setWorkflowStatisticsService(WorkflowStatisticsService workflowStatisticsService) {
+        this.workflowStatisticsService = workflowStatisticsService;
+        this.workflowStatisticsServiceResolved = true;
+    }
 }
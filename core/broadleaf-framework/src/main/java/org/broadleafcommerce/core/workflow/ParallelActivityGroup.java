@@ -0,0 +1,569 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.classloader.release.ThreadLocalManager;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.core.catalog.service.dynamic.DynamicSkuActiveDatesService;
+import org.broadleafcommerce.core.catalog.service.dynamic.DynamicSkuPricingService;
+import org.broadleafcommerce.core.catalog.service.dynamic.SkuActiveDateConsiderationContext;
+import org.broadleafcommerce.core.catalog.service.dynamic.SkuPricingConsiderationContext;
+import org.broadleafcommerce.core.workflow.state.ActivityStateManagerImpl;
+import org.broadleafcommerce.core.workflow.state.RollbackStateLocal;
+import org.broadleafcommerce.core.workflow.statistics.WorkflowStatisticsService;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Fork/join composite activity that executes a group of independent activities concurrently on a bounded executor and
+ * waits for all of them to complete before the containing workflow continues. This is useful for overlapping steps that
+ * spend most of their time waiting on external systems (e.g. fraud scoring or address verification against remote
+ * providers).
+ * </p>
+ * <p>
+ * Only activities that implement {@link SessionFreeActivity} are forked. Each of them executes against its own branch
+ * context, created by {@link SessionFreeActivity#createBranchContext(ProcessContext)}, and its results are applied to the
+ * group's context by {@link SessionFreeActivity#mergeBranchContext(ProcessContext, ProcessContext)} on the calling thread,
+ * in configured order, once every grouped activity has finished. All other grouped activities are executed on the calling
+ * thread with the group's context while the forked ones run, and so keep access to the request bound persistence context
+ * and transaction. {@link #shouldExecute(ProcessContext)} of each grouped activity is evaluated on the calling thread
+ * before anything is forked. If the executor is saturated, a forked activity is executed on the calling thread instead.
+ * </p>
+ * <p>
+ * Serial execution is the default: none of the stock Broadleaf activities implement {@link SessionFreeActivity}, since
+ * they all read or modify the order's entity graph through the request bound persistence context (blShippingActivity
+ * and blTaxActivity included). Grouping them is harmless, but they simply run one after the other on the calling
+ * thread. Only custom activities written against {@link SessionFreeActivity} are executed concurrently.
+ * </p>
+ * <p>
+ * Rollback semantics are preserved across threads: each worker runs with the {@link RollbackStateLocal} of the calling
+ * workflow, so state registered by a grouped activity through {@link ActivityStateManagerImpl} lands on the same rollback
+ * stack as the rest of the workflow. Rollback handlers of grouped activities configured for automatic registration are
+ * registered on the calling thread, in configured order, for every grouped activity that completed successfully - even
+ * if a sibling failed - so that the containing workflow can roll them back. If {@link #getTimeoutMillis()} elapses, the
+ * unfinished workers are cancelled and joined before the failure is reported, so no grouped activity is still running
+ * when the containing workflow rolls back. The first failure (in configured order) is rethrown once all grouped
+ * activities have finished.
+ * </p>
+ * <p>
+ * The {@link BroadleafRequestContext} and the dynamic pricing / active date contexts are propagated to the workers.
+ * When workflow statistics are enabled, the execution time of each grouped activity is recorded under the containing
+ * workflow, in addition to the time of the group as a whole.
+ * </p>
+ * 
+ * <pre>
+ * {@code
+ * <!-- both activities implement SessionFreeActivity and call out to remote services, so they run concurrently -->
+ * <bean id="myCheckoutVerificationGroup" class="org.broadleafcommerce.core.workflow.ParallelActivityGroup">
+ *     <property name="order" value="1500"/>
+ *     <property name="activities">
+ *         <list>
+ *             <ref bean="myFraudScoreActivity"/>
+ *             <ref bean="myAddressVerificationActivity"/>
+ *         </list>
+ *     </property>
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @param <T> the process context type
+ * @see SequenceProcessor
+ */
+public class ParallelActivityGroup<T extends ProcessContext<?>> extends BaseActivity<T> implements DisposableBean, BeanFactoryAware {
+
+    private static final Log LOG = LogFactory.getLog(ParallelActivityGroup.class);
+
+    protected static final int PENDING = 0;
+    protected static final int RUNNING = 1;
+    protected static final int DONE = 2;
+
+    protected List<Activity<T>> activities = new ArrayList<>();
+
+    protected ExecutorService executor;
+    protected boolean ownsExecutor = false;
+
+    protected int poolSize = 20;
+    protected int queueCapacity = 200;
+    protected long timeoutMillis = 0;
+
+    protected BeanFactory beanFactory;
+    protected volatile WorkflowStatisticsService workflowStatisticsService;
+    protected volatile boolean workflowStatisticsServiceResolved = false;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T execute(final T context) throws Exception {
+        RollbackStateLocal parentRollbackState = RollbackStateLocal.getRollbackStateLocal();
+        WorkflowStatisticsService statisticsService = getWorkflowStatisticsService();
+        String workflowName = null;
+        if (statisticsService != null && statisticsService.isEnabled() && parentRollbackState != null) {
+            workflowName = parentRollbackState.getWorkflowId();
+        }
+
+        List<Activity<T>> executable = new ArrayList<>();
+        for (Activity<T> activity : activities) {
+            if (activity.shouldExecute(context)) {
+                executable.add(activity);
+            } else {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Not executing grouped activity: " + activity.getBeanName() + " based on the context: " + context);
+                }
+                if (workflowName != null) {
+                    statisticsService.recordActivitySkipped(workflowName, activity);
+                }
+            }
+        }
+        if (executable.isEmpty()) {
+            return context;
+        }
+
+        boolean fork = executable.size() > 1;
+        List<Branch> branches = new ArrayList<>(executable.size());
+        for (Activity<T> activity : executable) {
+            if (activity instanceof SessionFreeActivity) {
+                branches.add(new Branch(activity, ((SessionFreeActivity<T>) activity).createBranchContext(context), fork));
+            } else {
+                branches.add(new Branch(activity, context, false));
+            }
+            if (workflowName != null) {
+                branches.get(branches.size() - 1).recordStatistics(statisticsService, workflowName);
+            }
+        }
+
+        Object[] state = saveState();
+        for (Branch branch : branches) {
+            if (branch.forked) {
+                branch.submit(parentRollbackState, state);
+            }
+        }
+        for (Branch branch : branches) {
+            if (!branch.forked) {
+                branch.runOnCallingThread();
+            }
+        }
+        awaitBranches(branches);
+
+        Throwable failure = null;
+        for (Branch branch : branches) {
+            Throwable branchFailure = branch.timedOut ? new WorkflowException("Grouped activity "
+                    + branch.activity.getBeanName() + " did not complete within " + timeoutMillis + "ms") : branch.failure;
+            if (branchFailure == null) {
+                try {
+                    mergeBranch(context, branch);
+                } catch (Exception e) {
+                    branchFailure = e;
+                }
+            }
+            if (branch.succeeded) {
+                registerRollbackHandler(branch.activity, branchFailure == null ? context : branch.result);
+            }
+            if (failure == null) {
+                failure = branchFailure;
+            }
+        }
+        if (failure != null) {
+            if (failure instanceof Exception) {
+                throw (Exception) failure;
+            }
+            throw new WorkflowException(failure);
+        }
+
+        return context;
+    }
+
+    /**
+     * Wait for every forked branch to finish. If the timeout elapses (or the calling thread is interrupted), the
+     * unfinished branches are cancelled and then joined, so that none of them is still running when this method returns.
+     * 
+     * @param branches the branches of the group, in configured order
+     */
+    protected void awaitBranches(List<Branch> branches) {
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        boolean interrupted = false;
+        try {
+            for (Branch branch : branches) {
+                if (!branch.await(deadline)) {
+                    branch.timedOut = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        boolean cancelled = false;
+        for (Branch branch : branches) {
+            if (interrupted || branch.timedOut) {
+                cancelled |= branch.cancel();
+            }
+        }
+        if (cancelled) {
+            for (Branch branch : branches) {
+                interrupted |= branch.joinUninterruptibly();
+            }
+        }
+        if (interrupted) {
+            for (Branch branch : branches) {
+                if (!branch.succeeded && branch.failure == null) {
+                    branch.failure = new WorkflowException("Interrupted while waiting for grouped activity "
+                            + branch.activity.getBeanName());
+                }
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Apply the result of a successfully completed branch to the group's context
+     * 
+     * @param context the group's context
+     * @param branch the completed branch
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    protected void mergeBranch(T context, Branch branch) throws Exception {
+        if (branch.activity instanceof SessionFreeActivity) {
+            ((SessionFreeActivity<T>) branch.activity).mergeBranchContext(context, branch.result);
+            if (branch.result != null && branch.result.isStopped()) {
+                context.stopProcess();
+            }
+        } else {
+            mergeContext(context, branch.result);
+        }
+    }
+
+    protected T executeGroupedActivity(Activity<T> activity, T context, RollbackStateLocal parentRollbackState,
+            Object[] state) throws Exception {
+        restoreState(state);
+        if (parentRollbackState != null) {
+            RollbackStateLocal rollbackStateLocal = new RollbackStateLocal();
+            rollbackStateLocal.setThreadId(parentRollbackState.getThreadId());
+            rollbackStateLocal.setWorkflowId(parentRollbackState.getWorkflowId());
+            RollbackStateLocal.setRollbackStateLocal(rollbackStateLocal);
+        }
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("running grouped activity:" + activity.getBeanName() + " using arguments:" + context);
+            }
+            return activity.execute(context);
+        } finally {
+            ThreadLocalManager.remove();
+        }
+    }
+
+    /**
+     * Merge the context returned by a grouped activity that was executed on the calling thread into the group's context.
+     * These activities normally return the same instance they were given, in which case there is nothing to do.
+     * 
+     * @param context the group's context
+     * @param result the context returned by the grouped activity
+     */
+    protected void mergeContext(T context, T result) {
+        if (result != null && result != context && result.isStopped()) {
+            context.stopProcess();
+        }
+    }
+
+    protected void registerRollbackHandler(Activity<T> activity, T context) {
+        if (activity.getRollbackHandler() != null && activity.getAutomaticallyRegisterRollbackHandler()) {
+            ActivityStateManagerImpl.getStateManager().registerState(activity, context, activity.getRollbackRegion(),
+                    activity.getRollbackHandler(), activity.getStateConfiguration());
+        }
+    }
+
+    /**
+     * Capture the thread bound state of the calling thread that should be visible to the grouped activities.
+     * 
+     * @return the captured state
+     */
+    protected Object[] saveState() {
+        return new Object[] {
+            BroadleafRequestContext.getBroadleafRequestContext(),
+            SkuPricingConsiderationContext.getSkuPricingConsiderationContext(),
+            SkuPricingConsiderationContext.getSkuPricingService(),
+            SkuActiveDateConsiderationContext.getSkuActiveDatesService()
+        };
+    }
+
+    /**
+     * Establish the state captured by {@link #saveState()} on a worker thread.
+     * 
+     * @param pack the captured state
+     */
+    @SuppressWarnings("rawtypes")
+    protected void restoreState(Object[] pack) {
+        BroadleafRequestContext.setBroadleafRequestContext((BroadleafRequestContext) pack[0]);
+        SkuPricingConsiderationContext.setSkuPricingConsiderationContext((HashMap) pack[1]);
+        SkuPricingConsiderationContext.setSkuPricingService((DynamicSkuPricingService) pack[2]);
+        SkuActiveDateConsiderationContext.setSkuActiveDatesService((DynamicSkuActiveDatesService) pack[3]);
+    }
+
+    /**
+     * Returns the executor used for the grouped activities. If one has not been configured, a bounded pool of
+     * {@link #getPoolSize()} threads and a queue of {@link #getQueueCapacity()} tasks is created and owned by this group.
+     * 
+     * @return the executor
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final String prefix = (beanName == null ? "parallelActivityGroup" : beanName) + "-";
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+                        protected final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            ownsExecutor = true;
+        }
+        return executor;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Returns the service that the execution times of the grouped activities are reported to. Unless explicitly set,
+     * this is the bean registered under the id blWorkflowStatisticsService, if any.
+     * 
+     * @return the statistics service, or null if none is available
+     */
+    public WorkflowStatisticsService getWorkflowStatisticsService() {
+        if (!workflowStatisticsServiceResolved) {
+            if (beanFactory != null && beanFactory.containsBean("blWorkflowStatisticsService")) {
+                workflowStatisticsService = beanFactory.getBean("blWorkflowStatisticsService", WorkflowStatisticsService.class);
+            }
+            workflowStatisticsServiceResolved = true;
+        }
+        return workflowStatisticsService;
+    }
+
+    public void setWorkflowStatisticsService(WorkflowStatisticsService workflowStatisticsService) {
+        this.workflowStatisticsService = workflowStatisticsService;
+        this.workflowStatisticsServiceResolved = true;
+    }
+
+    public synchronized void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (ownsExecutor && executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public List<Activity<T>> getActivities() {
+        return activities;
+    }
+
+    public void setActivities(List<Activity<T>> activities) {
+        this.activities = activities;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * The maximum amount of time to wait for all grouped activities to complete. A value of 0 (the default) waits
+     * indefinitely.
+     * 
+     * @return the timeout in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * A grouped activity together with the context it executes against and the outcome of its execution. A branch
+     * executes at most once, either on a worker or on the calling thread, and cannot start once it has been cancelled.
+     */
+    protected class Branch implements Callable<T> {
+
+        protected final Activity<T> activity;
+        protected final T branchContext;
+        protected boolean forked;
+
+        protected final AtomicInteger status = new AtomicInteger(PENDING);
+        protected final CountDownLatch completion = new CountDownLatch(1);
+        protected Future<T> future;
+        protected RollbackStateLocal parentRollbackState;
+        protected Object[] state;
+        protected WorkflowStatisticsService statisticsService;
+        protected String workflowName;
+
+        protected volatile T result;
+        protected volatile boolean succeeded;
+        protected volatile Throwable failure;
+        protected volatile boolean timedOut;
+
+        public Branch(Activity<T> activity, T branchContext, boolean forked) {
+            this.activity = activity;
+            this.branchContext = branchContext;
+            this.forked = forked;
+        }
+
+        protected void recordStatistics(WorkflowStatisticsService statisticsService, String workflowName) {
+            this.statisticsService = statisticsService;
+            this.workflowName = workflowName;
+        }
+
+        protected void submit(RollbackStateLocal parentRollbackState, Object[] state) {
+            this.parentRollbackState = parentRollbackState;
+            this.state = state;
+            try {
+                future = getExecutor().submit(this);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Parallel activity executor is saturated, executing " + activity.getBeanName() + " on the calling thread");
+                forked = false;
+            }
+        }
+
+        @Override
+        public T call() {
+            if (status.compareAndSet(PENDING, RUNNING)) {
+                long start = System.nanoTime();
+                try {
+                    result = executeGroupedActivity(activity, branchContext, parentRollbackState, state);
+                    succeeded = true;
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    recordExecution(start);
+                    status.set(DONE);
+                    completion.countDown();
+                }
+            }
+            return result;
+        }
+
+        protected void runOnCallingThread() {
+            if (status.compareAndSet(PENDING, RUNNING)) {
+                long start = System.nanoTime();
+                try {
+                    result = activity.execute(branchContext);
+                    succeeded = true;
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    recordExecution(start);
+                    status.set(DONE);
+                    completion.countDown();
+                }
+            }
+        }
+
+        protected void recordExecution(long start) {
+            if (workflowName != null) {
+                statisticsService.recordActivityExecution(workflowName, activity, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * @param deadline the time to wait until, or 0 to wait indefinitely
+         * @return whether the branch finished before the deadline
+         */
+        protected boolean await(long deadline) throws InterruptedException {
+            if (deadline <= 0) {
+                completion.await();
+                return true;
+            }
+            return completion.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Cancel the branch, interrupting its worker if it is running
+         * 
+         * @return whether the branch may still be running and must be joined
+         */
+        protected boolean cancel() {
+            if (status.compareAndSet(PENDING, DONE)) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                completion.countDown();
+                return false;
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+            return status.get() != DONE;
+        }
+
+        /**
+         * @return whether the calling thread was interrupted while joining
+         */
+        protected boolean joinUninterruptibly() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    completion.await();
+                    return interrupted;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.broadleafcommerce.core.workflow.state.ActivityStateManager;
 import org.broadleafcommerce.core.workflow.state.ActivityStateManagerImpl;
 import org.broadleafcommerce.core.workflow.state.RollbackFailureException;
 import org.broadleafcommerce.core.workflow.state.RollbackStateLocal;
+import org.broadleafcommerce.core.workflow.statistics.WorkflowStatisticsService;
 
 import java.util.List;
 
@@ -32,6 +33,8 @@ public class SequenceProcessor<U, T> extends BaseProcessor<U, T> {
 
     private ProcessContextFactory<U, T> processContextFactory;
 
+    private volatile ActivityStateManager activityStateManager;
+
     @Override
     public boolean supports(Activity<? extends ProcessContext<U>> activity) {
         return true;
@@ -47,10 +50,10 @@ public class SequenceProcessor<U, T> extends BaseProcessor<U, T> {
         if (LOG.isDebugEnabled()) {
             LOG.debug(getBeanName() + " processor is running..");
         }
-        ActivityStateManager activityStateManager = getBeanFactory().getBean(ActivityStateManager.class, "blActivityStateManager");
-        if (activityStateManager == null) {
-            throw new IllegalStateException("Unable to find an instance of ActivityStateManager registered under bean id blActivityStateManager");
-        }
+        ActivityStateManager activityStateManager = getActivityStateManager();
+        WorkflowStatisticsService statisticsService = getWorkflowStatisticsService();
+        boolean recordStatistics = statisticsService != null && statisticsService.isEnabled();
+        long workflowStart = recordStatistics ? System.nanoTime() : 0L;
         ProcessContext<U> context = null;
         
         RollbackStateLocal rollbackStateLocal = new RollbackStateLocal();
@@ -71,12 +74,23 @@ public class SequenceProcessor<U, T> extends BaseProcessor<U, T> {
                         LOG.debug("running activity:" + activity.getBeanName() + " using arguments:" + context);
                     }
     
+                    long activityStart = recordStatistics ? System.nanoTime() : 0L;
                     try {
                         context = activity.execute(context);
+                        if (recordStatistics) {
+                            statisticsService.recordActivityExecution(getBeanName(), activity, System.nanoTime() - activityStart);
+                        }
                     } catch (Throwable activityException) {
+                        if (recordStatistics) {
+                            statisticsService.recordActivityExecution(getBeanName(), activity, System.nanoTime() - activityStart);
+                            statisticsService.recordActivityError(getBeanName(), activity);
+                        }
                         RollbackFailureException rollbackFailure = null;
                         if (getAutoRollbackOnError()) {
                             LOG.info(String.format("Exception ocurred in %s, executing rollback handlers", rollbackStateLocal.getWorkflowId()));
+                            if (recordStatistics) {
+                                statisticsService.recordRollback(getBeanName(), activity);
+                            }
                             
                             try {
                                 ActivityStateManagerImpl.getStateManager().rollbackAllState();
@@ -115,9 +129,15 @@ public class SequenceProcessor<U, T> extends BaseProcessor<U, T> {
                     }
                 } else {
                     LOG.debug("Not executing activity: " + activity.getBeanName() + " based on the context: " + context);
+                    if (recordStatistics) {
+                        statisticsService.recordActivitySkipped(getBeanName(), activity);
+                    }
                 }
             }
         } finally {
+            if (recordStatistics) {
+                statisticsService.recordWorkflowExecution(getBeanName(), System.nanoTime() - workflowStart);
+            }
             rollbackStateLocal = RollbackStateLocal.getRollbackStateLocal();
             if (rollbackStateLocal != null && rollbackStateLocal.getWorkflowId().equals(getBeanName())) {
                 activityStateManager.clearAllState();
@@ -144,6 +164,22 @@ public class SequenceProcessor<U, T> extends BaseProcessor<U, T> {
         return false;
     }
 
+    /**
+     * Returns the ActivityStateManager registered under bean id blActivityStateManager. The bean is resolved from the
+     * bean factory on first use and retained, rather than looked up on every workflow execution.
+     */
+    protected ActivityStateManager getActivityStateManager() {
+        ActivityStateManager stateManager = activityStateManager;
+        if (stateManager == null) {
+            stateManager = getBeanFactory().getBean(ActivityStateManager.class, "blActivityStateManager");
+            if (stateManager == null) {
+                throw new IllegalStateException("Unable to find an instance of ActivityStateManager registered under bean id blActivityStateManager");
+            }
+            activityStateManager = stateManager;
+        }
+        return stateManager;
+    }
+
     protected ProcessContext<U> createContext(T seedData) throws WorkflowException {
         return processContextFactory.createContext(seedData);
     }
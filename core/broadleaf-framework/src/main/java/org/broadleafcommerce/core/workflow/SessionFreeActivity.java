@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow;
+
+/**
+ * <p>
+ * An {@link Activity} that may be executed on a worker thread of a {@link ParallelActivityGroup}. Neither the
+ * {@link ProcessContext} nor the entities it holds (e.g. the {@link org.broadleafcommerce.core.order.domain.Order}) are
+ * thread-safe, and the request bound persistence context is not available on the worker, so a session free activity
+ * runs against its own branch context and hands its results back explicitly:
+ * </p>
+ * <ol>
+ *     <li>{@link #createBranchContext(ProcessContext)} is called on the calling thread and must return a context that
+ *     shares no mutable state with the workflow's context (copy whatever the activity needs to read)</li>
+ *     <li>{@link #execute(ProcessContext)} is called on a worker thread with the branch context. It must not use the
+ *     EntityManager or trigger lazy loading</li>
+ *     <li>{@link #mergeBranchContext(ProcessContext, ProcessContext)} is called on the calling thread, in configured
+ *     order, to apply the results to the workflow's context</li>
+ * </ol>
+ * <p>
+ * Activities that do not implement this interface are executed on the calling thread by a {@link ParallelActivityGroup}.
+ * None of the stock Broadleaf activities implement it.
+ * </p>
+ *
+ * @param <T> the process context type
+ */
+public interface SessionFreeActivity<T extends ProcessContext<?>> extends Activity<T> {
+
+    /**
+     * Create the context this activity executes against on a worker thread
+     * 
+     * @param context the workflow's context
+     * @return a context that shares no mutable state with the workflow's context
+     * @throws Exception
+     */
+    public T createBranchContext(T context) throws Exception;
+
+    /**
+     * Apply the results of {@link #execute(ProcessContext)} to the workflow's context. Called on the calling thread.
+     * 
+     * @param context the workflow's context
+     * @param branchContext the context returned by {@link #execute(ProcessContext)}
+     * @throws Exception
+     */
+    public void mergeBranchContext(T context, T branchContext) throws Exception;
+
+}
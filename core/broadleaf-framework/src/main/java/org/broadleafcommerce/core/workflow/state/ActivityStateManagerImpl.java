@@ -81,10 +81,15 @@ public class ActivityStateManagerImpl<T extends ProcessContext<?>> implements Ac
     @Override
     public void registerState(Activity<T> activity, T processContext, String region, RollbackHandler<T> rollbackHandler, Map<String, Object> stateItems) {
         RollbackStateLocal rollbackStateLocal = getRollbackStateLocal();
-        Stack<StateContainer> containers = stateMap.get(rollbackStateLocal.getThreadId() + "_" + rollbackStateLocal.getWorkflowId());
-        if (containers == null) {
-            containers = new Stack<>();
-            stateMap.put(rollbackStateLocal.getThreadId() + "_" + rollbackStateLocal.getWorkflowId(), containers);
+        String key = rollbackStateLocal.getThreadId() + "_" + rollbackStateLocal.getWorkflowId();
+        Stack<StateContainer> containers;
+        // Activities in a ParallelActivityGroup register state for the same workflow from multiple threads
+        synchronized (stateMap) {
+            containers = stateMap.get(key);
+            if (containers == null) {
+                containers = new Stack<>();
+                stateMap.put(key, containers);
+            }
         }
 
         StateContainer stateContainer = new StateContainer();
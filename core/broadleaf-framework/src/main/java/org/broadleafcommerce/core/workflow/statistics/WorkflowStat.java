@@ -0,0 +1,68 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow.statistics;
+
+import org.broadleafcommerce.common.cache.TimingStat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime statistics for a single workflow, or a single activity within a workflow.
+ */
+public class WorkflowStat {
+
+    protected final TimingStat latency = new TimingStat();
+    protected final AtomicLong skipCount = new AtomicLong();
+    protected final AtomicLong errorCount = new AtomicLong();
+    protected final AtomicLong rollbackCount = new AtomicLong();
+
+    public TimingStat getLatency() {
+        return latency;
+    }
+
+    public long getSkipCount() {
+        return skipCount.get();
+    }
+
+    public void incrementSkip() {
+        skipCount.incrementAndGet();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public void incrementError() {
+        errorCount.incrementAndGet();
+    }
+
+    public long getRollbackCount() {
+        return rollbackCount.get();
+    }
+
+    public void incrementRollback() {
+        rollbackCount.incrementAndGet();
+    }
+
+    public void reset() {
+        latency.reset();
+        skipCount.set(0L);
+        errorCount.set(0L);
+        rollbackCount.set(0L);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow.statistics;
+
+import org.broadleafcommerce.core.workflow.Activity;
+
+/**
+ * Collects execution statistics for workflow processors and their activities. Processors look up this service under the
+ * bean id blWorkflowStatisticsService and report to it when {@link #isEnabled()} is true.
+ *
+ * @see org.broadleafcommerce.core.workflow.SequenceProcessor
+ */
+public interface WorkflowStatisticsService {
+
+    /**
+     * Whether or not statistics should be recorded. Controlled by the "workflow.statistics.enabled" property.
+     */
+    boolean isEnabled();
+
+    void recordWorkflowExecution(String workflowName, long nanos);
+
+    void recordActivityExecution(String workflowName, Activity<?> activity, long nanos);
+
+    void recordActivitySkipped(String workflowName, Activity<?> activity);
+
+    void recordActivityError(String workflowName, Activity<?> activity);
+
+    /**
+     * Record that the registered rollback handlers for a workflow were executed because of a failure in the given activity
+     */
+    void recordRollback(String workflowName, Activity<?> activity);
+
+    /**
+     * @return the statistics for the workflow, or null if nothing has been recorded for it
+     */
+    WorkflowStat getWorkflowStat(String workflowName);
+
+    /**
+     * @return the statistics for the activity within the workflow, or null if nothing has been recorded for it
+     */
+    WorkflowStat getActivityStat(String workflowName, String activityName);
+
+    /**
+     * Clear all recorded statistics
+     */
+    void reset();
+
+}
@@ -0,0 +1,326 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow.statistics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.broadleafcommerce.common.cache.TimingStat;
+import org.broadleafcommerce.core.workflow.Activity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.naming.SelfNaming;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Default {@link WorkflowStatisticsService} that keeps a {@link WorkflowStat} per workflow and per activity within each
+ * workflow, and publishes them as attributes of a JMX DynamicMBean named
+ * "org.broadleafcommerce:name=WorkflowStatisticsService.{appName}". Attribute names take the form
+ * "{workflow}.{metric}" for the workflow as a whole, and "{workflow}.{activity}.{metric}" for each activity.
+ * </p>
+ * Recording never takes a lock or allocates once a workflow and activity have been seen.
+ */
+@Service("blWorkflowStatisticsService")
+public class WorkflowStatisticsServiceImpl implements WorkflowStatisticsService, DynamicMBean, SelfNaming {
+
+    private static final Log LOG = LogFactory.getLog(WorkflowStatisticsServiceImpl.class);
+
+    protected static final String[] METRICS = {"Count", "MeanMillis", "P50Millis", "P95Millis", "P99Millis", "MaxMillis",
+            "SkipCount", "ErrorCount", "RollbackCount"};
+
+    @Value("${workflow.statistics.enabled}")
+    protected boolean enabled = false;
+
+    protected String appName = "broadleaf";
+
+    protected ConcurrentMap<String, WorkflowStats> workflowStats = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void recordWorkflowExecution(String workflowName, long nanos) {
+        getWorkflowStats(workflowName).workflow.getLatency().add(nanos);
+    }
+
+    @Override
+    public void recordActivityExecution(String workflowName, Activity<?> activity, long nanos) {
+        getWorkflowStats(workflowName).getActivityStat(activity).getLatency().add(nanos);
+    }
+
+    @Override
+    public void recordActivitySkipped(String workflowName, Activity<?> activity) {
+        getWorkflowStats(workflowName).getActivityStat(activity).incrementSkip();
+    }
+
+    @Override
+    public void recordActivityError(String workflowName, Activity<?> activity) {
+        WorkflowStats stats = getWorkflowStats(workflowName);
+        stats.workflow.incrementError();
+        stats.getActivityStat(activity).incrementError();
+    }
+
+    @Override
+    public void recordRollback(String workflowName, Activity<?> activity) {
+        WorkflowStats stats = getWorkflowStats(workflowName);
+        stats.workflow.incrementRollback();
+        stats.getActivityStat(activity).incrementRollback();
+    }
+
+    @Override
+    public WorkflowStat getWorkflowStat(String workflowName) {
+        WorkflowStats stats = workflowStats.get(workflowName);
+        return stats == null ? null : stats.workflow;
+    }
+
+    @Override
+    public WorkflowStat getActivityStat(String workflowName, String activityName) {
+        WorkflowStats stats = workflowStats.get(workflowName);
+        return stats == null ? null : stats.activities.get(activityName);
+    }
+
+    @Override
+    public void reset() {
+        for (WorkflowStats stats : workflowStats.values()) {
+            stats.workflow.reset();
+            for (WorkflowStat stat : stats.activities.values()) {
+                stat.reset();
+            }
+        }
+    }
+
+    protected WorkflowStats getWorkflowStats(String workflowName) {
+        WorkflowStats stats = workflowStats.get(workflowName);
+        if (stats == null) {
+            stats = new WorkflowStats();
+            WorkflowStats existing = workflowStats.putIfAbsent(workflowName, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Build the sorted set of all published statistics, keyed by attribute name. Only used to describe the MBean;
+     * individual attributes are resolved through {@link #getPublishedStat(String)}.
+     */
+    protected SortedMap<String, WorkflowStat> getPublishedStats() {
+        SortedMap<String, WorkflowStat> published = new TreeMap<>();
+        for (Map.Entry<String, WorkflowStats> entry : workflowStats.entrySet()) {
+            published.put(entry.getKey(), entry.getValue().workflow);
+            for (Map.Entry<String, WorkflowStat> activity : entry.getValue().activities.entrySet()) {
+                published.put(entry.getKey() + "." + activity.getKey(), activity.getValue());
+            }
+        }
+        return published;
+    }
+
+    protected Object getMetric(WorkflowStat stat, String metric) throws AttributeNotFoundException {
+        TimingStat latency = stat.getLatency();
+        switch (metric) {
+            case "Count":
+                return latency.getCount();
+            case "MeanMillis":
+                return latency.getAverageMillis().doubleValue();
+            case "P50Millis":
+                return latency.getPercentileMillis(0.5D).doubleValue();
+            case "P95Millis":
+                return latency.getPercentileMillis(0.95D).doubleValue();
+            case "P99Millis":
+                return latency.getPercentileMillis(0.99D).doubleValue();
+            case "MaxMillis":
+                return latency.getMaxMillis().doubleValue();
+            case "SkipCount":
+                return stat.getSkipCount();
+            case "ErrorCount":
+                return stat.getErrorCount();
+            case "RollbackCount":
+                return stat.getRollbackCount();
+            default:
+                throw new AttributeNotFoundException(metric);
+        }
+    }
+
+    /**
+     * Resolve a published statistic from its name, either "{workflow}" or "{workflow}.{activity}"
+     * 
+     * @param name the attribute name without the metric
+     * @return the statistic, or null if there is none with that name
+     */
+    protected WorkflowStat getPublishedStat(String name) {
+        WorkflowStats stats = workflowStats.get(name);
+        if (stats != null) {
+            return stats.workflow;
+        }
+        int pos = name.indexOf('.');
+        while (pos > 0) {
+            stats = workflowStats.get(name.substring(0, pos));
+            if (stats != null) {
+                WorkflowStat stat = stats.activities.get(name.substring(pos + 1));
+                if (stat != null) {
+                    return stat;
+                }
+            }
+            pos = name.indexOf('.', pos + 1);
+        }
+        return null;
+    }
+
+    protected String getMetricType(String metric) {
+        return metric.endsWith("Millis") ? "java.lang.Double" : "java.lang.Long";
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        int pos = attribute.lastIndexOf('.');
+        if (pos < 0) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        WorkflowStat stat = getPublishedStat(attribute.substring(0, pos));
+        if (stat == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return getMetric(stat, attribute.substring(pos + 1));
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        //do nothing - not allowed
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (Exception e) {
+                LOG.debug("cannot get attribute: " + attribute, e);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        if (actionName.equals("reset")) {
+            reset();
+            return null;
+        }
+        throw new MBeanException(new RuntimeException("Not Supported"));
+    }
+
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        return ObjectNameManager.getInstance("org.broadleafcommerce:name=WorkflowStatisticsService." + appName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (String name : getPublishedStats().keySet()) {
+            for (String metric : METRICS) {
+                String attributeName = name + "." + metric;
+                attrs.add(new MBeanAttributeInfo(
+                        attributeName,
+                        getMetricType(metric),
+                        attributeName,
+                        true,   // isReadable
+                        false,   // isWritable
+                        false)); // isIs
+            }
+        }
+        MBeanOperationInfo[] opers = {
+            new MBeanOperationInfo(
+                    "reset",
+                    "Reset all workflow statistics",
+                    null,   // no parameters
+                    "void",
+                    MBeanOperationInfo.ACTION)
+        };
+        return new MBeanInfo(
+            "org.broadleafcommerce:name=WorkflowStatisticsService." + appName,
+            "Workflow Runtime Statistics",
+            attrs.toArray(new MBeanAttributeInfo[attrs.size()]),
+            null,  // constructors
+            opers,
+            null); // notifications
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public void setAppName(String appName) {
+        this.appName = appName;
+    }
+
+    protected static class WorkflowStats {
+
+        protected final WorkflowStat workflow = new WorkflowStat();
+        protected final ConcurrentMap<String, WorkflowStat> activities = new ConcurrentHashMap<>();
+
+        protected WorkflowStat getActivityStat(Activity<?> activity) {
+            String activityName = activity.getBeanName();
+            if (activityName == null) {
+                activityName = activity.getClass().getSimpleName();
+            }
+            WorkflowStat stat = activities.get(activityName);
+            if (stat == null) {
+                stat = new WorkflowStat();
+                WorkflowStat existing = activities.putIfAbsent(activityName, stat);
+                if (existing != null) {
+                    stat = existing;
+                }
+            }
+            return stat;
+        }
+    }
+}
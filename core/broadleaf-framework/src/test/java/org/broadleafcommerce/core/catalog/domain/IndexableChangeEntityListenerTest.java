@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.catalog.domain;
+
+import org.broadleafcommerce.common.config.service.SystemPropertiesService;
+import org.broadleafcommerce.common.util.BLCSystemProperty;
+import org.easymock.EasyMock;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class IndexableChangeEntityListenerTest extends TestCase {
+
+    protected SystemPropertiesService propertiesServiceMock;
+    protected IndexableChangeEntityListener listener;
+
+    @Override
+    protected void setUp() throws Exception {
+        propertiesServiceMock = EasyMock.createMock(SystemPropertiesService.class);
+        ApplicationContext applicationContextMock = EasyMock.createMock(ApplicationContext.class);
+        EasyMock.expect(applicationContextMock.getBean("blSystemPropertiesService")).andReturn(propertiesServiceMock).anyTimes();
+        EasyMock.replay(applicationContextMock);
+        new BLCSystemProperty().setApplicationContext(applicationContextMock);
+        TransactionSynchronizationManager.initSynchronization();
+        listener = new IndexableChangeEntityListener();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TransactionSynchronizationManager.clearSynchronization();
+        new BLCSystemProperty().setApplicationContext(null);
+    }
+
+    public void testNothingIsCollectedWhenTheQueueIsDisabled() {
+        EasyMock.expect(propertiesServiceMock.resolveBooleanSystemProperty("solr.index.queue.enabled")).andReturn(false).anyTimes();
+        EasyMock.replay(propertiesServiceMock);
+
+        listener.indexableChanged(createProduct(1L));
+
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+    }
+
+    public void testChangesAreCollectedOncePerTransaction() {
+        EasyMock.expect(propertiesServiceMock.resolveBooleanSystemProperty("solr.index.queue.enabled")).andReturn(true).anyTimes();
+        EasyMock.replay(propertiesServiceMock);
+
+        listener.indexableChanged(createProduct(1L));
+        listener.indexableChanged(createProduct(2L));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        IndexableChangedEvent event = ((IndexableChangeEntityListener.PublishingSynchronization) synchronizations.get(0)).event;
+        assertEquals(2, event.getProductIds().size());
+        assertEquals(Collections.<Long>emptySet(), event.getSkuIds());
+    }
+
+    protected Product createProduct(Long id) {
+        Product product = new ProductImpl();
+        product.setId(id);
+        return product;
+    }
+
+}
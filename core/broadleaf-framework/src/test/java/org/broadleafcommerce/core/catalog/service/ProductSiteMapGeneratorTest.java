@@ -71,7 +71,7 @@ public class ProductSiteMapGeneratorTest extends SiteMapGeneratorTest {
         products.add(p4);
         
         ProductDao productDao = EasyMock.createMock(ProductDao.class);
-        EasyMock.expect(productDao.readAllActiveProducts(EasyMock.eq(0), EasyMock.eq(5))).andReturn(products);
+        EasyMock.expect(productDao.readAllActiveProducts(EasyMock.eq(Integer.valueOf(5)), (Long) EasyMock.isNull())).andReturn(products);
         EasyMock.replay(productDao);
 
         ProductSiteMapGenerator psmg = new ProductSiteMapGenerator();
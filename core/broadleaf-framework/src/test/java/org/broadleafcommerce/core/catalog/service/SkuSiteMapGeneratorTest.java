@@ -71,7 +71,7 @@ public class SkuSiteMapGeneratorTest extends SiteMapGeneratorTest {
         skus.add(s4);
         
         SkuDao skuDao = EasyMock.createMock(SkuDao.class);
-        EasyMock.expect(skuDao.readAllActiveSkus(EasyMock.eq(0), EasyMock.eq(5))).andReturn(skus);
+        EasyMock.expect(skuDao.readAllActiveSkus(EasyMock.eq(Integer.valueOf(5)), (Long) EasyMock.isNull())).andReturn(skus);
         EasyMock.replay(skuDao);
 
         SkuSiteMapGenerator ssmg = new SkuSiteMapGenerator();
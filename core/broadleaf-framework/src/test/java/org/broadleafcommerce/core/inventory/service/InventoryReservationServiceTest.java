@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.inventory.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+public class InventoryReservationServiceTest extends TestCase {
+
+    protected TestInventoryReservationService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        service = new TestInventoryReservationService();
+        service.chunkSize = 10;
+        service.databaseQuantity.put(1L, 25);
+        service.databaseQuantity.put(2L, 3);
+    }
+
+    public void testClaimsChunksFromDatabase() {
+        assertTrue(service.reserve(Collections.singletonMap(1L, 4)).isEmpty());
+        assertEquals(15, (int) service.databaseQuantity.get(1L));
+        assertEquals(6, service.getBufferedQuantity(1L));
+
+        assertTrue(service.reserve(Collections.singletonMap(1L, 6)).isEmpty());
+        assertEquals(15, (int) service.databaseQuantity.get(1L));
+        assertEquals(0, service.getBufferedQuantity(1L));
+    }
+
+    public void testClaimsRemainderWhenDatabaseHasLessThanAChunk() {
+        assertTrue(service.reserve(Collections.singletonMap(2L, 2)).isEmpty());
+        assertEquals(1, (int) service.databaseQuantity.get(2L));
+
+        Map<Long, Integer> failures = service.reserve(Collections.singletonMap(2L, 2));
+        assertEquals(1, failures.size());
+        assertEquals(0, (int) failures.get(2L));
+    }
+
+    public void testFailedReservationTakesNothing() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        quantities.put(1L, 5);
+        quantities.put(2L, 5);
+
+        Map<Long, Integer> failures = service.reserve(quantities);
+        assertEquals(Collections.singleton(2L), failures.keySet());
+        assertEquals(10, service.getBufferedQuantity(1L));
+    }
+
+    public void testReconcileReturnsUnusedUnits() {
+        assertTrue(service.reserve(Collections.singletonMap(1L, 4)).isEmpty());
+        service.release(Collections.singletonMap(1L, 20));
+        assertEquals(26, service.getBufferedQuantity(1L));
+
+        // Still active, so a chunk is kept
+        service.reconcile();
+        assertEquals(10, service.getBufferedQuantity(1L));
+        assertEquals(31, (int) service.databaseQuantity.get(1L));
+
+        // Idle since the last reconciliation, so everything goes back
+        service.reconcile();
+        assertEquals(0, service.getBufferedQuantity(1L));
+        assertEquals(41, (int) service.databaseQuantity.get(1L));
+    }
+
+    public void testReservationDoesNotWaitForAnotherThreadsClaim() throws Exception {
+        final CountDownLatch claimStarted = new CountDownLatch(1);
+        final CountDownLatch finishClaim = new CountDownLatch(1);
+        final TestInventoryReservationService blockingService = new TestInventoryReservationService() {
+
+            @Override
+            protected int claimFromDatabase(Long skuId, int quantity) {
+                if (quantity == chunkSize && claimStarted.getCount() > 0) {
+                    claimStarted.countDown();
+                    try {
+                        finishClaim.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return super.claimFromDatabase(skuId, quantity);
+            }
+        };
+        blockingService.chunkSize = 10;
+        blockingService.databaseQuantity.put(1L, 25);
+
+        final AtomicBoolean refilled = new AtomicBoolean();
+        Thread refill = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                refilled.set(blockingService.reserve(Collections.singletonMap(1L, 4)).isEmpty());
+            }
+        });
+        refill.start();
+        assertTrue(claimStarted.await(5, TimeUnit.SECONDS));
+
+        // The refill is still in progress, so this one claims its own units instead of waiting for the chunk
+        assertTrue(blockingService.reserve(Collections.singletonMap(1L, 3)).isEmpty());
+        assertEquals(22, (int) blockingService.databaseQuantity.get(1L));
+
+        finishClaim.countDown();
+        refill.join(5000);
+        assertTrue(refilled.get());
+        assertEquals(12, (int) blockingService.databaseQuantity.get(1L));
+        assertEquals(6, blockingService.getBufferedQuantity(1L));
+    }
+
+    protected static class TestInventoryReservationService extends InventoryReservationServiceImpl {
+
+        protected Map<Long, Integer> databaseQuantity = new HashMap<>();
+
+        @Override
+        protected synchronized int claimFromDatabase(Long skuId, int quantity) {
+            int available = databaseQuantity.get(skuId);
+            if (available < quantity) {
+                return 0;
+            }
+            databaseQuantity.put(skuId, available - quantity);
+            return quantity;
+        }
+
+        @Override
+        protected synchronized void returnToDatabase(Long skuId, SkuBuffer buffer, int quantity) {
+            databaseQuantity.put(skuId, databaseQuantity.get(skuId) + quantity);
+        }
+    }
+}
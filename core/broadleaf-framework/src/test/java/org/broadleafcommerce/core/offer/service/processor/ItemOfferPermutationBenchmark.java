@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.offer.service.processor;
+
+import org.broadleafcommerce.core.offer.domain.Offer;
+import org.broadleafcommerce.core.order.domain.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing exhaustive and pruned evaluation of item offer permutations in
+ * {@link ItemOfferProcessorImpl#determineBestPermutation(List, org.broadleafcommerce.core.offer.service.discount.domain.PromotableOrder)},
+ * using the randomized orders and offers of {@link ItemOfferProcessorTest}, across orders of 10 to 200 items and 5 to 50
+ * candidate offers. Run with the main method (the test classpath must include jmh-core and its annotation processor).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ItemOfferPermutationBenchmark {
+
+    @Param({"true", "false"})
+    public boolean pruning;
+
+    @Param({"10", "50", "200"})
+    public int itemCount;
+
+    @Param({"5", "20", "50"})
+    public int offerCount;
+
+    protected ItemOfferProcessorTest fixture;
+    protected Random random = new Random(20161017L);
+    protected Order order;
+    protected List<Offer> offers;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new ItemOfferProcessorTest();
+        fixture.setUp();
+        fixture.replay();
+        fixture.itemProcessor.setPermutationPruningEnabled(pruning);
+    }
+
+    @Setup(Level.Invocation)
+    public void createOrder() {
+        long seed = random.nextLong();
+        order = fixture.createRandomOrder(new Random(seed), itemCount);
+        offers = fixture.createRandomItemOffers(new Random(seed), offerCount);
+    }
+
+    @Benchmark
+    public Order applyOffers() throws Exception {
+        fixture.offerService.applyAndSaveOffersToOrder(offers, order);
+        return order;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ItemOfferPermutationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
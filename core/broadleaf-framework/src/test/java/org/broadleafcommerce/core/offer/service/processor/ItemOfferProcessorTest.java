@@ -18,6 +18,10 @@
 package org.broadleafcommerce.core.offer.service.processor;
 
 import org.broadleafcommerce.common.money.Money;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.ProductImpl;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.catalog.domain.SkuImpl;
 import org.broadleafcommerce.core.offer.dao.CustomerOfferDao;
 import org.broadleafcommerce.core.offer.dao.OfferCodeDao;
 import org.broadleafcommerce.core.offer.dao.OfferDao;
@@ -43,21 +47,28 @@ import org.broadleafcommerce.core.offer.service.type.OfferItemRestrictionRuleTyp
 import org.broadleafcommerce.core.order.dao.FulfillmentGroupItemDao;
 import org.broadleafcommerce.core.order.dao.OrderItemDao;
 import org.broadleafcommerce.core.order.domain.DiscreteOrderItem;
+import org.broadleafcommerce.core.order.domain.DiscreteOrderItemImpl;
+import org.broadleafcommerce.core.order.domain.FulfillmentGroup;
 import org.broadleafcommerce.core.order.domain.FulfillmentGroupItem;
+import org.broadleafcommerce.core.order.domain.FulfillmentGroupItemImpl;
 import org.broadleafcommerce.core.order.domain.Order;
 import org.broadleafcommerce.core.order.domain.OrderItem;
 import org.broadleafcommerce.core.order.domain.OrderItemPriceDetail;
+import org.broadleafcommerce.core.order.domain.OrderItemPriceDetailImpl;
 import org.broadleafcommerce.core.order.domain.OrderMultishipOption;
 import org.broadleafcommerce.core.order.service.FulfillmentGroupService;
 import org.broadleafcommerce.core.order.service.OrderItemService;
 import org.broadleafcommerce.core.order.service.OrderMultishipOptionService;
 import org.broadleafcommerce.core.order.service.OrderService;
 import org.broadleafcommerce.core.order.service.call.FulfillmentGroupItemRequest;
+import org.broadleafcommerce.core.order.service.type.OrderItemType;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.TimeZone;
 
 import junit.framework.TestCase;
@@ -604,6 +615,142 @@ public class ItemOfferProcessorTest extends TestCase {
         verify();
     }
 
+    public void testPrunedAndExhaustivePermutationsPickTheSameOffers() throws Exception {
+        replay();
+
+        Random seeds = new Random(20161017L);
+        for (int i = 0; i < 40; i++) {
+            long seed = seeds.nextLong();
+            int offerCount = 2 + new Random(seed).nextInt(4);
+
+            itemProcessor.setPermutationPruningEnabled(true);
+            Order prunedOrder = createRandomOrder(new Random(seed));
+            List<Offer> prunedOffers = createRandomItemOffers(new Random(seed), offerCount);
+            offerService.applyAndSaveOffersToOrder(prunedOffers, prunedOrder);
+
+            itemProcessor.setPermutationPruningEnabled(false);
+            Order exhaustiveOrder = createRandomOrder(new Random(seed));
+            List<Offer> exhaustiveOffers = createRandomItemOffers(new Random(seed), offerCount);
+            offerService.applyAndSaveOffersToOrder(exhaustiveOffers, exhaustiveOrder);
+
+            assertEquals("seed " + seed, sumItemTotals(exhaustiveOrder), sumItemTotals(prunedOrder));
+            for (int j = 0; j < offerCount; j++) {
+                assertEquals("seed " + seed + ", offer " + j,
+                        checkOrderItemOfferAppliedQuantity(exhaustiveOrder, exhaustiveOffers.get(j)),
+                        checkOrderItemOfferAppliedQuantity(prunedOrder, prunedOffers.get(j)));
+            }
+        }
+        itemProcessor.setPermutationPruningEnabled(true);
+
+        verify();
+    }
+
+    private Money sumItemTotals(Order order) {
+        Money total = new Money(0D);
+        for (OrderItem orderItem : order.getOrderItems()) {
+            total = total.add(orderItem.getTotalPrice());
+        }
+        return total;
+    }
+
+    /**
+     * Creates the basic order from {@link OfferDataItemProvider} with randomized retail and sale prices
+     */
+    protected Order createRandomOrder(Random random) {
+        return createRandomOrder(random, 2);
+    }
+
+    /**
+     * Creates the basic order from {@link OfferDataItemProvider}, adds discrete items alternating between its two
+     * categories until the order has itemCount items, and randomizes the retail and sale prices of every item
+     */
+    protected Order createRandomOrder(Random random, int itemCount) {
+        Order order = dataProvider.createBasicOrder();
+        FulfillmentGroup fulfillmentGroup = order.getFulfillmentGroups().get(0);
+        for (int i = order.getOrderItems().size(); i < itemCount; i++) {
+            DiscreteOrderItem template = (DiscreteOrderItem) order.getOrderItems().get(i % 2);
+            int quantity = 1 + random.nextInt(3);
+
+            Sku sku = new SkuImpl();
+            sku.setName(template.getName() + "-" + i);
+            sku.setId(Long.valueOf(1000 + i));
+            sku.setDiscountable(true);
+            Product product = new ProductImpl();
+            product.setDefaultSku(sku);
+
+            DiscreteOrderItem orderItem = new DiscreteOrderItemImpl();
+            orderItem.setCategory(template.getCategory());
+            orderItem.setName(sku.getName());
+            orderItem.setOrder(order);
+            orderItem.setOrderItemType(OrderItemType.DISCRETE);
+            orderItem.setProduct(product);
+            orderItem.setQuantity(quantity);
+            orderItem.setSku(sku);
+            orderItem.setId(Long.valueOf(1000 + i));
+
+            OrderItemPriceDetail priceDetail = new OrderItemPriceDetailImpl();
+            priceDetail.setOrderItem(orderItem);
+            priceDetail.setQuantity(quantity);
+            orderItem.getOrderItemPriceDetails().add(priceDetail);
+            order.getOrderItems().add(orderItem);
+
+            FulfillmentGroupItem fgItem = new FulfillmentGroupItemImpl();
+            fgItem.setFulfillmentGroup(fulfillmentGroup);
+            fgItem.setOrderItem(orderItem);
+            fgItem.setQuantity(quantity);
+            fulfillmentGroup.getFulfillmentGroupItems().add(fgItem);
+        }
+        for (OrderItem orderItem : order.getOrderItems()) {
+            Sku sku = ((DiscreteOrderItem) orderItem).getSku();
+            BigDecimal retailPrice = BigDecimal.valueOf(500 + random.nextInt(4500), 2);
+            sku.setRetailPrice(new Money(retailPrice));
+            if (random.nextBoolean()) {
+                sku.setSalePrice(new Money(retailPrice.multiply(BigDecimal.valueOf(50 + random.nextInt(50), 2)).setScale(2, BigDecimal.ROUND_HALF_EVEN)));
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Creates item offers with random discount types, values, quantities and stacking rules that qualify on and
+     * target the items of {@link #createRandomOrder(Random)}
+     */
+    protected List<Offer> createRandomItemOffers(Random random, int count) {
+        String[] rules = new String[] {
+            "([MVEL.eval(\"toUpperCase()\",\"test1\"), MVEL.eval(\"toUpperCase()\",\"test2\")] contains MVEL.eval(\"toUpperCase()\", discreteOrderItem.category.name))",
+            "([MVEL.eval(\"toUpperCase()\",\"test1\")] contains MVEL.eval(\"toUpperCase()\", discreteOrderItem.category.name))",
+            "([MVEL.eval(\"toUpperCase()\",\"test2\")] contains MVEL.eval(\"toUpperCase()\", discreteOrderItem.category.name))"
+        };
+        OfferDiscountType[] discountTypes = new OfferDiscountType[] {
+            OfferDiscountType.PERCENT_OFF, OfferDiscountType.AMOUNT_OFF, OfferDiscountType.FIX_PRICE
+        };
+        List<Offer> offers = new ArrayList<Offer>();
+        for (int i = 0; i < count; i++) {
+            OfferDiscountType discountType = discountTypes[random.nextInt(discountTypes.length)];
+            String qualifierRule = random.nextBoolean() ? rules[random.nextInt(rules.length)] : null;
+            Offer offer = dataProvider.createItemBasedOfferWithItemCriteria(
+                "order.subTotal.getAmount()>20",
+                discountType,
+                qualifierRule,
+                rules[random.nextInt(rules.length)]
+            ).get(0);
+            offer.setId(Long.valueOf(i + 1));
+            if (OfferDiscountType.PERCENT_OFF.equals(discountType)) {
+                offer.setValue(BigDecimal.valueOf(5 + random.nextInt(60)));
+            } else {
+                offer.setValue(BigDecimal.valueOf(100 + random.nextInt(2400), 2));
+            }
+            offer.getTargetItemCriteriaXref().iterator().next().getOfferItemCriteria().setQuantity(1 + random.nextInt(3));
+            if (qualifierRule != null) {
+                offer.getQualifyingItemCriteriaXref().iterator().next().getOfferItemCriteria().setQuantity(1 + random.nextInt(2));
+            }
+            offer.setCombinableWithOtherOffers(random.nextInt(4) > 0);
+            offer.setTotalitarianOffer(random.nextInt(5) == 0);
+            offers.add(offer);
+        }
+        return offers;
+    }
+
     public class Answer implements IAnswer<CandidateItemOffer> {
 
         @Override
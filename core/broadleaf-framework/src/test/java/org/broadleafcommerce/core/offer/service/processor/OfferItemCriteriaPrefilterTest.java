@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.offer.service.processor;
+
+import org.broadleafcommerce.core.catalog.domain.CategoryImpl;
+import org.broadleafcommerce.core.catalog.domain.ProductImpl;
+import org.broadleafcommerce.core.catalog.domain.SkuImpl;
+import org.broadleafcommerce.core.order.domain.DiscreteOrderItem;
+import org.broadleafcommerce.core.order.domain.OrderItem;
+import org.easymock.EasyMock;
+
+import junit.framework.TestCase;
+
+public class OfferItemCriteriaPrefilterTest extends TestCase {
+
+    public void testUnindexableRules() {
+        assertFalse(OfferItemCriteriaPrefilter.build(null).isIndexed());
+        assertFalse(OfferItemCriteriaPrefilter.build("discreteOrderItem.?quantity>1").isIndexed());
+        assertFalse(OfferItemCriteriaPrefilter.build("discreteOrderItem.?sku.?id==1 || discreteOrderItem.?sku.?id==2").isIndexed());
+        assertFalse(OfferItemCriteriaPrefilter.build("!(discreteOrderItem.?product.?manufacturer==\"acme\")").isIndexed());
+    }
+
+    public void testSkuAndProductIds() {
+        OrderItem item = buildItem(10L, 20L, 30L, "Shirts", "Acme");
+
+        assertTrue(couldMatch("discreteOrderItem.?sku.?id==10", item));
+        assertFalse(couldMatch("discreteOrderItem.?sku.?id==11", item));
+        assertTrue(couldMatch("[19,20,21] contains discreteOrderItem.?product.?id", item));
+        assertFalse(couldMatch("[19,21] contains discreteOrderItem.?product.?id.intValue()", item));
+        assertTrue(couldMatch("(orderItem.?category.?id==30) && discreteOrderItem.?quantity>1", item));
+        assertFalse(couldMatch("discreteOrderItem.?quantity>1 && orderItem.?category.?id==31", item));
+    }
+
+    public void testNamesAndManufacturers() {
+        OrderItem item = buildItem(10L, 20L, 30L, "Shirts", "Acme");
+
+        assertTrue(couldMatch("MvelHelper.toUpperCase(discreteOrderItem.?category.?name)==MvelHelper.toUpperCase(\"shirts\")", item));
+        assertFalse(couldMatch("discreteOrderItem.?category.?name==\"shirts\"", item));
+        assertTrue(couldMatch("discreteOrderItem.?product.?manufacturer==\"Acme\"", item));
+        assertFalse(couldMatch("MvelHelper.toUpperCase(discreteOrderItem.?product.?manufacturer)==MvelHelper.toUpperCase(\"other\")", item));
+    }
+
+    protected boolean couldMatch(String rule, OrderItem item) {
+        OfferItemCriteriaPrefilter prefilter = OfferItemCriteriaPrefilter.build(rule);
+        assertTrue("Expected the rule to be indexed: " + rule, prefilter.isIndexed());
+        for (OfferItemCriteriaPrefilter.Condition condition : prefilter.conditions) {
+            if (!condition.couldMatch(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected OrderItem buildItem(Long skuId, Long productId, Long categoryId, String categoryName, String manufacturer) {
+        SkuImpl sku = new SkuImpl();
+        sku.setId(skuId);
+        ProductImpl product = new ProductImpl();
+        product.setId(productId);
+        product.setManufacturer(manufacturer);
+        CategoryImpl category = new CategoryImpl();
+        category.setId(categoryId);
+        category.setName(categoryName);
+
+        DiscreteOrderItem item = EasyMock.createNiceMock(DiscreteOrderItem.class);
+        EasyMock.expect(item.getSku()).andReturn(sku).anyTimes();
+        EasyMock.expect(item.getProduct()).andReturn(product).anyTimes();
+        EasyMock.expect(item.getCategory()).andReturn(category).anyTimes();
+        EasyMock.replay(item);
+        return item;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework Web
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.dao;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class CatalogStructureSnapshotTest extends TestCase {
+
+    protected CatalogStructure buildStructure() {
+        CatalogStructure structure = new CatalogStructure();
+        structure.getParentCategoriesByProduct().put(10L, new HashSet<>(Arrays.asList(2L, 3L)));
+        structure.getParentCategoriesByProduct().put(5L, new HashSet<>(Arrays.asList(3L)));
+        structure.getParentCategoriesByCategory().put(2L, new HashSet<>(Arrays.asList(1L)));
+        structure.getParentCategoriesByCategory().put(3L, new HashSet<>(Arrays.asList(1L)));
+        structure.getParentCategoriesByCategory().put(1L, new HashSet<Long>());
+        structure.getDisplayOrdersByCategoryProduct().put("2-10", new BigDecimal("1.500000"));
+        structure.getDisplayOrdersByCategoryProduct().put("3-10", new BigDecimal("2.000000"));
+        structure.getDisplayOrdersByCategoryProduct().put("3-5", new BigDecimal("1.00000"));
+        return structure;
+    }
+
+    public void testMergeAndLookup() {
+        CatalogStructureSnapshot snapshot = CatalogStructureSnapshot.EMPTY.merge(buildStructure());
+        assertEquals(2, snapshot.getProductCount());
+        assertEquals(3, snapshot.getCategoryCount());
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), new HashSet<>(snapshot.getParentCategoriesForProduct(10L)));
+        assertTrue(snapshot.getParentCategoriesForCategory(1L).isEmpty());
+        assertNull(snapshot.getParentCategoriesForProduct(11L));
+        assertEquals(0, new BigDecimal("1.5").compareTo(snapshot.getDisplayOrder(2L, 10L)));
+        assertEquals(0, BigDecimal.ONE.compareTo(snapshot.getDisplayOrder(3L, 5L)));
+        assertNull(snapshot.getDisplayOrder(2L, 5L));
+    }
+
+    public void testStructureFallsBackToSnapshot() {
+        CatalogStructure structure = new CatalogStructure(CatalogStructureSnapshot.EMPTY.merge(buildStructure()));
+        structure.getParentCategoriesByProduct().put(20L, new HashSet<>(Arrays.asList(4L)));
+
+        assertTrue(structure.containsProduct(10L));
+        assertTrue(structure.containsProduct(20L));
+        assertFalse(structure.containsProduct(30L));
+        assertTrue(structure.getParentCategoriesForProduct(30L).isEmpty());
+        assertEquals(Arrays.asList(1L), structure.getParentCategoriesForCategory(2L));
+        assertEquals(0, new BigDecimal("2").compareTo(structure.getDisplayOrder(3L, 10L)));
+    }
+
+    public void testReplaceAndRemove() {
+        CatalogStructureSnapshot snapshot = CatalogStructureSnapshot.EMPTY.merge(buildStructure());
+
+        CatalogStructure update = new CatalogStructure();
+        update.getParentCategoriesByProduct().put(10L, new HashSet<>(Arrays.asList(4L)));
+        update.getDisplayOrdersByCategoryProduct().put("4-10", new BigDecimal("3"));
+        snapshot = snapshot.merge(update);
+        assertEquals(Arrays.asList(4L), snapshot.getParentCategoriesForProduct(10L));
+        assertNull(snapshot.getDisplayOrder(2L, 10L));
+        assertEquals(0, new BigDecimal("3").compareTo(snapshot.getDisplayOrder(4L, 10L)));
+        assertEquals(Arrays.asList(3L), snapshot.getParentCategoriesForProduct(5L));
+
+        snapshot = snapshot.remove(Collections.singleton(5L), Collections.singleton(2L));
+        assertFalse(snapshot.containsProduct(5L));
+        assertTrue(snapshot.containsProduct(10L));
+        assertFalse(snapshot.containsCategory(2L));
+        assertTrue(snapshot.containsCategory(3L));
+        assertNull(snapshot.getDisplayOrder(3L, 5L));
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr;
+
+import org.apache.solr.common.SolrDocument;
+import org.broadleafcommerce.common.cache.CacheStatType;
+import org.broadleafcommerce.common.cache.StatisticsService;
+import org.broadleafcommerce.common.sandbox.SandBoxHelper;
+import org.broadleafcommerce.common.sandbox.domain.SandBox;
+import org.broadleafcommerce.common.sandbox.domain.SandBoxImpl;
+import org.broadleafcommerce.common.sandbox.domain.SandBoxType;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.core.catalog.dao.ProductDao;
+import org.broadleafcommerce.core.catalog.dao.SkuDao;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.ProductImpl;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.catalog.domain.SkuImpl;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import junit.framework.TestCase;
+
+public class SolrSearchServiceImplTest extends TestCase {
+
+    protected ProductDao productDaoMock;
+    protected SkuDao skuDaoMock;
+    protected SolrHelperService shsMock;
+    protected StatisticsService statisticsServiceMock;
+    protected SandBoxHelper sandBoxHelperMock;
+    protected Cache level2CacheMock;
+    protected SolrSearchServiceImpl searchService;
+
+    @Override
+    protected void setUp() throws Exception {
+        productDaoMock = EasyMock.createStrictMock(ProductDao.class);
+        skuDaoMock = EasyMock.createStrictMock(SkuDao.class);
+        shsMock = EasyMock.createMock(SolrHelperService.class);
+        statisticsServiceMock = EasyMock.createMock(StatisticsService.class);
+        sandBoxHelperMock = EasyMock.createMock(SandBoxHelper.class);
+        level2CacheMock = EasyMock.createMock(Cache.class);
+
+        EntityManagerFactory emf = EasyMock.createMock(EntityManagerFactory.class);
+        EasyMock.expect(emf.getCache()).andReturn(level2CacheMock).anyTimes();
+        EntityManager em = EasyMock.createMock(EntityManager.class);
+        EasyMock.expect(em.getEntityManagerFactory()).andReturn(emf).anyTimes();
+        EasyMock.replay(emf, em);
+
+        searchService = new SolrSearchServiceImpl();
+        searchService.productDao = productDaoMock;
+        searchService.skuDao = skuDaoMock;
+        searchService.shs = shsMock;
+        searchService.extensionManager = new SolrSearchServiceExtensionManager();
+        searchService.statisticsService = statisticsServiceMock;
+        searchService.sandBoxHelper = sandBoxHelperMock;
+        searchService.em = em;
+
+        EasyMock.expect(shsMock.getIndexableIdFieldName()).andReturn("id").anyTimes();
+        EasyMock.expect(shsMock.getIndexableId(EasyMock.isA(Product.class))).andAnswer(new IAnswer<Long>() {
+            @Override
+            public Long answer() throws Throwable {
+                return ((Product) EasyMock.getCurrentArguments()[0]).getId();
+            }
+        }).anyTimes();
+
+        BroadleafRequestContext.setBroadleafRequestContext(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BroadleafRequestContext.setBroadleafRequestContext(null);
+    }
+
+    public void testProductsAreReadInOneQueryAndReturnedInSolrOrder() {
+        List<Long> ids = Arrays.asList(3L, 1L, 4L, 2L);
+        EasyMock.expect(productDaoMock.readProductsByIds(ids)).andReturn(createProducts(1L, 2L, 3L, 4L));
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock);
+
+        List<Product> products = searchService.getProducts(createResponseDocuments(ids));
+
+        assertEquals(ids, getProductIds(products));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock);
+    }
+
+    public void testProductsMissingFromSolrOrderSortFirst() {
+        List<Long> ids = Arrays.asList(2L, 1L);
+        EasyMock.expect(productDaoMock.readProductsByIds(ids)).andReturn(createProducts(1L, 5L, 2L));
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock);
+
+        List<Product> products = searchService.getProducts(createResponseDocuments(ids));
+
+        assertEquals(Arrays.asList(5L, 2L, 1L), getProductIds(products));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock);
+    }
+
+    public void testSkusAreReadInOneQueryAndReturnedInSolrOrder() {
+        List<Long> ids = Arrays.asList(20L, 30L, 10L);
+        List<Sku> skus = new ArrayList<>();
+        for (Long id : new Long[] { 10L, 20L, 30L }) {
+            Sku sku = new SkuImpl();
+            sku.setId(id);
+            skus.add(sku);
+        }
+        EasyMock.expect(skuDaoMock.readSkusByIds(ids)).andReturn(skus);
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock);
+
+        List<Sku> results = searchService.getSkus(createResponseDocuments(ids));
+
+        List<Long> resultIds = new ArrayList<>();
+        for (Sku sku : results) {
+            resultIds.add(sku.getId());
+        }
+        assertEquals(ids, resultIds);
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock);
+    }
+
+    public void testNullResultsArePassedThrough() {
+        List<Long> ids = new ArrayList<>();
+        EasyMock.expect(skuDaoMock.readSkusByIds(ids)).andReturn(null);
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock);
+
+        assertNull(searchService.getSkus(new ArrayList<SolrDocument>()));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock);
+    }
+
+    public void testCachedProductsAreReadIndividuallyAndOnlyMissesAreBatched() {
+        BroadleafRequestContext.setBroadleafRequestContext(new BroadleafRequestContext());
+        List<Long> ids = Arrays.asList(3L, 1L, 4L, 2L);
+        EasyMock.expect(sandBoxHelperMock.mergeCloneIds(EasyMock.eq(ProductImpl.class), EasyMock.<Long[]>anyObject()))
+                .andReturn(Arrays.asList(1L, 2L, 3L, 4L));
+        expectCached(ProductImpl.class, 3L, true);
+        expectCached(ProductImpl.class, 1L, false);
+        expectCached(ProductImpl.class, 4L, true);
+        expectCached(ProductImpl.class, 2L, false);
+        EasyMock.expect(productDaoMock.readProductById(3L)).andReturn(createProducts(3L).get(0));
+        EasyMock.expect(productDaoMock.readProductById(4L)).andReturn(createProducts(4L).get(0));
+        EasyMock.expect(productDaoMock.readProductsByIds(Arrays.asList(1L, 2L))).andReturn(createProducts(2L, 1L));
+        String statName = CacheStatType.SEARCH_PRODUCT_HYDRATION_CACHE_HIT_RATE.toString();
+        statisticsServiceMock.addCacheStat(statName, true);
+        EasyMock.expectLastCall().times(2);
+        statisticsServiceMock.addCacheStat(statName, false);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+
+        List<Product> products = searchService.getProducts(createResponseDocuments(ids));
+
+        assertEquals(ids, getProductIds(products));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+    }
+
+    public void testFullyCachedSkusSkipTheBatchedQuery() {
+        BroadleafRequestContext.setBroadleafRequestContext(new BroadleafRequestContext());
+        List<Long> ids = Arrays.asList(20L, 10L);
+        EasyMock.expect(sandBoxHelperMock.mergeCloneIds(EasyMock.eq(SkuImpl.class), EasyMock.<Long[]>anyObject()))
+                .andReturn(Arrays.asList(10L, 20L));
+        for (Long id : ids) {
+            expectCached(SkuImpl.class, id, true);
+            Sku sku = new SkuImpl();
+            sku.setId(id);
+            EasyMock.expect(skuDaoMock.readSkuById(id)).andReturn(sku);
+        }
+        statisticsServiceMock.addCacheStat(CacheStatType.SEARCH_SKU_HYDRATION_CACHE_HIT_RATE.toString(), true);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+
+        List<Sku> results = searchService.getSkus(createResponseDocuments(ids));
+
+        assertEquals(2, results.size());
+        assertEquals(Long.valueOf(20L), results.get(0).getId());
+        assertEquals(Long.valueOf(10L), results.get(1).getId());
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+    }
+
+    public void testIdsWithSandBoxClonesAreNotReadFromTheCache() {
+        BroadleafRequestContext context = new BroadleafRequestContext();
+        context.getAdditionalProperties().put("allowLevel2Cache", true);
+        BroadleafRequestContext.setBroadleafRequestContext(context);
+        List<Long> ids = Arrays.asList(2L, 1L);
+        EasyMock.expect(sandBoxHelperMock.mergeCloneIds(EasyMock.eq(ProductImpl.class), EasyMock.<Long[]>anyObject()))
+                .andReturn(Arrays.asList(1L, 2L, 100L));
+        EasyMock.expect(productDaoMock.readProductsByIds(ids)).andReturn(createProducts(1L, 2L));
+        statisticsServiceMock.addCacheStat(CacheStatType.SEARCH_PRODUCT_HYDRATION_CACHE_HIT_RATE.toString(), false);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+
+        List<Product> products = searchService.getProducts(createResponseDocuments(ids));
+
+        assertEquals(ids, getProductIds(products));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+    }
+
+    public void testUserSandBoxDoesNotUseTheCache() {
+        BroadleafRequestContext context = new BroadleafRequestContext();
+        SandBox sandBox = new SandBoxImpl();
+        sandBox.setSandBoxType(SandBoxType.USER);
+        context.setSandBox(sandBox);
+        BroadleafRequestContext.setBroadleafRequestContext(context);
+        List<Long> ids = Arrays.asList(2L, 1L);
+        EasyMock.expect(productDaoMock.readProductsByIds(ids)).andReturn(createProducts(1L, 2L));
+        EasyMock.replay(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+
+        List<Product> products = searchService.getProducts(createResponseDocuments(ids));
+
+        assertEquals(ids, getProductIds(products));
+        EasyMock.verify(productDaoMock, skuDaoMock, shsMock, statisticsServiceMock, sandBoxHelperMock, level2CacheMock);
+    }
+
+    protected void expectCached(Class<?> entityClass, Long id, boolean cached) {
+        EasyMock.expect(level2CacheMock.contains(entityClass, id)).andReturn(cached);
+    }
+
+    protected List<SolrDocument> createResponseDocuments(List<Long> ids) {
+        List<SolrDocument> documents = new ArrayList<>();
+        for (Long id : ids) {
+            SolrDocument document = new SolrDocument();
+            document.setField("id", id);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    protected List<Product> createProducts(Long... ids) {
+        List<Product> products = new ArrayList<>();
+        for (Long id : ids) {
+            Product product = new ProductImpl();
+            product.setId(id);
+            products.add(product);
+        }
+        return products;
+    }
+
+    protected List<Long> getProductIds(List<Product> products) {
+        List<Long> ids = new ArrayList<>();
+        for (Product product : products) {
+            ids.add(product.getId());
+        }
+        return ids;
+    }
+}
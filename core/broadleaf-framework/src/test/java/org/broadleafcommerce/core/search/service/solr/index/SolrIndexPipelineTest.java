@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.core.catalog.domain.Indexable;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.ProductImpl;
+import org.broadleafcommerce.core.search.dao.CatalogStructure;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SolrIndexPipelineTest extends TestCase {
+
+    protected TestSolrIndexService indexService;
+    protected TestIndexOperation operation;
+    protected List<SolrInputDocument> addedDocuments;
+    protected IndexStatusInfo storedStatus;
+
+    @Override
+    protected void setUp() throws Exception {
+        addedDocuments = Collections.synchronizedList(new ArrayList<SolrInputDocument>());
+        storedStatus = null;
+
+        SolrIndexStatusServiceImpl statusService = new SolrIndexStatusServiceImpl();
+        statusService.providers = new ArrayList<SolrIndexStatusProvider>();
+        statusService.providers.add(new SolrIndexStatusProvider() {
+
+            @Override
+            public void handleUpdateIndexStatus(IndexStatusInfo status) {
+                storedStatus = status;
+            }
+
+            @Override
+            public IndexStatusInfo readIndexStatus(IndexStatusInfo status) {
+                if (storedStatus != null) {
+                    status.setLastIndexDate(storedStatus.getLastIndexDate());
+                    status.getAdditionalInfo().putAll(storedStatus.getAdditionalInfo());
+                }
+                return status;
+            }
+        });
+
+        indexService = new TestSolrIndexService();
+        indexService.solrIndexStatusService = statusService;
+        indexService.catalogStructureSnapshotService = new CatalogStructureSnapshotServiceImpl() {
+
+            @Override
+            public void publish(CatalogStructure structure) {
+            }
+        };
+        indexService.transactionManager = new PlatformTransactionManager() {
+
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+
+    protected SolrIndexPipeline createPipeline(int numItems) {
+        operation = new TestIndexOperation(numItems);
+        SolrIndexPipeline pipeline = new SolrIndexPipeline(indexService, operation, Long.valueOf(numItems));
+        pipeline.setPageSize(100);
+        pipeline.setBuilderThreads(3);
+        pipeline.setQueueCapacity(2);
+        pipeline.setWriterBatchSize(250);
+        return pipeline;
+    }
+
+    public void testEachPageIsReadOnceAndEveryDocumentIsWritten() throws Exception {
+        SolrIndexPipeline pipeline = createPipeline(1050);
+        pipeline.execute();
+
+        assertEquals("Each of the 11 pages should be read exactly once", 11, operation.reads.get());
+        assertEquals(11, pipeline.getPagesRead());
+        assertEquals(1050, pipeline.getDocumentsWritten());
+        assertEquals(1050, addedDocuments.size());
+        Set<Object> ids = new HashSet<>();
+        for (SolrInputDocument document : addedDocuments) {
+            ids.add(document.getFieldValue("id"));
+        }
+        assertEquals("Every item should be written once", 1050, ids.size());
+        assertEquals(1, indexService.commits.get());
+    }
+
+    public void testDocumentsAreLoggedOncePerPage() throws Exception {
+        createPipeline(1050).execute();
+
+        assertEquals(11, indexService.logDocumentsCalls.get());
+    }
+
+    public void testProgressIsReportedOnTheFirstRun() throws Exception {
+        assertNull(storedStatus);
+
+        createPipeline(420).execute();
+
+        assertNotNull("Progress should be reported even though nothing was indexed before", storedStatus);
+        assertNull(storedStatus.getLastIndexDate());
+        assertEquals("420", storedStatus.getAdditionalInfo().get(SolrIndexPipeline.ITEMS_TOTAL_INFO_KEY));
+        assertEquals("420", storedStatus.getAdditionalInfo().get(SolrIndexPipeline.DOCUMENTS_WRITTEN_INFO_KEY));
+    }
+
+    public void testReadFailureIsRethrownWithoutCommitting() throws Exception {
+        SolrIndexPipeline pipeline = createPipeline(1050);
+        operation.failOnRead = 4;
+        try {
+            pipeline.execute();
+            fail("The read failure should be rethrown");
+        } catch (ServiceException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+        assertEquals(0, indexService.commits.get());
+    }
+
+    protected class TestSolrIndexService extends SolrIndexServiceImpl {
+
+        protected final AtomicInteger commits = new AtomicInteger();
+        protected final AtomicInteger logDocumentsCalls = new AtomicInteger();
+
+        @Override
+        public Object[] saveState() {
+            return new Object[0];
+        }
+
+        @Override
+        public void restoreState(Object[] pack) {
+        }
+
+        @Override
+        protected CatalogStructure createSharedCatalogStructure() {
+            return new CatalogStructure();
+        }
+
+        @Override
+        public Collection<SolrInputDocument> buildIncrementalIndex(List<? extends Indexable> indexables, SolrClient solrServer) {
+            List<SolrInputDocument> documents = new ArrayList<>();
+            for (Indexable indexable : indexables) {
+                SolrInputDocument document = new SolrInputDocument();
+                document.addField("id", indexable.getId());
+                documents.add(document);
+            }
+            logDocuments(documents);
+            return documents;
+        }
+
+        @Override
+        public void logDocuments(Collection<SolrInputDocument> documents) {
+            logDocumentsCalls.incrementAndGet();
+        }
+
+        @Override
+        public void commit(SolrClient server) {
+            commits.incrementAndGet();
+        }
+    }
+
+    protected class TestIndexOperation implements SolrIndexOperation {
+
+        protected final int numItems;
+        protected final AtomicInteger reads = new AtomicInteger();
+        protected volatile int failOnRead = -1;
+
+        public TestIndexOperation(int numItems) {
+            this.numItems = numItems;
+        }
+
+        @Override
+        public List<? extends Indexable> readIndexables(int pageSize, Long lastId) throws ServiceException {
+            if (reads.incrementAndGet() == failOnRead) {
+                throw new ServiceException("read failed");
+            }
+            List<Product> products = new ArrayList<>();
+            for (long id = (lastId == null ? 0L : lastId) + 1; id <= numItems && products.size() < pageSize; id++) {
+                Product product = new ProductImpl();
+                product.setId(id);
+                products.add(product);
+            }
+            return products;
+        }
+
+        @Override
+        public SolrClient getSolrServerForIndexing() {
+            return new SolrClient() {
+
+                @Override
+                public NamedList<Object> request(SolrRequest request, String collection) {
+                    addedDocuments.addAll(((UpdateRequest) request).getDocuments());
+                    return new NamedList<Object>();
+                }
+
+                @Override
+                public void close() {
+                }
+
+                public void shutdown() {
+                }
+            };
+        }
+
+        @Override
+        public boolean obtainLock() {
+            return true;
+        }
+
+        @Override
+        public void beforeCountIndexables() {
+        }
+
+        @Override
+        public Long countIndexables() {
+            return Long.valueOf(numItems);
+        }
+
+        @Override
+        public void afterCountIndexables() {
+        }
+
+        @Override
+        public void beforeReadIndexables() {
+        }
+
+        @Override
+        public void afterReadIndexables() {
+        }
+
+        @Override
+        public void beforeBuildPage() {
+        }
+
+        @Override
+        public void buildPage(List<? extends Indexable> indexables) {
+        }
+
+        @Override
+        public void afterBuildPage() {
+        }
+
+        @Override
+        public void releaseLock() {
+        }
+    }
+}
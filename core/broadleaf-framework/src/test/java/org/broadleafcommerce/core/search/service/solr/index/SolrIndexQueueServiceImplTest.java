@@ -0,0 +1,297 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.search.service.solr.index;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.broadleafcommerce.common.exception.ServiceException;
+import org.broadleafcommerce.common.locale.domain.Locale;
+import org.broadleafcommerce.common.locale.domain.LocaleImpl;
+import org.broadleafcommerce.common.locale.service.LocaleService;
+import org.broadleafcommerce.common.web.BroadleafRequestContext;
+import org.broadleafcommerce.core.catalog.dao.ProductDao;
+import org.broadleafcommerce.core.catalog.dao.SkuDao;
+import org.broadleafcommerce.core.catalog.domain.Indexable;
+import org.broadleafcommerce.core.catalog.domain.IndexableChangedEvent;
+import org.broadleafcommerce.core.catalog.domain.Product;
+import org.broadleafcommerce.core.catalog.domain.Sku;
+import org.broadleafcommerce.core.search.dao.SolrIndexQueueDao;
+import org.broadleafcommerce.core.search.domain.SolrIndexQueueEntry;
+import org.broadleafcommerce.core.search.domain.SolrIndexQueueEntryImpl;
+import org.broadleafcommerce.core.search.service.solr.SolrConfiguration;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import junit.framework.TestCase;
+
+public class SolrIndexQueueServiceImplTest extends TestCase {
+
+    protected EntityManager emMock;
+    protected SolrIndexQueueDao queueDaoMock;
+    protected ProductDao productDaoMock;
+    protected SkuDao skuDaoMock;
+    protected LocaleService localeServiceMock;
+    protected TestSolrIndexService indexService;
+    protected TestSolrIndexQueueService queueService;
+    protected int commits;
+    protected int rollbacks;
+
+    @Override
+    protected void setUp() throws Exception {
+        emMock = EasyMock.createStrictMock(EntityManager.class);
+        queueDaoMock = EasyMock.createStrictMock(SolrIndexQueueDao.class);
+        productDaoMock = EasyMock.createStrictMock(ProductDao.class);
+        skuDaoMock = EasyMock.createStrictMock(SkuDao.class);
+        localeServiceMock = EasyMock.createMock(LocaleService.class);
+        indexService = new TestSolrIndexService();
+        commits = 0;
+        rollbacks = 0;
+
+        queueService = new TestSolrIndexQueueService();
+        queueService.em = emMock;
+        queueService.solrIndexQueueDao = queueDaoMock;
+        queueService.productDao = productDaoMock;
+        queueService.skuDao = skuDaoMock;
+        queueService.localeService = localeServiceMock;
+        queueService.solrIndexService = indexService;
+        queueService.solrConfiguration = new SolrConfiguration(new TestSolrClient(), new TestSolrClient(), new TestSolrClient());
+        queueService.batchSize = 2;
+        queueService.pageSize = 100;
+        queueService.useSku = false;
+        queueService.transactionManager = new PlatformTransactionManager() {
+
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                commits++;
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                rollbacks++;
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BroadleafRequestContext.setBroadleafRequestContext(null);
+    }
+
+    public void testEnqueueFlushesThenQueuesEveryCollectedChange() {
+        IndexableChangedEvent event = new IndexableChangedEvent(this);
+        event.addProductId(1L);
+        event.addSkuId(2L);
+        event.addCategoryId(3L);
+        emMock.flush();
+        queueDaoMock.enqueue(SolrIndexQueueEntry.PRODUCT, Collections.singleton(1L));
+        queueDaoMock.enqueue(SolrIndexQueueEntry.SKU, Collections.singleton(2L));
+        queueDaoMock.enqueue(SolrIndexQueueEntry.CATEGORY, Collections.singleton(3L));
+        EasyMock.replay(emMock, queueDaoMock);
+
+        queueService.enqueue(event);
+
+        EasyMock.verify(emMock, queueDaoMock);
+    }
+
+    public void testProcessQueueRemovesTheClaimedEntriesThenReindexes() throws Exception {
+        final Product active = createProduct(1L, true);
+        final Product inactive = createProduct(2L, false);
+        EasyMock.expect(queueDaoMock.readEntries(2)).andReturn(createProductEntries(1L, 2L));
+        EasyMock.expect(queueDaoMock.deleteEntries(Arrays.asList(10L, 11L))).andReturn(2);
+        final List<Integer> commitsBeforeReindex = new ArrayList<>();
+        EasyMock.expect(productDaoMock.readProductsByIds(Arrays.asList(1L, 2L)))
+                .andAnswer(new IAnswer<List<Product>>() {
+                    @Override
+                    public List<Product> answer() throws Throwable {
+                        commitsBeforeReindex.add(commits);
+                        return new ArrayList<>(Arrays.asList(active, inactive));
+                    }
+                });
+        EasyMock.replay(queueDaoMock, productDaoMock, skuDaoMock, active, inactive);
+
+        assertEquals(2, queueService.processQueue());
+
+        assertEquals(Collections.singletonList(1L), indexService.builtIds);
+        assertEquals(Collections.singleton(2L), queueService.deletedIds);
+        assertEquals("The claim should be committed, releasing its locks, before reindexing",
+                Collections.singletonList(1), commitsBeforeReindex);
+        assertEquals(2, commits);
+        assertEquals(0, rollbacks);
+        // Only products were queued, so no skus should have been read
+        EasyMock.verify(queueDaoMock, productDaoMock, skuDaoMock);
+    }
+
+    public void testEmptyQueueDoesNotReindex() throws Exception {
+        EasyMock.expect(queueDaoMock.readEntries(2)).andReturn(new ArrayList<SolrIndexQueueEntry>());
+        EasyMock.replay(queueDaoMock, productDaoMock, skuDaoMock);
+
+        assertEquals(0, queueService.processQueue());
+
+        assertEquals(1, commits);
+        assertEquals(0, rollbacks);
+        EasyMock.verify(queueDaoMock, productDaoMock, skuDaoMock);
+    }
+
+    public void testFailedReindexRequeuesTheEntries() throws Exception {
+        Product active = createProduct(1L, true);
+        List<SolrIndexQueueEntry> entries = createProductEntries(1L, 1L);
+        SolrIndexQueueEntry skuEntry = new SolrIndexQueueEntryImpl();
+        skuEntry.setId(20L);
+        skuEntry.setEntityType(SolrIndexQueueEntry.SKU);
+        skuEntry.setEntityId(5L);
+        entries.add(skuEntry);
+        queueService.batchSize = 3;
+        EasyMock.expect(queueDaoMock.readEntries(3)).andReturn(entries);
+        EasyMock.expect(queueDaoMock.deleteEntries(Arrays.asList(10L, 11L, 20L))).andReturn(3);
+        EasyMock.expect(skuDaoMock.readSkusByIds(Arrays.asList(5L))).andReturn(new ArrayList<Sku>());
+        EasyMock.expect(productDaoMock.readProductsByIds(Arrays.asList(1L)))
+                .andReturn(new ArrayList<>(Arrays.asList(active)));
+        queueDaoMock.enqueue(SolrIndexQueueEntry.PRODUCT, Collections.singleton(1L));
+        queueDaoMock.enqueue(SolrIndexQueueEntry.SKU, Collections.singleton(5L));
+        EasyMock.replay(queueDaoMock, productDaoMock, skuDaoMock, active);
+        indexService.failBuild = true;
+
+        try {
+            queueService.processQueue();
+            fail("The reindex failure should be rethrown");
+        } catch (ServiceException e) {
+            assertEquals("build failed", e.getMessage());
+        }
+
+        // The claim and the requeue commit, the reindex rolls back
+        assertEquals(2, commits);
+        assertEquals(1, rollbacks);
+        EasyMock.verify(queueDaoMock, productDaoMock, skuDaoMock);
+    }
+
+    public void testDrainQueueRunsInAGlobalContextWithTheDefaultLocale() throws Exception {
+        final Locale defaultLocale = new LocaleImpl();
+        defaultLocale.setLocaleCode("en_US");
+        EasyMock.expect(localeServiceMock.findDefaultLocale()).andReturn(defaultLocale);
+        final List<BroadleafRequestContext> contexts = new ArrayList<>();
+        EasyMock.expect(queueDaoMock.readEntries(2)).andAnswer(new IAnswer<List<SolrIndexQueueEntry>>() {
+            @Override
+            public List<SolrIndexQueueEntry> answer() throws Throwable {
+                contexts.add(BroadleafRequestContext.getBroadleafRequestContext());
+                return Collections.emptyList();
+            }
+        });
+        EasyMock.replay(localeServiceMock, queueDaoMock);
+
+        queueService.drainQueue();
+
+        assertEquals(1, contexts.size());
+        assertTrue(contexts.get(0).getIgnoreSite());
+        assertSame(defaultLocale, contexts.get(0).getLocale());
+        assertNull("The context created for the drain should be removed afterwards",
+                BroadleafRequestContext.getBroadleafRequestContext());
+        EasyMock.verify(localeServiceMock, queueDaoMock);
+    }
+
+    protected Product createProduct(Long id, boolean active) {
+        Product product = EasyMock.createMock(Product.class);
+        EasyMock.expect(product.getId()).andReturn(id).anyTimes();
+        EasyMock.expect(product.isActive()).andReturn(active).anyTimes();
+        return product;
+    }
+
+    protected List<SolrIndexQueueEntry> createProductEntries(Long... productIds) {
+        List<SolrIndexQueueEntry> entries = new ArrayList<>();
+        long entryId = 10L;
+        for (Long productId : productIds) {
+            SolrIndexQueueEntry entry = new SolrIndexQueueEntryImpl();
+            entry.setId(entryId++);
+            entry.setEntityType(SolrIndexQueueEntry.PRODUCT);
+            entry.setEntityId(productId);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    protected static class TestSolrIndexQueueService extends SolrIndexQueueServiceImpl {
+
+        protected final Set<Long> deletedIds = new LinkedHashSet<>();
+
+        @Override
+        protected void deleteDocuments(Collection<Long> indexableIds) {
+            deletedIds.addAll(indexableIds);
+        }
+    }
+
+    protected static class TestSolrIndexService extends SolrIndexServiceImpl {
+
+        protected final List<Long> builtIds = new ArrayList<>();
+        protected boolean failBuild;
+
+        @Override
+        public void performCachedOperation(SolrIndexCachedOperation.CacheOperation cacheOperation) throws ServiceException {
+            cacheOperation.execute();
+        }
+
+        @Override
+        public Collection<SolrInputDocument> buildIncrementalIndex(List<? extends Indexable> indexables, SolrClient solrServer)
+                throws ServiceException {
+            if (failBuild) {
+                throw new ServiceException("build failed");
+            }
+            for (Indexable indexable : indexables) {
+                builtIds.add(indexable.getId());
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    protected static class TestSolrClient extends SolrClient {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) {
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        public void shutdown() {
+        }
+    }
+
+}
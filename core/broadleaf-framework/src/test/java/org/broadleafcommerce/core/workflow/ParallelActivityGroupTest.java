@@ -0,0 +1,277 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow;
+
+import org.broadleafcommerce.core.workflow.state.ActivityStateManagerImpl;
+import org.broadleafcommerce.core.workflow.state.RollbackHandler;
+import org.broadleafcommerce.core.workflow.state.RollbackStateLocal;
+import org.broadleafcommerce.core.workflow.statistics.WorkflowStatisticsServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ParallelActivityGroupTest extends TestCase {
+
+    protected ParallelActivityGroup<ProcessContext<List<String>>> group;
+    protected ActivityStateManagerImpl<ProcessContext<List<String>>> stateManager;
+    protected List<String> rolledBack;
+
+    @Override
+    protected void setUp() throws Exception {
+        group = new ParallelActivityGroup<>();
+        group.setBeanName("testGroup");
+        stateManager = new ActivityStateManagerImpl<>();
+        stateManager.init();
+        rolledBack = Collections.synchronizedList(new ArrayList<String>());
+        RollbackStateLocal rollbackStateLocal = new RollbackStateLocal();
+        rollbackStateLocal.setThreadId(String.valueOf(Thread.currentThread().getId()));
+        rollbackStateLocal.setWorkflowId("testWorkflow");
+        RollbackStateLocal.setRollbackStateLocal(rollbackStateLocal);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        stateManager.clearAllState();
+        group.destroy();
+    }
+
+    public void testBranchesAreMergedInConfiguredOrder() throws Exception {
+        TestActivity slow = new TestActivity("slow", 100);
+        TestActivity fast = new TestActivity("fast", 0);
+        SessionBoundActivity bound = new SessionBoundActivity("bound");
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(slow, fast, bound));
+
+        ProcessContext<List<String>> context = createContext();
+        assertSame(context, group.execute(context));
+
+        assertEquals(Arrays.asList("bound", "slow", "fast"), context.getSeedData());
+        assertFalse(Thread.currentThread() == slow.executingThread);
+        assertFalse(Thread.currentThread() == fast.executingThread);
+        assertSame(Thread.currentThread(), bound.executingThread);
+    }
+
+    public void testBranchesDoNotShareTheWorkflowContext() throws Exception {
+        TestActivity first = new TestActivity("first", 0);
+        TestActivity second = new TestActivity("second", 0);
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(first, second));
+
+        ProcessContext<List<String>> context = createContext();
+        group.execute(context);
+
+        assertFalse(context == first.executedContext);
+        assertFalse(context.getSeedData() == first.executedContext.getSeedData());
+        assertEquals(Arrays.asList("first"), first.executedContext.getSeedData());
+        assertEquals(Arrays.asList("first", "second"), context.getSeedData());
+    }
+
+    public void testFirstFailureInConfiguredOrderIsRethrown() throws Exception {
+        TestActivity slowFailure = new TestActivity("slowFailure", 100);
+        slowFailure.failure = new IllegalStateException("slowFailure");
+        TestActivity fastFailure = new TestActivity("fastFailure", 0);
+        fastFailure.failure = new IllegalArgumentException("fastFailure");
+        TestActivity success = withRollback(new TestActivity("success", 0));
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(slowFailure, fastFailure, success));
+
+        ProcessContext<List<String>> context = createContext();
+        try {
+            group.execute(context);
+            fail("The failure of the first grouped activity should have been rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("slowFailure", e.getMessage());
+        }
+
+        assertEquals(Arrays.asList("success"), context.getSeedData());
+        stateManager.rollbackAllState();
+        assertEquals(Arrays.asList("success"), rolledBack);
+    }
+
+    public void testStateRegisteredOnWorkersLandsOnTheWorkflowRollbackStack() throws Exception {
+        TestActivity first = withRollback(new TestActivity("first", 0));
+        first.registerStateOnWorker = true;
+        TestActivity second = withRollback(new TestActivity("second", 50));
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(first, second));
+
+        group.execute(createContext());
+        stateManager.rollbackAllState();
+
+        // Automatically registered handlers are pushed on the calling thread in configured order after the workers
+        // finished, so they are rolled back first and in reverse configured order
+        assertEquals(Arrays.asList("second", "first", "first-worker"), rolledBack);
+    }
+
+    public void testTimedOutWorkersAreCancelledAndJoinedBeforeFailing() throws Exception {
+        TestActivity stuck = withRollback(new TestActivity("stuck", 10000));
+        stuck.finishAfterInterruptMillis = 100;
+        TestActivity quick = new TestActivity("quick", 0);
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(stuck, quick));
+        group.setTimeoutMillis(50);
+
+        ProcessContext<List<String>> context = createContext();
+        try {
+            group.execute(context);
+            fail("The timeout should have been reported");
+        } catch (WorkflowException e) {
+            assertTrue(e.getMessage().contains("stuck"));
+        }
+
+        assertTrue("The timed out worker should have been interrupted", stuck.interrupted);
+        assertTrue("The timed out worker should have finished before the failure was reported", stuck.finished);
+        assertEquals(Arrays.asList("quick"), context.getSeedData());
+
+        // The timed out activity completed after all, so it can be compensated
+        stateManager.rollbackAllState();
+        assertEquals(Arrays.asList("stuck"), rolledBack);
+    }
+
+    public void testSaturatedExecutorRunsBranchesOnTheCallingThread() throws Exception {
+        group.setPoolSize(1);
+        group.setQueueCapacity(1);
+        TestActivity first = new TestActivity("first", 50);
+        TestActivity second = new TestActivity("second", 0);
+        TestActivity third = new TestActivity("third", 0);
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(first, second, third));
+
+        ProcessContext<List<String>> context = createContext();
+        group.execute(context);
+
+        assertEquals(Arrays.asList("first", "second", "third"), context.getSeedData());
+        assertSame(Thread.currentThread(), third.executingThread);
+    }
+
+    public void testGroupedActivitiesAreTimedUnderTheWorkflow() throws Exception {
+        WorkflowStatisticsServiceImpl statisticsService = new WorkflowStatisticsServiceImpl();
+        statisticsService.setEnabled(true);
+        group.setWorkflowStatisticsService(statisticsService);
+        TestActivity first = new TestActivity("first", 20);
+        TestActivity second = new TestActivity("second", 0);
+        SessionBoundActivity skipped = new SessionBoundActivity("skipped") {
+            @Override
+            public boolean shouldExecute(ProcessContext<List<String>> context) {
+                return false;
+            }
+        };
+        group.setActivities(Arrays.<Activity<ProcessContext<List<String>>>>asList(first, second, skipped));
+
+        group.execute(createContext());
+
+        assertEquals(Long.valueOf(1L), statisticsService.getActivityStat("testWorkflow", "first").getLatency().getCount());
+        assertTrue(statisticsService.getActivityStat("testWorkflow", "first").getLatency().getMaxMillis().doubleValue() >= 20D);
+        assertEquals(Long.valueOf(1L), statisticsService.getActivityStat("testWorkflow", "second").getLatency().getCount());
+        assertEquals(1L, statisticsService.getActivityStat("testWorkflow", "skipped").getSkipCount());
+    }
+
+    protected ProcessContext<List<String>> createContext() {
+        ProcessContext<List<String>> context = new DefaultProcessContextImpl<>();
+        context.setSeedData(new ArrayList<String>());
+        return context;
+    }
+
+    protected TestActivity withRollback(final TestActivity activity) {
+        activity.setAutomaticallyRegisterRollbackHandler(true);
+        activity.setRollbackHandler(new RecordingRollbackHandler(activity.getBeanName()));
+        return activity;
+    }
+
+    protected class RecordingRollbackHandler implements RollbackHandler<ProcessContext<List<String>>> {
+
+        protected final String name;
+
+        public RecordingRollbackHandler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void rollbackState(Activity<ProcessContext<List<String>>> activity, ProcessContext<List<String>> processContext,
+                Map<String, Object> stateConfiguration) {
+            rolledBack.add(name);
+        }
+    }
+
+    protected class TestActivity extends BaseActivity<ProcessContext<List<String>>>
+            implements SessionFreeActivity<ProcessContext<List<String>>> {
+
+        protected final long delayMillis;
+        protected Exception failure;
+        protected boolean registerStateOnWorker;
+        protected long finishAfterInterruptMillis;
+
+        protected volatile Thread executingThread;
+        protected volatile ProcessContext<List<String>> executedContext;
+        protected volatile boolean interrupted;
+        protected volatile boolean finished;
+
+        public TestActivity(String name, long delayMillis) {
+            setBeanName(name);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public ProcessContext<List<String>> createBranchContext(ProcessContext<List<String>> context) {
+            return createContext();
+        }
+
+        @Override
+        public void mergeBranchContext(ProcessContext<List<String>> context, ProcessContext<List<String>> branchContext) {
+            context.getSeedData().addAll(branchContext.getSeedData());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ProcessContext<List<String>> execute(ProcessContext<List<String>> context) throws Exception {
+            executingThread = Thread.currentThread();
+            executedContext = context;
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.sleep(finishAfterInterruptMillis);
+            }
+            if (registerStateOnWorker) {
+                ActivityStateManagerImpl.getStateManager().registerState(this, context,
+                        new RecordingRollbackHandler(getBeanName() + "-worker"), null);
+            }
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            context.getSeedData().add(getBeanName());
+            return context;
+        }
+    }
+
+    protected class SessionBoundActivity extends BaseActivity<ProcessContext<List<String>>> {
+
+        protected volatile Thread executingThread;
+
+        public SessionBoundActivity(String name) {
+            setBeanName(name);
+        }
+
+        @Override
+        public ProcessContext<List<String>> execute(ProcessContext<List<String>> context) throws Exception {
+            executingThread = Thread.currentThread();
+            context.getSeedData().add(getBeanName());
+            return context;
+        }
+    }
+}
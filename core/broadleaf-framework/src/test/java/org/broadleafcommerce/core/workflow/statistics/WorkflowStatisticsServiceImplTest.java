@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * BroadleafCommerce Framework
+ * %%
+ * Copyright (C) 2009 - 2016 Broadleaf Commerce
+ * %%
+ * Licensed under the Broadleaf Fair Use License Agreement, Version 1.0
+ * (the "Fair Use License" located  at http://license.broadleafcommerce.org/fair_use_license-1.0.txt)
+ * unless the restrictions on use therein are violated and require payment to Broadleaf in which case
+ * the Broadleaf End User License Agreement (EULA), Version 1.1
+ * (the "Commercial License" located at http://license.broadleafcommerce.org/commercial_license-1.1.txt)
+ * shall apply.
+ * 
+ * Alternatively, the Commercial License may be replaced with a mutually agreed upon license (the "Custom License")
+ * between you and Broadleaf Commerce. You may not use this file except in compliance with the applicable license.
+ * #L%
+ */
+package org.broadleafcommerce.core.workflow.statistics;
+
+import org.broadleafcommerce.core.workflow.Activity;
+import org.broadleafcommerce.core.workflow.PassThroughActivity;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+
+import junit.framework.TestCase;
+
+public class WorkflowStatisticsServiceImplTest extends TestCase {
+
+    protected WorkflowStatisticsServiceImpl service;
+    protected Activity<?> activity;
+
+    @Override
+    protected void setUp() throws Exception {
+        service = new WorkflowStatisticsServiceImpl();
+        activity = new PassThroughActivity();
+        activity.setBeanName("blTestActivity");
+    }
+
+    public void testDisabledByDefault() {
+        assertFalse(service.isEnabled());
+    }
+
+    public void testWorkflowAndActivityAttributes() throws Exception {
+        service.recordWorkflowExecution("blTestWorkflow", TimeUnit.MILLISECONDS.toNanos(12));
+        for (int i = 0; i < 99; i++) {
+            service.recordActivityExecution("blTestWorkflow", activity, TimeUnit.MICROSECONDS.toNanos(1500));
+        }
+        service.recordActivityExecution("blTestWorkflow", activity, TimeUnit.MILLISECONDS.toNanos(100));
+        service.recordActivitySkipped("blTestWorkflow", activity);
+        service.recordActivityError("blTestWorkflow", activity);
+
+        assertEquals(1L, service.getAttribute("blTestWorkflow.Count"));
+        assertEquals(12D, service.getAttribute("blTestWorkflow.MaxMillis"));
+        assertEquals(1L, service.getAttribute("blTestWorkflow.ErrorCount"));
+        assertEquals(100L, service.getAttribute("blTestWorkflow.blTestActivity.Count"));
+        assertEquals(1L, service.getAttribute("blTestWorkflow.blTestActivity.SkipCount"));
+        assertEquals(2D, service.getAttribute("blTestWorkflow.blTestActivity.P50Millis"));
+        assertEquals(2D, service.getAttribute("blTestWorkflow.blTestActivity.P99Millis"));
+        assertEquals(100D, service.getAttribute("blTestWorkflow.blTestActivity.MaxMillis"));
+
+        int matched = 0;
+        for (MBeanAttributeInfo info : service.getMBeanInfo().getAttributes()) {
+            if (info.getName().startsWith("blTestWorkflow.")) {
+                matched++;
+            }
+        }
+        assertEquals(2 * WorkflowStatisticsServiceImpl.METRICS.length, matched);
+    }
+
+    public void testDottedActivityNames() throws Exception {
+        activity.setBeanName("com.example.CustomActivity");
+        service.recordActivityExecution("blTestWorkflow", activity, 0L);
+
+        assertEquals(1L, service.getAttribute("blTestWorkflow.com.example.CustomActivity.Count"));
+    }
+
+    public void testUnknownAttributes() throws Exception {
+        service.recordWorkflowExecution("blTestWorkflow", 0L);
+        for (String attribute : new String[] {"blTestWorkflow", "blTestWorkflow.Unknown", "blOtherWorkflow.Count",
+                "blTestWorkflow.blOtherActivity.Count"}) {
+            try {
+                service.getAttribute(attribute);
+                fail("Expected " + attribute + " to be unknown");
+            } catch (AttributeNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testReset() throws Exception {
+        service.recordActivityExecution("blTestWorkflow", activity, TimeUnit.MILLISECONDS.toNanos(3));
+        service.reset();
+
+        assertEquals(0L, service.getAttribute("blTestWorkflow.blTestActivity.Count"));
+        assertEquals(-1D, service.getAttribute("blTestWorkflow.blTestActivity.P95Millis"));
+    }
+}
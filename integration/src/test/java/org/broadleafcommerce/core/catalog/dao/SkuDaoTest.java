@@ -28,6 +28,8 @@ import org.testng.annotations.Test;
 
 import java.math.BigDecimal;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
@@ -72,4 +74,38 @@ public class SkuDaoTest extends TestNGSiteIntegrationSetup {
         assert item.getId() == skuId;
     }
 
+    @Test(groups = { "decrementSkuQuantityAvailable" }, dependsOnGroups = { "createSku" })
+    @Transactional
+    public void decrementQuantitiesAvailable() {
+        Sku sku = skuDao.readSkuById(skuId);
+        sku.setQuantityAvailable(5);
+        skuDao.save(sku);
+
+        Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+        quantities.put(skuId, 3);
+        assert skuDao.decrementQuantitiesAvailable(quantities).isEmpty();
+
+        Map<Long, Integer> failures = skuDao.decrementQuantitiesAvailable(quantities);
+        assert failures.size() == 1;
+        assert failures.get(skuId) == 2;
+    }
+
+    @Test(groups = { "refreshManagedSkuQuantityAvailable" }, dependsOnGroups = { "createSku" })
+    @Transactional
+    public void managedSkuReflectsQuantityUpdates() {
+        Sku sku = skuDao.readSkuById(skuId);
+        sku.setQuantityAvailable(5);
+        skuDao.save(sku);
+        Sku managed = skuDao.readSkuById(skuId);
+
+        Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+        quantities.put(skuId, 3);
+        assert skuDao.decrementQuantitiesAvailable(quantities).isEmpty();
+        assert managed.getQuantityAvailable() == 2;
+        assert skuDao.readSkuById(skuId).getQuantityAvailable() == 2;
+
+        skuDao.incrementQuantitiesAvailable(quantities);
+        assert managed.getQuantityAvailable() == 5;
+    }
+
 }